@@ -18,6 +18,7 @@ import edu.harvard.iq.dataverse.util.FileUtil;
 import edu.harvard.iq.dataverse.util.ShapefileHandler;
 import edu.harvard.iq.dataverse.util.StringUtil;
 import java.io.IOException;
+import java.sql.Timestamp;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Objects;
@@ -31,6 +32,8 @@ import java.util.stream.Collectors;
 import jakarta.json.Json;
 import jakarta.json.JsonArrayBuilder;
 import jakarta.persistence.*;
+import org.eclipse.persistence.annotations.BatchFetch;
+import org.eclipse.persistence.annotations.BatchFetchType;
 import jakarta.validation.constraints.Pattern;
 import jakarta.validation.constraints.NotBlank;
 
@@ -131,6 +134,14 @@ public class DataFile extends DvObject implements Comparable {
     @Column(nullable = false)
     private String checksumValue;
 
+    /**
+     * When the checksum of the physical file was last recalculated, and found
+     * to match the checksumValue (on publication, see
+     * FinalizeDatasetPublicationCommand); null if it hasn't been since the
+     * checksum was set.
+     */
+    private Timestamp checksumValidationTime;
+
     
     /* start: FILE REPLACE ATTRIBUTES */
     
@@ -175,6 +186,7 @@ public class DataFile extends DvObject implements Comparable {
     */
     
     @OneToMany(mappedBy = "dataFile", cascade = {CascadeType.REMOVE, CascadeType.MERGE, CascadeType.PERSIST})
+    @BatchFetch(BatchFetchType.IN)
     private List<DataTable> dataTables;
     
     @OneToMany(mappedBy = "dataFile", cascade = {CascadeType.REMOVE, CascadeType.MERGE, CascadeType.PERSIST})
@@ -183,10 +195,11 @@ public class DataFile extends DvObject implements Comparable {
     @OneToMany(mappedBy = "dataFile", cascade = {CascadeType.REMOVE, CascadeType.MERGE, CascadeType.PERSIST})
     private List<IngestReport> ingestReports;
     
-    @OneToOne(mappedBy = "dataFile", cascade = {CascadeType.REMOVE, CascadeType.MERGE, CascadeType.PERSIST})
+    @OneToOne(mappedBy = "dataFile", fetch = FetchType.LAZY, cascade = {CascadeType.REMOVE, CascadeType.MERGE, CascadeType.PERSIST})
     private IngestRequest ingestRequest;
     
     @OneToMany(mappedBy = "dataFile", orphanRemoval = true, cascade = {CascadeType.REMOVE, CascadeType.MERGE, CascadeType.PERSIST})
+    @BatchFetch(BatchFetchType.IN)
     private List<DataFileTag> dataFileTags;
     
     @OneToMany(mappedBy="dataFile", cascade={CascadeType.REMOVE, CascadeType.MERGE, CascadeType.PERSIST})
@@ -227,11 +240,12 @@ public class DataFile extends DvObject implements Comparable {
 
     private char ingestStatus = INGEST_STATUS_NONE; 
     
-    @OneToOne(mappedBy = "thumbnailFile")
+    @OneToOne(mappedBy = "thumbnailFile", fetch = FetchType.LAZY)
     private Dataset thumbnailForDataset;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name="embargo_id")
+    @BatchFetch(BatchFetchType.IN)
     private Embargo embargo;
 
     public Embargo getEmbargo() {
@@ -242,8 +256,9 @@ public class DataFile extends DvObject implements Comparable {
         this.embargo = embargo;
     }
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name="retention_id")
+    @BatchFetch(BatchFetchType.IN)
     private Retention retention;
 
     public Retention getRetention() {
@@ -667,6 +682,9 @@ public class DataFile extends DvObject implements Comparable {
     }
 
     public void setChecksumType(ChecksumType checksumType) {
+        if (this.checksumType != checksumType) {
+            this.checksumValidationTime = null;
+        }
         this.checksumType = checksumType;
     }
 
@@ -675,9 +693,20 @@ public class DataFile extends DvObject implements Comparable {
     }
 
     public void setChecksumValue(String checksumValue) {
+        if (!Objects.equals(this.checksumValue, checksumValue)) {
+            this.checksumValidationTime = null;
+        }
         this.checksumValue = checksumValue;
     }
 
+    public Timestamp getChecksumValidationTime() {
+        return checksumValidationTime;
+    }
+
+    public void setChecksumValidationTime(Timestamp checksumValidationTime) {
+        this.checksumValidationTime = checksumValidationTime;
+    }
+
     public String getOriginalChecksumType() {
         return BundleUtil.getStringFromBundle("file.originalChecksumType", Arrays.asList(this.checksumType.toString()) );
     }
@@ -71,6 +71,9 @@ public class DataFileServiceBean implements java.io.Serializable {
     @EJB
     StorageUseServiceBean storageUseService; 
     
+    @EJB
+    StorageReaperServiceBean storageReaper;
+    
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     private EntityManager em;
     
@@ -1270,17 +1273,13 @@ public class DataFileServiceBean implements java.io.Serializable {
         directStorageAccess.delete();
     }
     
+    /**
+     * Queues the physical files of the deleted datafiles to be deleted from
+     * the storage in the background, by the {@link StorageReaperServiceBean};
+     * in bulk, and tried again if the storage fails.
+     */
     public void finalizeFileDeletes(Map<Long, String> storageLocations) {
-        storageLocations.keySet().stream().forEach((dataFileId) -> {
-            String storageLocation = storageLocations.get(dataFileId);
-
-            try {
-                finalizeFileDelete(dataFileId, storageLocation);
-            } catch (IOException ioex) {
-                logger.warning("Failed to delete the physical file associated with the deleted datafile id="
-                        + dataFileId + ", storage location: " + storageLocation);
-            }
-        });
+        storageReaper.enqueue(storageLocations);
     }
     
     public Map<Long, String> getPhysicalFilesToDelete(DatasetVersion datasetVersion) {
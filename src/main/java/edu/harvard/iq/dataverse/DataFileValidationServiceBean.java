@@ -0,0 +1,129 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.FileUtil;
+import edu.harvard.iq.dataverse.util.ReadRateLimiter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+
+/**
+ * Validates the checksums of datafiles (see
+ * {@link FileUtil#validateDataFileChecksum(DataFile, ReadRateLimiter)}) on a
+ * pool of threads, reading several files from the storage at the same time.
+ *
+ * The number of threads, and the rate at which all of them together may read
+ * from the storage, are configured with the
+ * {@link JvmSettings#FILES_VALIDATION_THREADS} and
+ * {@link JvmSettings#FILES_VALIDATION_MAX_READ_RATE} settings; they are
+ * shared by all the datasets being published at the same time.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class DataFileValidationServiceBean {
+
+    private static final Logger logger = Logger.getLogger(DataFileValidationServiceBean.class.getCanonicalName());
+
+    // how often (at most) the progress is reported:
+    private static final long PROGRESS_INTERVAL_MILLIS = 5000;
+
+    @Resource
+    ManagedThreadFactory threadFactory;
+
+    private ExecutorService executor;
+    private ReadRateLimiter limiter;
+
+    public interface ProgressListener {
+
+        void progress(int validatedFiles, long validatedBytes);
+    }
+
+    @PostConstruct
+    public void init() {
+        int threads = Math.max(1, JvmSettings.FILES_VALIDATION_THREADS.lookupOptional(Integer.class).orElse(4));
+        // (in MB per second; 0 for no limit)
+        long maxReadRate = JvmSettings.FILES_VALIDATION_MAX_READ_RATE.lookupOptional(Long.class).orElse(0L);
+        executor = Executors.newFixedThreadPool(threads, threadFactory);
+        if (maxReadRate > 0) {
+            limiter = new ReadRateLimiter(maxReadRate * 1024 * 1024);
+        }
+        logger.fine("Validating datafiles on " + threads + " threads"
+                + (limiter != null ? ", at up to " + maxReadRate + " MB/s" : ""));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Validates the checksums of the files; the largest files first. Returns
+     * once all of them have been validated, or as soon as one of them fails.
+     *
+     * Everything the validation of a file needs from the entities (the
+     * storage, the data tables, the ingest report of the file) must have been
+     * looked up already: the files are validated on other threads.
+     *
+     * @param listener notified of the progress, every few seconds; on the
+     * calling thread. May be null.
+     * @throws IOException as thrown by the validation of the first file that
+     * failed.
+     */
+    public void validateChecksums(List<DataFile> dataFiles, ProgressListener listener) throws IOException {
+        List<DataFile> largestFirst = new ArrayList<>(dataFiles);
+        largestFirst.sort(Comparator.comparingLong((DataFile dataFile) -> dataFile.getFilesize() == null ? 0 : dataFile.getFilesize()).reversed());
+
+        CompletionService<DataFile> completion = new ExecutorCompletionService<>(executor);
+        List<Future<DataFile>> validations = new ArrayList<>();
+        for (DataFile dataFile : largestFirst) {
+            validations.add(completion.submit(() -> {
+                FileUtil.validateDataFileChecksum(dataFile, limiter);
+                return dataFile;
+            }));
+        }
+
+        int validatedFiles = 0;
+        long validatedBytes = 0;
+        long lastReported = System.currentTimeMillis();
+        try {
+            while (validatedFiles < validations.size()) {
+                DataFile dataFile = completion.take().get();
+                validatedFiles++;
+                validatedBytes += dataFile.getFilesize() == null ? 0 : dataFile.getFilesize();
+                if (listener != null && System.currentTimeMillis() - lastReported >= PROGRESS_INTERVAL_MILLIS) {
+                    listener.progress(validatedFiles, validatedBytes);
+                    lastReported = System.currentTimeMillis();
+                }
+            }
+        } catch (ExecutionException ee) {
+            validations.forEach(validation -> validation.cancel(true));
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            throw new IOException(ee.getCause());
+        } catch (InterruptedException ie) {
+            validations.forEach(validation -> validation.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted validating the datafiles");
+        }
+    }
+}
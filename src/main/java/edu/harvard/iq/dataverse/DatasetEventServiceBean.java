@@ -0,0 +1,354 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+
+import java.io.Serializable;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Timeout;
+import jakarta.ejb.TimerConfig;
+import jakarta.ejb.TimerService;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.inject.Inject;
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.json.JsonReader;
+import jakarta.json.JsonValue;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.configuration.MutableConfiguration;
+import javax.cache.expiry.Duration;
+import javax.cache.expiry.ModifiedExpiryPolicy;
+import javax.cache.processor.EntryProcessor;
+import javax.cache.processor.MutableEntry;
+
+/**
+ * Tells the clients that subscribed to the events of datasets what happens to
+ * them: the locks added and removed, the ingests, publications, workflows and
+ * indexing done; so that they don't have to ask over and over.
+ *
+ * The events are published, once their transaction is committed, to the last
+ * events of their dataset in a cache shared by the servers, numbered; each
+ * server reads those of the datasets its clients subscribed to every second
+ * (and right away, for the events published on it), and fans them out to its
+ * clients. So a dataset is read once per server, however many clients wait
+ * for it.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class DatasetEventServiceBean {
+
+    private static final Logger logger = Logger.getLogger(DatasetEventServiceBean.class.getCanonicalName());
+
+    public static final String DATASET_EVENT_CACHE = "datasetEventCache";
+
+    // the events published in the current transaction, to be published once committed:
+    private static final String PENDING_EVENTS = DatasetEventServiceBean.class.getName() + ".pending";
+    // the most events kept by dataset, and for how long, in minutes:
+    static final int MAX_EVENTS = 50;
+    private static final long EVENTS_TTL = 10;
+    // how often to read the events, and to ping the subscribers, in ms:
+    private static final long DELIVERY_INTERVAL = 1000L;
+    private static final long PING_INTERVAL = 30 * 1000L;
+
+    public enum Type {
+        LOCK_ADDED("lock-added"),
+        LOCK_REMOVED("lock-removed"),
+        INGEST_DONE("ingest-done"),
+        PUBLICATION_DONE("publication-done"),
+        WORKFLOW_DONE("workflow-done"),
+        WORKFLOW_FAILED("workflow-failed"),
+        INDEX_DONE("index-done");
+
+        private final String label;
+
+        Type(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    /**
+     * An event of a dataset; numbered from 1 up, by dataset.
+     */
+    public record Event(long sequence, long datasetId, String type, long time, JsonObject details) {
+
+        public JsonObject toJson() {
+            return Json.createObjectBuilder()
+                    .add("sequence", sequence)
+                    .add("datasetId", datasetId)
+                    .add("type", type)
+                    .add("time", time)
+                    .add("details", details)
+                    .build();
+        }
+
+        static Event fromJson(String line) {
+            try (JsonReader reader = Json.createReader(new StringReader(line))) {
+                JsonObject json = reader.readObject();
+                return new Event(json.getJsonNumber("sequence").longValue(), json.getJsonNumber("datasetId").longValue(),
+                        json.getString("type"), json.getJsonNumber("time").longValue(), json.getJsonObject("details"));
+            }
+        }
+    }
+
+    /**
+     * A client of the events; told of them on the threads of this bean, so
+     * they are to be passed on without waiting.
+     */
+    public interface Listener {
+
+        /**
+         * @return false once the client is gone, to be dropped.
+         */
+        boolean onEvent(Event event);
+
+        /**
+         * Called when no event was sent for a while, so that the connection
+         * is kept open, or found closed.
+         * @return false once the client is gone, to be dropped.
+         */
+        boolean onPing();
+    }
+
+    private static class Subscriber {
+        final Listener listener;
+        // the sequence of the last event told, by dataset:
+        final Map<Long, Long> lastSequences = new ConcurrentHashMap<>();
+        volatile long lastSent = System.currentTimeMillis();
+
+        Subscriber(Listener listener) {
+            this.listener = listener;
+        }
+    }
+
+    @Inject
+    CacheManager manager;
+    @Resource
+    TransactionSynchronizationRegistry transactionRegistry;
+    @Resource
+    TimerService timerService;
+
+    Cache<String, String> eventCache;
+
+    private final Map<Long, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final Set<Subscriber> allSubscribers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    @PostConstruct
+    public void init() {
+        eventCache = manager.getCache(DATASET_EVENT_CACHE);
+        if (eventCache == null) {
+            eventCache = manager.createCache(DATASET_EVENT_CACHE, new MutableConfiguration<String, String>()
+                    .setTypes(String.class, String.class)
+                    .setExpiryPolicyFactory(ModifiedExpiryPolicy.factoryOf(new Duration(TimeUnit.MINUTES, EVENTS_TTL))));
+        }
+        timerService.createIntervalTimer(DELIVERY_INTERVAL, DELIVERY_INTERVAL, new TimerConfig(null, false));
+    }
+
+    /**
+     * Publishes the event once the current transaction, if any, is committed;
+     * it is dropped if it is rolled back.
+     */
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public void publish(Long datasetId, Type type, JsonObjectBuilder details) {
+        if (datasetId == null) {
+            return;
+        }
+        Event event = new Event(0, datasetId, type.toString(), System.currentTimeMillis(),
+                details == null ? JsonValue.EMPTY_JSON_OBJECT : details.build());
+        if (transactionRegistry.getTransactionStatus() == Status.STATUS_ACTIVE) {
+            @SuppressWarnings("unchecked")
+            List<Event> pending = (List<Event>) transactionRegistry.getResource(PENDING_EVENTS);
+            if (pending == null) {
+                List<Event> events = Collections.synchronizedList(new ArrayList<>());
+                try {
+                    transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+                        @Override
+                        public void beforeCompletion() {
+                        }
+
+                        @Override
+                        public void afterCompletion(int status) {
+                            if (status == Status.STATUS_COMMITTED) {
+                                events.forEach(DatasetEventServiceBean.this::append);
+                            }
+                        }
+                    });
+                    transactionRegistry.putResource(PENDING_EVENTS, events);
+                    pending = events;
+                } catch (IllegalStateException e) {
+                    // (the transaction is being committed already)
+                    append(event);
+                    return;
+                }
+            }
+            pending.add(event);
+        } else {
+            append(event);
+        }
+    }
+
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public void publish(Long datasetId, Type type) {
+        publish(datasetId, type, null);
+    }
+
+    /**
+     * Subscribes the listener to the events of the datasets, from the next
+     * one on.
+     * @return false if there are too many subscribers already (see
+     * {@link JvmSettings#DATASET_EVENTS_MAX_SUBSCRIBERS}).
+     */
+    public boolean subscribe(Collection<Long> datasetIds, Listener listener) {
+        int maxSubscribers = JvmSettings.DATASET_EVENTS_MAX_SUBSCRIBERS.lookupOptional(Integer.class).orElse(1000);
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            return false;
+        }
+        Subscriber subscriber = new Subscriber(listener);
+        for (Long datasetId : datasetIds) {
+            List<Event> events = readEvents(datasetId);
+            subscriber.lastSequences.put(datasetId, events.isEmpty() ? 0L : events.get(events.size() - 1).sequence());
+        }
+        allSubscribers.add(subscriber);
+        for (Long datasetId : datasetIds) {
+            subscribers.computeIfAbsent(datasetId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        }
+        return true;
+    }
+
+    @Timeout
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void deliverAll() {
+        for (Long datasetId : new ArrayList<>(subscribers.keySet())) {
+            deliver(datasetId);
+        }
+        long now = System.currentTimeMillis();
+        for (Subscriber subscriber : allSubscribers) {
+            if (now - subscriber.lastSent >= PING_INTERVAL) {
+                subscriber.lastSent = now;
+                if (!subscriber.listener.onPing()) {
+                    unsubscribe(subscriber);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tells the subscribers of the dataset of the events they haven't been
+     * told of yet.
+     */
+    void deliver(Long datasetId) {
+        Set<Subscriber> waiting = subscribers.get(datasetId);
+        if (waiting == null || waiting.isEmpty()) {
+            return;
+        }
+        List<Event> events;
+        try {
+            events = readEvents(datasetId);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Could not read the events of dataset " + datasetId, e);
+            return;
+        }
+        for (Subscriber subscriber : waiting) {
+            // (one subscriber at a time, as they may be told from two threads)
+            synchronized (subscriber) {
+                long lastSequence = subscriber.lastSequences.getOrDefault(datasetId, 0L);
+                if (!events.isEmpty() && events.get(events.size() - 1).sequence() < lastSequence) {
+                    // (expired in the meantime, and numbered from 1 again)
+                    lastSequence = 0;
+                }
+                for (Event event : events) {
+                    if (event.sequence() > lastSequence) {
+                        subscriber.lastSequences.put(datasetId, event.sequence());
+                        subscriber.lastSent = System.currentTimeMillis();
+                        if (!subscriber.listener.onEvent(event)) {
+                            unsubscribe(subscriber);
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        if (allSubscribers.remove(subscriber)) {
+            subscriberCount.decrementAndGet();
+        }
+        for (Long datasetId : subscriber.lastSequences.keySet()) {
+            subscribers.computeIfPresent(datasetId, (id, set) -> {
+                set.remove(subscriber);
+                return set.isEmpty() ? null : set;
+            });
+        }
+    }
+
+    private void append(Event event) {
+        try {
+            eventCache.invoke(Long.toString(event.datasetId()), new AppendEvent(), event.toJson().toString());
+            deliver(event.datasetId());
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Could not publish the " + event.type() + " event of dataset " + event.datasetId(), e);
+        }
+    }
+
+    List<Event> readEvents(Long datasetId) {
+        String cached = eventCache.get(datasetId.toString());
+        List<Event> events = new ArrayList<>();
+        if (cached != null) {
+            for (String line : cached.split("\n")) {
+                events.add(Event.fromJson(line));
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Numbers the event, and adds it to the last ones of its dataset (one per
+     * line); atomically, on the server that holds them.
+     */
+    static class AppendEvent implements EntryProcessor<String, String, Void>, Serializable {
+        @Override
+        public Void process(MutableEntry<String, String> entry, Object... arguments) {
+            Event event = Event.fromJson((String) arguments[0]);
+            List<String> lines = new ArrayList<>();
+            long sequence = 1;
+            if (entry.exists()) {
+                lines.addAll(List.of(entry.getValue().split("\n")));
+                sequence = Event.fromJson(lines.get(lines.size() - 1)).sequence() + 1;
+            }
+            lines.add(new Event(sequence, event.datasetId(), event.type(), event.time(), event.details()).toJson().toString());
+            if (lines.size() > MAX_EVENTS) {
+                lines = lines.subList(lines.size() - MAX_EVENTS, lines.size());
+            }
+            entry.setValue(String.join("\n", lines));
+            return null;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import java.util.Date;
 import java.io.Serializable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
 import jakarta.persistence.GeneratedValue;
@@ -48,6 +49,7 @@ import jakarta.persistence.NamedQuery;
  * 
  */
 @Entity
+@EntityListeners(DatasetLockListener.class)
 @Table(indexes = {@Index(columnList="user_id"), @Index(columnList="dataset_id")})
 @NamedQueries({
     @NamedQuery(name = "DatasetLock.findAll",
@@ -0,0 +1,304 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.SessionContext;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Timeout;
+import jakarta.ejb.TimerConfig;
+import jakarta.ejb.TimerService;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.configuration.MutableConfiguration;
+import javax.cache.expiry.Duration;
+import javax.cache.expiry.ModifiedExpiryPolicy;
+
+/**
+ * Knows which datasets are locked, and for what reasons, without going to the
+ * database every time: the reasons are kept by dataset in a cache shared by
+ * the servers (through Hazelcast, like the rate limits of
+ * {@link edu.harvard.iq.dataverse.util.cache.CacheFactoryBean}), loaded from
+ * the {@link DatasetLock} table when missing, and for
+ * {@link JvmSettings#CACHE_DATASET_LOCKS_TTL} seconds at most.
+ *
+ * The locks added and removed (see {@link DatasetLockListener}) mark the
+ * dataset as changed in the cache once their transaction is committed, so
+ * that its reasons are loaded again on the next look up, on any server. A
+ * change is marked with a token of its own, so that reasons loaded before it
+ * cannot be put in the cache after it. Until then, the transaction making the
+ * change sees it, on top of the reasons in the cache.
+ *
+ * Also lets the clients wait for the locks on a dataset to clear, without
+ * asking over and over (see {@link #awaitUnlocked}).
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class DatasetLockCacheServiceBean {
+
+    private static final Logger logger = Logger.getLogger(DatasetLockCacheServiceBean.class.getCanonicalName());
+
+    public static final String DATASET_LOCK_CACHE = "datasetLockCache";
+
+    // marks a dataset whose locks have changed since its reasons were loaded:
+    private static final String CHANGED = "?";
+    // the changes made to the locks, in the current transaction, by dataset:
+    private static final String PENDING_CHANGES = DatasetLockCacheServiceBean.class.getName() + ".pending";
+    // how often to check whether the datasets waited for are unlocked, in ms
+    private static final long WAIT_CHECK_INTERVAL = 1000L;
+
+    @PersistenceContext(unitName = "VDCNet-ejbPU")
+    EntityManager em;
+    @Inject
+    CacheManager manager;
+    @Resource
+    TransactionSynchronizationRegistry transactionRegistry;
+    @Resource
+    SessionContext sessionContext;
+    @Resource
+    TimerService timerService;
+
+    Cache<String, String> lockCache;
+
+    private record Waiter(DatasetLock.Reason reason, long deadline, CompletableFuture<Set<DatasetLock.Reason>> result) {
+    }
+
+    private final Map<Long, List<Waiter>> waiters = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        long ttl = JvmSettings.CACHE_DATASET_LOCKS_TTL.lookupOptional(Long.class).orElse(300L);
+        if (ttl > 0) {
+            lockCache = manager.getCache(DATASET_LOCK_CACHE);
+            if (lockCache == null) {
+                lockCache = manager.createCache(DATASET_LOCK_CACHE, new MutableConfiguration<String, String>()
+                        .setTypes(String.class, String.class)
+                        .setExpiryPolicyFactory(ModifiedExpiryPolicy.factoryOf(new Duration(TimeUnit.SECONDS, ttl))));
+            }
+        }
+        timerService.createIntervalTimer(WAIT_CHECK_INTERVAL, WAIT_CHECK_INTERVAL, new TimerConfig(null, false));
+    }
+
+    /**
+     * @return the reasons the dataset is locked for; empty if it isn't.
+     */
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public Set<DatasetLock.Reason> getLockReasons(Long datasetId) {
+        if (datasetId == null) {
+            return Collections.emptySet();
+        }
+        Set<DatasetLock.Reason> reasons = lookUp(datasetId);
+        Map<DatasetLock.Reason, Boolean> changes = pendingChanges().get(datasetId);
+        if (changes != null) {
+            reasons = EnumSet.copyOf(reasons);
+            for (Map.Entry<DatasetLock.Reason, Boolean> change : changes.entrySet()) {
+                if (change.getValue()) {
+                    reasons.add(change.getKey());
+                } else {
+                    reasons.remove(change.getKey());
+                }
+            }
+        }
+        return reasons;
+    }
+
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public boolean isLocked(Long datasetId) {
+        return !getLockReasons(datasetId).isEmpty();
+    }
+
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public boolean isLockedFor(Long datasetId, DatasetLock.Reason reason) {
+        return getLockReasons(datasetId).contains(reason);
+    }
+
+    /**
+     * Reads the reasons of the locks on the dataset from the database, outside
+     * of the current transaction; so as to see only those committed.
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public Set<DatasetLock.Reason> loadLockReasons(Long datasetId) {
+        List<DatasetLock.Reason> reasons = em.createQuery(
+                "SELECT DISTINCT lock.reason FROM DatasetLock lock WHERE lock.dataset.id = :datasetId", DatasetLock.Reason.class)
+                .setParameter("datasetId", datasetId)
+                .getResultList();
+        return reasons.isEmpty() ? EnumSet.noneOf(DatasetLock.Reason.class) : EnumSet.copyOf(reasons);
+    }
+
+    /**
+     * Called by {@link DatasetLockListener}; the change is seen by the
+     * current transaction right away, and by the others once it is
+     * committed.
+     */
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public void lockChanged(DatasetLock lock, boolean added) {
+        if (lock.getDataset() == null || lock.getDataset().getId() == null) {
+            return;
+        }
+        Long datasetId = lock.getDataset().getId();
+        if (transactionRegistry.getTransactionKey() == null) {
+            markChanged(Set.of(datasetId));
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Map<Long, Map<DatasetLock.Reason, Boolean>> pending = (Map<Long, Map<DatasetLock.Reason, Boolean>>) transactionRegistry.getResource(PENDING_CHANGES);
+        if (pending == null) {
+            Map<Long, Map<DatasetLock.Reason, Boolean>> changes = new ConcurrentHashMap<>();
+            try {
+                transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+                    @Override
+                    public void beforeCompletion() {
+                    }
+
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (status == Status.STATUS_COMMITTED) {
+                            markChanged(changes.keySet());
+                        }
+                    }
+                });
+            } catch (IllegalStateException e) {
+                // (the transaction is being committed already)
+                markChanged(Set.of(datasetId));
+                return;
+            }
+            transactionRegistry.putResource(PENDING_CHANGES, changes);
+            pending = changes;
+        }
+        pending.computeIfAbsent(datasetId, id -> new EnumMap<>(DatasetLock.Reason.class)).put(lock.getReason(), added);
+    }
+
+    /**
+     * @param reason the reason of the lock to wait for; any lock, if null.
+     * @return the reasons the dataset is locked for, once it is no longer
+     * locked for that reason; or still is, after the timeout. The locks
+     * removed on other servers are seen within a second or so.
+     */
+    public CompletableFuture<Set<DatasetLock.Reason>> awaitUnlocked(Long datasetId, DatasetLock.Reason reason, long timeoutMillis) {
+        Set<DatasetLock.Reason> reasons = getLockReasons(datasetId);
+        if (isUnlocked(reasons, reason) || timeoutMillis <= 0) {
+            return CompletableFuture.completedFuture(reasons);
+        }
+        Waiter waiter = new Waiter(reason, System.currentTimeMillis() + timeoutMillis, new CompletableFuture<>());
+        waiters.compute(datasetId, (id, waiting) -> {
+            waiting = waiting == null ? new CopyOnWriteArrayList<>() : waiting;
+            waiting.add(waiter);
+            return waiting;
+        });
+        return waiter.result();
+    }
+
+    @Timeout
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void checkWaiters() {
+        long now = System.currentTimeMillis();
+        for (Long datasetId : new ArrayList<>(waiters.keySet())) {
+            List<Waiter> waiting = waiters.get(datasetId);
+            if (waiting == null) {
+                continue;
+            }
+            try {
+                Set<DatasetLock.Reason> reasons = getLockReasons(datasetId);
+                for (Waiter waiter : waiting) {
+                    if (isUnlocked(reasons, waiter.reason()) || now >= waiter.deadline() || waiter.result().isDone()) {
+                        waiter.result().complete(reasons);
+                        waiting.remove(waiter);
+                    }
+                }
+                waiters.computeIfPresent(datasetId, (id, list) -> list.isEmpty() ? null : list);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Could not check the locks of dataset " + datasetId, e);
+            }
+        }
+    }
+
+    private static boolean isUnlocked(Set<DatasetLock.Reason> reasons, DatasetLock.Reason reason) {
+        return reason == null ? reasons.isEmpty() : !reasons.contains(reason);
+    }
+
+    private Set<DatasetLock.Reason> lookUp(Long datasetId) {
+        if (lockCache == null) {
+            return self().loadLockReasons(datasetId);
+        }
+        String key = datasetId.toString();
+        String cached = lockCache.get(key);
+        if (cached != null && !cached.startsWith(CHANGED)) {
+            return decode(cached);
+        }
+        Set<DatasetLock.Reason> reasons = self().loadLockReasons(datasetId);
+        // (unless changed again, in the meantime)
+        if (cached == null) {
+            lockCache.putIfAbsent(key, encode(reasons));
+        } else {
+            lockCache.replace(key, cached, encode(reasons));
+        }
+        return reasons;
+    }
+
+    private void markChanged(Set<Long> datasetIds) {
+        if (lockCache == null) {
+            return;
+        }
+        for (Long datasetId : datasetIds) {
+            try {
+                lockCache.put(datasetId.toString(), CHANGED + UUID.randomUUID());
+            } catch (RuntimeException e) {
+                // (the reasons cached expire in the end)
+                logger.log(Level.WARNING, "Could not mark the locks of dataset " + datasetId + " as changed", e);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Long, Map<DatasetLock.Reason, Boolean>> pendingChanges() {
+        if (transactionRegistry.getTransactionKey() == null) {
+            return Collections.emptyMap();
+        }
+        Map<Long, Map<DatasetLock.Reason, Boolean>> pending = (Map<Long, Map<DatasetLock.Reason, Boolean>>) transactionRegistry.getResource(PENDING_CHANGES);
+        return pending == null ? Collections.emptyMap() : pending;
+    }
+
+    static String encode(Set<DatasetLock.Reason> reasons) {
+        return reasons.stream().map(Enum::name).collect(Collectors.joining(","));
+    }
+
+    static Set<DatasetLock.Reason> decode(String cached) {
+        Set<DatasetLock.Reason> reasons = EnumSet.noneOf(DatasetLock.Reason.class);
+        if (!cached.isEmpty()) {
+            for (String reason : cached.split(",")) {
+                reasons.add(DatasetLock.Reason.valueOf(reason));
+            }
+        }
+        return reasons;
+    }
+
+    private DatasetLockCacheServiceBean self() {
+        return sessionContext.getBusinessObject(DatasetLockCacheServiceBean.class);
+    }
+}
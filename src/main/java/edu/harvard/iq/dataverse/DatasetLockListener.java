@@ -0,0 +1,38 @@
+package edu.harvard.iq.dataverse;
+
+import jakarta.enterprise.inject.spi.CDI;
+import jakarta.json.Json;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+
+/**
+ * Tells the {@link DatasetLockCacheServiceBean}, and the clients of the
+ * {@link DatasetEventServiceBean}, of the locks added and removed, however
+ * they are (through {@link DatasetServiceBean}, the commands, or the cascades
+ * from the dataset).
+ */
+public class DatasetLockListener {
+
+    @PostPersist
+    public void lockAdded(DatasetLock lock) {
+        lockCache().lockChanged(lock, true);
+        publish(lock, DatasetEventServiceBean.Type.LOCK_ADDED);
+    }
+
+    @PostRemove
+    public void lockRemoved(DatasetLock lock) {
+        lockCache().lockChanged(lock, false);
+        publish(lock, DatasetEventServiceBean.Type.LOCK_REMOVED);
+    }
+
+    private DatasetLockCacheServiceBean lockCache() {
+        return CDI.current().select(DatasetLockCacheServiceBean.class).get();
+    }
+
+    private void publish(DatasetLock lock, DatasetEventServiceBean.Type type) {
+        if (lock.getDataset() != null) {
+            CDI.current().select(DatasetEventServiceBean.class).get().publish(lock.getDataset().getId(), type,
+                    Json.createObjectBuilder().add("lockType", lock.getReason().name()));
+        }
+    }
+}
@@ -194,6 +194,8 @@ public class DatasetPage implements java.io.Serializable {
     @EJB
     DatasetServiceBean datasetService;
     @EJB
+    DatasetLockCacheServiceBean datasetLockCache;
+    @EJB
     DatasetVersionServiceBean datasetVersionService;
     @EJB
     DataFileServiceBean datafileService;
@@ -2331,22 +2333,26 @@ public class DatasetPage implements java.io.Serializable {
     }
 
     private void displayLockInfo(Dataset dataset) {
+        displayLockInfo(dataset, dataset.getLocks().stream().map(DatasetLock::getReason).collect(Collectors.toSet()));
+    }
+
+    private void displayLockInfo(Dataset dataset, Set<DatasetLock.Reason> locks) {
         // Various info messages, when the dataset is locked (for various reasons):
-        if (dataset.isLocked() && canUpdateDataset()) {
-            if (dataset.isLockedFor(DatasetLock.Reason.Workflow)) {
+        if (!locks.isEmpty() && canUpdateDataset()) {
+            if (locks.contains(DatasetLock.Reason.Workflow)) {
                 JH.addMessage(FacesMessage.SEVERITY_WARN, BundleUtil.getStringFromBundle("dataset.locked.message"),
                         BundleUtil.getStringFromBundle("dataset.locked.message.details"));
             }
-            if (dataset.isLockedFor(DatasetLock.Reason.InReview)) {
+            if (locks.contains(DatasetLock.Reason.InReview)) {
                 JH.addMessage(FacesMessage.SEVERITY_WARN, BundleUtil.getStringFromBundle("dataset.locked.inReview.message"),
                         BundleUtil.getStringFromBundle("dataset.inreview.infoMessage"));
             }
-            if (dataset.isLockedFor(DatasetLock.Reason.DcmUpload)) {
+            if (locks.contains(DatasetLock.Reason.DcmUpload)) {
                 JH.addMessage(FacesMessage.SEVERITY_WARN, BundleUtil.getStringFromBundle("file.rsyncUpload.inProgressMessage.summary"),
                         BundleUtil.getStringFromBundle("file.rsyncUpload.inProgressMessage.details"));
                 lockedDueToDcmUpload = true;
             }
-            if (dataset.isLockedFor(DatasetLock.Reason.GlobusUpload)) {
+            if (locks.contains(DatasetLock.Reason.GlobusUpload)) {
                 JH.addMessage(FacesMessage.SEVERITY_WARN, BundleUtil.getStringFromBundle("file.globusUpload.inProgressMessage.summary"),
                         BundleUtil.getStringFromBundle("file.globusUpload.inProgressMessage.details"));
             }
@@ -2356,7 +2362,7 @@ public class DatasetPage implements java.io.Serializable {
             /*if(dataset.getLatestVersion().isReleased() && dataset.isLockedFor(DatasetLock.Reason.finalizePublication)){
                 datasetService.removeDatasetLocks(dataset.getId(), DatasetLock.Reason.finalizePublication);
             }*/
-            if (dataset.isLockedFor(DatasetLock.Reason.finalizePublication)) {
+            if (locks.contains(DatasetLock.Reason.finalizePublication)) {
                 // "finalizePublication" lock is used to lock the dataset while
                 // the FinalizeDatasetPublicationCommand is running asynchronously.
                 // the tasks currently performed by the command are the  pid registration
@@ -2366,19 +2372,19 @@ public class DatasetPage implements java.io.Serializable {
                 JH.addMessage(FacesMessage.SEVERITY_WARN, BundleUtil.getStringFromBundle("dataset.publish.workflow.message"),
                         BundleUtil.getStringFromBundle("dataset.pidRegister.workflow.inprogress"));
             }
-            if (dataset.isLockedFor(DatasetLock.Reason.FileValidationFailed)) {
+            if (locks.contains(DatasetLock.Reason.FileValidationFailed)) {
                 // the dataset is locked, because one or more datafiles in it
                 // failed validation during an attempt to publish it.
                 JH.addMessage(FacesMessage.SEVERITY_ERROR, BundleUtil.getStringFromBundle("dataset.publish.file.validation.error.message"),
                         BundleUtil.getStringFromBundle("dataset.publish.file.validation.error.contactSupport"));
             }
-            if (dataset.isLockedFor(DatasetLock.Reason.EditInProgress)) {
+            if (locks.contains(DatasetLock.Reason.EditInProgress)) {
                 JH.addMessage(FacesMessage.SEVERITY_WARN, BundleUtil.getStringFromBundle("dataset.locked.editInProgress.message"),
                         BundleUtil.getStringFromBundle("dataset.locked.editInProgress.message.details", Arrays.asList(BrandingUtil.getSupportTeamName(null))));
             }
         }
 
-        if (dataset.isLockedFor(DatasetLock.Reason.Ingest)) {
+        if (locks.contains(DatasetLock.Reason.Ingest)) {
             JH.addMessage(FacesMessage.SEVERITY_WARN, BundleUtil.getStringFromBundle("dataset.locked.message"),
                     BundleUtil.getStringFromBundle("dataset.locked.ingest.message"));
             lockedDueToIngestVar = true;
@@ -4248,13 +4254,9 @@ public class DatasetPage implements java.io.Serializable {
 
     public boolean isStillLockedForIngest() {
         if (dataset.getId() != null) {
-            Dataset testDataset = datasetService.find(dataset.getId());
-            if (testDataset != null && testDataset.getId() != null) {
-                logger.log(Level.FINE, "checking lock status of dataset {0}", dataset.getId());
-
-                if (testDataset.getLockFor(DatasetLock.Reason.Ingest) != null) {
-                    return true;
-                }
+            logger.log(Level.FINE, "checking lock status of dataset {0}", dataset.getId());
+            if (datasetLockCache.isLockedFor(dataset.getId(), DatasetLock.Reason.Ingest)) {
+                return true;
             }
         }
         return false;
@@ -4262,14 +4264,12 @@ public class DatasetPage implements java.io.Serializable {
 
     public boolean isStillLockedForAnyReason() {
         if (dataset.getId() != null) {
-            Dataset testDataset = datasetService.find(dataset.getId());
-            if (testDataset != null && testDataset.getId() != null) {
-                if (testDataset.getLocks().size() > 0) {
-                    // Refresh the info messages, in case the dataset has been
-                    // re-locked with a different lock type:
-                    displayLockInfo(testDataset);
-                    return true;
-                }
+            Set<DatasetLock.Reason> locks = datasetLockCache.getLockReasons(dataset.getId());
+            if (!locks.isEmpty()) {
+                // Refresh the info messages, in case the dataset has been
+                // re-locked with a different lock type:
+                displayLockInfo(dataset, locks);
+                return true;
             }
         }
         return false;
@@ -4290,32 +4290,20 @@ public class DatasetPage implements java.io.Serializable {
 
     public boolean isLockedForIngest() {
         if (dataset.getId() != null) {
-            Dataset testDataset = datasetService.find(dataset.getId());
             if (stateChanged) {
                 return false;
             }
-
-            if (testDataset != null) {
-                if (testDataset.getLockFor(DatasetLock.Reason.Ingest) != null) {
-                    return true;
-                }
-            }
+            return datasetLockCache.isLockedFor(dataset.getId(), DatasetLock.Reason.Ingest);
         }
         return false;
     }
 
     public boolean isLockedForAnyReason() {
         if (dataset.getId() != null) {
-            Dataset testDataset = datasetService.find(dataset.getId());
             if (stateChanged) {
                 return false;
             }
-
-            if (testDataset != null) {
-                if (testDataset.getLocks().size() > 0) {
-                    return true;
-                }
-            }
+            return datasetLockCache.isLocked(dataset.getId());
         }
         return false;
     }
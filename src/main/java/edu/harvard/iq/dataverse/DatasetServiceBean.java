@@ -5,9 +5,7 @@ import edu.harvard.iq.dataverse.authorization.AuthenticationServiceBean;
 import edu.harvard.iq.dataverse.authorization.Permission;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.authorization.users.User;
-import edu.harvard.iq.dataverse.dataaccess.DataAccess;
 import edu.harvard.iq.dataverse.dataaccess.ImageThumbConverter;
-import edu.harvard.iq.dataverse.dataaccess.StorageIO;
 import edu.harvard.iq.dataverse.dataset.DatasetUtil;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
 import edu.harvard.iq.dataverse.engine.command.CommandContext;
@@ -16,33 +14,45 @@ import edu.harvard.iq.dataverse.engine.command.exception.CommandException;
 import edu.harvard.iq.dataverse.engine.command.impl.DestroyDatasetCommand;
 import edu.harvard.iq.dataverse.engine.command.impl.FinalizeDatasetPublicationCommand;
 import edu.harvard.iq.dataverse.engine.command.impl.GetDatasetStorageSizeCommand;
-import edu.harvard.iq.dataverse.export.ExportService;
+import edu.harvard.iq.dataverse.storageuse.AuxObjectSizeServiceBean;
 import edu.harvard.iq.dataverse.globus.GlobusServiceBean;
 import edu.harvard.iq.dataverse.harvest.server.OAIRecordServiceBean;
 import edu.harvard.iq.dataverse.search.IndexServiceBean;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.util.BundleUtil;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import edu.harvard.iq.dataverse.workflows.WorkflowComment;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import jakarta.annotation.Resource;
 import jakarta.ejb.Asynchronous;
 import jakarta.ejb.EJB;
 import jakarta.ejb.EJBException;
 import jakarta.ejb.Stateless;
 import jakarta.ejb.TransactionAttribute;
 import jakarta.ejb.TransactionAttributeType;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
 import jakarta.inject.Named;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.NonUniqueResultException;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.Query;
+import jakarta.persistence.TemporalType;
 import jakarta.persistence.TypedQuery;
 import org.apache.commons.lang3.StringUtils;
 
@@ -93,6 +103,15 @@ public class DatasetServiceBean implements java.io.Serializable {
     @EJB
     UserNotificationServiceBean userNotificationService;
 
+    @EJB
+    AuxObjectSizeServiceBean auxObjectSizeService;
+
+    @EJB
+    DatasetLockCacheServiceBean datasetLockCache;
+
+    @Resource
+    ManagedThreadFactory threadFactory;
+
     private static final SimpleDateFormat logFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH-mm-ss");
 
     @PersistenceContext(unitName = "VDCNet-ejbPU")
@@ -406,11 +425,7 @@ public class DatasetServiceBean implements java.io.Serializable {
     }
 
     public boolean checkDatasetLock(Long datasetId) {
-        TypedQuery<DatasetLock> lockCounter = em.createNamedQuery("DatasetLock.getLocksByDatasetId", DatasetLock.class);
-        lockCounter.setParameter("datasetId", datasetId);
-        lockCounter.setMaxResults(1);
-        List<DatasetLock> lock = lockCounter.getResultList();
-        return lock.size()>0;
+        return datasetLockCache.isLocked(datasetId);
     }
 
     public List<DatasetLock> getDatasetLocksByUser( AuthenticatedUser user) {
@@ -490,6 +505,62 @@ public class DatasetServiceBean implements java.io.Serializable {
         em.merge(datasetLock);
     }
 
+    /**
+     * Updates the info of the lock, in a transaction of its own; so that the
+     * new info is visible right away, while the transaction holding the lock
+     * is still running (e.g. to report its progress).
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void updateDatasetLockInfo(Long lockId, String info) {
+        DatasetLock lock = em.find(DatasetLock.class, lockId);
+        if (lock != null) {
+            lock.setInfo(info);
+        }
+    }
+
+    /**
+     * Records, in a new transaction, that the PIDs of these files of the
+     * dataset have been publicized: if the publication of the dataset fails
+     * later on, and is rolled back, the next attempt can skip them (see
+     * {@link #findPublicizedFilePids(Long)}), instead of publicizing them all
+     * over again.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void recordPublicizedFilePids(Long datasetId, List<? extends DvObject> dataFiles) {
+        for (DvObject dataFile : dataFiles) {
+            em.createNativeQuery("INSERT INTO publicizedfilepid (datafile_id, dataset_id, protocol, authority, identifier, publicizedtime)"
+                    + " VALUES (?1, ?2, ?3, ?4, ?5, now()) ON CONFLICT (datafile_id) DO NOTHING")
+                    .setParameter(1, dataFile.getId())
+                    .setParameter(2, datasetId)
+                    .setParameter(3, dataFile.getProtocol())
+                    .setParameter(4, dataFile.getAuthority())
+                    .setParameter(5, dataFile.getIdentifier())
+                    .executeUpdate();
+        }
+    }
+
+    /**
+     * @return the files of the dataset whose PIDs have been publicized by an
+     *         earlier, failed attempt to publish it; with their protocol,
+     *         authority and identifier, by the id of the file.
+     */
+    public Map<Long, String[]> findPublicizedFilePids(Long datasetId) {
+        List<Object[]> rows = em.createNativeQuery("SELECT datafile_id, protocol, authority, identifier FROM publicizedfilepid WHERE dataset_id = ?1")
+                .setParameter(1, datasetId)
+                .getResultList();
+        Map<Long, String[]> publicized = new HashMap<>();
+        for (Object[] row : rows) {
+            publicized.put(((Number) row[0]).longValue(), new String[] { (String) row[1], (String) row[2], (String) row[3] });
+        }
+        return publicized;
+    }
+
+    public void deletePublicizedFilePids(Long datasetId) {
+        em.createNativeQuery("DELETE FROM publicizedfilepid WHERE dataset_id = ?1")
+                .setParameter(1, datasetId)
+                .executeUpdate();
+    }
+
     /*
      * Lists all dataset locks, optionally filtered by lock type or user, or both
      * @param lockType
@@ -697,9 +768,9 @@ public class DatasetServiceBean implements java.io.Serializable {
     }
 
     public void exportAllDatasets(boolean forceReExport) {
-        Integer countAll = 0;
-        Integer countSuccess = 0;
-        Integer countError = 0;
+        AtomicInteger countAll = new AtomicInteger();
+        AtomicInteger countSuccess = new AtomicInteger();
+        AtomicInteger countError = new AtomicInteger();
         String logTimestamp = logFormatter.format(new Date());
         Logger exportLogger = Logger.getLogger("edu.harvard.iq.dataverse.harvest.client.DatasetServiceBean." + "ExportAll" + logTimestamp);
         String logFileName = System.getProperty("com.sun.aas.instanceRoot") + File.separator + "logs" + File.separator + "export_" + logTimestamp + ".log";
@@ -722,41 +793,65 @@ public class DatasetServiceBean implements java.io.Serializable {
 
         exportLogger.info("Starting an export all job");
 
-        for (Long datasetId : findAllLocalDatasetIds()) {
-            // Potentially, there's a godzillion datasets in this Dataverse.
-            // This is why we go through the list of ids here, and instantiate
-            // only one dataset at a time.
-            Dataset dataset = this.find(datasetId);
-            if (dataset != null) {
-                // Accurate "is published?" test - ?
-                // Answer: Yes, it is! We can't trust dataset.isReleased() alone; because it is a dvobject method
-                // that returns (publicationDate != null). And "publicationDate" is essentially
-                // "the first publication date"; that stays the same as versions get
-                // published and/or deaccessioned. But in combination with !isDeaccessioned()
-                // it is indeed an accurate test.
-                if (dataset.isReleased() && dataset.getReleasedVersion() != null && !dataset.isDeaccessioned()) {
-
-                    // can't trust dataset.getPublicationDate(), no.
-                    Date publicationDate = dataset.getReleasedVersion().getReleaseTime(); // we know this dataset has a non-null released version! Maybe not - SEK 8/19 (We do now! :)
-                    if (forceReExport || (publicationDate != null
-                            && (dataset.getLastExportTime() == null
-                            || dataset.getLastExportTime().before(publicationDate)))) {
-                        countAll++;
-                        try {
-                            recordService.exportAllFormatsInNewTransaction(dataset);
-                            exportLogger.info("Success exporting dataset: " + dataset.getDisplayName() + " " + dataset.getGlobalId().asString());
-                            countSuccess++;
-                        } catch (Exception ex) {
-                            exportLogger.log(Level.INFO, "Error exporting dataset: " + dataset.getDisplayName() + " " + dataset.getGlobalId().asString() + "; " + ex.getMessage(), ex);
-                            countError++;
+        // A forced re-export records the time it was started in a checkpoint
+        // file, until it is done. If the file is still there (because the
+        // last re-export was interrupted), that re-export is resumed: only the
+        // datasets that have not been exported since it started are exported.
+        List<Long> datasetIds;
+        Path checkpoint = forceReExport ? getExportCheckpointPath() : null;
+        Date resumedRunStart = checkpoint != null ? readExportCheckpoint(checkpoint) : null;
+        if (resumedRunStart != null) {
+            exportLogger.info("Resuming the re-export all job started " + resumedRunStart);
+            datasetIds = findAllLocalDatasetIdsNotExportedSince(resumedRunStart);
+        } else {
+            if (checkpoint != null) {
+                writeExportCheckpoint(checkpoint, new Date());
+            }
+            datasetIds = findAllLocalDatasetIds();
+        }
+
+        int workers = JvmSettings.EXPORT_WORKERS.lookupOptional(Integer.class)
+                .orElse(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, workers), threadFactory);
+        // Potentially, there's a godzillion datasets in this Dataverse.
+        // This is why only the ids are queued here, a few at a time, and every
+        // worker instantiates only one dataset at a time.
+        Semaphore queued = new Semaphore(2 * Math.max(1, workers));
+        Logger jobLogger = exportLogger;
+        boolean completed = false;
+        try {
+            for (Long datasetId : datasetIds) {
+                queued.acquire();
+                executor.execute(() -> {
+                    try {
+                        String exported = recordService.exportAllFormatsInNewTransaction(datasetId, forceReExport);
+                        if (exported != null) {
+                            countAll.incrementAndGet();
+                            jobLogger.info("Success exporting dataset: " + exported);
+                            countSuccess.incrementAndGet();
                         }
+                    } catch (Exception ex) {
+                        countAll.incrementAndGet();
+                        jobLogger.log(Level.INFO, "Error exporting dataset: " + datasetId + " " + ex.getMessage(), ex);
+                        countError.incrementAndGet();
+                    } finally {
+                        queued.release();
                     }
-                }
+                });
             }
+            executor.shutdown();
+            completed = executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+            exportLogger.warning("The export all job was interrupted");
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        if (completed && checkpoint != null) {
+            deleteExportCheckpoint(checkpoint);
         }
-        exportLogger.info("Datasets processed: " + countAll.toString());
-        exportLogger.info("Datasets exported successfully: " + countSuccess.toString());
-        exportLogger.info("Datasets failures: " + countError.toString());
+        exportLogger.info("Datasets processed: " + countAll.get());
+        exportLogger.info("Datasets exported successfully: " + countSuccess.get());
+        exportLogger.info("Datasets failures: " + countError.get());
         exportLogger.info("Finished export-all job.");
 
         if (fileHandlerSuceeded) {
@@ -765,6 +860,64 @@ public class DatasetServiceBean implements java.io.Serializable {
 
     }
 
+    public List<Long> findAllLocalDatasetIdsNotExportedSince(Date date) {
+        return em.createQuery("SELECT o.id FROM Dataset o WHERE o.harvestedFrom IS null AND (o.lastExportTime IS null OR o.lastExportTime < :date) ORDER BY o.id", Long.class)
+                .setParameter("date", date, TemporalType.TIMESTAMP).getResultList();
+    }
+
+    private Path getExportCheckpointPath() {
+        return Paths.get(JvmSettings.FILES_DIRECTORY.lookup(), "exportAll.checkpoint");
+    }
+
+    private Date readExportCheckpoint(Path checkpoint) {
+        if (Files.exists(checkpoint)) {
+            try {
+                return new Date(Long.parseLong(Files.readString(checkpoint).trim()));
+            } catch (IOException | NumberFormatException ex) {
+                logger.log(Level.WARNING, "Could not read the export checkpoint " + checkpoint, ex);
+            }
+        }
+        return null;
+    }
+
+    private void writeExportCheckpoint(Path checkpoint, Date runStart) {
+        try {
+            Files.writeString(checkpoint, Long.toString(runStart.getTime()));
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Could not write the export checkpoint " + checkpoint, ex);
+        }
+    }
+
+    private void deleteExportCheckpoint(Path checkpoint) {
+        try {
+            Files.deleteIfExists(checkpoint);
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Could not delete the export checkpoint " + checkpoint, ex);
+        }
+    }
+
+    /**
+     * @return true if the dataset is published, and has not been exported since
+     * it was last published (or it has, but forceReExport is true).
+     */
+    public boolean isExportNeeded(Dataset dataset, boolean forceReExport) {
+        // Accurate "is published?" test - ?
+        // Answer: Yes, it is! We can't trust dataset.isReleased() alone; because it is a dvobject method
+        // that returns (publicationDate != null). And "publicationDate" is essentially
+        // "the first publication date"; that stays the same as versions get
+        // published and/or deaccessioned. But in combination with !isDeaccessioned()
+        // it is indeed an accurate test.
+        if (dataset.isReleased() && dataset.getReleasedVersion() != null && !dataset.isDeaccessioned()) {
+
+            // can't trust dataset.getPublicationDate(), no.
+            Date publicationDate = dataset.getReleasedVersion().getReleaseTime(); // we know this dataset has a non-null released version! Maybe not - SEK 8/19 (We do now! :)
+            return forceReExport || (publicationDate != null
+                    && (dataset.getLastExportTime() == null
+                    || dataset.getLastExportTime().before(publicationDate)));
+        }
+        return false;
+    }
+
     @Asynchronous
     public void reExportDatasetAsync(Dataset dataset) {
         exportDataset(dataset, true);
@@ -774,19 +927,12 @@ public class DatasetServiceBean implements java.io.Serializable {
         if (dataset != null) {
             // Note that the logic for handling a dataset is similar to what is implemented in exportAllDatasets,
             // but when only one dataset is exported we do not log in a separate export logging file
-            if (dataset.isReleased() && dataset.getReleasedVersion() != null && !dataset.isDeaccessioned()) {
-
-                // can't trust dataset.getPublicationDate(), no.
-                Date publicationDate = dataset.getReleasedVersion().getReleaseTime(); // we know this dataset has a non-null released version! Maybe not - SEK 8/19 (We do now! :)
-                if (forceReExport || (publicationDate != null
-                        && (dataset.getLastExportTime() == null
-                        || dataset.getLastExportTime().before(publicationDate)))) {
-                    try {
-                        recordService.exportAllFormatsInNewTransaction(dataset);
-                        logger.info("Success exporting dataset: " + dataset.getDisplayName() + " " + dataset.getGlobalId().asString());
-                    } catch (Exception ex) {
-                        logger.log(Level.INFO, "Error exporting dataset: " + dataset.getDisplayName() + " " + dataset.getGlobalId().asString() + "; " + ex.getMessage(), ex);
-                    }
+            if (isExportNeeded(dataset, forceReExport)) {
+                try {
+                    recordService.exportAllFormatsInNewTransaction(dataset);
+                    logger.info("Success exporting dataset: " + dataset.getDisplayName() + " " + dataset.getGlobalId().asString());
+                } catch (Exception ex) {
+                    logger.log(Level.INFO, "Error exporting dataset: " + dataset.getDisplayName() + " " + dataset.getGlobalId().asString() + "; " + ex.getMessage(), ex);
                 }
             }
         }
@@ -975,9 +1121,11 @@ public class DatasetServiceBean implements java.io.Serializable {
      * @param version optional param for dataset version
      * @return total size
      * @throws IOException if it can't access the objects via StorageIO
-     * (in practice, this can only happen when called with countCachedExtras=true; when run in the
-     * default mode, the method doesn't need to access the storage system, as the
-     * sizes of the main files are recorded in the database)
+     * (in practice, this can only happen when called with countCachedExtras=true,
+     * the first time for the dataset: the sizes of the cached extras are then
+     * listed from the storage system into the ledger of the
+     * {@link AuxObjectSizeServiceBean}, which keeps them up to date from then on;
+     * the sizes of the main files are recorded in the database)
      */
     public long findStorageSize(Dataset dataset, boolean countCachedExtras, GetDatasetStorageSizeCommand.Mode mode, DatasetVersion version) throws IOException {
         long total = 0L;
@@ -987,8 +1135,9 @@ public class DatasetServiceBean implements java.io.Serializable {
         }
 
         List<DataFile> filesToTally = new ArrayList();
+        boolean allFiles = version == null || (mode != null &&  mode.equals("storage"));
 
-        if (version == null || (mode != null &&  mode.equals("storage"))){
+        if (allFiles){
             filesToTally = dataset.getFiles();
         } else {
             List <FileMetadata>  fmds = version.getFileMetadatas();
@@ -997,10 +1146,6 @@ public class DatasetServiceBean implements java.io.Serializable {
             }
         }
 
-
-        //CACHED EXTRAS FOR DOWNLOAD?
-
-
         for (DataFile datafile : filesToTally) {
                 total += datafile.getFilesize();
 
@@ -1012,28 +1157,17 @@ public class DatasetServiceBean implements java.io.Serializable {
                             total += originalFileSize;
                         }
                     }
-                } else {
-                    StorageIO<DataFile> storageIO = datafile.getStorageIO();
-                    for (String cachedFileTag : storageIO.listAuxObjects()) {
-                        total += storageIO.getAuxObjectSize(cachedFileTag);
-                    }
                 }
             }
 
-        // and finally,
         if (countCachedExtras) {
-            // count the sizes of the files cached for the dataset itself
-            // (i.e., the metadata exports):
-            StorageIO<Dataset> datasetSIO = DataAccess.getStorageIO(dataset);
-
-            for (String[] exportProvider : ExportService.getInstance().getExportersLabels()) {
-                String exportLabel = "export_" + exportProvider[1] + ".cached";
-                try {
-                    total += datasetSIO.getAuxObjectSize(exportLabel);
-                } catch (IOException ioex) {
-                    // safe to ignore; object not cached
-                }
+            // the sizes of the auxiliary objects of the files (stored
+            // originals included), and of the metadata exports cached for the
+            // dataset itself, as recorded in the ledger:
+            if (!auxObjectSizeService.isReconciled(dataset.getId())) {
+                auxObjectSizeService.reconcile(dataset);
             }
+            total += auxObjectSizeService.findCachedExtrasSize(dataset.getId(), allFiles ? null : version.getId());
         }
 
         return total;
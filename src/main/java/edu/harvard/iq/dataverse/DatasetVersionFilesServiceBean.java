@@ -8,6 +8,8 @@ import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.Tuple;
 import jakarta.persistence.TypedQuery;
 import jakarta.persistence.criteria.*;
+import org.eclipse.persistence.annotations.BatchFetchType;
+import org.eclipse.persistence.config.QueryHints;
 
 import java.io.Serializable;
 import java.sql.Timestamp;
@@ -22,6 +24,18 @@ public class DatasetVersionFilesServiceBean implements Serializable {
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     private EntityManager em;
 
+    /**
+     * The relationships of the FileMetadatas included in the file listings,
+     * batch fetched by {@link #getFileMetadatas}.
+     */
+    static final List<String> FILE_LISTING_BATCH_FETCHES = List.of(
+            "fm.dataFile",
+            "fm.dataFile.dataTables",
+            "fm.dataFile.dataFileTags",
+            "fm.dataFile.embargo",
+            "fm.dataFile.retention",
+            "fm.fileCategories");
+
     /**
      * Different criteria to sort the results of FileMetadata queries used in {@link DatasetVersionFilesServiceBean#getFileMetadatas}
      */
@@ -178,6 +192,14 @@ public class DatasetVersionFilesServiceBean implements Serializable {
         if (offset != null) {
             typedQuery.setFirstResult(offset);
         }
+        // Loads what the file listings print for the whole page at once, with
+        // one query per relationship; rather than one query per file. (Batch
+        // rather than join fetching, so that the limit and offset still apply
+        // to the files.)
+        typedQuery.setHint(QueryHints.BATCH_TYPE, BatchFetchType.IN);
+        for (String relationship : FILE_LISTING_BATCH_FETCHES) {
+            typedQuery.setHint(QueryHints.BATCH, relationship);
+        }
         return typedQuery.getResultList();
     }
 
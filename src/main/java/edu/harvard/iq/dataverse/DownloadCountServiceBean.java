@@ -0,0 +1,283 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.Asynchronous;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.DependsOn;
+import jakarta.ejb.SessionContext;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.Timeout;
+import jakarta.ejb.TimerConfig;
+import jakarta.ejb.TimerService;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+
+/**
+ * Keeps the download counts of the files, and of the datasets by day, in the
+ * filedownloadcount and datasetdownloadcount tables; so that they don't have
+ * to be counted from the guestbook responses every time they are shown.
+ *
+ * The downloads are added up in memory as the responses are persisted (those
+ * written behind the requests, by the {@link DownloadEventServiceBean}, once
+ * they are written), and written out every
+ * {@link JvmSettings#DOWNLOADCOUNTS_FLUSH_INTERVAL} seconds, a single increment
+ * per file and per dataset and day; the counts include those not written out
+ * yet (by this server). The counts can be recounted from the guestbook
+ * responses with {@link #reconcileAll(List)}.
+ */
+@Singleton
+@Startup
+@DependsOn("StartupFlywayMigrator")
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class DownloadCountServiceBean {
+
+    private static final Logger logger = Logger.getLogger(DownloadCountServiceBean.class.getCanonicalName());
+
+    @PersistenceContext(unitName = "VDCNet-ejbPU")
+    EntityManager em;
+    @Resource
+    SessionContext sessionContext;
+    @Resource
+    TimerService timerService;
+
+    record DatasetDay(Long datasetId, LocalDate date) {
+    }
+
+    // the downloads not written out yet:
+    private final Map<Long, Long> fileIncrements = new ConcurrentHashMap<>();
+    private final Map<DatasetDay, Long> datasetIncrements = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        long interval = 1000 * Math.max(1, JvmSettings.DOWNLOADCOUNTS_FLUSH_INTERVAL.lookupOptional(Long.class).orElse(10L));
+        timerService.createIntervalTimer(interval, interval, new TimerConfig(null, false));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * Counts the persisted response as a download of its file and dataset,
+     * unless it is an access request.
+     */
+    public void recordDownload(GuestbookResponse guestbookResponse) {
+        recordDownload(guestbookResponse.getDataFile() != null ? guestbookResponse.getDataFile().getId() : null,
+                guestbookResponse.getDataset() != null ? guestbookResponse.getDataset().getId() : null,
+                guestbookResponse.getResponseTime(), guestbookResponse.getEventType());
+    }
+
+    /**
+     * Counts a persisted response as a download of its file and dataset,
+     * unless it is an access request.
+     */
+    public void recordDownload(Long dataFileId, Long datasetId, Date responseTime, String eventType) {
+        if (eventType == null || GuestbookResponse.ACCESS_REQUEST.equals(eventType)) {
+            return;
+        }
+        if (dataFileId != null) {
+            fileIncrements.merge(dataFileId, 1L, Long::sum);
+        }
+        if (datasetId != null && responseTime != null) {
+            LocalDate date = responseTime.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+            datasetIncrements.merge(new DatasetDay(datasetId, date), 1L, Long::sum);
+        }
+    }
+
+    public long getFileDownloadCount(Long dataFileId) {
+        if (dataFileId == null) {
+            return 0L;
+        }
+        List<Number> counts = em.createNativeQuery("SELECT downloadcount FROM filedownloadcount WHERE datafile_id = ?1")
+                .setParameter(1, dataFileId)
+                .getResultList();
+        return (counts.isEmpty() ? 0L : counts.get(0).longValue()) + fileIncrements.getOrDefault(dataFileId, 0L);
+    }
+
+    /**
+     * @param before only the downloads before this day; null for all of them.
+     */
+    public long getDatasetDownloadCount(Long datasetId, LocalDate before) {
+        if (datasetId == null) {
+            return 0L;
+        }
+        Query query = em.createNativeQuery("SELECT COALESCE(SUM(downloadcount), 0) FROM datasetdownloadcount"
+                + " WHERE dataset_id = ?1" + (before != null ? " AND responsedate < ?2" : ""))
+                .setParameter(1, datasetId);
+        if (before != null) {
+            query.setParameter(2, java.sql.Date.valueOf(before));
+        }
+        Number count = (Number) query.getSingleResult();
+        long pending = 0L;
+        for (Map.Entry<DatasetDay, Long> increment : datasetIncrements.entrySet()) {
+            if (increment.getKey().datasetId().equals(datasetId) && (before == null || increment.getKey().date().isBefore(before))) {
+                pending += increment.getValue();
+            }
+        }
+        return count.longValue() + pending;
+    }
+
+    /**
+     * Writes out the downloads added up since the last time; those that can't
+     * be are kept for the next time.
+     */
+    @Timeout
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public synchronized void flush() {
+        Map<Long, Long> files = drain(fileIncrements);
+        Map<DatasetDay, Long> datasets = drain(datasetIncrements);
+        if (files.isEmpty() && datasets.isEmpty()) {
+            return;
+        }
+        try {
+            sessionContext.getBusinessObject(DownloadCountServiceBean.class).writeIncrements(files, datasets);
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Could not write out the download counts; will try again", ex);
+            files.forEach((key, increment) -> fileIncrements.merge(key, increment, Long::sum));
+            datasets.forEach((key, increment) -> datasetIncrements.merge(key, increment, Long::sum));
+        }
+    }
+
+    private static <K> Map<K, Long> drain(Map<K, Long> increments) {
+        return drain(increments, key -> true);
+    }
+
+    private static <K> Map<K, Long> drain(Map<K, Long> increments, Predicate<K> which) {
+        Map<K, Long> drained = new HashMap<>();
+        for (K key : increments.keySet()) {
+            if (!which.test(key)) {
+                continue;
+            }
+            // (removing them one at a time, so that none added meanwhile are lost)
+            Long increment = increments.remove(key);
+            if (increment != null) {
+                drained.put(key, increment);
+            }
+        }
+        return drained;
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void writeIncrements(Map<Long, Long> files, Map<DatasetDay, Long> datasets) {
+        // (nothing is written for files or datasets deleted meanwhile)
+        for (Map.Entry<Long, Long> file : files.entrySet()) {
+            em.createNativeQuery("INSERT INTO filedownloadcount (datafile_id, downloadcount)"
+                    + " SELECT id, ?2 FROM dvobject WHERE id = ?1"
+                    + " ON CONFLICT (datafile_id) DO UPDATE SET downloadcount = filedownloadcount.downloadcount + EXCLUDED.downloadcount")
+                    .setParameter(1, file.getKey())
+                    .setParameter(2, file.getValue())
+                    .executeUpdate();
+        }
+        for (Map.Entry<DatasetDay, Long> dataset : datasets.entrySet()) {
+            em.createNativeQuery("INSERT INTO datasetdownloadcount (dataset_id, responsedate, downloadcount)"
+                    + " SELECT id, ?2, ?3 FROM dvobject WHERE id = ?1"
+                    + " ON CONFLICT (dataset_id, responsedate) DO UPDATE SET downloadcount = datasetdownloadcount.downloadcount + EXCLUDED.downloadcount")
+                    .setParameter(1, dataset.getKey().datasetId())
+                    .setParameter(2, java.sql.Date.valueOf(dataset.getKey().date()))
+                    .setParameter(3, dataset.getValue())
+                    .executeUpdate();
+        }
+    }
+
+    /**
+     * Recounts the downloads of the dataset, and of its files, from its
+     * guestbook responses. The downloads of the dataset not written out yet
+     * are dropped, since they are recounted from their responses too; they
+     * are kept if the recount fails.
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void reconcile(Long datasetId) {
+        Set<Long> fileIds = new HashSet<>(findFileIds(datasetId));
+        Map<Long, Long> files;
+        Map<DatasetDay, Long> datasets;
+        // (not while they are being written out)
+        synchronized (this) {
+            files = drain(fileIncrements, fileIds::contains);
+            datasets = drain(datasetIncrements, day -> day.datasetId().equals(datasetId));
+        }
+        try {
+            sessionContext.getBusinessObject(DownloadCountServiceBean.class).recount(datasetId);
+        } catch (RuntimeException ex) {
+            files.forEach((key, increment) -> fileIncrements.merge(key, increment, Long::sum));
+            datasets.forEach((key, increment) -> datasetIncrements.merge(key, increment, Long::sum));
+            throw ex;
+        }
+    }
+
+    List<Long> findFileIds(Long datasetId) {
+        List<Number> ids = em.createNativeQuery("SELECT id FROM dvobject WHERE owner_id = ?1")
+                .setParameter(1, datasetId)
+                .getResultList();
+        return ids.stream().map(Number::longValue).toList();
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void recount(Long datasetId) {
+        em.createNativeQuery("DELETE FROM filedownloadcount WHERE datafile_id IN (SELECT id FROM dvobject WHERE owner_id = ?1)")
+                .setParameter(1, datasetId)
+                .executeUpdate();
+        em.createNativeQuery("DELETE FROM datasetdownloadcount WHERE dataset_id = ?1")
+                .setParameter(1, datasetId)
+                .executeUpdate();
+        em.createNativeQuery("INSERT INTO filedownloadcount (datafile_id, downloadcount)"
+                + " SELECT r.datafile_id, count(r.id) FROM guestbookresponse r JOIN dvobject o ON o.id = r.datafile_id"
+                + " WHERE r.dataset_id = ?1 AND r.eventtype != '" + GuestbookResponse.ACCESS_REQUEST + "'"
+                + " GROUP BY r.datafile_id"
+                + " ON CONFLICT (datafile_id) DO UPDATE SET downloadcount = filedownloadcount.downloadcount + EXCLUDED.downloadcount")
+                .setParameter(1, datasetId)
+                .executeUpdate();
+        em.createNativeQuery("INSERT INTO datasetdownloadcount (dataset_id, responsedate, downloadcount)"
+                + " SELECT dataset_id, CAST(responsetime AS DATE), count(id) FROM guestbookresponse"
+                + " WHERE dataset_id = ?1 AND responsetime IS NOT NULL AND eventtype != '" + GuestbookResponse.ACCESS_REQUEST + "'"
+                + " GROUP BY dataset_id, CAST(responsetime AS DATE)")
+                .setParameter(1, datasetId)
+                .executeUpdate();
+    }
+
+    public List<Long> findDatasetIds() {
+        List<Number> ids = em.createNativeQuery("SELECT id FROM dataset ORDER BY id").getResultList();
+        return ids.stream().map(Number::longValue).toList();
+    }
+
+    /**
+     * Recounts the downloads of the datasets, one after the other, in the
+     * background. Called by the downloadCounts/reconcile admin API.
+     */
+    @Asynchronous
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void reconcileAll(List<Long> datasetIds) {
+        DownloadCountServiceBean self = sessionContext.getBusinessObject(DownloadCountServiceBean.class);
+        int failed = 0;
+        for (Long datasetId : datasetIds) {
+            try {
+                self.reconcile(datasetId);
+            } catch (Exception ex) {
+                failed++;
+                logger.log(Level.WARNING, "Could not recount the downloads of dataset " + datasetId, ex);
+            }
+        }
+        logger.info("Finished recounting the downloads of " + datasetIds.size() + " datasets (" + failed + " failed).");
+    }
+}
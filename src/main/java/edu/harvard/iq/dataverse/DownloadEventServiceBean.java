@@ -0,0 +1,552 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.batch.util.LoggingUtil;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.DependsOn;
+import jakarta.ejb.EJB;
+import jakarta.ejb.SessionContext;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.Timeout;
+import jakarta.ejb.TimerConfig;
+import jakarta.ejb.TimerService;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.inject.Inject;
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonReader;
+import jakarta.json.JsonValue;
+import javax.sql.DataSource;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.annotation.Metric;
+
+import static edu.harvard.iq.dataverse.makedatacount.MakeDataCountUtil.LOG_HEADER;
+import static edu.harvard.iq.dataverse.util.json.NullSafeJsonBuilder.jsonObjectBuilder;
+
+/**
+ * Writes the guestbook responses of the downloads, and the Make Data Count
+ * log entries, behind the requests that make them: they are appended to a
+ * journal file, one line each, and written from there to the database (with
+ * JDBC batches) and to the Make Data Count logs every
+ * {@link JvmSettings#DOWNLOAD_EVENTS_FLUSH_INTERVAL} seconds. The journal is
+ * kept in {@link JvmSettings#DOWNLOAD_EVENTS_DIRECTORY}; what is in it when
+ * the server stops, or crashes, is written once it is started again.
+ *
+ * Once {@link JvmSettings#DOWNLOAD_EVENTS_MAX_PENDING} events are waiting to
+ * be written, the next ones are refused, and written by the requests
+ * themselves, until the journal catches up.
+ *
+ * The events are written at least once: if the server stops once the events
+ * of a journal file are written, but before the file is removed, they are
+ * written again. The events that can never be written (a guestbook response
+ * whose guestbook was deleted meanwhile, say) are moved to a quarantine file
+ * in the same directory, for the others to be written. The downloads are
+ * counted (see {@link DownloadCountServiceBean}) once their responses are
+ * written.
+ */
+@Singleton
+@Startup
+@DependsOn("StartupFlywayMigrator")
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class DownloadEventServiceBean {
+
+    private static final Logger logger = Logger.getLogger(DownloadEventServiceBean.class.getCanonicalName());
+
+    private static final String CURRENT_JOURNAL = "current.jsonl";
+    private static final String JOURNAL_PREFIX = "events-";
+    private static final String QUARANTINE = "quarantine.jsonl";
+    private static final int BATCH_SIZE = 500;
+
+    @Resource
+    SessionContext sessionContext;
+    @Resource
+    TimerService timerService;
+    @Resource(lookup = "java:app/jdbc/dataverse")
+    DataSource dataSource;
+    @EJB
+    DownloadCountServiceBean downloadCountService;
+
+    @Inject
+    @Metric(name = "download_events_queued", absolute = true,
+            description = "Counts the guestbook responses and Make Data Count entries written behind the requests")
+    Counter queuedCounter;
+
+    @Inject
+    @Metric(name = "download_events_overflow", absolute = true,
+            description = "Counts the guestbook responses and Make Data Count entries written by the requests, as too many were waiting")
+    Counter overflowCounter;
+
+    @Inject
+    @Metric(name = "download_events_written", absolute = true,
+            description = "Counts the guestbook responses and Make Data Count entries written from the journal")
+    Counter writtenCounter;
+
+    private Path directory;
+    private int maxPending;
+    private BufferedWriter journal;
+    // the events in the journal files not written out yet:
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Object flushLock = new Object();
+
+    @PostConstruct
+    public void init() {
+        directory = Paths.get(JvmSettings.DOWNLOAD_EVENTS_DIRECTORY.lookupOptional()
+                .orElse(Paths.get(JvmSettings.FILES_DIRECTORY.lookup(), "download-events").toString()));
+        maxPending = JvmSettings.DOWNLOAD_EVENTS_MAX_PENDING.lookupOptional(Integer.class).orElse(10000);
+        try {
+            Files.createDirectories(directory);
+            // (left by the last run; written out with the others)
+            rotate();
+            for (Path file : listJournals()) {
+                pending.addAndGet(read(file).size());
+            }
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Cannot use " + directory + " for the download events journal;"
+                    + " the events will be written by the requests", ex);
+            directory = null;
+        }
+        long interval = 1000 * Math.max(1, JvmSettings.DOWNLOAD_EVENTS_FLUSH_INTERVAL.lookupOptional(Long.class).orElse(2L));
+        timerService.createIntervalTimer(interval, interval, new TimerConfig(null, false));
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        closeJournal();
+    }
+
+    /**
+     * Queues the guestbook response, unless too many events are waiting to be
+     * written; its custom question responses are written with it. The
+     * response is not persisted (and has no id) when this returns.
+     *
+     * @return true if it was queued, false if the caller is to persist it.
+     */
+    public boolean enqueue(GuestbookResponse guestbookResponse) {
+        if (guestbookResponse.getDataFile() == null || guestbookResponse.getDataFile().getId() == null
+                || guestbookResponse.getDataset() == null || guestbookResponse.getDataset().getId() == null
+                || guestbookResponse.getGuestbook() == null || guestbookResponse.getGuestbook().getId() == null) {
+            return false;
+        }
+        JsonArrayBuilder answers = Json.createArrayBuilder();
+        if (guestbookResponse.getCustomQuestionResponses() != null) {
+            for (CustomQuestionResponse answer : guestbookResponse.getCustomQuestionResponses()) {
+                answers.add(jsonObjectBuilder()
+                        .add("question", answer.getCustomQuestion().getId())
+                        .add("response", answer.getResponse()));
+            }
+        }
+        return append(jsonObjectBuilder()
+                .add("type", "guestbookresponse")
+                .add("guestbook", guestbookResponse.getGuestbook().getId())
+                .add("dataFile", guestbookResponse.getDataFile().getId())
+                .add("dataset", guestbookResponse.getDataset().getId())
+                .add("datasetVersion", guestbookResponse.getDatasetVersion() != null ? guestbookResponse.getDatasetVersion().getId() : null)
+                .add("authenticatedUser", guestbookResponse.getAuthenticatedUser() != null ? guestbookResponse.getAuthenticatedUser().getId() : null)
+                .add("name", guestbookResponse.getName())
+                .add("email", guestbookResponse.getEmail())
+                .add("institution", guestbookResponse.getInstitution())
+                .add("position", guestbookResponse.getPosition())
+                .add("responseTime", guestbookResponse.getResponseTime() != null ? guestbookResponse.getResponseTime().getTime() : null)
+                .add("sessionId", guestbookResponse.getSessionId())
+                .add("eventType", guestbookResponse.getEventType())
+                .add("answers", answers)
+                .build());
+    }
+
+    /**
+     * Queues the entry to append to a Make Data Count log, unless too many
+     * events are waiting to be written.
+     *
+     * @return true if it was queued, false if the caller is to append it.
+     */
+    public boolean enqueue(String logDir, String fileName, String entry) {
+        return append(jsonObjectBuilder()
+                .add("type", "mdc")
+                .add("logDir", logDir)
+                .add("fileName", fileName)
+                .add("entry", entry)
+                .build());
+    }
+
+    private boolean append(JsonObject event) {
+        if (directory == null) {
+            return false;
+        }
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            overflowCounter.inc();
+            return false;
+        }
+        synchronized (this) {
+            try {
+                if (journal == null) {
+                    journal = Files.newBufferedWriter(directory.resolve(CURRENT_JOURNAL), StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                }
+                journal.write(event.toString());
+                journal.newLine();
+                journal.flush();
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Could not append to the download events journal", ex);
+                pending.decrementAndGet();
+                closeJournal();
+                return false;
+            }
+        }
+        queuedCounter.inc();
+        return true;
+    }
+
+    /**
+     * Writes out the events journaled so far: closes the current journal file,
+     * so that the next events go to a new one, and writes the files closed so
+     * far, oldest first. A file that can't be written (the database being
+     * down, say) is kept for the next time, with the events not written yet.
+     */
+    @Timeout
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void flush() {
+        if (directory == null) {
+            return;
+        }
+        synchronized (flushLock) {
+            List<Path> journals;
+            try {
+                rotate();
+                journals = listJournals();
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Could not list the download events journal files", ex);
+                return;
+            }
+            DownloadEventServiceBean self = sessionContext.getBusinessObject(DownloadEventServiceBean.class);
+            for (Path file : journals) {
+                if (!writeOut(self, file)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return false if the events in the file could not all be written, and
+     * the next files are not to be tried now.
+     */
+    private boolean writeOut(DownloadEventServiceBean self, Path file) {
+        List<JsonObject> events;
+        try {
+            events = read(file);
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Could not read the download events in " + file + "; will try again", ex);
+            return false;
+        }
+        List<JsonObject> responses = new ArrayList<>();
+        Map<String, List<JsonObject>> logEntries = new LinkedHashMap<>();
+        for (JsonObject event : events) {
+            if ("mdc".equals(event.getString("type", null))) {
+                logEntries.computeIfAbsent(event.getString("logDir", "") + "\t" + event.getString("fileName", ""), key -> new ArrayList<>())
+                        .add(event);
+            } else {
+                responses.add(event);
+            }
+        }
+
+        List<JsonObject> left = new ArrayList<>();
+        List<JsonObject> quarantined = new ArrayList<>();
+        if (!responses.isEmpty()) {
+            writeResponses(self, file, responses, left, quarantined);
+        }
+        for (List<JsonObject> entries : logEntries.values()) {
+            StringBuilder log = new StringBuilder();
+            try {
+                entries.forEach(entry -> log.append(entry.getString("entry")));
+                LoggingUtil.saveLogFileAppendWithHeader(log.toString(), entries.get(0).getString("logDir"),
+                        entries.get(0).getString("fileName"), LOG_HEADER);
+            } catch (RuntimeException ex) {
+                // (entries missing their log; those that can't be appended to
+                // their log are only logged by saveLogFileAppendWithHeader)
+                logger.log(Level.WARNING, "Could not write out the Make Data Count entries in " + file, ex);
+                quarantined.addAll(entries);
+            }
+        }
+
+        try {
+            if (!quarantined.isEmpty()) {
+                logger.warning("Moving " + quarantined.size() + " download events of " + file + " that can't be written to "
+                        + directory.resolve(QUARANTINE));
+                append(directory.resolve(QUARANTINE), quarantined);
+            }
+            if (left.isEmpty()) {
+                Files.delete(file);
+            } else if (left.size() < events.size()) {
+                // (so that the events written are not written again)
+                Path rest = directory.resolve("rest.tmp");
+                Files.deleteIfExists(rest);
+                append(rest, left);
+                Files.move(rest, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Could not update the download events journal " + file + "; its events may be written again", ex);
+            return false;
+        }
+        writtenCounter.inc(events.size() - left.size() - quarantined.size());
+        pending.addAndGet(-(events.size() - left.size()));
+        return left.isEmpty();
+    }
+
+    /**
+     * Writes the responses in a single transaction; or, if one of them can't
+     * be written, one at a time, to set aside those that can't. Should the
+     * database be unavailable instead, the responses are left for later.
+     */
+    private void writeResponses(DownloadEventServiceBean self, Path file, List<JsonObject> responses,
+            List<JsonObject> left, List<JsonObject> quarantined) {
+        try {
+            countDownloads(self.writeResponses(responses));
+            return;
+        } catch (Exception ex) {
+            if (!isUnwritable(ex)) {
+                logger.log(Level.WARNING, "Could not write out the guestbook responses in " + file + "; will try again", ex);
+                left.addAll(responses);
+                return;
+            }
+        }
+        for (int i = 0; i < responses.size(); i++) {
+            try {
+                countDownloads(self.writeResponses(List.of(responses.get(i))));
+            } catch (Exception ex) {
+                if (isUnwritable(ex)) {
+                    logger.log(Level.WARNING, "Could not write the guestbook response " + responses.get(i) + " from " + file, ex);
+                    quarantined.add(responses.get(i));
+                } else {
+                    logger.log(Level.WARNING, "Could not write out the guestbook responses in " + file + "; will try again", ex);
+                    left.addAll(responses.subList(i, responses.size()));
+                    return;
+                }
+            }
+        }
+    }
+
+    private void countDownloads(List<JsonObject> written) {
+        for (JsonObject response : written) {
+            downloadCountService.recordDownload(response.getJsonNumber("dataFile").longValue(),
+                    response.getJsonNumber("dataset").longValue(),
+                    response.containsKey("responseTime") && !response.isNull("responseTime")
+                            ? new Timestamp(response.getJsonNumber("responseTime").longValue()) : null,
+                    getString(response, "eventType"));
+        }
+    }
+
+    /**
+     * @return true if the failure comes from the events themselves (they
+     * refer to rows that are gone, or they are malformed), rather than from
+     * the database being unavailable; i.e. if writing them again won't do.
+     */
+    static boolean isUnwritable(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlException) {
+                // (SQL states of class 22, data exception, and 23, integrity constraint violation)
+                for (SQLException next = sqlException; next != null; next = next.getNextException()) {
+                    String state = next.getSQLState();
+                    if (state != null && (state.startsWith("22") || state.startsWith("23"))) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (cause instanceof NullPointerException || cause instanceof ClassCastException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void append(Path file, List<JsonObject> events) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (JsonObject event : events) {
+                writer.write(event.toString());
+                writer.newLine();
+            }
+        }
+    }
+
+    private List<Path> listJournals() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(JOURNAL_PREFIX)
+                    && file.getFileName().toString().endsWith(".jsonl")).sorted().toList();
+        }
+    }
+
+    /**
+     * Moves the current journal file (if any) aside, to be written out.
+     */
+    private synchronized void rotate() throws IOException {
+        closeJournal();
+        Path current = directory.resolve(CURRENT_JOURNAL);
+        if (Files.exists(current)) {
+            long stamp = System.currentTimeMillis();
+            Path moved;
+            while (Files.exists(moved = directory.resolve(String.format("%s%020d.jsonl", JOURNAL_PREFIX, stamp)))) {
+                stamp++;
+            }
+            Files.move(current, moved);
+        }
+    }
+
+    private synchronized void closeJournal() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Could not close the download events journal", ex);
+            }
+            journal = null;
+        }
+    }
+
+    private static List<JsonObject> read(Path file) throws IOException {
+        List<JsonObject> events = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try (JsonReader reader = Json.createReader(new StringReader(line))) {
+                events.add(reader.readObject());
+            } catch (RuntimeException ex) {
+                // (a line cut short by a crash)
+                logger.log(Level.WARNING, "Skipping an unreadable download event in " + file + ": " + line, ex);
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Inserts the guestbook responses, and their custom question responses,
+     * with JDBC batches, in a single transaction; the ids are taken from the sequence first, so that
+     * the custom question responses can refer to them. The responses of files,
+     * datasets or guestbooks deleted meanwhile are left out, as are the
+     * answers to the questions deleted meanwhile; the dataset versions and
+     * users deleted meanwhile are left empty.
+     *
+     * @return the responses written: not those left out.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public List<JsonObject> writeResponses(List<JsonObject> responses) throws SQLException {
+        List<JsonObject> written = new ArrayList<>(responses.size());
+        try (Connection connection = dataSource.getConnection()) {
+            List<Long> ids = new ArrayList<>(responses.size());
+            try (PreparedStatement nextIds = connection.prepareStatement(
+                    "SELECT nextval(pg_get_serial_sequence('guestbookresponse', 'id')) FROM generate_series(1, ?)")) {
+                nextIds.setInt(1, responses.size());
+                try (ResultSet rs = nextIds.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getLong(1));
+                    }
+                }
+            }
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO guestbookresponse (id, guestbook_id, datafile_id, dataset_id, datasetversion_id, authenticateduser_id,"
+                    + " name, email, institution, position, responsetime, sessionid, eventtype)"
+                    + " SELECT ?, ?, ?, ?, (SELECT id FROM datasetversion WHERE id = ?), (SELECT id FROM authenticateduser WHERE id = ?),"
+                    + " ?, ?, ?, ?, ?, ?, ?"
+                    + " WHERE EXISTS (SELECT 1 FROM dvobject WHERE id = ?) AND EXISTS (SELECT 1 FROM dvobject WHERE id = ?)"
+                    + " AND EXISTS (SELECT 1 FROM guestbook WHERE id = ?)");
+                 PreparedStatement insertAnswer = connection.prepareStatement(
+                    "INSERT INTO customquestionresponse (guestbookresponse_id, customquestion_id, response)"
+                    + " SELECT ?, ?, ? WHERE EXISTS (SELECT 1 FROM guestbookresponse WHERE id = ?)"
+                    + " AND EXISTS (SELECT 1 FROM customquestion WHERE id = ?)")) {
+                for (int i = 0; i < responses.size(); i++) {
+                    JsonObject response = responses.get(i);
+                    long id = ids.get(i);
+                    insert.setLong(1, id);
+                    insert.setLong(2, response.getJsonNumber("guestbook").longValue());
+                    insert.setLong(3, response.getJsonNumber("dataFile").longValue());
+                    insert.setLong(4, response.getJsonNumber("dataset").longValue());
+                    setLong(insert, 5, response, "datasetVersion");
+                    setLong(insert, 6, response, "authenticatedUser");
+                    insert.setString(7, getString(response, "name"));
+                    insert.setString(8, getString(response, "email"));
+                    insert.setString(9, getString(response, "institution"));
+                    insert.setString(10, getString(response, "position"));
+                    if (response.containsKey("responseTime") && !response.isNull("responseTime")) {
+                        insert.setTimestamp(11, new Timestamp(response.getJsonNumber("responseTime").longValue()));
+                    } else {
+                        insert.setNull(11, Types.TIMESTAMP);
+                    }
+                    insert.setString(12, getString(response, "sessionId"));
+                    insert.setString(13, getString(response, "eventType"));
+                    insert.setLong(14, response.getJsonNumber("dataFile").longValue());
+                    insert.setLong(15, response.getJsonNumber("dataset").longValue());
+                    insert.setLong(16, response.getJsonNumber("guestbook").longValue());
+                    insert.addBatch();
+
+                    for (JsonValue value : response.getJsonArray("answers")) {
+                        JsonObject answer = value.asJsonObject();
+                        insertAnswer.setLong(1, id);
+                        insertAnswer.setLong(2, answer.getJsonNumber("question").longValue());
+                        insertAnswer.setString(3, getString(answer, "response"));
+                        insertAnswer.setLong(4, id);
+                        insertAnswer.setLong(5, answer.getJsonNumber("question").longValue());
+                        insertAnswer.addBatch();
+                    }
+                    if ((i + 1) % BATCH_SIZE == 0 || i == responses.size() - 1) {
+                        // (the responses first, for their custom question responses to find them)
+                        int[] counts = insert.executeBatch();
+                        insertAnswer.executeBatch();
+                        int first = i + 1 - counts.length;
+                        for (int j = 0; j < counts.length; j++) {
+                            // (or Statement.SUCCESS_NO_INFO, when the driver can't tell)
+                            if (counts[j] != 0) {
+                                written.add(responses.get(first + j));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return written;
+    }
+
+    private static void setLong(PreparedStatement statement, int index, JsonObject object, String name) throws SQLException {
+        if (object.containsKey(name) && !object.isNull(name)) {
+            statement.setLong(index, object.getJsonNumber(name).longValue());
+        } else {
+            statement.setNull(index, Types.BIGINT);
+        }
+    }
+
+    private static String getString(JsonObject object, String name) {
+        return (object.containsKey(name) && !object.isNull(name)) ? object.getString(name) : null;
+    }
+}
@@ -24,6 +24,8 @@ import jakarta.persistence.*;
             query = "SELECT o FROM DvObject o ORDER BY o.id"),
     @NamedQuery(name = "DvObject.findById",
             query = "SELECT o FROM DvObject o WHERE o.id=:id"),
+    @NamedQuery(name = "DvObject.findByIds",
+            query = "SELECT o FROM DvObject o WHERE o.id IN :ids"),
     @NamedQuery(name = "DvObject.checkExists", 
             query = "SELECT count(o) from DvObject o WHERE o.id=:id"),
     @NamedQuery(name = "DvObject.ownedObjectsById",
@@ -112,13 +114,13 @@ public abstract class DvObject extends DataverseEntity implements java.io.Serial
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private DvObject owner;
 
     private Timestamp publicationDate;
 
     /** The user that released this dataverse */
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private AuthenticatedUser releaseUser;
     
     @Column( nullable = false )
@@ -231,7 +233,7 @@ public abstract class DvObject extends DataverseEntity implements java.io.Serial
         this.indexTime = indexTime;
     }
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private AuthenticatedUser creator;
 
     public interface Visitor<T> {
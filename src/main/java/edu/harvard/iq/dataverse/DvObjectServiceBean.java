@@ -6,6 +6,7 @@ import edu.harvard.iq.dataverse.pidproviders.PidProviderFactoryBean;
 import edu.harvard.iq.dataverse.pidproviders.PidUtil;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -66,6 +67,19 @@ public class DvObjectServiceBean implements java.io.Serializable {
         }
     }
 
+    /**
+     * @return the objects with these ids (those that exist), in no particular
+     * order; with a single query.
+     */
+    public List<DvObject> findByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return em.createNamedQuery("DvObject.findByIds", DvObject.class)
+                .setParameter("ids", ids)
+                .getResultList();
+    }
+
     public List<DvObject> findAll() {
         return em.createNamedQuery("DvObject.findAll", DvObject.class).getResultList();
     }
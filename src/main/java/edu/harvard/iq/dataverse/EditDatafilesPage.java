@@ -138,6 +138,8 @@ public class EditDatafilesPage implements java.io.Serializable {
     DataverseLinkingServiceBean dvLinkingService;
     @EJB
     IndexServiceBean indexService;
+    @EJB
+    MultipartUploadServiceBean multipartUploadService;
     @Inject
     DataverseRequestServiceBean dvRequestService;
     @Inject
@@ -1741,7 +1743,7 @@ public class EditDatafilesPage implements java.io.Serializable {
         String storageIdentifier = null;
         try {
             storageIdentifier = FileUtil.getStorageIdentifierFromLocation(s3io.getStorageLocation());
-            urls = s3io.generateTemporaryS3UploadUrls(dataset.getGlobalId().asString(), storageIdentifier, fileSize);
+            urls = multipartUploadService.startUpload(s3io, dataset.getGlobalId().asString(), storageIdentifier, fileSize);
 
         } catch (IOException io) {
             logger.warning(io.getMessage());
@@ -89,6 +89,9 @@ public class EjbDataverseEngine {
     @EJB
     IngestServiceBean ingestService;
 
+    @EJB
+    DataFileValidationServiceBean fileValidationService;
+
     @EJB
     PermissionServiceBean permissionService;
 
@@ -182,6 +185,9 @@ public class EjbDataverseEngine {
     @EJB
     StorageUseServiceBean storageUseService; 
     
+    @EJB
+    DatasetEventServiceBean datasetEventService;
+    
     @EJB
     EjbDataverseEngineInner innerEngine;
 
@@ -437,6 +443,11 @@ public class EjbDataverseEngine {
                 public IngestServiceBean ingest() {
                     return ingestService;
                 }
+
+                @Override
+                public DataFileValidationServiceBean fileValidation() {
+                    return fileValidationService;
+                }
                 
                 @Override
                 public PermissionServiceBean permissions() {
@@ -522,6 +533,11 @@ public class EjbDataverseEngine {
                 public StorageUseServiceBean storageUse() {
                     return storageUseService;
                 }
+
+                @Override
+                public DatasetEventServiceBean datasetEvents() {
+                    return datasetEventService;
+                }
                 
                 @Override
                 public DataverseEngine engine() {
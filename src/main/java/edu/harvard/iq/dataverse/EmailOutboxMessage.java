@@ -0,0 +1,64 @@
+package edu.harvard.iq.dataverse;
+
+/**
+ * An email waiting in the outbox (the emailoutbox table) to be sent; see
+ * {@link EmailOutboxServiceBean}.
+ */
+public class EmailOutboxMessage {
+
+    private final Long id;
+    private final String recipient;
+    private final String subject;
+    private final String body;
+    private final boolean html;
+    private final String digestKey;
+    private final int attempts;
+
+    /**
+     * @param digestKey the messages to the same recipient with the same key
+     * (e.g. the type of notification) can be sent together, as a digest; null
+     * if the message is to be sent on its own.
+     */
+    public EmailOutboxMessage(Long id, String recipient, String subject, String body, boolean html, String digestKey,
+            int attempts) {
+        this.id = id;
+        this.recipient = recipient;
+        this.subject = subject;
+        this.body = body;
+        this.html = html;
+        this.digestKey = digestKey;
+        this.attempts = attempts;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getRecipient() {
+        return recipient;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    /**
+     * @return the text of the message, without the closing (added when it is
+     * sent, once per digest).
+     */
+    public String getBody() {
+        return body;
+    }
+
+    public boolean isHtml() {
+        return html;
+    }
+
+    public String getDigestKey() {
+        return digestKey;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+}
@@ -0,0 +1,126 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.util.BundleUtil;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+
+/**
+ * Sends a batch of messages from the outbox over a single connection to the
+ * mail server; the messages to the same recipient with the same digest key
+ * as a single digest.
+ */
+public class EmailOutboxSender {
+
+    private static final Logger logger = Logger.getLogger(EmailOutboxSender.class.getCanonicalName());
+
+    private static final String charset = "UTF-8";
+
+    private final Session session;
+    private final InternetAddress from;
+    private final String closing;
+    private final String htmlClosing;
+
+    /**
+     * @param closing added to the end of the plain text messages (and
+     * digests); {@code htmlClosing}, to those in HTML.
+     */
+    public EmailOutboxSender(Session session, InternetAddress from, String closing, String htmlClosing) {
+        this.session = session;
+        this.from = from;
+        this.closing = closing;
+        this.htmlClosing = htmlClosing;
+    }
+
+    /**
+     * @return the messages that could not be sent, with the reason why.
+     */
+    public Map<EmailOutboxMessage, MessagingException> send(List<EmailOutboxMessage> messages) {
+        Map<EmailOutboxMessage, MessagingException> failed = new LinkedHashMap<>();
+        if (messages.isEmpty()) {
+            return failed;
+        }
+        Transport transport;
+        try {
+            transport = session.getTransport("smtp");
+            transport.connect();
+        } catch (MessagingException ex) {
+            messages.forEach(message -> failed.put(message, ex));
+            return failed;
+        }
+        try {
+            for (List<EmailOutboxMessage> group : coalesce(messages)) {
+                try {
+                    if (!transport.isConnected()) {
+                        transport.connect();
+                    }
+                    MimeMessage msg = compose(group);
+                    transport.sendMessage(msg, msg.getAllRecipients());
+                } catch (MessagingException ex) {
+                    group.forEach(message -> failed.put(message, ex));
+                }
+            }
+        } finally {
+            try {
+                transport.close();
+            } catch (MessagingException ex) {
+                logger.log(Level.FINE, "Could not close the connection to the mail server", ex);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * @return the messages, grouped by recipient and digest key (each of
+     * those without a key in a group of its own); in the order of their
+     * first messages.
+     */
+    static List<List<EmailOutboxMessage>> coalesce(List<EmailOutboxMessage> messages) {
+        Map<String, List<EmailOutboxMessage>> groups = new LinkedHashMap<>();
+        for (EmailOutboxMessage message : messages) {
+            String key = message.getDigestKey() == null
+                    ? "#" + message.getId()
+                    : message.getRecipient().toLowerCase(Locale.ROOT) + " " + message.getDigestKey() + " " + message.isHtml();
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(message);
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    MimeMessage compose(List<EmailOutboxMessage> group) throws MessagingException {
+        EmailOutboxMessage first = group.get(0);
+        String subject = first.getSubject();
+        String body = first.getBody();
+        if (group.size() > 1) {
+            subject = BundleUtil.getStringFromBundle("notification.email.digest.subject",
+                    List.of(subject, String.valueOf(group.size() - 1)));
+            body = group.stream().map(EmailOutboxMessage::getBody)
+                    .collect(Collectors.joining(first.isHtml() ? "<br><hr><br>" : "\n\n----------\n\n"));
+        }
+        body += first.isHtml() ? htmlClosing : closing;
+
+        MimeMessage msg = new MimeMessage(session);
+        msg.setFrom(from);
+        msg.setSentDate(new Date());
+        msg.setRecipients(Message.RecipientType.TO, InternetAddress.parse(first.getRecipient()));
+        msg.setSubject(subject, charset);
+        if (first.isHtml()) {
+            msg.setText(body, charset, "html");
+        } else {
+            msg.setText(body, charset);
+        }
+        return msg;
+    }
+}
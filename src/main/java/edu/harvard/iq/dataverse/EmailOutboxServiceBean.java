@@ -0,0 +1,217 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.branding.BrandingUtil;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.BundleUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.DependsOn;
+import jakarta.ejb.EJB;
+import jakarta.ejb.SessionContext;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.Timeout;
+import jakarta.ejb.TimerConfig;
+import jakarta.ejb.TimerService;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * The outbox of the notification emails: they are written to the emailoutbox
+ * table in the transaction that creates the notifications, instead of being
+ * sent there and then; and sent from there in the background, every
+ * {@link JvmSettings#MAIL_OUTBOX_INTERVAL} seconds, a batch at a time, over a
+ * single connection to the mail server. The notifications of the types listed
+ * in {@link JvmSettings#MAIL_OUTBOX_DIGEST_TYPES} to the same recipient, in
+ * the same batch, are sent as a single digest.
+ *
+ * The messages that can't be sent are tried again later, waiting twice as
+ * long each time, up to {@link JvmSettings#MAIL_OUTBOX_MAX_ATTEMPTS} times.
+ * The batches are claimed (for {@link #CLAIM_TIMEOUT} seconds) before they
+ * are sent, so that several servers can send from the same outbox; but no
+ * transaction, nor lock, is held while the mail server is waited on.
+ */
+@Singleton
+@Startup
+@DependsOn("StartupFlywayMigrator")
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class EmailOutboxServiceBean {
+
+    private static final Logger logger = Logger.getLogger(EmailOutboxServiceBean.class.getCanonicalName());
+
+    private static final long FIRST_RETRY_DELAY = 60;
+    private static final long MAX_RETRY_DELAY = 3600;
+    // how long a batch is left to a server, before the others may take it over
+    // (should it stop on the way):
+    private static final long CLAIM_TIMEOUT = 900;
+
+    @PersistenceContext(unitName = "VDCNet-ejbPU")
+    EntityManager em;
+    @Resource
+    SessionContext sessionContext;
+    @Resource
+    TimerService timerService;
+    @EJB
+    MailServiceBean mailService;
+
+    @Inject
+    @Named("mail/systemSession")
+    Session session;
+
+    private Set<String> digestTypes;
+
+    @PostConstruct
+    public void init() {
+        digestTypes = Arrays.stream(JvmSettings.MAIL_OUTBOX_DIGEST_TYPES.lookupOptional(String[].class)
+                .orElse(new String[] { UserNotification.Type.GRANTFILEACCESS.name(), UserNotification.Type.REJECTFILEACCESS.name() }))
+                .map(String::trim).collect(Collectors.toSet());
+        long interval = 1000 * Math.max(1, JvmSettings.MAIL_OUTBOX_INTERVAL.lookupOptional(Long.class).orElse(5L));
+        timerService.createIntervalTimer(interval, interval, new TimerConfig(null, false));
+    }
+
+    /**
+     * Adds the message to the outbox, in the transaction of the caller; it
+     * is sent once that is committed.
+     *
+     * @param messageText without the closing, added when it is sent.
+     * @param type of the notification; the messages of some types are sent
+     * together, as digests.
+     */
+    public void enqueue(String to, String subject, String messageText, boolean isHtmlContent, UserNotification.Type type) {
+        em.createNativeQuery("INSERT INTO emailoutbox (recipient, subject, body, html, digestkey, createtime, nextattempttime)"
+                + " VALUES (?1, ?2, ?3, ?4, ?5, now(), now())")
+                .setParameter(1, to)
+                .setParameter(2, subject)
+                .setParameter(3, messageText)
+                .setParameter(4, isHtmlContent)
+                .setParameter(5, type != null && digestTypes.contains(type.name()) ? type.name() : null)
+                .executeUpdate();
+    }
+
+    @Timeout
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public synchronized void sendAll() {
+        Optional<InternetAddress> from = mailService.getSystemAddress();
+        if (from.isEmpty()) {
+            return;
+        }
+        int batchSize = Math.max(1, JvmSettings.MAIL_OUTBOX_BATCH_SIZE.lookupOptional(Integer.class).orElse(50));
+        EmailOutboxServiceBean self = sessionContext.getBusinessObject(EmailOutboxServiceBean.class);
+        while (self.sendBatch(from.get(), batchSize) == batchSize) {
+            // (until the outbox is empty; the messages that couldn't be
+            // sent are only tried again later)
+        }
+    }
+
+    /**
+     * Claims a batch of messages, sends them, and then deletes them (or
+     * records why they couldn't be sent).
+     *
+     * @return the number of messages sent, or tried.
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public int sendBatch(InternetAddress from, int batchSize) {
+        EmailOutboxServiceBean self = sessionContext.getBusinessObject(EmailOutboxServiceBean.class);
+        List<EmailOutboxMessage> messages = self.claimBatch(batchSize);
+        if (messages.isEmpty()) {
+            return 0;
+        }
+
+        List<String> closingParams = List.of(BrandingUtil.getSupportTeamEmailAddress(from), BrandingUtil.getSupportTeamName(from));
+        EmailOutboxSender sender = new EmailOutboxSender(session, from,
+                BundleUtil.getStringFromBundle("notification.email.closing", closingParams),
+                BundleUtil.getStringFromBundle("notification.email.closing.html", closingParams));
+        Map<EmailOutboxMessage, MessagingException> failed = sender.send(messages);
+
+        self.finishBatch(messages, failed);
+        logger.fine("Sent " + (messages.size() - failed.size()) + " of " + messages.size() + " emails from the outbox");
+        return messages.size();
+    }
+
+    /**
+     * Locks a batch of the messages due, and puts them off for
+     * {@link #CLAIM_TIMEOUT} seconds; so that the other servers leave them
+     * alone, while this one sends them.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public List<EmailOutboxMessage> claimBatch(int batchSize) {
+        List<Object[]> rows = em.createNativeQuery("SELECT id, recipient, subject, body, html, digestkey, attempts FROM emailoutbox"
+                + " WHERE nextattempttime <= now() ORDER BY id LIMIT ?1 FOR UPDATE SKIP LOCKED")
+                .setParameter(1, batchSize)
+                .getResultList();
+        List<EmailOutboxMessage> messages = new ArrayList<>();
+        for (Object[] row : rows) {
+            messages.add(new EmailOutboxMessage(((Number) row[0]).longValue(), (String) row[1], (String) row[2], (String) row[3],
+                    (Boolean) row[4], (String) row[5], ((Number) row[6]).intValue()));
+        }
+        if (!messages.isEmpty()) {
+            em.createNativeQuery("UPDATE emailoutbox SET nextattempttime = now() + INTERVAL '" + CLAIM_TIMEOUT + " seconds'"
+                    + " WHERE id IN (" + messages.stream().map(message -> String.valueOf(message.getId())).collect(Collectors.joining(",")) + ")")
+                    .executeUpdate();
+        }
+        return messages;
+    }
+
+    /**
+     * Deletes the messages of a batch claimed, but those that could not be
+     * sent: they are tried again later, or given up on.
+     *
+     * @param failed the messages that could not be sent, with why.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void finishBatch(List<EmailOutboxMessage> messages, Map<EmailOutboxMessage, MessagingException> failed) {
+        int maxAttempts = JvmSettings.MAIL_OUTBOX_MAX_ATTEMPTS.lookupOptional(Integer.class).orElse(10);
+        List<Long> sent = new ArrayList<>();
+        for (EmailOutboxMessage message : messages) {
+            MessagingException ex = failed.get(message);
+            if (ex == null) {
+                sent.add(message.getId());
+                continue;
+            }
+            int attempts = message.getAttempts() + 1;
+            if (attempts >= maxAttempts) {
+                logger.warning("Giving up on sending email " + message.getId() + " to " + message.getRecipient()
+                        + " after " + attempts + " attempts: " + ex.getMessage());
+            } else {
+                logger.fine("Could not send email " + message.getId() + " to " + message.getRecipient() + ": " + ex.getMessage());
+            }
+            em.createNativeQuery("UPDATE emailoutbox SET attempts = ?2, lasterror = ?3,"
+                    + " nextattempttime = " + (attempts >= maxAttempts ? "NULL" : "now() + INTERVAL '" + getRetryDelay(attempts) + " seconds'")
+                    + " WHERE id = ?1")
+                    .setParameter(1, message.getId())
+                    .setParameter(2, attempts)
+                    .setParameter(3, String.valueOf(ex.getMessage()))
+                    .executeUpdate();
+        }
+        if (!sent.isEmpty()) {
+            em.createNativeQuery("DELETE FROM emailoutbox WHERE id IN (" + sent.stream().map(String::valueOf).collect(Collectors.joining(",")) + ")")
+                    .executeUpdate();
+        }
+    }
+
+    /**
+     * @return how long (in seconds) to wait before trying to send a message
+     * again, after this many attempts.
+     */
+    static long getRetryDelay(int attempts) {
+        return Math.min(MAX_RETRY_DELAY, FIRST_RETRY_DELAY << Math.min(attempts - 1, 20));
+    }
+}
@@ -38,6 +38,8 @@ import jakarta.persistence.ManyToOne;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.OrderBy;
 import jakarta.persistence.Table;
+import org.eclipse.persistence.annotations.BatchFetch;
+import org.eclipse.persistence.annotations.BatchFetchType;
 import jakarta.persistence.Transient;
 import jakarta.persistence.Version;
 
@@ -101,6 +103,7 @@ public class FileMetadata implements Serializable {
     
     @ManyToOne
     @JoinColumn(nullable=false)
+    @BatchFetch(BatchFetchType.IN)
     private DataFile dataFile;
 
     /**
@@ -203,6 +206,7 @@ public class FileMetadata implements Serializable {
     @ManyToMany
     @JoinTable(indexes = {@Index(columnList="filecategories_id"),@Index(columnList="filemetadatas_id")})
     @OrderBy("name")
+    @BatchFetch(BatchFetchType.IN)
     private List<DataFileCategory> fileCategories;
     
     public List<DataFileCategory> getCategories() {
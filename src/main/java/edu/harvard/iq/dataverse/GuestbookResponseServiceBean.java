@@ -9,8 +9,12 @@ import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.authorization.users.User;
 import edu.harvard.iq.dataverse.externaltools.ExternalTool;
 import edu.harvard.iq.dataverse.util.StringUtil;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.time.LocalDate;
 import java.util.ArrayList;
@@ -44,6 +48,10 @@ public class GuestbookResponseServiceBean {
     
     @EJB
     DataverseServiceBean dataverseService;
+    @EJB
+    DownloadCountServiceBean downloadCountService;
+    @EJB
+    DownloadEventServiceBean downloadEventService;
     
     // The query below is used for retrieving guestbook responses used to download 
     // the collected data, in CSV format, from the manage-guestbooks and 
@@ -99,7 +107,7 @@ public class GuestbookResponseServiceBean {
     private static SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("MM/d/yyyy");
     
     @PersistenceContext(unitName = "VDCNet-ejbPU")
-    private EntityManager em;
+    EntityManager em;
 
     public List<GuestbookResponse> findAll() {
         return em.createQuery("select object(o) from GuestbookResponse as o order by o.responseTime desc", GuestbookResponse.class).getResultList();
@@ -129,30 +137,63 @@ public class GuestbookResponseServiceBean {
        This method is used for streaming downloads of guestbook responses, in 
        CSV format, both for individual guestbooks, and for entire dataverses
        (with guestbookId = null).
+       The responses are read a page at a time, newest first, along with the
+       answers to their custom questions (in the same order, so that the two
+       can be merged as they are written out); so that the memory used doesn't
+       depend on the number of responses. Runs outside of a transaction, as
+       the export of a large collection can take longer than the transaction
+       timeout.
      */
     private static final String SEPARATOR = ",";
     private static final String NEWLINE = "\n";
+    static final int STREAMING_PAGE_SIZE = 1000;
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public void streamResponsesByDataverseIdAndGuestbookId(OutputStream out, Long dataverseId, Long guestbookId) throws IOException {
         
-        // Before we do anything else, create a map of all the custom question responses
-        // available for this dataverse (or, this individual guestbook within the
-        // dataverse; see the comment below, how it's saving us a metric f-ton
-        // of queries now) -- L.A. 
-        
-        Map<Integer, Object> customQandAs = mapCustomQuestionAnswersAsStrings(dataverseId, guestbookId);
+        // (the titles, one per dataset in the dataverse, rather than one per
+        // response, are looked up once) 
         Map<Integer, String> datasetTitles = mapDatasetTitles(dataverseId);
-                
-        List<Object[]> guestbookResults = getGuestbookResults( dataverseId,  guestbookId );
+        
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
         // the CSV header:
-        out.write("Guestbook, Dataset, Dataset PID, Date, Type, File Name, File Id, File PID, User Name, Email, Institution, Position, Custom Questions\n".getBytes());
-        for (Object[] result : guestbookResults) {
-            StringBuilder sb = convertGuestbookResponsesToCSV(customQandAs, datasetTitles, result);
-            out.write(sb.toString().getBytes());
-            out.flush();
-        }
+        writer.write("Guestbook, Dataset, Dataset PID, Date, Type, File Name, File Id, File PID, User Name, Email, Institution, Position, Custom Questions\n");
+        
+        Integer beforeResponseId = null;
+        List<Object[]> guestbookResults;
+        do {
+            guestbookResults = getGuestbookResults(dataverseId, guestbookId, beforeResponseId, STREAMING_PAGE_SIZE);
+            if (guestbookResults.isEmpty()) {
+                break;
+            }
+            Integer newestResponseId = ((Number) guestbookResults.get(0)[0]).intValue();
+            Integer oldestResponseId = ((Number) guestbookResults.get(guestbookResults.size() - 1)[0]).intValue();
+            Iterator<Object[]> customAnswers = getCustomQuestionAnswers(dataverseId, guestbookId, oldestResponseId, newestResponseId).iterator();
+            beforeResponseId = oldestResponseId;
+            
+            Object[] customAnswer = customAnswers.hasNext() ? customAnswers.next() : null;
+            for (Object[] result : guestbookResults) {
+                int guestbookResponseId = ((Number) result[0]).intValue();
+                writeGuestbookResponseAsCSV(writer, datasetTitles, result);
+                // the answers are in the same (descending) order of responses: 
+                while (customAnswer != null && ((Number) customAnswer[2]).intValue() >= guestbookResponseId) {
+                    if (((Number) customAnswer[2]).intValue() == guestbookResponseId) {
+                        writeCustomQuestionAnswerAsCSV(writer, customAnswer);
+                    }
+                    customAnswer = customAnswers.hasNext() ? customAnswers.next() : null;
+                }
+                writer.write(NEWLINE);
+            }
+            writer.flush();
+        } while (guestbookResults.size() == STREAMING_PAGE_SIZE);
+        writer.flush();
     }
     
-    public List<Object[]> getGuestbookResults(Long dataverseId, Long guestbookId ){
+    /**
+     * @param beforeResponseId only the responses older (with lower ids) than
+     * this one; null for the newest.
+     * @return up to {@code limit} responses, newest first.
+     */
+    public List<Object[]> getGuestbookResults(Long dataverseId, Long guestbookId, Integer beforeResponseId, int limit) {
         
         String queryString = BASE_QUERY_STRING_FOR_DOWNLOAD_AS_CSV
                 + " and  o.owner_id = " 
@@ -162,87 +203,106 @@ public class GuestbookResponseServiceBean {
             queryString+= (" and r.guestbook_id = " + guestbookId.toString());
         }
         
-        queryString += " ORDER by r.id DESC;";
+        if (beforeResponseId != null) {
+            queryString += (" and r.id < " + beforeResponseId);
+        }
+        
+        queryString += " ORDER by r.id DESC LIMIT " + limit + ";";
         logger.fine("stream responses query: " + queryString);
         
         return  em.createNativeQuery(queryString).getResultList();
         
     }
     
-    public StringBuilder convertGuestbookResponsesToCSV ( Map<Integer, Object> customQandAs, Map<Integer, String> datasetTitles, Object[] result) throws IOException {
-
-            Integer guestbookResponseId = (Integer)result[0];
-            
-            StringBuilder sb = new StringBuilder();
+    /**
+     * @return the answers to the custom questions of the responses with ids
+     * from {@code fromResponseId} to {@code toResponseId} (inclusive); by
+     * response, newest first, and in the order of the questions.
+     */
+    private List<Object[]> getCustomQuestionAnswers(Long dataverseId, Long guestbookId, Integer fromResponseId, Integer toResponseId) {
+        String cqString = BASE_QUERY_CUSTOM_QUESTION_ANSWERS
+                + "and o.owner_id = " + dataverseId
+                + " and g.id >= " + fromResponseId
+                + " and g.id <= " + toResponseId;
+        
+        if (guestbookId != null) {
+            cqString += ( " and g.guestbook_id = " + guestbookId);
+        }
+        
+        cqString += " order by g.id desc, q.id;";
+        logger.fine("custom questions query: " + cqString);
+        
+        return em.createNativeQuery(cqString).getResultList();
+    }
+    
+    void writeGuestbookResponseAsCSV(Writer writer, Map<Integer, String> datasetTitles, Object[] result) throws IOException {
             
             // Since we are formatting the output as comma-separated values, 
             // we should go to the trouble of removing any commas from the 
             // string fields, or the structure of the file will be broken. -- L.A.
             
             // Guestbook name: 
-            sb.append(StringEscapeUtils.escapeCsv((String)result[1]));
-            sb.append(SEPARATOR);
+            writer.append(StringEscapeUtils.escapeCsv((String)result[1]));
+            writer.append(SEPARATOR);
 
             
             // Dataset name: 
             Integer datasetId = (Integer) result[2];
             String datasetTitle = datasetTitles.get(datasetId);
-            sb.append(datasetTitle == null ? "" : StringEscapeUtils.escapeCsv(datasetTitle));
-            sb.append(SEPARATOR);
+            writer.append(datasetTitle == null ? "" : StringEscapeUtils.escapeCsv(datasetTitle));
+            writer.append(SEPARATOR);
             
             // Dataset persistent identifier: 
-            sb.append(formatPersistentIdentifier((String)result[11], (String)result[12], (String)result[13]));
-            sb.append(SEPARATOR);
+            writer.append(formatPersistentIdentifier((String)result[11], (String)result[12], (String)result[13]));
+            writer.append(SEPARATOR);
             
             if (result[3] != null) {
-                sb.append(DATE_FORMAT.format((Date) result[3]));
+                writer.append(DATE_FORMAT.format((Date) result[3]));
             } else {
-                sb.append("N/A");
+                writer.append("N/A");
             }
-            sb.append(SEPARATOR);
+            writer.append(SEPARATOR);
             
             // type: (download, etc.)
-            sb.append(result[4]);
-            sb.append(SEPARATOR);
+            writer.append(String.valueOf(result[4]));
+            writer.append(SEPARATOR);
 
             // file name: 
-            sb.append(StringEscapeUtils.escapeCsv((String)result[5]));
-            sb.append(SEPARATOR);
+            writer.append(StringEscapeUtils.escapeCsv((String)result[5]));
+            writer.append(SEPARATOR);
 
             // file id (numeric):
-            sb.append(result[6] == null ? "" : result[6]);
-            sb.append(SEPARATOR);
+            writer.append(result[6] == null ? "" : result[6].toString());
+            writer.append(SEPARATOR);
             
             // persistent id of the file (if available):
             // Dataset persistent identifier: 
-            sb.append(formatPersistentIdentifier((String)result[14], (String)result[15], (String)result[16]));
-            sb.append(SEPARATOR);
+            writer.append(formatPersistentIdentifier((String)result[14], (String)result[15], (String)result[16]));
+            writer.append(SEPARATOR);
             
             // name supplied in the guestbook response: 
-            sb.append(result[7] == null ? "" : StringEscapeUtils.escapeCsv((String)result[7]));
-            sb.append(SEPARATOR);
+            writer.append(result[7] == null ? "" : StringEscapeUtils.escapeCsv((String)result[7]));
+            writer.append(SEPARATOR);
             
             // email: 
-            sb.append(result[8] == null ? "" : StringEscapeUtils.escapeCsv((String)result[8]));           
-            sb.append(SEPARATOR);
+            writer.append(result[8] == null ? "" : StringEscapeUtils.escapeCsv((String)result[8]));           
+            writer.append(SEPARATOR);
             
             // institution:
-            sb.append(result[9] == null ? "" : StringEscapeUtils.escapeCsv((String)result[9]));
-            sb.append(SEPARATOR);
+            writer.append(result[9] == null ? "" : StringEscapeUtils.escapeCsv((String)result[9]));
+            writer.append(SEPARATOR);
             
             // position: 
-            sb.append(result[10] == null ? "" : StringEscapeUtils.escapeCsv((String)result[10]));
-            
-            // Finally, custom questions and answers, if present:
+            writer.append(result[10] == null ? "" : StringEscapeUtils.escapeCsv((String)result[10]));
             
-            
-            if (customQandAs.containsKey(guestbookResponseId)) {
-                sb.append(customQandAs.get(guestbookResponseId)); 
-            } 
-
-            sb.append(NEWLINE);
-        return sb;
-        
+            // (the custom questions and answers, if present, follow)
+    }
+    
+    private void writeCustomQuestionAnswerAsCSV(Writer writer, Object[] answer) throws IOException {
+        writer.append(SEPARATOR);
+        writer.append(StringEscapeUtils.escapeCsv((String) answer[0]));
+        writer.append(SEPARATOR);
+        writer.append(answer[1] == null ? "" : StringEscapeUtils.escapeCsv((String) answer[1]));
     }
     
     
@@ -354,14 +414,10 @@ public class GuestbookResponseServiceBean {
        "normal" guestbook responses, retrieved from GuestbookResponse table. -- L.A. 
     */
     private Map<Integer, Object> mapCustomQuestionAnswersAsLists(Long dataverseId, Long guestbookId, Integer firstResponse, Integer lastResponse) {
-        return selectCustomQuestionAnswers(dataverseId, guestbookId, false, firstResponse, lastResponse);
-    }
-    
-    public Map<Integer, Object> mapCustomQuestionAnswersAsStrings(Long dataverseId, Long guestbookId) {
-        return selectCustomQuestionAnswers(dataverseId, guestbookId, true, null, null);
+        return selectCustomQuestionAnswers(dataverseId, guestbookId, firstResponse, lastResponse);
     }
     
-    private Map<Integer, Object> selectCustomQuestionAnswers(Long dataverseId, Long guestbookId, boolean asString, Integer lastResponse, Integer firstResponse) {
+    private Map<Integer, Object> selectCustomQuestionAnswers(Long dataverseId, Long guestbookId, Integer lastResponse, Integer firstResponse) {
         Map<Integer, Object> ret = new HashMap<>();
 
         int count = 0;
@@ -393,26 +449,15 @@ public class GuestbookResponseServiceBean {
             for (Object[] response : customResponses) {
                 Integer responseId = (Integer) response[2];
 
-                if (asString) {
-                    // as combined strings of comma-separated question and answer values
-                    //assuming the strings are only being created for writing out to csv which seems to be the case
-                    String qa = SEPARATOR + StringEscapeUtils.escapeCsv((String)response[0]) + SEPARATOR + (response[1] == null ? "" : StringEscapeUtils.escapeCsv((String)response[1]));                   
-                    if (ret.containsKey(responseId)) {
-                        ret.put(responseId, ret.get(responseId) + qa);
-                    } else {
-                        ret.put(responseId, qa);
-                    }
-                } else {
-                    // as a list of Object[]s - this is for display on the custom-responses page
-                    
-                    if (!ret.containsKey(responseId)) {
-                        ret.put(responseId, new ArrayList<>());
-                    }
-                    if(response[1] != null){
-                         response[1]=((String)response[1]).replaceAll("(\r\n|\n)", "<br />");
-                    }
-                    ((List) ret.get(responseId)).add(response);
+                // as a list of Object[]s - this is for display on the custom-responses page
+                
+                if (!ret.containsKey(responseId)) {
+                    ret.put(responseId, new ArrayList<>());
+                }
+                if(response[1] != null){
+                     response[1]=((String)response[1]).replaceAll("(\r\n|\n)", "<br />");
                 }
+                ((List) ret.get(responseId)).add(response);
 
                 count++;
             }
@@ -899,9 +944,22 @@ public class GuestbookResponseServiceBean {
         return em.find(GuestbookResponse.class, id);
     }
 
+    /**
+     * Saves the response; the responses of downloads are written behind the
+     * request (see {@link DownloadEventServiceBean}), unless too many are
+     * waiting to be written. The responses of access requests are persisted
+     * here, as the requests refer to them. The downloads are counted once
+     * their responses are persisted: those written behind the request, once
+     * they are written (some may never be, see the quarantine of the
+     * {@link DownloadEventServiceBean}).
+     */
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public void save(GuestbookResponse guestbookResponse) {
-        em.persist(guestbookResponse);
+        if (guestbookResponse.getEventType() == null || GuestbookResponse.ACCESS_REQUEST.equals(guestbookResponse.getEventType())
+                || !downloadEventService.enqueue(guestbookResponse)) {
+            em.persist(guestbookResponse);
+            downloadCountService.recordDownload(guestbookResponse);
+        }
     }
     
     
@@ -914,8 +972,8 @@ public class GuestbookResponseServiceBean {
         
     public Long getDownloadCountByDataFileId(Long dataFileId) {
         // datafile id is null, will return 0
-        Query query = em.createNativeQuery("select count(o.id) from GuestbookResponse  o  where o.datafile_id  = " + dataFileId + " and eventtype != '" + GuestbookResponse.ACCESS_REQUEST +"'");
-        return (Long) query.getSingleResult();
+        // (counted as the responses are saved; see DownloadCountServiceBean)
+        return downloadCountService.getFileDownloadCount(dataFileId);
     }
     
     public Long getDownloadCountByDatasetId(Long datasetId) {
@@ -924,13 +982,7 @@ public class GuestbookResponseServiceBean {
     
     public Long getDownloadCountByDatasetId(Long datasetId, LocalDate date) {
         // dataset id is null, will return 0        
-        Query query;
-        if(date != null) {
-            query = em.createNativeQuery("select count(o.id) from GuestbookResponse  o  where o.dataset_id  = " + datasetId + " and responsetime < '" + date.toString() + "' and eventtype != '" + GuestbookResponse.ACCESS_REQUEST +"'");
-        }else {
-            query = em.createNativeQuery("select count(o.id) from GuestbookResponse  o  where o.dataset_id  = " + datasetId+ " and eventtype != '" + GuestbookResponse.ACCESS_REQUEST +"'");
-        }
-        return (Long) query.getSingleResult();
+        return downloadCountService.getDatasetDownloadCount(datasetId, date);
     }    
 
     public Long getTotalDownloadCount() {
@@ -73,6 +73,8 @@ public class MailServiceBean implements java.io.Serializable {
     GroupServiceBean groupService;
     @EJB
     ConfirmEmailServiceBean confirmEmailService;
+    @EJB
+    EmailOutboxServiceBean emailOutboxService;
 
     private static final Logger logger = Logger.getLogger(MailServiceBean.class.getCanonicalName());
 
@@ -274,8 +276,36 @@ public class MailServiceBean implements java.io.Serializable {
     }
 
     public Boolean sendNotificationEmail(UserNotification notification, String comment, AuthenticatedUser requestor, boolean isHtmlContent){
+        String[] email = composeNotificationEmail(notification, comment, requestor);
+        return email != null && sendSystemEmail(email[0], email[1], email[2], isHtmlContent);
+    }
 
-        boolean retval = false;
+    /**
+     * Same as {@link #sendNotificationEmail(UserNotification, String, AuthenticatedUser, boolean)};
+     * except that the email is only added to the outbox, in the current
+     * transaction, and sent in the background (see {@link EmailOutboxServiceBean}).
+     *
+     * @return true if added to the outbox; false if it can't be sent (no
+     * system address, no email address for the user...)
+     */
+    public boolean queueNotificationEmail(UserNotification notification, String comment, AuthenticatedUser requestor, boolean isHtmlContent) {
+        if (getSystemAddress().isEmpty()) {
+            logger.fine(() -> "Skipping " + notification.getType() + " notification, because no system address has been set.");
+            return false;
+        }
+        String[] email = composeNotificationEmail(notification, comment, requestor);
+        if (email == null) {
+            return false;
+        }
+        emailOutboxService.enqueue(email[0], email[1], email[2], isHtmlContent, notification.getType());
+        return true;
+    }
+
+    /**
+     * @return the address, subject and text of the email; null if there
+     * isn't any for this notification.
+     */
+    private String[] composeNotificationEmail(UserNotification notification, String comment, AuthenticatedUser requestor) {
         String emailAddress = getUserEmailAddress(notification);
         if (emailAddress != null){
            Object objectOfNotification =  getObjectOfNotification(notification);
@@ -283,7 +313,7 @@ public class MailServiceBean implements java.io.Serializable {
                String messageText = getMessageTextBasedOnNotification(notification, objectOfNotification, comment, requestor);
                String subjectText = MailUtil.getSubjectTextBasedOnNotification(notification, objectOfNotification);
                if (!(messageText.isEmpty() || subjectText.isEmpty())){
-                   retval = sendSystemEmail(emailAddress, subjectText, messageText, isHtmlContent);
+                   return new String[] { emailAddress, subjectText, messageText };
                } else {
                    logger.warning("Skipping " + notification.getType() +  " notification, because couldn't get valid message");
                }
@@ -293,7 +323,7 @@ public class MailServiceBean implements java.io.Serializable {
         } else {
             logger.warning("Skipping " + notification.getType() +  " notification, because email address is null");
         }
-        return retval;
+        return null;
     }
 
     private String getDatasetManageFileAccessLink(DataFile datafile){
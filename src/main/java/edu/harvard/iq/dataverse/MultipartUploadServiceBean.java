@@ -0,0 +1,373 @@
+package edu.harvard.iq.dataverse;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.PartETag;
+import edu.harvard.iq.dataverse.dataaccess.S3AccessIO;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.DependsOn;
+import jakarta.ejb.SessionContext;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.Timeout;
+import jakarta.ejb.TimerConfig;
+import jakarta.ejb.TimerService;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.json.Json;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceException;
+import jakarta.persistence.Query;
+
+/**
+ * Keeps track of the multipart direct uploads to the S3 stores, from their
+ * start to their completion. The uploads, and the ETags of the parts uploaded,
+ * are kept in the database: so that the clients don't have to remember the
+ * ETags, and can resume an upload (after a crash, or once its urls have
+ * expired) with the parts not uploaded yet. The uploads left idle for
+ * {@link JvmSettings#FILES_MULTIPART_UPLOADS_MAX_IDLE} hours, and whose urls
+ * have expired, are aborted, so that their parts don't take up space in the
+ * store for good. They are claimed (for {@link #CLAIM_TIMEOUT} seconds)
+ * before they are aborted, so that several servers can share them; but no
+ * transaction, nor lock, is held while the store is waited on.
+ *
+ * The uploads started before they were tracked are still completed and
+ * aborted as they were, with the ETags sent by the clients.
+ */
+@Singleton
+@Startup
+@DependsOn("StartupFlywayMigrator")
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class MultipartUploadServiceBean {
+
+    private static final Logger logger = Logger.getLogger(MultipartUploadServiceBean.class.getCanonicalName());
+
+    // how often the idle uploads are looked for:
+    private static final long CLEANUP_INTERVAL = 60 * 60 * 1000L;
+    // the most idle uploads aborted at a time:
+    private static final int CLEANUP_BATCH_SIZE = 1000;
+    // how long idle uploads are left to a server, before the others may take
+    // them over (should it stop on the way):
+    private static final long CLAIM_TIMEOUT = 900;
+    // the most part ETags recorded by a single statement:
+    private static final int MAX_INSERT_ROWS = 1000;
+
+    @PersistenceContext(unitName = "VDCNet-ejbPU")
+    EntityManager em;
+    @Resource
+    SessionContext sessionContext;
+    @Resource
+    TimerService timerService;
+
+    /**
+     * A multipart upload in progress.
+     */
+    public record Session(long id, String uploadId, String globalId, String storageIdentifier, long fileSize, long partSize) {
+
+        public int getPartCount() {
+            return (int) ((fileSize + partSize - 1) / partSize);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        timerService.createIntervalTimer(CLEANUP_INTERVAL, CLEANUP_INTERVAL, new TimerConfig(null, false));
+    }
+
+    /**
+     * Starts a direct upload of a file of this size; tracked here, if the file
+     * is large enough to be uploaded in parts. The parts are as small as the
+     * store allows, for as many of them to be uploaded at the same time as
+     * possible (see {@link S3AccessIO#getUploadPartSize(long)}).
+     *
+     * @return the url(s) to upload the file to, as in
+     * {@link S3AccessIO#generateTemporaryS3UploadUrls}.
+     */
+    public JsonObjectBuilder startUpload(S3AccessIO<?> s3io, String globalId, String storageIdentifier, long fileSize) throws IOException {
+        if (!s3io.isMultipartUpload(fileSize)) {
+            return s3io.generateTemporaryS3UploadUrls(globalId, storageIdentifier, fileSize);
+        }
+        long partSize = s3io.getUploadPartSize(fileSize);
+        String uploadId = s3io.initiateMultipartUpload();
+        try {
+            em.createNativeQuery("INSERT INTO multipartupload (uploadid, globalid, storageidentifier, filesize, partsize, createtime, lastupdatetime,"
+                    + " urlexpirationtime) VALUES (?1, ?2, ?3, ?4, ?5, now(), now(), " + getUrlExpirationTime(s3io) + ")")
+                    .setParameter(1, uploadId)
+                    .setParameter(2, globalId)
+                    .setParameter(3, storageIdentifier)
+                    .setParameter(4, fileSize)
+                    .setParameter(5, partSize)
+                    .executeUpdate();
+        } catch (PersistenceException pe) {
+            // (not to leave an upload that would never be aborted)
+            abortQuietly(globalId, storageIdentifier, uploadId);
+            throw pe;
+        }
+        return s3io.generateTemporaryS3UploadPartUrls(globalId, storageIdentifier, uploadId, fileSize, partSize, Collections.emptySet());
+    }
+
+    /**
+     * @return the upload with this id, of a file with this storage identifier
+     * to the dataset with this global id; or null if it isn't tracked.
+     */
+    public Session findSession(String globalId, String storageIdentifier, String uploadId) {
+        List<Object[]> rows = em.createNativeQuery("SELECT id, uploadid, globalid, storageidentifier, filesize, partsize FROM multipartupload"
+                + " WHERE uploadid = ?1 AND globalid = ?2 AND storageidentifier = ?3")
+                .setParameter(1, uploadId)
+                .setParameter(2, globalId)
+                .setParameter(3, storageIdentifier)
+                .getResultList();
+        if (rows.isEmpty()) {
+            return null;
+        }
+        Object[] row = rows.get(0);
+        return new Session(((Number) row[0]).longValue(), (String) row[1], (String) row[2], (String) row[3],
+                ((Number) row[4]).longValue(), ((Number) row[5]).longValue());
+    }
+
+    /**
+     * Records the ETags of the parts uploaded (by part number), as told by the
+     * client once each part is uploaded.
+     *
+     * @return false if the upload isn't tracked.
+     * @throws IllegalArgumentException if there are no such parts in the upload.
+     */
+    public boolean recordParts(String globalId, String storageIdentifier, String uploadId, Map<Integer, String> eTags) {
+        Session session = findSession(globalId, storageIdentifier, uploadId);
+        if (session == null) {
+            return false;
+        }
+        List<Map.Entry<Integer, String>> parts = new ArrayList<>(eTags.entrySet());
+        for (Map.Entry<Integer, String> part : parts) {
+            if (part.getKey() < 1 || part.getKey() > session.getPartCount() || part.getValue() == null) {
+                throw new IllegalArgumentException("No part " + part.getKey() + " in the upload " + uploadId
+                        + " (of " + session.getPartCount() + " parts), or no ETag");
+            }
+        }
+        for (int from = 0; from < parts.size(); from += MAX_INSERT_ROWS) {
+            List<Map.Entry<Integer, String>> chunk = parts.subList(from, Math.min(parts.size(), from + MAX_INSERT_ROWS));
+            StringBuilder sql = new StringBuilder("INSERT INTO multipartuploadpart (multipartupload_id, partnumber, etag) VALUES ");
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "" : ", ").append("(").append(session.id()).append(", ?").append(2 * i + 1).append(", ?").append(2 * i + 2).append(")");
+            }
+            sql.append(" ON CONFLICT (multipartupload_id, partnumber) DO UPDATE SET etag = EXCLUDED.etag");
+            Query query = em.createNativeQuery(sql.toString());
+            for (int i = 0; i < chunk.size(); i++) {
+                query.setParameter(2 * i + 1, chunk.get(i).getKey());
+                query.setParameter(2 * i + 2, chunk.get(i).getValue());
+            }
+            query.executeUpdate();
+        }
+        touch(session);
+        return true;
+    }
+
+    /**
+     * Resumes an upload: with the parts uploaded so far, and the urls (valid
+     * anew) to upload the others to.
+     *
+     * @return as {@link #startUpload}, with the "uploadedParts" as well; or
+     * null if the upload isn't tracked.
+     */
+    public JsonObjectBuilder resumeUpload(String globalId, String storageIdentifier, String uploadId) throws IOException {
+        Session session = findSession(globalId, storageIdentifier, uploadId);
+        if (session == null) {
+            return null;
+        }
+        S3AccessIO<DataFile> s3io = S3AccessIO.getMultipartUploadAccess(globalId, storageIdentifier);
+        Map<Integer, String> uploadedParts = getRecordedParts(session);
+        uploadedParts.putAll(listUploadedParts(session, s3io));
+
+        JsonObjectBuilder response = s3io.generateTemporaryS3UploadPartUrls(globalId, storageIdentifier, uploadId,
+                session.fileSize(), session.partSize(), uploadedParts.keySet());
+        JsonObjectBuilder parts = Json.createObjectBuilder();
+        uploadedParts.forEach((partNumber, eTag) -> parts.add(Integer.toString(partNumber), eTag));
+        response.add("uploadedParts", parts);
+        response.add("storageIdentifier", storageIdentifier);
+        em.createNativeQuery("UPDATE multipartupload SET lastupdatetime = now(),"
+                + " urlexpirationtime = GREATEST(urlexpirationtime, " + getUrlExpirationTime(s3io) + ") WHERE id = ?1")
+                .setParameter(1, session.id())
+                .executeUpdate();
+        return response;
+    }
+
+    /**
+     * Completes an upload: with the ETags sent by the client (by part number),
+     * and those of the other parts, as listed by the store or recorded.
+     *
+     * @return the numbers of the parts still missing, for the upload to be
+     * resumed with; empty once the upload is completed.
+     */
+    public List<Integer> completeUpload(String globalId, String storageIdentifier, String uploadId, Map<Integer, String> eTags) throws IOException {
+        Map<Integer, String> parts = new TreeMap<>();
+        Session session = findSession(globalId, storageIdentifier, uploadId);
+        if (session != null) {
+            // (the store knows best)
+            parts.putAll(getRecordedParts(session));
+            parts.putAll(eTags);
+            parts.putAll(listUploadedParts(session, S3AccessIO.getMultipartUploadAccess(globalId, storageIdentifier)));
+            List<Integer> missing = IntStream.rangeClosed(1, session.getPartCount())
+                    .filter(partNumber -> !parts.containsKey(partNumber))
+                    .boxed()
+                    .collect(Collectors.toList());
+            if (!missing.isEmpty()) {
+                touch(session);
+                return missing;
+            }
+        } else {
+            parts.putAll(eTags);
+        }
+
+        List<PartETag> partETags = parts.entrySet().stream()
+                .map(part -> new PartETag(part.getKey(), part.getValue()))
+                .collect(Collectors.toList());
+        try {
+            S3AccessIO.completeMultipartUpload(globalId, storageIdentifier, uploadId, partETags);
+        } catch (SdkClientException sce) {
+            throw new IOException("Could not complete the multipart upload " + uploadId + " (" + sce.getMessage() + ")", sce);
+        }
+        deleteSession(uploadId);
+        return Collections.emptyList();
+    }
+
+    public void abortUpload(String globalId, String storageIdentifier, String uploadId) throws IOException {
+        try {
+            S3AccessIO.abortMultipartUpload(globalId, storageIdentifier, uploadId);
+        } catch (SdkClientException sce) {
+            throw new IOException("Could not abort the multipart upload " + uploadId + " (" + sce.getMessage() + ")", sce);
+        }
+        deleteSession(uploadId);
+    }
+
+    /**
+     * Aborts the uploads left idle for too long; but not before the urls they
+     * were last given have expired, for a client could still be uploading
+     * parts to them. Those claimed by another server, doing the same, are
+     * left alone.
+     */
+    @Timeout
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void abortIdleUploads() {
+        int maxIdle = Math.max(1, JvmSettings.FILES_MULTIPART_UPLOADS_MAX_IDLE.lookupOptional(Integer.class).orElse(24));
+        MultipartUploadServiceBean self = sessionContext.getBusinessObject(MultipartUploadServiceBean.class);
+        List<Object[]> rows = self.claimIdleUploads(maxIdle);
+        List<Long> done = new ArrayList<>();
+        for (Object[] row : rows) {
+            String uploadId = (String) row[1];
+            try {
+                S3AccessIO.abortMultipartUpload((String) row[2], (String) row[3], uploadId);
+                done.add(((Number) row[0]).longValue());
+            } catch (AmazonS3Exception s3e) {
+                if (s3e.getStatusCode() == 404) {
+                    // (completed, or aborted, without this bean knowing)
+                    done.add(((Number) row[0]).longValue());
+                } else {
+                    logger.warning("Could not abort the idle multipart upload " + uploadId + ": " + s3e.getMessage());
+                }
+            } catch (SdkClientException sce) {
+                logger.warning("Could not abort the idle multipart upload " + uploadId + ": " + sce.getMessage());
+            } catch (IOException ioe) {
+                // (one that can never be aborted, from here)
+                logger.warning("Dropping the idle multipart upload " + uploadId + ": " + ioe.getMessage());
+                done.add(((Number) row[0]).longValue());
+            }
+        }
+        if (!done.isEmpty()) {
+            self.deleteSessions(done);
+            logger.info("Aborted " + done.size() + " multipart uploads idle for more than " + maxIdle + " hours");
+        }
+    }
+
+    /**
+     * Locks a batch of the uploads idle for more than {@code maxIdle} hours,
+     * whose urls have expired, and puts them off for {@link #CLAIM_TIMEOUT}
+     * seconds (as if their urls expired then); so that the other servers
+     * leave them alone, while this one aborts them.
+     *
+     * @return the id, upload id, global id and storage identifier of each
+     * upload claimed.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public List<Object[]> claimIdleUploads(int maxIdle) {
+        List<Object[]> rows = em.createNativeQuery("SELECT id, uploadid, globalid, storageidentifier FROM multipartupload"
+                + " WHERE lastupdatetime < now() - INTERVAL '" + maxIdle + " hours' AND urlexpirationtime < now()"
+                + " ORDER BY id LIMIT ?1 FOR UPDATE SKIP LOCKED")
+                .setParameter(1, CLEANUP_BATCH_SIZE)
+                .getResultList();
+        if (!rows.isEmpty()) {
+            em.createNativeQuery("UPDATE multipartupload SET urlexpirationtime = now() + INTERVAL '" + CLAIM_TIMEOUT + " seconds'"
+                    + " WHERE id IN (" + rows.stream().map(row -> String.valueOf(row[0])).collect(Collectors.joining(",")) + ")")
+                    .executeUpdate();
+        }
+        return rows;
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void deleteSessions(List<Long> ids) {
+        em.createNativeQuery("DELETE FROM multipartupload WHERE id IN (" + ids.stream().map(String::valueOf).collect(Collectors.joining(",")) + ")")
+                .executeUpdate();
+    }
+
+    private Map<Integer, String> getRecordedParts(Session session) {
+        Map<Integer, String> parts = new TreeMap<>();
+        List<Object[]> rows = em.createNativeQuery("SELECT partnumber, etag FROM multipartuploadpart WHERE multipartupload_id = ?1")
+                .setParameter(1, session.id())
+                .getResultList();
+        rows.forEach(row -> parts.put(((Number) row[0]).intValue(), (String) row[1]));
+        return parts;
+    }
+
+    private Map<Integer, String> listUploadedParts(Session session, S3AccessIO<?> s3io) {
+        try {
+            return s3io.listUploadedParts(session.uploadId());
+        } catch (IOException ioe) {
+            // (not all the S3-compatible stores list the parts; the recorded
+            // ones will do)
+            logger.fine(ioe.getMessage());
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * @return (as SQL) when the urls to upload the parts to, given now, expire.
+     */
+    private static String getUrlExpirationTime(S3AccessIO<?> s3io) {
+        return "now() + INTERVAL '" + s3io.getUrlExpirationMinutes() + " minutes'";
+    }
+
+    private void touch(Session session) {
+        em.createNativeQuery("UPDATE multipartupload SET lastupdatetime = now() WHERE id = ?1")
+                .setParameter(1, session.id())
+                .executeUpdate();
+    }
+
+    private void deleteSession(String uploadId) {
+        em.createNativeQuery("DELETE FROM multipartupload WHERE uploadid = ?1")
+                .setParameter(1, uploadId)
+                .executeUpdate();
+    }
+
+    private void abortQuietly(String globalId, String storageIdentifier, String uploadId) {
+        try {
+            S3AccessIO.abortMultipartUpload(globalId, storageIdentifier, uploadId);
+        } catch (IOException | SdkClientException e) {
+            logger.warning("Could not abort the multipart upload " + uploadId + ": " + e.getMessage());
+        }
+    }
+}
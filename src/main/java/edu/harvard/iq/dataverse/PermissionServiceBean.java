@@ -85,6 +85,9 @@ public class PermissionServiceBean {
     @EJB 
     WorkflowServiceBean workflowService;
 
+    @EJB
+    DatasetLockCacheServiceBean datasetLockCache;
+
     @PersistenceContext
     EntityManager em;
 
@@ -711,15 +714,16 @@ public class PermissionServiceBean {
     }
 
     public void checkEditDatasetLock(Dataset dataset, DataverseRequest dataverseRequest, Command command) throws IllegalCommandException {
-        if (dataset.isLocked()) {
-            if (dataset.isLockedFor(DatasetLock.Reason.Ingest)) {
+        Set<DatasetLock.Reason> locks = getLockReasons(dataset);
+        if (!locks.isEmpty()) {
+            if (locks.contains(DatasetLock.Reason.Ingest)) {
                 throw new IllegalCommandException(BundleUtil.getStringFromBundle("dataset.message.locked.editNotAllowed"), command);
             }
-            else if (dataset.isLockedFor(DatasetLock.Reason.finalizePublication)) {
+            else if (locks.contains(DatasetLock.Reason.finalizePublication)) {
                 throw new IllegalCommandException(BundleUtil.getStringFromBundle("dataset.message.locked.editNotAllowed"), command);
             }
             // TODO: Do we need to check for "Workflow"? Should the message be more specific?
-            else if (dataset.isLockedFor(DatasetLock.Reason.Workflow)) {
+            else if (locks.contains(DatasetLock.Reason.Workflow)) {
                 if (!isMatchingWorkflowLock(dataset, dataverseRequest.getUser().getIdentifier(),
                         dataverseRequest.getWFInvocationId())) {
                     throw new IllegalCommandException(
@@ -727,16 +731,16 @@ public class PermissionServiceBean {
                 }
             }
             // TODO: Do we need to check for "DcmUpload"? Should the message be more specific?
-            else if (dataset.isLockedFor(DatasetLock.Reason.DcmUpload)) {
+            else if (locks.contains(DatasetLock.Reason.DcmUpload)) {
                 throw new IllegalCommandException(BundleUtil.getStringFromBundle("dataset.message.locked.editNotAllowed"), command);
             }
-            else if (dataset.isLockedFor(DatasetLock.Reason.GlobusUpload)) {
+            else if (locks.contains(DatasetLock.Reason.GlobusUpload)) {
                 throw new IllegalCommandException(BundleUtil.getStringFromBundle("dataset.message.locked.editNotAllowed"), command);
             }
-            else if (dataset.isLockedFor(DatasetLock.Reason.EditInProgress)) {
+            else if (locks.contains(DatasetLock.Reason.EditInProgress)) {
                 throw new IllegalCommandException(BundleUtil.getStringFromBundle("dataset.message.locked.editNotAllowed"), command);
             }
-            else if (dataset.isLockedFor(DatasetLock.Reason.InReview)) {
+            else if (locks.contains(DatasetLock.Reason.InReview)) {
                 // The "InReview" lock is not really a lock for curators. They can still make edits.
                 if (!isUserAllowedOn(dataverseRequest.getUser(), new PublishDatasetCommand(dataset, dataverseRequest, true), dataset)) {
                     throw new IllegalCommandException(BundleUtil.getStringFromBundle("dataset.message.locked.editNotAllowedInReview"), command);
@@ -749,23 +753,24 @@ public class PermissionServiceBean {
     }
 
     public void checkUpdateDatasetVersionLock(Dataset dataset, DataverseRequest dataverseRequest, Command<?> command) throws IllegalCommandException {
-        boolean hasAtLeastOneLockThatIsNotAnIngestLock = dataset.isLocked() && dataset.getLocks().stream()
-            .anyMatch(lock -> !DatasetLock.Reason.Ingest.equals(lock.getReason()));
+        boolean hasAtLeastOneLockThatIsNotAnIngestLock = getLockReasons(dataset).stream()
+            .anyMatch(reason -> !DatasetLock.Reason.Ingest.equals(reason));
         if (hasAtLeastOneLockThatIsNotAnIngestLock) {
             checkEditDatasetLock(dataset, dataverseRequest, command);
         }
     }
     
     public void checkPublishDatasetLock(Dataset dataset, DataverseRequest dataverseRequest, Command command) throws IllegalCommandException {
-        if (dataset.isLocked()) {
-            if (dataset.isLockedFor(DatasetLock.Reason.Ingest)) {
+        Set<DatasetLock.Reason> locks = getLockReasons(dataset);
+        if (!locks.isEmpty()) {
+            if (locks.contains(DatasetLock.Reason.Ingest)) {
                 throw new IllegalCommandException(BundleUtil.getStringFromBundle("dataset.message.locked.publishNotAllowed"), command);
             }
-            else if (dataset.isLockedFor(DatasetLock.Reason.finalizePublication)) {
+            else if (locks.contains(DatasetLock.Reason.finalizePublication)) {
                 throw new IllegalCommandException(BundleUtil.getStringFromBundle("dataset.message.locked.publishNotAllowed"), command);
             }
             // TODO: Do we need to check for "Workflow"? Should the message be more specific?
-            else if (dataset.isLockedFor(DatasetLock.Reason.Workflow)) {
+            else if (locks.contains(DatasetLock.Reason.Workflow)) {
                 if (!isMatchingWorkflowLock(dataset, dataverseRequest.getUser().getIdentifier(),
                         dataverseRequest.getWFInvocationId())) {
                     throw new IllegalCommandException(
@@ -773,16 +778,16 @@ public class PermissionServiceBean {
                 }
             }
             // TODO: Do we need to check for "DcmUpload"? Should the message be more specific?
-            else if (dataset.isLockedFor(DatasetLock.Reason.DcmUpload)) {
+            else if (locks.contains(DatasetLock.Reason.DcmUpload)) {
                 throw new IllegalCommandException(BundleUtil.getStringFromBundle("dataset.message.locked.publishNotAllowed"), command);
             }
-            else if (dataset.isLockedFor(DatasetLock.Reason.GlobusUpload)) {
+            else if (locks.contains(DatasetLock.Reason.GlobusUpload)) {
                 throw new IllegalCommandException(BundleUtil.getStringFromBundle("dataset.message.locked.publishNotAllowed"), command);
             }
-            else if (dataset.isLockedFor(DatasetLock.Reason.EditInProgress)) {
+            else if (locks.contains(DatasetLock.Reason.EditInProgress)) {
                 throw new IllegalCommandException(BundleUtil.getStringFromBundle("dataset.message.locked.publishNotAllowed"), command);
             }
-            else if (dataset.isLockedFor(DatasetLock.Reason.InReview)) {
+            else if (locks.contains(DatasetLock.Reason.InReview)) {
                 // The "InReview" lock is not really a lock for curators. They can still publish
                 if (!isUserAllowedOn(dataverseRequest.getUser(), new PublishDatasetCommand(dataset, dataverseRequest, true), dataset)) {
                     throw new IllegalCommandException(BundleUtil.getStringFromBundle("dataset.message.locked.publishNotAllowed"), command);
@@ -795,21 +800,22 @@ public class PermissionServiceBean {
     }
 
     public void checkDownloadFileLock(Dataset dataset, DataverseRequest dataverseRequest, Command command) throws IllegalCommandException {
-        if (dataset.isLocked()) {
-            if (dataset.isLockedFor(DatasetLock.Reason.InReview)) {
+        Set<DatasetLock.Reason> locks = getLockReasons(dataset);
+        if (!locks.isEmpty()) {
+            if (locks.contains(DatasetLock.Reason.InReview)) {
                 // The "InReview" lock is not really a lock for curators or contributors. They can still download.                
                 if (!isUserAllowedOn(dataverseRequest.getUser(), new UpdateDatasetVersionCommand(dataset, dataverseRequest), dataset)) {
                     throw new IllegalCommandException(BundleUtil.getStringFromBundle("dataset.message.locked.downloadNotAllowedInReview"), command);
                 }
             }
-            else if (dataset.isLockedFor(DatasetLock.Reason.Ingest)) {
+            else if (locks.contains(DatasetLock.Reason.Ingest)) {
                 throw new IllegalCommandException(BundleUtil.getStringFromBundle("dataset.message.locked.downloadNotAllowed"), command);
             }
-            else if (dataset.isLockedFor(DatasetLock.Reason.finalizePublication)) {
+            else if (locks.contains(DatasetLock.Reason.finalizePublication)) {
                 throw new IllegalCommandException(BundleUtil.getStringFromBundle("dataset.message.locked.downloadNotAllowed"), command);
             }
             // TODO: Do we need to check for "Workflow"? Should the message be more specific?
-            else if (dataset.isLockedFor(DatasetLock.Reason.Workflow)) {
+            else if (locks.contains(DatasetLock.Reason.Workflow)) {
                 if (!isMatchingWorkflowLock(dataset, dataverseRequest.getUser().getIdentifier(),
                         dataverseRequest.getWFInvocationId())) {
                     throw new IllegalCommandException(
@@ -817,12 +823,24 @@ public class PermissionServiceBean {
                 }
             }
             // TODO: Do we need to check for "DcmUpload"? Should the message be more specific?
-            else if (dataset.isLockedFor(DatasetLock.Reason.DcmUpload)) {
+            else if (locks.contains(DatasetLock.Reason.DcmUpload)) {
                 throw new IllegalCommandException(BundleUtil.getStringFromBundle("dataset.message.locked.downloadNotAllowed"), command);
             }
         }
     }
     
+    /**
+     * @return the reasons the dataset is locked for, from the
+     * {@link DatasetLockCacheServiceBean}; or from the dataset itself, while it
+     * isn't saved yet.
+     */
+    private Set<DatasetLock.Reason> getLockReasons(Dataset dataset) {
+        if (dataset.getId() == null) {
+            return dataset.getLocks().stream().map(DatasetLock::getReason).collect(Collectors.toSet());
+        }
+        return datasetLockCache.getLockReasons(dataset.getId());
+    }
+
     public boolean isMatchingWorkflowLock(Dataset d, String userId, String invocationId) {
         if (invocationId != null) {
             PendingWorkflowInvocation pwfi = workflowService.getPendingWorkflow(invocationId);
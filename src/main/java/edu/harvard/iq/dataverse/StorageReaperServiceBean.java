@@ -0,0 +1,285 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.dataaccess.DataAccess;
+import edu.harvard.iq.dataverse.dataaccess.StorageIO;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.DependsOn;
+import jakarta.ejb.SessionContext;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.Timeout;
+import jakarta.ejb.TimerConfig;
+import jakarta.ejb.TimerService;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+
+/**
+ * Deletes the stored objects of the deleted datafiles in the background: their
+ * storage locations are written to the storagetombstone table once the
+ * datafiles are deleted from the database, and deleted from the storage every
+ * {@link JvmSettings#FILES_DELETION_INTERVAL} seconds, a batch at a time, on
+ * {@link JvmSettings#FILES_DELETION_THREADS} threads; several objects at once,
+ * where the storage allows it (see {@link StorageIO#deleteLocations(List)}).
+ * So that deleting a dataset with many files doesn't wait on the storage.
+ *
+ * The tombstones outlive restarts. The locations that can't be deleted are
+ * tried again later, waiting twice as long each time, up to
+ * {@link JvmSettings#FILES_DELETION_MAX_ATTEMPTS} times. The batches are
+ * claimed (for {@link #CLAIM_TIMEOUT} seconds) before they are deleted, so
+ * that several servers can share them; but no transaction, nor lock, is held
+ * while the storage is waited on.
+ */
+@Singleton
+@Startup
+@DependsOn("StartupFlywayMigrator")
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class StorageReaperServiceBean {
+
+    private static final Logger logger = Logger.getLogger(StorageReaperServiceBean.class.getCanonicalName());
+
+    private static final long FIRST_RETRY_DELAY = 60;
+    private static final long MAX_RETRY_DELAY = 3600;
+    // how long a batch is left to a server, before the others may take it over
+    // (should it stop on the way):
+    private static final long CLAIM_TIMEOUT = 900;
+    // how long the storage is waited on, for a batch; well within the above:
+    private static final long DELETION_TIMEOUT = 600;
+    // the most tombstones written by a single statement:
+    private static final int MAX_INSERT_ROWS = 500;
+
+    @PersistenceContext(unitName = "VDCNet-ejbPU")
+    EntityManager em;
+    @Resource
+    SessionContext sessionContext;
+    @Resource
+    TimerService timerService;
+    @Resource
+    ManagedThreadFactory threadFactory;
+
+    ExecutorService executor;
+    int threads;
+
+    @PostConstruct
+    public void init() {
+        threads = Math.max(1, JvmSettings.FILES_DELETION_THREADS.lookupOptional(Integer.class).orElse(4));
+        executor = Executors.newFixedThreadPool(threads, threadFactory);
+        long interval = 1000 * Math.max(1, JvmSettings.FILES_DELETION_INTERVAL.lookupOptional(Long.class).orElse(10L));
+        timerService.createIntervalTimer(interval, interval, new TimerConfig(null, false));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Adds the storage locations of the deleted datafiles (by id) to the
+     * tombstones, in the transaction of the caller; they are deleted from the
+     * storage once that is committed.
+     */
+    public void enqueue(Map<Long, String> storageLocations) {
+        List<Map.Entry<Long, String>> entries = storageLocations.entrySet().stream()
+                .filter(entry -> entry.getKey() != null && entry.getValue() != null && !entry.getValue().isBlank())
+                .collect(Collectors.toList());
+        for (int from = 0; from < entries.size(); from += MAX_INSERT_ROWS) {
+            List<Map.Entry<Long, String>> chunk = entries.subList(from, Math.min(entries.size(), from + MAX_INSERT_ROWS));
+            StringBuilder sql = new StringBuilder("INSERT INTO storagetombstone (datafile_id, storagelocation, createtime, nextattempttime) VALUES ");
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "" : ", ").append("(?").append(2 * i + 1).append(", ?").append(2 * i + 2).append(", now(), now())");
+            }
+            Query query = em.createNativeQuery(sql.toString());
+            for (int i = 0; i < chunk.size(); i++) {
+                query.setParameter(2 * i + 1, chunk.get(i).getKey());
+                query.setParameter(2 * i + 2, chunk.get(i).getValue());
+            }
+            query.executeUpdate();
+        }
+    }
+
+    @Timeout
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public synchronized void reapAll() {
+        int batchSize = Math.max(1, JvmSettings.FILES_DELETION_BATCH_SIZE.lookupOptional(Integer.class).orElse(1000));
+        StorageReaperServiceBean self = sessionContext.getBusinessObject(StorageReaperServiceBean.class);
+        while (self.reapBatch(batchSize) == batchSize) {
+            // (until there are no tombstones left; those that couldn't be
+            // deleted are only tried again later)
+        }
+    }
+
+    /**
+     * Claims a batch of tombstones, deletes their locations from the storage,
+     * and then the tombstones (or records why they couldn't be).
+     *
+     * @return the number of tombstones deleted, or tried.
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public int reapBatch(int batchSize) {
+        StorageReaperServiceBean self = sessionContext.getBusinessObject(StorageReaperServiceBean.class);
+        List<Object[]> rows = self.claimBatch(batchSize);
+        if (rows.isEmpty()) {
+            return 0;
+        }
+
+        // (as in DataFileServiceBean.finalizeFileDelete, the objects of the
+        // datafiles still in the database are never deleted)
+        Set<Long> existing = new HashSet<>();
+        String dataFileIds = rows.stream().filter(row -> row[1] != null).map(row -> String.valueOf(row[1])).collect(Collectors.joining(","));
+        if (!dataFileIds.isEmpty()) {
+            List<Object> found = em.createNativeQuery("SELECT id FROM dvobject WHERE id IN (" + dataFileIds + ")").getResultList();
+            found.forEach(id -> existing.add(((Number) id).longValue()));
+        }
+
+        Map<String, List<String>> byDriver = new LinkedHashMap<>();
+        for (Object[] row : rows) {
+            if (row[1] != null && existing.contains(((Number) row[1]).longValue())) {
+                logger.warning("Not deleting " + row[2] + " from the storage: it is still associated with the datafile " + row[1]);
+                continue;
+            }
+            String storageLocation = (String) row[2];
+            byDriver.computeIfAbsent(DataAccess.getDriverIdAndStorageLocation(storageLocation)[0], driverId -> new ArrayList<>())
+                    .add(storageLocation);
+        }
+        Map<String, String> failed = deleteLocations(byDriver, 1000 * DELETION_TIMEOUT);
+
+        self.finishBatch(rows, failed);
+        logger.fine("Deleted " + (rows.size() - failed.size()) + " of " + rows.size() + " objects from the storage");
+        return rows.size();
+    }
+
+    /**
+     * Locks a batch of the tombstones due, and puts them off for
+     * {@link #CLAIM_TIMEOUT} seconds; so that the other servers leave them
+     * alone, while this one deletes them.
+     *
+     * @return the id, datafile id, storage location and number of attempts of
+     * each tombstone claimed.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public List<Object[]> claimBatch(int batchSize) {
+        List<Object[]> rows = em.createNativeQuery("SELECT id, datafile_id, storagelocation, attempts FROM storagetombstone"
+                + " WHERE nextattempttime <= now() ORDER BY id LIMIT ?1 FOR UPDATE SKIP LOCKED")
+                .setParameter(1, batchSize)
+                .getResultList();
+        if (!rows.isEmpty()) {
+            em.createNativeQuery("UPDATE storagetombstone SET nextattempttime = now() + INTERVAL '" + CLAIM_TIMEOUT + " seconds'"
+                    + " WHERE id IN (" + rows.stream().map(row -> String.valueOf(row[0])).collect(Collectors.joining(",")) + ")")
+                    .executeUpdate();
+        }
+        return rows;
+    }
+
+    /**
+     * Deletes the tombstones of a batch claimed, but those of the locations
+     * that could not be deleted: they are tried again later, or given up on.
+     *
+     * @param failed the locations that could not be deleted, with why.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void finishBatch(List<Object[]> rows, Map<String, String> failed) {
+        int maxAttempts = JvmSettings.FILES_DELETION_MAX_ATTEMPTS.lookupOptional(Integer.class).orElse(10);
+        List<Long> done = new ArrayList<>();
+        for (Object[] row : rows) {
+            long id = ((Number) row[0]).longValue();
+            String error = failed.get((String) row[2]);
+            if (error == null) {
+                done.add(id);
+                continue;
+            }
+            int attempts = ((Number) row[3]).intValue() + 1;
+            if (attempts >= maxAttempts) {
+                logger.warning("Giving up on deleting " + row[2] + " from the storage after " + attempts + " attempts: " + error);
+            }
+            em.createNativeQuery("UPDATE storagetombstone SET attempts = ?2, lasterror = ?3,"
+                    + " nextattempttime = " + (attempts >= maxAttempts ? "NULL" : "now() + INTERVAL '" + getRetryDelay(attempts) + " seconds'")
+                    + " WHERE id = ?1")
+                    .setParameter(1, id)
+                    .setParameter(2, attempts)
+                    .setParameter(3, error)
+                    .executeUpdate();
+        }
+        if (!done.isEmpty()) {
+            em.createNativeQuery("DELETE FROM storagetombstone WHERE id IN (" + done.stream().map(String::valueOf).collect(Collectors.joining(",")) + ")")
+                    .executeUpdate();
+        }
+    }
+
+    /**
+     * Deletes the locations, by driver; those of each driver in as many
+     * slices as there are threads, deleted at the same time. The slices not
+     * deleted within the timeout (in milliseconds) are given up on, for now.
+     *
+     * @return the locations that could not be deleted, with why.
+     */
+    Map<String, String> deleteLocations(Map<String, List<String>> byDriver, long timeout) {
+        Map<Future<List<String>>, List<String>> deletions = new LinkedHashMap<>();
+        for (List<String> locations : byDriver.values()) {
+            int sliceSize = (locations.size() + threads - 1) / threads;
+            for (int from = 0; from < locations.size(); from += sliceSize) {
+                List<String> slice = locations.subList(from, Math.min(locations.size(), from + sliceSize));
+                deletions.put(executor.submit(() -> deleteSlice(slice)), slice);
+            }
+        }
+
+        Map<String, String> failed = new HashMap<>();
+        long deadline = System.currentTimeMillis() + timeout;
+        for (Map.Entry<Future<List<String>>, List<String>> deletion : deletions.entrySet()) {
+            try {
+                deletion.getKey().get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)
+                        .forEach(location -> failed.put(location, "Could not be deleted from the storage"));
+            } catch (TimeoutException te) {
+                deletion.getKey().cancel(true);
+                deletion.getValue().forEach(location -> failed.put(location, "Timed out"));
+            } catch (ExecutionException ee) {
+                String error = String.valueOf(ee.getCause().getMessage());
+                deletion.getValue().forEach(location -> failed.put(location, error));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                deletion.getValue().forEach(location -> failed.put(location, "Interrupted"));
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * @return the locations of the slice (all of the same driver) that could
+     * not be deleted.
+     */
+    List<String> deleteSlice(List<String> slice) throws IOException {
+        return DataAccess.getDirectStorageIO(slice.get(0)).deleteLocations(slice);
+    }
+
+    /**
+     * @return how long (in seconds) to wait before trying to delete a
+     * location again, after this many attempts.
+     */
+    static long getRetryDelay(int attempts) {
+        return Math.min(MAX_RETRY_DELAY, FIRST_RETRY_DELAY << Math.min(attempts - 1, 20));
+    }
+}
@@ -121,11 +121,12 @@ public class UserNotificationServiceBean {
         userNotification.setRequestor(requestor);
         userNotification.setAdditionalInfo(additionalInfo);
 
-        if (!isEmailMuted(userNotification) && mailService.sendNotificationEmail(userNotification, comment, requestor, isHtmlContent)) {
-            logger.fine("email was sent");
+        // (sent in the background, once the transaction is committed; see EmailOutboxServiceBean)
+        if (!isEmailMuted(userNotification) && mailService.queueNotificationEmail(userNotification, comment, requestor, isHtmlContent)) {
+            logger.fine("email was queued");
             userNotification.setEmailed(true);
         } else {
-            logger.fine("email was not sent");
+            logger.fine("email was not queued");
         }
         if (!isNotificationMuted(userNotification)) {
             save(userNotification);
@@ -39,6 +39,7 @@ import jakarta.ejb.EJB;
 import jakarta.ejb.EJBException;
 import jakarta.json.*;
 import jakarta.json.JsonValue.ValueType;
+import jakarta.json.stream.JsonGenerator;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.PersistenceContext;
@@ -50,13 +51,16 @@ import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.ResponseBuilder;
 import jakarta.ws.rs.core.Response.Status;
+import jakarta.ws.rs.core.StreamingOutput;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -717,6 +721,39 @@ public abstract class AbstractApiBean {
             .build();
     }
     
+    /**
+     * Like {@link #ok(JsonObjectBuilder)}; but the data is written to the
+     * response by {@code dataWriter}, as it is generated, rather than built in
+     * memory first. For large payloads, such as dataset versions with many
+     * files. Everything the writer needs is to be loaded before this is
+     * called: it runs once the response is on its way.
+     *
+     * Should the writer fail, the response is aborted (an IOException is
+     * thrown to the container, which closes the connection) rather than
+     * completed with half a document; if nothing was sent yet, the client
+     * gets an error instead.
+     */
+    protected Response ok( Consumer<JsonGenerator> dataWriter ) {
+        StreamingOutput output = outputStream -> {
+            JsonGenerator generator = Json.createGenerator(outputStream);
+            try {
+                generator.writeStartObject();
+                generator.write("status", ApiConstants.STATUS_OK);
+                generator.writeKey("data");
+                dataWriter.accept(generator);
+                generator.writeEnd();
+            } catch (RuntimeException e) {
+                // (the generator is not closed: it would end the document)
+                logger.log(Level.SEVERE, "Aborting a JSON response, as its data could not be written", e);
+                throw new IOException("The JSON response could not be written", e);
+            }
+            generator.flush();
+        };
+        return Response.ok(output)
+            .type(MediaType.APPLICATION_JSON)
+            .build();
+    }
+
     protected Response ok( JsonObject jo ) {
         return Response.ok( Json.createObjectBuilder()
                 .add("status", ApiConstants.STATUS_OK)
@@ -15,6 +15,7 @@ import edu.harvard.iq.dataverse.DataverseServiceBean;
 import edu.harvard.iq.dataverse.DataverseSession;
 import edu.harvard.iq.dataverse.DvObject;
 import edu.harvard.iq.dataverse.DvObjectServiceBean;
+import edu.harvard.iq.dataverse.DownloadCountServiceBean;
 import edu.harvard.iq.dataverse.api.auth.AuthRequired;
 import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.util.StringUtil;
@@ -25,6 +26,8 @@ import edu.harvard.iq.dataverse.TemplateServiceBean;
 import edu.harvard.iq.dataverse.UserServiceBean;
 import edu.harvard.iq.dataverse.actionlogging.ActionLogRecord;
 import edu.harvard.iq.dataverse.api.dto.RoleDTO;
+import edu.harvard.iq.dataverse.cache.SharedCacheServiceBean;
+import edu.harvard.iq.dataverse.storageuse.AuxObjectSizeServiceBean;
 import edu.harvard.iq.dataverse.authorization.AuthenticatedUserDisplayInfo;
 import edu.harvard.iq.dataverse.authorization.AuthenticationProvider;
 import edu.harvard.iq.dataverse.authorization.UserIdentifier;
@@ -97,6 +100,10 @@ import edu.harvard.iq.dataverse.engine.command.impl.DeactivateUserCommand;
 import edu.harvard.iq.dataverse.engine.command.impl.DeleteRoleCommand;
 import edu.harvard.iq.dataverse.engine.command.impl.DeleteTemplateCommand;
 import edu.harvard.iq.dataverse.engine.command.impl.RegisterDvObjectCommand;
+import edu.harvard.iq.dataverse.ingest.IngestJob;
+import edu.harvard.iq.dataverse.ingest.IngestProgress;
+import edu.harvard.iq.dataverse.ingest.IngestScheduler;
+import edu.harvard.iq.dataverse.ingest.IngestSchedulerBean;
 import edu.harvard.iq.dataverse.ingest.IngestServiceBean;
 import edu.harvard.iq.dataverse.pidproviders.handle.HandlePidProvider;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
@@ -119,6 +126,7 @@ import static edu.harvard.iq.dataverse.util.json.JsonPrinter.toJsonArray;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.time.Instant;
 import jakarta.inject.Inject;
 import jakarta.json.JsonArray;
 import jakarta.persistence.Query;
@@ -151,6 +159,14 @@ public class Admin extends AbstractApiBean {
     @EJB
     IngestServiceBean ingestService;
     @EJB
+    IngestSchedulerBean ingestSchedulerService;
+    @EJB
+    SharedCacheServiceBean sharedCacheService;
+    @EJB
+    AuxObjectSizeServiceBean auxObjectSizeService;
+    @EJB
+    DownloadCountServiceBean downloadCountService;
+    @EJB
     DataFileServiceBean fileService;
     @EJB
     DatasetServiceBean datasetService;
@@ -1438,6 +1454,54 @@ public class Admin extends AbstractApiBean {
         return ok(info);
     }
 
+    /**
+     * Lists the auxiliary objects of the files of the dataset, and its
+     * metadata exports, from the storage into the ledger of their sizes.
+     */
+    @Path("datasets/{id}/auxObjectSizes/reconcile")
+    @POST
+    public Response reconcileAuxObjectSizes(@PathParam("id") Long datasetId) {
+        Dataset dataset = datasetSvc.find(datasetId);
+        if (dataset == null) {
+            return error(Response.Status.NOT_FOUND, "Could not find dataset based on id supplied: " + datasetId + ".");
+        }
+        try {
+            auxObjectSizeService.reconcile(dataset);
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Could not reconcile the sizes of the auxiliary objects of dataset " + datasetId, ex);
+            return error(Response.Status.INTERNAL_SERVER_ERROR, "Could not list the auxiliary objects of the dataset: " + ex.getMessage());
+        }
+        return ok(Json.createObjectBuilder()
+                .add("datasetId", datasetId)
+                .add("cachedExtrasSize", auxObjectSizeService.findCachedExtrasSize(datasetId, null)));
+    }
+
+    /**
+     * Same, for the datasets not reconciled yet (or all of them, with
+     * {@code all=true}); in the background.
+     */
+    @Path("datasets/auxObjectSizes/reconcile")
+    @POST
+    public Response reconcileAllAuxObjectSizes(@QueryParam("all") boolean all) {
+        List<Long> datasetIds = auxObjectSizeService.findDatasetIdsToReconcile(all);
+        auxObjectSizeService.reconcileAll(datasetIds);
+        return ok(Json.createObjectBuilder().add("message", "Found " + datasetIds.size()
+                + " datasets to reconcile. Kicking off an async job that will list their auxiliary objects in the background."));
+    }
+
+    /**
+     * Recounts the downloads of the files and datasets from the guestbook
+     * responses, in the background.
+     */
+    @Path("downloadCounts/reconcile")
+    @POST
+    public Response reconcileDownloadCounts() {
+        List<Long> datasetIds = downloadCountService.findDatasetIds();
+        downloadCountService.reconcileAll(datasetIds);
+        return ok(Json.createObjectBuilder().add("message", "Kicking off an async job that will recount the downloads of "
+                + datasetIds.size() + " datasets in the background."));
+    }
+
 	/**
 	 * This method is used in API tests, called from UtilIt.java.
 	 */
@@ -2106,6 +2170,43 @@ public class Admin extends AbstractApiBean {
         }
     }
     
+    @GET
+    @Path("/ingest/queue")
+    public Response getIngestQueue() {
+        IngestScheduler scheduler = ingestSchedulerService.getScheduler();
+
+        JsonObjectBuilder queuedByDataset = Json.createObjectBuilder();
+        scheduler.getQueuedByDataset().forEach((datasetId, count) -> queuedByDataset.add(String.valueOf(datasetId), count));
+
+        JsonArrayBuilder activeJobs = Json.createArrayBuilder();
+        for (IngestJob job : scheduler.getActiveJobs()) {
+            JsonObjectBuilder jobInfo = jsonObjectBuilder()
+                    .add("dataFileId", job.getDataFileId())
+                    .add("datasetId", job.getDatasetId())
+                    .add("userId", job.getUserId())
+                    .add("fileName", job.getFileName())
+                    .add("contentType", job.getContentType())
+                    .add("size", job.getSize())
+                    .add("estimatedMemory", job.getEstimatedMemory())
+                    .add("queuedTime", Instant.ofEpochMilli(job.getQueuedTime()).toString())
+                    .add("startTime", Instant.ofEpochMilli(job.getStartTime()).toString());
+            IngestProgress progress = ingestService.getIngestProgress(job.getDataFileId());
+            if (progress != null) {
+                jobInfo.add("bytesRead", progress.getBytesRead())
+                        .add("bytesPerSecond", progress.getBytesPerSecond());
+            }
+            activeJobs.add(jobInfo);
+        }
+
+        return ok(jsonObjectBuilder()
+                .add("workers", scheduler.getWorkers())
+                .add("memoryBudget", scheduler.getMemoryBudget())
+                .add("memoryInUse", scheduler.getActiveMemory())
+                .add("queueDepth", scheduler.getQueueDepth())
+                .add("queuedByDataset", queuedByDataset)
+                .add("activeJobs", activeJobs));
+    }
+
     @DELETE
     @Path("/clearMetricsCache")
     public Response clearMetricsCache() {
@@ -2122,6 +2223,34 @@ public class Admin extends AbstractApiBean {
         return ok("metric cache " + name + " cleared.");
     }
 
+    @GET
+    @Path("/cache/shared")
+    public Response getSharedCacheStatistics() {
+        if (!sharedCacheService.isEnabled()) {
+            return error(Response.Status.NOT_FOUND, "No entities are kept in the shared cache.");
+        }
+        return ok(sharedCacheService.getStatistics());
+    }
+
+    @DELETE
+    @Path("/cache/shared")
+    public Response flushSharedCache() {
+        if (!sharedCacheService.isEnabled()) {
+            return error(Response.Status.NOT_FOUND, "No entities are kept in the shared cache.");
+        }
+        sharedCacheService.flush();
+        return ok("shared cache flushed.");
+    }
+
+    @DELETE
+    @Path("/cache/shared/{entity}")
+    public Response flushSharedCacheEntity(@PathParam("entity") String entity) {
+        if (!sharedCacheService.isEnabled() || !sharedCacheService.flush(entity)) {
+            return error(Response.Status.NOT_FOUND, entity + " is not kept in the shared cache.");
+        }
+        return ok(entity + " flushed from the shared cache.");
+    }
+
     @GET
 	@AuthRequired
     @Path("/dataverse/{alias}/addRoleAssignmentsToChildren")
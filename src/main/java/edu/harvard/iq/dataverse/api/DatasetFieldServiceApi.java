@@ -32,6 +32,7 @@ import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.core.Response;
 
+import edu.harvard.iq.dataverse.search.SearchCacheServiceBean;
 import edu.harvard.iq.dataverse.util.BundleUtil;
 import edu.harvard.iq.dataverse.util.ConstraintViolationUtil;
 import org.apache.commons.lang3.StringUtils;
@@ -68,6 +69,9 @@ public class DatasetFieldServiceApi extends AbstractApiBean {
     @EJB
     ControlledVocabularyValueServiceBean controlledVocabularyValueService;
 
+    @EJB
+    SearchCacheServiceBean searchCacheService;
+
     private static final Logger logger = Logger.getLogger(DatasetFieldServiceApi.class.getName());
     
     @GET
@@ -311,6 +315,7 @@ public class DatasetFieldServiceApi extends AbstractApiBean {
                     logger.log(Level.WARNING, "Error closing the reader while importing Dataset Fields.");
                 }
             }
+            searchCacheService.clearDatasetFieldTypes();
             actionLogSvc.log(alr);
         }
 
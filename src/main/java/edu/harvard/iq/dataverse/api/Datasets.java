@@ -1,7 +1,5 @@
 package edu.harvard.iq.dataverse.api;
 
-import com.amazonaws.services.s3.model.PartETag;
-
 import edu.harvard.iq.dataverse.*;
 import edu.harvard.iq.dataverse.DatasetLock.Reason;
 import edu.harvard.iq.dataverse.actionlogging.ActionLogRecord;
@@ -23,6 +21,7 @@ import edu.harvard.iq.dataverse.dataset.DatasetThumbnail;
 import edu.harvard.iq.dataverse.dataset.DatasetUtil;
 import edu.harvard.iq.dataverse.datasetutility.AddReplaceFileHelper;
 import edu.harvard.iq.dataverse.datasetutility.DataFileTagException;
+import edu.harvard.iq.dataverse.datasetutility.FileRegistrationServiceBean;
 import edu.harvard.iq.dataverse.datasetutility.NoFilesException;
 import edu.harvard.iq.dataverse.datasetutility.OptionalFileParams;
 import edu.harvard.iq.dataverse.engine.command.Command;
@@ -64,9 +63,14 @@ import jakarta.json.stream.JsonParsingException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.container.AsyncResponse;
 import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.Suspended;
 import jakarta.ws.rs.core.*;
 import jakarta.ws.rs.core.Response.Status;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.microprofile.openapi.annotations.Operation;
 import org.eclipse.microprofile.openapi.annotations.media.Content;
@@ -108,18 +112,34 @@ public class Datasets extends AbstractApiBean {
 
     private static final Logger logger = Logger.getLogger(Datasets.class.getCanonicalName());
     private static final Pattern dataFilePattern = Pattern.compile("^[0-9a-f]{11}-[0-9a-f]{12}\\.?.*");
+    // the longest a client may wait for the locks of a dataset to clear, in seconds
+    private static final int MAX_LOCKS_WAIT = 60;
+    // the most datasets a client may follow the events of at once
+    private static final int MAX_EVENT_DATASETS = 100;
     
     @Inject DataverseSession session;
 
     @EJB
     DatasetServiceBean datasetService;
 
+    @EJB
+    DatasetLockCacheServiceBean datasetLockCache;
+
+    @EJB
+    DatasetEventServiceBean datasetEventService;
+
     @EJB
     DataverseServiceBean dataverseService;
     
     @EJB
     GlobusServiceBean globusService;
 
+    @EJB
+    FileRegistrationServiceBean fileRegistrationService;
+
+    @EJB
+    MultipartUploadServiceBean multipartUploadService;
+
     @EJB
     UserNotificationServiceBean userNotificationService;
     
@@ -457,15 +477,14 @@ public class Datasets extends AbstractApiBean {
                 return notFound("Dataset version not found");
             }
 
-            if (excludeFiles == null ? true : !excludeFiles) {
-                requestedDatasetVersion = datasetversionService.findDeep(requestedDatasetVersion.getId());
-            }
-
-            JsonObjectBuilder jsonBuilder = json(requestedDatasetVersion,
-                                                 null, 
-                                                 excludeFiles == null ? true : !excludeFiles, 
-                                                 returnOwners);
-            return ok(jsonBuilder);
+            // (written to the response as it is generated; a version may
+            // have many thousands of files)
+            DatasetVersion datasetVersion = loadForJson(requestedDatasetVersion, excludeFiles == null ? true : !excludeFiles, returnOwners);
+            return ok(generator -> writeJson(generator,
+                                             datasetVersion,
+                                             null,
+                                             excludeFiles == null ? true : !excludeFiles,
+                                             returnOwners));
 
         }, getRequestUser(crc));
     }
@@ -2601,7 +2620,7 @@ public class Datasets extends AbstractApiBean {
             String storageIdentifier = null;
             try {
                 storageIdentifier = FileUtil.getStorageIdentifierFromLocation(s3io.getStorageLocation());
-                response = s3io.generateTemporaryS3UploadUrls(dataset.getGlobalId().asString(), storageIdentifier, fileSize);
+                response = multipartUploadService.startUpload(s3io, dataset.getGlobalId().asString(), storageIdentifier, fileSize);
 
             } catch (IOException io) {
                 logger.warning(io.getMessage());
@@ -2616,51 +2635,61 @@ public class Datasets extends AbstractApiBean {
         }
     }
 
-    @DELETE
+    @GET
     @AuthRequired
     @Path("mpupload")
-    public Response abortMPUpload(@Context ContainerRequestContext crc, @QueryParam("globalid") String idSupplied, @QueryParam("storageidentifier") String storageidentifier, @QueryParam("uploadid") String uploadId) {
+    public Response resumeMPUpload(@Context ContainerRequestContext crc, @QueryParam("globalid") String idSupplied, @QueryParam("storageidentifier") String storageidentifier, @QueryParam("uploadid") String uploadId) {
         try {
-            Dataset dataset = datasetSvc.findByGlobalId(idSupplied);
-            //Allow the API to be used within a session (e.g. for direct upload in the UI)
-            User user = session.getUser();
-            if (!user.isAuthenticated()) {
-                try {
-                    user = getRequestAuthenticatedUserOrDie(crc);
-                } catch (WrappedResponse ex) {
-                    logger.info(
-                            "Exception thrown while trying to figure out permissions while getting aborting upload for dataset id "
-                                    + dataset.getId() + ": " + ex.getLocalizedMessage());
-                    throw ex;
-                }
+            checkMPUploadAllowed(crc, idSupplied, "resume");
+            JsonObjectBuilder response = null;
+            try {
+                response = multipartUploadService.resumeUpload(idSupplied, storageidentifier, uploadId);
+            } catch (IOException io) {
+                logger.warning("Multipart upload resume failed for uploadId: " + uploadId + " storageidentifier="
+                        + storageidentifier + " globalId: " + idSupplied);
+                logger.warning(io.getMessage());
+                throw new WrappedResponse(io,
+                        error(Response.Status.INTERNAL_SERVER_ERROR, "Could not resume multipart upload"));
             }
-            boolean allowed = false;
-            if (dataset != null) {
-                allowed = permissionSvc.requestOn(createDataverseRequest(user), dataset)
-                        .canIssue(UpdateDatasetVersionCommand.class);
-            } else {
-                /*
-                 * The only legitimate case where a global id won't correspond to a dataset is
-                 * for uploads during creation. Given that this call will still fail unless all
-                 * three parameters correspond to an active multipart upload, it should be safe
-                 * to allow the attempt for an authenticated user. If there are concerns about
-                 * permissions, one could check with the current design that the user is allowed
-                 * to create datasets in some dataverse that is configured to use the storage
-                 * provider specified in the storageidentifier, but testing for the ability to
-                 * create a dataset in a specific dataverse would requiring changing the design
-                 * somehow (e.g. adding the ownerId to this call).
-                 */
-                allowed = true;
+            if (response == null) {
+                return error(Response.Status.NOT_FOUND, "No multipart upload in progress with the supplied parameters.");
             }
-            if (!allowed) {
-                return error(Response.Status.FORBIDDEN,
-                        "You are not permitted to abort file uploads with the supplied parameters.");
+            return ok(response);
+        } catch (WrappedResponse wr) {
+            return wr.getResponse();
+        }
+    }
+
+    @PUT
+    @AuthRequired
+    @Path("mpupload/parts")
+    public Response recordMPUploadParts(@Context ContainerRequestContext crc, String partETagBody, @QueryParam("globalid") String idSupplied, @QueryParam("storageidentifier") String storageidentifier, @QueryParam("uploadid") String uploadId) {
+        try {
+            checkMPUploadAllowed(crc, idSupplied, "upload");
+            try {
+                if (!multipartUploadService.recordParts(idSupplied, storageidentifier, uploadId, parsePartETags(partETagBody))) {
+                    return error(Response.Status.NOT_FOUND, "No multipart upload in progress with the supplied parameters.");
+                }
+            } catch (IllegalArgumentException iae) {
+                return error(Response.Status.BAD_REQUEST, iae.getMessage());
             }
+            return ok("Parts recorded");
+        } catch (WrappedResponse wr) {
+            return wr.getResponse();
+        }
+    }
+
+    @DELETE
+    @AuthRequired
+    @Path("mpupload")
+    public Response abortMPUpload(@Context ContainerRequestContext crc, @QueryParam("globalid") String idSupplied, @QueryParam("storageidentifier") String storageidentifier, @QueryParam("uploadid") String uploadId) {
+        try {
+            checkMPUploadAllowed(crc, idSupplied, "abort");
             try {
-                S3AccessIO.abortMultipartUpload(idSupplied, storageidentifier, uploadId);
+                multipartUploadService.abortUpload(idSupplied, storageidentifier, uploadId);
             } catch (IOException io) {
                 logger.warning("Multipart upload abort failed for uploadId: " + uploadId + " storageidentifier="
-                        + storageidentifier + " dataset Id: " + dataset.getId());
+                        + storageidentifier + " globalId: " + idSupplied);
                 logger.warning(io.getMessage());
                 throw new WrappedResponse(io,
                         error(Response.Status.INTERNAL_SERVER_ERROR, "Could not abort multipart upload"));
@@ -2676,62 +2705,17 @@ public class Datasets extends AbstractApiBean {
     @Path("mpupload")
     public Response completeMPUpload(@Context ContainerRequestContext crc, String partETagBody, @QueryParam("globalid") String idSupplied, @QueryParam("storageidentifier") String storageidentifier, @QueryParam("uploadid") String uploadId) {
         try {
-            Dataset dataset = datasetSvc.findByGlobalId(idSupplied);
-            //Allow the API to be used within a session (e.g. for direct upload in the UI)
-            User user = session.getUser();
-            if (!user.isAuthenticated()) {
-                try {
-                    user = getRequestAuthenticatedUserOrDie(crc);
-                } catch (WrappedResponse ex) {
-                    logger.info(
-                            "Exception thrown while trying to figure out permissions to complete mpupload for dataset id "
-                                    + dataset.getId() + ": " + ex.getLocalizedMessage());
-                    throw ex;
-                }
-            }
-            boolean allowed = false;
-            if (dataset != null) {
-                allowed = permissionSvc.requestOn(createDataverseRequest(user), dataset)
-                        .canIssue(UpdateDatasetVersionCommand.class);
-            } else {
-                /*
-                 * The only legitimate case where a global id won't correspond to a dataset is
-                 * for uploads during creation. Given that this call will still fail unless all
-                 * three parameters correspond to an active multipart upload, it should be safe
-                 * to allow the attempt for an authenticated user. If there are concerns about
-                 * permissions, one could check with the current design that the user is allowed
-                 * to create datasets in some dataverse that is configured to use the storage
-                 * provider specified in the storageidentifier, but testing for the ability to
-                 * create a dataset in a specific dataverse would requiring changing the design
-                 * somehow (e.g. adding the ownerId to this call).
-                 */
-                allowed = true;
-            }
-            if (!allowed) {
-                return error(Response.Status.FORBIDDEN,
-                        "You are not permitted to complete file uploads with the supplied parameters.");
-            }
-            List<PartETag> eTagList = new ArrayList<PartETag>();
-            logger.info("Etags: " + partETagBody);
-            try {
-                JsonObject object = JsonUtil.getJsonObject(partETagBody);
-                for (String partNo : object.keySet()) {
-                    eTagList.add(new PartETag(Integer.parseInt(partNo), object.getString(partNo)));
-                }
-                for (PartETag et : eTagList) {
-                    logger.info("Part: " + et.getPartNumber() + " : " + et.getETag());
-                }
-            } catch (JsonException je) {
-                logger.info("Unable to parse eTags from: " + partETagBody);
-                throw new WrappedResponse(je, error(Response.Status.INTERNAL_SERVER_ERROR, "Could not complete multipart upload"));
-            }
+            checkMPUploadAllowed(crc, idSupplied, "complete");
+            logger.fine("Etags: " + partETagBody);
+            Map<Integer, String> eTags = parsePartETags(partETagBody);
+            List<Integer> missingParts;
             try {
-                S3AccessIO.completeMultipartUpload(idSupplied, storageidentifier, uploadId, eTagList);
+                missingParts = multipartUploadService.completeUpload(idSupplied, storageidentifier, uploadId, eTags);
             } catch (IOException io) {
                 logger.warning("Multipart upload completion failed for uploadId: " + uploadId + " storageidentifier=" + storageidentifier + " globalId: " + idSupplied);
                 logger.warning(io.getMessage());
                 try {
-                    S3AccessIO.abortMultipartUpload(idSupplied, storageidentifier, uploadId);
+                    multipartUploadService.abortUpload(idSupplied, storageidentifier, uploadId);
                 } catch (IOException e) {
                     logger.severe("Also unable to abort the upload (and release the space on S3 for uploadId: " + uploadId + " storageidentifier=" + storageidentifier + " globalId: " + idSupplied);
                     logger.severe(io.getMessage());
@@ -2739,12 +2723,79 @@ public class Datasets extends AbstractApiBean {
 
                 throw new WrappedResponse(io, error(Response.Status.INTERNAL_SERVER_ERROR, "Could not complete multipart upload"));
             }
+            if (!missingParts.isEmpty()) {
+                // (not aborted: the upload can be resumed with the parts missing)
+                return error(Response.Status.BAD_REQUEST, "Could not complete multipart upload: parts "
+                        + missingParts.stream().map(String::valueOf).collect(Collectors.joining(",")) + " are missing");
+            }
             return ok("Multipart Upload completed");
         } catch (WrappedResponse wr) {
             return wr.getResponse();
         }
     }
 
+    /**
+     * Checks that the user may act on the multipart uploads of files to the
+     * dataset with this global id.
+     */
+    private void checkMPUploadAllowed(ContainerRequestContext crc, String idSupplied, String action) throws WrappedResponse {
+        Dataset dataset = datasetSvc.findByGlobalId(idSupplied);
+        //Allow the API to be used within a session (e.g. for direct upload in the UI)
+        User user = session.getUser();
+        if (!user.isAuthenticated()) {
+            try {
+                user = getRequestAuthenticatedUserOrDie(crc);
+            } catch (WrappedResponse ex) {
+                logger.info(
+                        "Exception thrown while trying to figure out permissions to " + action + " mpupload for dataset "
+                                + idSupplied + ": " + ex.getLocalizedMessage());
+                throw ex;
+            }
+        }
+        boolean allowed = false;
+        if (dataset != null) {
+            allowed = permissionSvc.requestOn(createDataverseRequest(user), dataset)
+                    .canIssue(UpdateDatasetVersionCommand.class);
+        } else {
+            /*
+             * The only legitimate case where a global id won't correspond to a dataset is
+             * for uploads during creation. Given that this call will still fail unless all
+             * three parameters correspond to an active multipart upload, it should be safe
+             * to allow the attempt for an authenticated user. If there are concerns about
+             * permissions, one could check with the current design that the user is allowed
+             * to create datasets in some dataverse that is configured to use the storage
+             * provider specified in the storageidentifier, but testing for the ability to
+             * create a dataset in a specific dataverse would requiring changing the design
+             * somehow (e.g. adding the ownerId to this call).
+             */
+            allowed = true;
+        }
+        if (!allowed) {
+            throw new WrappedResponse(error(Response.Status.FORBIDDEN,
+                    "You are not permitted to " + action + " file uploads with the supplied parameters."));
+        }
+    }
+
+    /**
+     * @return the ETags of the parts in the body, by part number: {"1": "etag", ...}
+     */
+    private Map<Integer, String> parsePartETags(String partETagBody) throws WrappedResponse {
+        Map<Integer, String> eTags = new TreeMap<>();
+        if (partETagBody == null || partETagBody.isBlank()) {
+            return eTags;
+        }
+        try {
+            JsonObject object = JsonUtil.getJsonObject(partETagBody);
+            for (String partNo : object.keySet()) {
+                eTags.put(Integer.parseInt(partNo), object.getString(partNo));
+            }
+        } catch (JsonException | NumberFormatException | ClassCastException e) {
+            logger.info("Unable to parse eTags from: " + partETagBody);
+            throw new WrappedResponse(e, error(Response.Status.BAD_REQUEST, "Could not parse the ETags of the parts"));
+        }
+        return eTags;
+    }
+
     /**
      * Add a File to an existing Dataset
      *
@@ -3121,6 +3172,136 @@ public class Datasets extends AbstractApiBean {
         }
     }
 
+    /**
+     * Waits for the locks on the dataset to clear (or the lock of the type
+     * given), for up to {@code timeout} seconds; so that the clients waiting
+     * for an ingest or a publication to end don't have to ask over and over.
+     * Answers with the types of the locks left, if any.
+     */
+    @GET
+    @Path("{identifier}/locks/wait")
+    public void waitForLocks(@PathParam("identifier") String id, @QueryParam("type") DatasetLock.Reason lockType,
+            @QueryParam("timeout") @DefaultValue("30") int timeout, @Suspended AsyncResponse asyncResponse) {
+        Dataset dataset;
+        try {
+            dataset = findDatasetOrDie(id);
+        } catch (WrappedResponse wr) {
+            asyncResponse.resume(wr.getResponse());
+            return;
+        }
+        long timeoutMillis = 1000L * Math.max(0, Math.min(timeout, MAX_LOCKS_WAIT));
+        datasetLockCache.awaitUnlocked(dataset.getId(), lockType, timeoutMillis).whenComplete((locks, e) -> {
+            if (e != null) {
+                asyncResponse.resume(error(Response.Status.INTERNAL_SERVER_ERROR, "Could not wait for the locks: " + e.getMessage()));
+                return;
+            }
+            JsonArrayBuilder types = Json.createArrayBuilder();
+            locks.forEach(reason -> types.add(reason.name()));
+            asyncResponse.resume(ok(Json.createObjectBuilder()
+                    .add("locked", lockType == null ? !locks.isEmpty() : locks.contains(lockType))
+                    .add("lockTypes", types)));
+        });
+    }
+
+    /**
+     * Streams the events of the dataset (the locks added and removed, the
+     * ingests, publications, workflows and indexing done) as server-sent
+     * events, from now on; for the clients to follow long-running operations
+     * instead of polling them. The events of a dataset that isn't published
+     * are only streamed to the users who can see its draft.
+     */
+    @GET
+    @AuthRequired
+    @Path("{identifier}/events")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public void streamEvents(@Context ContainerRequestContext crc, @PathParam("identifier") String id,
+            @Context Sse sse, @Context SseEventSink sink) {
+        Dataset dataset;
+        try {
+            dataset = findDatasetOrDie(id);
+        } catch (WrappedResponse wr) {
+            throw new WebApplicationException(wr.getResponse());
+        }
+        checkCanFollowEvents(getRequestUser(crc), dataset);
+        subscribeToEvents(List.of(dataset.getId()), sse, sink);
+    }
+
+    /**
+     * As {@link #streamEvents}, for several datasets at once, by their
+     * database ids (comma-separated).
+     */
+    @GET
+    @AuthRequired
+    @Path("events")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public void streamEventsOfDatasets(@Context ContainerRequestContext crc, @QueryParam("ids") String ids,
+            @Context Sse sse, @Context SseEventSink sink) {
+        Set<Long> datasetIds = new LinkedHashSet<>();
+        try {
+            for (String datasetId : StringUtils.split(StringUtils.defaultString(ids), ',')) {
+                datasetIds.add(Long.valueOf(datasetId.trim()));
+            }
+        } catch (NumberFormatException e) {
+            throw new WebApplicationException(error(Response.Status.BAD_REQUEST, "The ids must be the database ids of datasets"));
+        }
+        if (datasetIds.isEmpty() || datasetIds.size() > MAX_EVENT_DATASETS) {
+            throw new WebApplicationException(error(Response.Status.BAD_REQUEST,
+                    "Between 1 and " + MAX_EVENT_DATASETS + " dataset ids are expected"));
+        }
+        User user = getRequestUser(crc);
+        for (Long datasetId : datasetIds) {
+            Dataset dataset = datasetService.find(datasetId);
+            if (dataset == null) {
+                throw new WebApplicationException(error(Response.Status.NOT_FOUND, "Dataset with ID " + datasetId + " not found"));
+            }
+            checkCanFollowEvents(user, dataset);
+        }
+        subscribeToEvents(datasetIds, sse, sink);
+    }
+
+    private void checkCanFollowEvents(User user, Dataset dataset) {
+        if (!dataset.isReleased() && !permissionService.hasPermissionsFor(user, dataset, EnumSet.of(Permission.ViewUnpublishedDataset))) {
+            throw new WebApplicationException(error(Response.Status.FORBIDDEN,
+                    "Not allowed to follow the events of the dataset " + dataset.getId()));
+        }
+    }
+
+    private void subscribeToEvents(Collection<Long> datasetIds, Sse sse, SseEventSink sink) {
+        boolean subscribed = datasetEventService.subscribe(datasetIds, new DatasetEventServiceBean.Listener() {
+            @Override
+            public boolean onEvent(DatasetEventServiceBean.Event event) {
+                return send(sse.newEventBuilder()
+                        .id(event.datasetId() + ":" + event.sequence())
+                        .name(event.type())
+                        .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                        .data(event.toJson().toString())
+                        .build());
+            }
+
+            @Override
+            public boolean onPing() {
+                return send(sse.newEventBuilder().comment("ping").build());
+            }
+
+            private boolean send(OutboundSseEvent event) {
+                if (sink.isClosed()) {
+                    return false;
+                }
+                // (not waited for; a client gone is found on the next event, or ping)
+                sink.send(event).whenComplete((result, e) -> {
+                    if (e != null) {
+                        sink.close();
+                    }
+                });
+                return true;
+            }
+        });
+        if (!subscribed) {
+            throw new WebApplicationException(error(Response.Status.SERVICE_UNAVAILABLE,
+                    "Too many clients are following the events of datasets; please try again later"));
+        }
+    }
+
     @DELETE
     @AuthRequired
     @Path("{identifier}/locks")
@@ -4065,17 +4246,15 @@ public class Datasets extends AbstractApiBean {
         }
 
 
-        ApiToken token = authSvc.findApiTokenByUser(authUser);
-
         if(uriInfo != null) {
             logger.info(" ====  (api uriInfo.getRequestUri()) jsonData   ====== " + uriInfo.getRequestUri().toString());
         }
 
+        // (without the HTTP request, that will be over by the time the files are added)
+        DataverseRequest dataverseRequest = new DataverseRequest(authUser, createDataverseRequest(authUser).getSourceAddress());
 
-        String requestUrl = SystemConfig.getDataverseSiteUrlStatic();
-        
         // Async Call
-        globusService.globusUpload(jsonObject, token, dataset, requestUrl, authUser);
+        globusService.globusUpload(jsonObject, dataverseRequest, dataset, authUser);
 
         return ok("Async call to Globus Upload started ");
 
@@ -4430,19 +4609,14 @@ public class Datasets extends AbstractApiBean {
             }
         }
 
-        DataverseRequest dvRequest = createDataverseRequest(authUser);
-
-        AddReplaceFileHelper addFileHelper = new AddReplaceFileHelper(
-                dvRequest,
-                this.ingestService,
-                this.datasetService,
-                this.fileService,
-                this.permissionSvc,
-                this.commandEngine,
-                this.systemConfig
-        );
+        JsonArray filesJson;
+        try {
+            filesJson = JsonUtil.getJsonArray(jsonData);
+        } catch (JsonParsingException ex) {
+            return error(BAD_REQUEST, "Json Parsing Exception :" + ex.getMessage());
+        }
 
-        return addFileHelper.addFiles(jsonData, dataset, authUser);
+        return fileRegistrationService.addFiles(dataset.getId(), filesJson, createDataverseRequest(authUser));
 
     }
 
@@ -4790,14 +4964,44 @@ public class Datasets extends AbstractApiBean {
         if (dsv == null || dsv.getId() == null) {
             return notFound("Dataset version not found");
         }
-        JsonObjectBuilder responseJson;
+        List<String> anonymizedFieldTypeNamesList = null;
         if (isAnonymizedAccess) {
-            List<String> anonymizedFieldTypeNamesList = new ArrayList<>(Arrays.asList(anonymizedFieldTypeNames.split(",\\s")));
-            responseJson = json(dsv, anonymizedFieldTypeNamesList, true, returnOwners);
-        } else {
-            responseJson = json(dsv, null, true, returnOwners);
+            anonymizedFieldTypeNamesList = new ArrayList<>(Arrays.asList(anonymizedFieldTypeNames.split(",\\s")));
+        }
+        List<String> withheldFieldTypeNames = anonymizedFieldTypeNamesList;
+        DatasetVersion datasetVersion = loadForJson(dsv, true, returnOwners);
+        return ok(generator -> writeJson(generator, datasetVersion, withheldFieldTypeNames, true, returnOwners));
+    }
+
+    /**
+     * Loads what {@link edu.harvard.iq.dataverse.util.json.JsonPrinter#writeJson}
+     * reads from the version (its files, if they are included, with
+     * {@code findDeep}), so that nothing is left to be looked up in the
+     * database once the response is being written.
+     */
+    private DatasetVersion loadForJson(DatasetVersion datasetVersion, boolean includeFiles, boolean returnOwners) {
+        if (includeFiles) {
+            datasetVersion = datasetversionService.findDeep(datasetVersion.getId());
+        }
+        datasetVersion.getDataset().getLatestVersion();
+        datasetVersion.getTermsOfUseAndAccess();
+        loadFields(datasetVersion.getDatasetFields());
+        if (returnOwners) {
+            for (DvObject owner = datasetVersion.getDataset().getOwner(); owner != null; owner = owner.getOwner()) {
+                owner.getDisplayName();
+            }
+        }
+        return datasetVersion;
+    }
+
+    private static void loadFields(List<DatasetField> fields) {
+        for (DatasetField field : fields) {
+            field.getDatasetFieldValues().size();
+            field.getControlledVocabularyValues().size();
+            for (DatasetFieldCompoundValue compoundValue : field.getDatasetFieldCompoundValues()) {
+                loadFields(compoundValue.getChildDatasetFields());
+            }
         }
-        return ok(responseJson);
     }
 
     @GET
@@ -85,6 +85,9 @@ public class SavedSearches extends AbstractApiBean {
         savedSearchJson.add("definitionPointId", definitionPoint.getId());
         savedSearchJson.add("definitionPointAlias", definitionPoint.getAlias());
         savedSearchJson.add("creatorId", savedSearch.getCreator().getId());
+        if (savedSearch.getLastLinkTime() != null) {
+            savedSearchJson.add("lastLinkTime", savedSearch.getLastLinkTime().toString());
+        }
         return savedSearchJson;
     }
 
@@ -192,10 +195,10 @@ public class SavedSearches extends AbstractApiBean {
 
     @PUT
     @Path("makelinks/all")
-    public Response makeLinksForAllSavedSearches(@QueryParam("debug") boolean debug) {
+    public Response makeLinksForAllSavedSearches(@QueryParam("debug") boolean debug, @QueryParam("full") boolean full) {
         JsonObjectBuilder makeLinksResponse;
         try {
-            makeLinksResponse = savedSearchSvc.makeLinksForAllSavedSearches(debug);
+            makeLinksResponse = savedSearchSvc.makeLinksForAllSavedSearches(debug, full);
             return ok(makeLinksResponse);
         } catch (CommandException ex) {
             return error(BAD_REQUEST, ex.getLocalizedMessage());
@@ -206,14 +209,14 @@ public class SavedSearches extends AbstractApiBean {
 
     @PUT
     @Path("makelinks/{id}")
-    public Response makeLinksForSingleSavedSearch(@PathParam("id") long savedSearchIdToLookUp, @QueryParam("debug") boolean debug) {
+    public Response makeLinksForSingleSavedSearch(@PathParam("id") long savedSearchIdToLookUp, @QueryParam("debug") boolean debug, @QueryParam("full") boolean full) {
         SavedSearch savedSearchToMakeLinksFor = savedSearchSvc.find(savedSearchIdToLookUp);
         if (savedSearchToMakeLinksFor == null) {
             return error(BAD_REQUEST, "Count not find saved search id " + savedSearchIdToLookUp);
         }
         try {
             DataverseRequest dataverseRequest = new DataverseRequest(savedSearchToMakeLinksFor.getCreator(), SavedSearchServiceBean.getHttpServletRequest());
-            JsonObjectBuilder response = savedSearchSvc.makeLinksForSingleSavedSearch(dataverseRequest, savedSearchToMakeLinksFor, debug);
+            JsonObjectBuilder response = savedSearchSvc.makeLinksForSingleSavedSearch(dataverseRequest, savedSearchToMakeLinksFor, debug, full);
             return ok(response);
         } catch (CommandException ex) {
             return error(BAD_REQUEST, ex.getLocalizedMessage());
@@ -45,6 +45,9 @@ public class Workflows extends AbstractApiBean {
         if ( pending == null ) {
             return notFound("Cannot find workflow invocation with id " + invocationId );
         }
+        if ( pending.isRunning() ) {
+            return badRequest("Workflow invocation " + invocationId + " is running, not waiting to be resumed" );
+        }
         
         workflows.resume( pending, body );
         
@@ -0,0 +1,117 @@
+package edu.harvard.iq.dataverse.cache;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.logging.Logger;
+import org.eclipse.persistence.config.CacheIsolationType;
+import org.eclipse.persistence.config.SessionCustomizer;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.DescriptorEvent;
+import org.eclipse.persistence.descriptors.DescriptorEventAdapter;
+import org.eclipse.persistence.descriptors.invalidation.TimeToLiveCacheInvalidationPolicy;
+import org.eclipse.persistence.queries.SQLCall;
+import org.eclipse.persistence.sessions.Session;
+
+/**
+ * The persistence unit doesn't keep any entities in the (EclipseLink) shared
+ * cache by default ({@code eclipselink.cache.shared.default=false}); this
+ * customizer (see persistence.xml) keeps those listed in the
+ * {@link JvmSettings#CACHE_SHARED_ENTITIES} setting there. Meant for
+ * reference entities, that rarely change: metadata blocks, field types,
+ * licenses, roles...
+ *
+ * On an installation with several app servers, the other servers are told
+ * about the changes to these entities when
+ * {@link JvmSettings#CACHE_SHARED_COORDINATION} is {@code db}: every change
+ * bumps the version of the entity in the sharedcacheversion table, in the
+ * same transaction, and the {@link SharedCacheServiceBean} of each server
+ * evicts the entities whose versions have changed.
+ */
+public class SharedCacheCustomizer implements SessionCustomizer {
+
+    private static final Logger logger = Logger.getLogger(SharedCacheCustomizer.class.getCanonicalName());
+
+    public static final String COORDINATION_DB = "db";
+
+    @Override
+    public void customize(Session session) throws Exception {
+        Set<String> entityNames = new LinkedHashSet<>(Arrays.asList(
+                JvmSettings.CACHE_SHARED_ENTITIES.lookupOptional(String[].class).orElse(new String[0])));
+        entityNames.removeIf(String::isBlank);
+        if (entityNames.isEmpty()) {
+            return;
+        }
+        long ttl = JvmSettings.CACHE_SHARED_TTL.lookupOptional(Long.class).orElse(0L);
+        boolean coordinated = COORDINATION_DB.equals(
+                JvmSettings.CACHE_SHARED_COORDINATION.lookupOptional(String.class).orElse("none"));
+
+        Set<Class<?>> sharedClasses = new HashSet<>();
+        for (ClassDescriptor descriptor : session.getDescriptors().values()) {
+            if (!entityNames.remove(descriptor.getJavaClass().getSimpleName())) {
+                continue;
+            }
+            // (EclipseLink makes it PROTECTED instead, if it refers to
+            // entities that aren't shared)
+            descriptor.setCacheIsolation(CacheIsolationType.SHARED);
+            if (ttl > 0) {
+                descriptor.setCacheInvalidationPolicy(new TimeToLiveCacheInvalidationPolicy(ttl * 1000));
+            }
+            if (coordinated) {
+                descriptor.getEventManager().addListener(new VersionBumper(descriptor.getJavaClass().getSimpleName()));
+            }
+            sharedClasses.add(descriptor.getJavaClass());
+        }
+        if (!entityNames.isEmpty()) {
+            logger.warning("Not entities, can't be kept in the shared cache: " + entityNames);
+        }
+        session.setProfiler(new SharedCacheProfiler(sharedClasses));
+        logger.info("Keeping " + sharedClasses.size() + " entities in the shared cache"
+                + (ttl > 0 ? ", for up to " + ttl + " seconds" : "")
+                + (coordinated ? "; coordinated through the database" : ""));
+    }
+
+    /**
+     * Bumps the version of the entity, as part of the transaction that
+     * changes it.
+     */
+    static class VersionBumper extends DescriptorEventAdapter {
+
+        private final String entityName;
+
+        VersionBumper(String entityName) {
+            this.entityName = entityName;
+        }
+
+        @Override
+        public void postInsert(DescriptorEvent event) {
+            bump(event);
+        }
+
+        @Override
+        public void postUpdate(DescriptorEvent event) {
+            bump(event);
+        }
+
+        @Override
+        public void postDelete(DescriptorEvent event) {
+            bump(event);
+        }
+
+        private void bump(DescriptorEvent event) {
+            event.getSession().executeNonSelectingCall(new SQLCall(bumpVersionSql(entityName)));
+        }
+    }
+
+    /**
+     * @return the SQL (Postgres) bumping the version of the entity; the name
+     *         is that of one of the entities in the persistence unit.
+     */
+    static String bumpVersionSql(String entityName) {
+        return "INSERT INTO sharedcacheversion (entityname, version) VALUES ('" + entityName + "', 1)"
+                + " ON CONFLICT (entityname) DO UPDATE SET version = sharedcacheversion.version + 1";
+    }
+}
@@ -0,0 +1,83 @@
+package edu.harvard.iq.dataverse.cache;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.sessions.SessionProfiler;
+import org.eclipse.persistence.sessions.SessionProfilerAdapter;
+
+/**
+ * Counts the cache hits and misses EclipseLink reports for the entities kept
+ * in the shared cache (see {@link SharedCacheCustomizer}); and nothing else,
+ * unlike its PerformanceMonitor, so that it can stay on in production.
+ */
+public class SharedCacheProfiler extends SessionProfilerAdapter {
+
+    private static volatile SharedCacheProfiler instance;
+
+    private final Map<Class<?>, LongAdder> hits = new ConcurrentHashMap<>();
+    private final Map<Class<?>, LongAdder> misses = new ConcurrentHashMap<>();
+
+    SharedCacheProfiler(Set<Class<?>> sharedClasses) {
+        for (Class<?> sharedClass : sharedClasses) {
+            hits.put(sharedClass, new LongAdder());
+            misses.put(sharedClass, new LongAdder());
+        }
+        instance = this;
+    }
+
+    /**
+     * @return the profiler of the persistence unit; null if no entities are
+     *         kept in the shared cache.
+     */
+    public static SharedCacheProfiler getInstance() {
+        return instance;
+    }
+
+    public Set<Class<?>> getSharedClasses() {
+        return hits.keySet();
+    }
+
+    public long getHits(Class<?> sharedClass) {
+        LongAdder count = hits.get(sharedClass);
+        return count == null ? 0 : count.sum();
+    }
+
+    public long getMisses(Class<?> sharedClass) {
+        LongAdder count = misses.get(sharedClass);
+        return count == null ? 0 : count.sum();
+    }
+
+    public void reset() {
+        hits.values().forEach(LongAdder::reset);
+        misses.values().forEach(LongAdder::reset);
+    }
+
+    @Override
+    public void occurred(String operationName, DatabaseQuery query, AbstractSession session) {
+        if (query == null || query.getReferenceClass() == null) {
+            return;
+        }
+        Map<Class<?>, LongAdder> counts;
+        if (SessionProfiler.CacheHits.equals(operationName)) {
+            counts = hits;
+        } else if (SessionProfiler.CacheMisses.equals(operationName)) {
+            counts = misses;
+        } else {
+            return;
+        }
+        LongAdder count = counts.get(query.getReferenceClass());
+        if (count != null) {
+            count.increment();
+        }
+    }
+
+    @Override
+    public int getProfileWeight() {
+        // (anything but NONE; or EclipseLink doesn't report any events)
+        return SessionProfiler.NORMAL;
+    }
+}
@@ -0,0 +1,163 @@
+package edu.harvard.iq.dataverse.cache;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.DependsOn;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.Timeout;
+import jakarta.ejb.TimerConfig;
+import jakarta.ejb.TimerService;
+import jakarta.json.Json;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceUnit;
+
+/**
+ * Reports on, and flushes, the entities kept in the shared cache (see
+ * {@link SharedCacheCustomizer}). When the cache is coordinated through the
+ * database, polls the versions of the entities every
+ * {@link JvmSettings#CACHE_SHARED_POLL_INTERVAL} seconds, and evicts those
+ * changed (by this or any other server) since the last time.
+ */
+@Singleton
+@Startup
+@DependsOn("StartupFlywayMigrator")
+public class SharedCacheServiceBean {
+
+    private static final Logger logger = Logger.getLogger(SharedCacheServiceBean.class.getCanonicalName());
+
+    @PersistenceUnit(unitName = "VDCNet-ejbPU")
+    EntityManagerFactory emf;
+    @PersistenceContext(unitName = "VDCNet-ejbPU")
+    EntityManager em;
+    @Resource
+    TimerService timerService;
+
+    private boolean coordinated;
+    // the versions of the entities, as of the last poll:
+    private final Map<String, Long> versions = new HashMap<>();
+
+    @PostConstruct
+    public void init() {
+        // (the customizer itself only runs once the persistence unit is
+        // first used; reading the versions does)
+        coordinated = JvmSettings.CACHE_SHARED_ENTITIES.lookupOptional().isPresent()
+                && SharedCacheCustomizer.COORDINATION_DB.equals(
+                        JvmSettings.CACHE_SHARED_COORDINATION.lookupOptional(String.class).orElse("none"));
+        if (coordinated) {
+            versions.putAll(readVersions());
+            long interval = 1000 * JvmSettings.CACHE_SHARED_POLL_INTERVAL.lookupOptional(Long.class).orElse(10L);
+            timerService.createIntervalTimer(interval, interval, new TimerConfig(null, false));
+        }
+    }
+
+    /**
+     * @return whether any entities are kept in the shared cache.
+     */
+    @Lock(LockType.READ)
+    public boolean isEnabled() {
+        return SharedCacheProfiler.getInstance() != null;
+    }
+
+    @Timeout
+    public void pollVersions() {
+        Map<String, Long> current = readVersions();
+        for (Map.Entry<String, Long> entry : current.entrySet()) {
+            if (!entry.getValue().equals(versions.get(entry.getKey()))) {
+                logger.fine("Evicting " + entry.getKey() + " (version " + entry.getValue() + ") from the shared cache");
+                evict(entry.getKey());
+            }
+        }
+        versions.clear();
+        versions.putAll(current);
+    }
+
+    /**
+     * @return the hits and misses of the shared cache, by entity; since the
+     *         start of the server, or the last flush.
+     */
+    @Lock(LockType.READ)
+    public JsonObjectBuilder getStatistics() {
+        SharedCacheProfiler profiler = SharedCacheProfiler.getInstance();
+        JsonObjectBuilder entities = Json.createObjectBuilder();
+        profiler.getSharedClasses().stream().sorted(Comparator.comparing(Class::getSimpleName)).forEach(sharedClass -> {
+            long hits = profiler.getHits(sharedClass);
+            long misses = profiler.getMisses(sharedClass);
+            entities.add(sharedClass.getSimpleName(), Json.createObjectBuilder()
+                    .add("hits", hits)
+                    .add("misses", misses)
+                    .add("hitRatio", hits + misses == 0 ? 0 : (double) hits / (hits + misses)));
+        });
+        return Json.createObjectBuilder()
+                .add("coordination", coordinated ? SharedCacheCustomizer.COORDINATION_DB : "none")
+                .add("entities", entities);
+    }
+
+    /**
+     * Evicts all the entities kept in the shared cache; on all servers, if
+     * the cache is coordinated. Resets the statistics.
+     */
+    public void flush() {
+        SharedCacheProfiler profiler = SharedCacheProfiler.getInstance();
+        for (Class<?> sharedClass : profiler.getSharedClasses()) {
+            flush(sharedClass);
+        }
+        profiler.reset();
+    }
+
+    /**
+     * Evicts the entity from the shared cache; on all servers, if the cache
+     * is coordinated.
+     *
+     * @return false if the entity isn't kept in the shared cache.
+     */
+    public boolean flush(String entityName) {
+        Class<?> sharedClass = findSharedClass(entityName);
+        if (sharedClass == null) {
+            return false;
+        }
+        flush(sharedClass);
+        return true;
+    }
+
+    private void flush(Class<?> sharedClass) {
+        emf.getCache().evict(sharedClass);
+        if (coordinated) {
+            em.createNativeQuery(SharedCacheCustomizer.bumpVersionSql(sharedClass.getSimpleName())).executeUpdate();
+        }
+    }
+
+    private void evict(String entityName) {
+        Class<?> sharedClass = findSharedClass(entityName);
+        if (sharedClass != null) {
+            emf.getCache().evict(sharedClass);
+        }
+    }
+
+    private Class<?> findSharedClass(String entityName) {
+        return SharedCacheProfiler.getInstance().getSharedClasses().stream()
+                .filter(sharedClass -> sharedClass.getSimpleName().equals(entityName))
+                .findFirst().orElse(null);
+    }
+
+    private Map<String, Long> readVersions() {
+        List<Object[]> rows = em.createNativeQuery("SELECT entityname, version FROM sharedcacheversion").getResultList();
+        Map<String, Long> read = new HashMap<>();
+        for (Object[] row : rows) {
+            read.put((String) row[0], ((Number) row[1]).longValue());
+        }
+        return read;
+    }
+}
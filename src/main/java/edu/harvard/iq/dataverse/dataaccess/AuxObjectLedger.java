@@ -0,0 +1,23 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import edu.harvard.iq.dataverse.DvObject;
+
+/**
+ * Keeps track of the sizes of the auxiliary objects saved by the storage
+ * drivers (see {@link StorageIO#setAuxObjectLedger(AuxObjectLedger)}), so
+ * that the storage taken by the cached extras of a dataset can be added up in
+ * the database, instead of being listed from the storage every time.
+ */
+public interface AuxObjectLedger {
+
+    /**
+     * @param dvObject whose auxiliary object was saved; it may not be
+     * committed yet, or not even have an id yet (e.g. the thumbnails of a file
+     * being uploaded).
+     */
+    void auxObjectSaved(DvObject dvObject, String auxItemTag, long size);
+
+    void auxObjectDeleted(Long dvObjectId, String auxItemTag);
+
+    void allAuxObjectsDeleted(Long dvObjectId);
+}
@@ -32,7 +32,11 @@ import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.function.Predicate;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -339,12 +343,14 @@ public class FileAccessIO<T extends DvObject> extends StorageIO<T> {
         Path auxPath = getAuxObjectAsPath(auxItemTag);
         
         Files.move(getFileSystemPath(), auxPath, StandardCopyOption.REPLACE_EXISTING);
+        auxObjectSaved(auxItemTag, Files.size(auxPath));
     }
     
     @Override 
     public void revertBackupAsAux(String auxItemTag) throws IOException {
         Path auxPath = getAuxObjectAsPath(auxItemTag);
         Files.move(auxPath, getFileSystemPath(), StandardCopyOption.REPLACE_EXISTING);
+        auxObjectDeleted(auxItemTag);
     }
     
     // this method copies a local filesystem Path into this DataAccess Auxiliary location:
@@ -358,6 +364,7 @@ public class FileAccessIO<T extends DvObject> extends StorageIO<T> {
         try {
             Path auxPath = getAuxObjectAsPath(auxItemTag);
             Files.copy(fileSystemPath, auxPath, StandardCopyOption.REPLACE_EXISTING);
+            auxObjectSaved(auxItemTag, Files.size(auxPath));
         } catch (IOException ex) {
         }
     }
@@ -390,6 +397,7 @@ public class FileAccessIO<T extends DvObject> extends StorageIO<T> {
             }
         }
         inputStream.close();
+        auxObjectSaved(auxItemTag, outputFile.length());
     }
     
     @Override
@@ -417,20 +425,19 @@ public class FileAccessIO<T extends DvObject> extends StorageIO<T> {
     public void deleteAuxObject(String auxItemTag) throws IOException {
         Path auxPath = getAuxObjectAsPath(auxItemTag);
         Files.delete(auxPath);
+        auxObjectDeleted(auxItemTag);
     }
     
     @Override
     public void deleteAllAuxObjects() throws IOException {
         List<Path> cachedFiles = listCachedFiles();
         
-        if (cachedFiles == null) {
-            return;
-        }
-        
-        for (Path auxPath : cachedFiles) {
-            Files.delete(auxPath);
+        if (cachedFiles != null) {
+            for (Path auxPath : cachedFiles) {
+                Files.delete(auxPath);
+            }
         }
-        
+        allAuxObjectsDeleted();
     }
 
 
@@ -504,6 +511,47 @@ public class FileAccessIO<T extends DvObject> extends StorageIO<T> {
 
     }
     
+    /**
+     * Deletes the files, and their auxiliary files, listing each directory
+     * (of a dataset) once, rather than once per file.
+     */
+    @Override
+    public List<String> deleteLocations(List<String> storageLocations) {
+        // the locations to delete, by directory, and by file name:
+        Map<Path, Map<String, String>> byDirectory = new HashMap<>();
+        for (String storageLocation : storageLocations) {
+            Path path = Paths.get(DataAccess.getDriverIdAndStorageLocation(storageLocation)[1]);
+            byDirectory.computeIfAbsent(path.getParent(), dir -> new HashMap<>())
+                    .put(path.getFileName().toString(), storageLocation);
+        }
+
+        Set<String> failed = new LinkedHashSet<>();
+        for (Map.Entry<Path, Map<String, String>> directory : byDirectory.entrySet()) {
+            Map<String, String> doomed = directory.getValue();
+            if (directory.getKey() == null || !Files.isDirectory(directory.getKey())) {
+                // (already gone, with the files in it)
+                continue;
+            }
+            try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(directory.getKey())) {
+                for (Path filePath : dirStream) {
+                    String mainName = getMainName(filePath.getFileName().toString(), doomed.keySet());
+                    if (mainName != null) {
+                        try {
+                            Files.deleteIfExists(filePath);
+                        } catch (IOException ex) {
+                            logger.fine("Could not delete " + filePath + ": " + ex.getMessage());
+                            failed.add(doomed.get(mainName));
+                        }
+                    }
+                }
+            } catch (IOException ex) {
+                logger.warning("Could not list " + directory.getKey() + ": " + ex.getMessage());
+                failed.addAll(doomed.values());
+            }
+        }
+        return new ArrayList<>(failed);
+    }
+    
     // Auxilary helper methods, filesystem access-specific:
     
     public FileInputStream openLocalFileAsInputStream () {
@@ -385,6 +385,9 @@ public class ImageThumbConverter {
 
             if (tempFileRequired) {
                 storageIO.savePathAsAux(Paths.get(tempFile.getAbsolutePath()), THUMBNAIL_SUFFIX + size);
+            } else {
+                outputStream.close();
+                storageIO.auxObjectSaved(THUMBNAIL_SUFFIX + size, null);
             }
             thumbnailGenerated = true;
 
@@ -29,7 +29,11 @@ import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
 import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
 import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
 import com.amazonaws.services.s3.model.ResponseHeaderOverrides;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
@@ -62,9 +66,14 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Optional;
 import java.util.Random;
+import java.util.TreeMap;
 import java.util.function.Predicate;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -105,6 +114,17 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
     
     private boolean mainDriver = true;
 
+    // the most keys deleted by a single request, as allowed by S3:
+    static final int MAX_KEYS_PER_DELETE = 1000;
+    // how many objects of a folder must be deleted for it to be listed once,
+    // rather than the auxiliary objects of each of them:
+    private static final int MIN_KEYS_TO_LIST_FOLDER = 20;
+    // the limits of the multipart uploads, as allowed by S3:
+    private static final long MB = 1024 * 1024L;
+    static final long MIN_ALLOWED_PART_SIZE = 5 * MB;
+    static final long MAX_PART_SIZE = 5 * 1024 * MB;
+    static final int MAX_PARTS = 10000;
+
     private static HashMap<String, AmazonS3> driverClientMap = new HashMap<String,AmazonS3>();
     private static HashMap<String, TransferManager> driverTMMap = new HashMap<String,TransferManager>();
 
@@ -508,6 +528,7 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
             logger.warning("Caught an AmazonClientException in S3AccessIO.backupAsAux:    " + ase.getMessage());
             throw new IOException("S3AccessIO: Unable to backup original auxiliary object");
         }
+        auxObjectSaved(auxItemTag, null);
     }
     
     
@@ -533,6 +554,7 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         try {
             File inputFile = fileSystemPath.toFile();
             s3.putObject(new PutObjectRequest(bucketName, destinationKey, inputFile));            
+            auxObjectSaved(auxItemTag, inputFile.length());
         } catch (AmazonClientException ase) {
             logger.warning("Caught an AmazonClientException in S3AccessIO.savePathAsAux():    " + ase.getMessage());
             throw new IOException("S3AccessIO: Failed to save path as an auxiliary object.");
@@ -560,6 +582,7 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
                 }
                 throw new IOException(failureMsg);
             }
+            auxObjectSaved(auxItemTag, filesize);
         }
     }
     
@@ -608,6 +631,7 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
             tempFile.delete();
             throw new IOException(failureMsg);
         }
+        auxObjectSaved(auxItemTag, tempFile.length());
         tempFile.delete();
     }
     
@@ -680,6 +704,7 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         try {
             DeleteObjectRequest dor = new DeleteObjectRequest(bucketName, destinationKey);
             s3.deleteObject(dor);
+            auxObjectDeleted(auxItemTag);
         } catch (AmazonClientException ase) {
             logger.warning("S3AccessIO: Unable to delete object    " + ase.getMessage());
         }
@@ -722,6 +747,7 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         //Check if the list of auxiliary files for a data file is empty
         if (keys.isEmpty()) {
             logger.fine("S3AccessIO: No auxiliary objects to delete.");
+            allAuxObjectsDeleted();
             return;
         }
         multiObjectDeleteRequest.setKeys(keys);
@@ -732,6 +758,7 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         } catch (SdkClientException e) {
             throw new IOException("S3AccessIO: Failed to delete one or more auxiliary objects.");
         }
+        allAuxObjectsDeleted();
     }
 
     //TODO: Do we need this? - Answer: yes! 
@@ -1032,60 +1059,150 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
     
     public JsonObjectBuilder generateTemporaryS3UploadUrls(String globalId, String storageIdentifier, long fileSize) throws IOException {
 
+        if (!isMultipartUpload(fileSize)) {
+            JsonObjectBuilder response = Json.createObjectBuilder();
+            key = getMainFileKey();
+            response.add("url", generateTemporaryS3UploadUrl(key, getUploadUrlExpiration()));
+            response.add("partSize", minPartSize);
+            return response;
+        }
+        return generateTemporaryS3UploadPartUrls(globalId, storageIdentifier, initiateMultipartUpload(), fileSize,
+                getUploadPartSize(fileSize), Collections.emptySet());
+    }
+
+    /**
+     * @return whether a file of this size is uploaded directly in parts,
+     * rather than with a single url.
+     */
+    public boolean isMultipartUpload(long fileSize) {
+        return fileSize > minPartSize;
+    }
+
+    /**
+     * @return the size of the parts a file of this size is uploaded in: as
+     * small as the store allows (the min-part-size, if configured), for as
+     * many parts to be uploaded at the same time as possible, but no more than
+     * dataverse.files.multipart-uploads.target-parts of them.
+     */
+    public long getUploadPartSize(long fileSize) {
+        long floor = getConfigParamForDriver(driverId, MIN_PART_SIZE) != null ? minPartSize : MIN_ALLOWED_PART_SIZE;
+        int targetParts = JvmSettings.FILES_MULTIPART_UPLOADS_TARGET_PARTS.lookupOptional(Integer.class).orElse(100);
+        return getUploadPartSize(fileSize, floor, targetParts);
+    }
+
+    static long getUploadPartSize(long fileSize, long floor, int targetParts) {
+        targetParts = Math.max(1, Math.min(MAX_PARTS, targetParts));
+        long partSize = Math.max(floor, (fileSize + targetParts - 1) / targetParts);
+        // (in whole MB, and no larger than S3 allows)
+        partSize = (partSize + MB - 1) / MB * MB;
+        return Math.min(MAX_PART_SIZE, partSize);
+    }
+
+    static int getPartCount(long fileSize, long partSize) {
+        return (int) ((fileSize + partSize - 1) / partSize);
+    }
+
+    /**
+     * Starts a multipart upload of the main file.
+     *
+     * @return its upload id.
+     */
+    public String initiateMultipartUpload() throws IOException {
+        key = getMainFileKey();
+        InitiateMultipartUploadRequest initiationRequest = new InitiateMultipartUploadRequest(bucketName, key);
+        final boolean taggingDisabled = JvmSettings.DISABLE_S3_TAGGING.lookupOptional(Boolean.class, this.driverId).orElse(false);
+        if (!taggingDisabled) {
+            initiationRequest.putCustomRequestHeader(Headers.S3_TAGGING, "dv-state=temp");
+        }
+        try {
+            InitiateMultipartUploadResult initiationResponse = s3.initiateMultipartUpload(initiationRequest);
+            return initiationResponse.getUploadId();
+        } catch (SdkClientException sce) {
+            throw new IOException("Could not start a multipart upload of " + key + " (" + sce.getMessage() + ")", sce);
+        }
+    }
+
+    /**
+     * @return the urls to upload the parts of a file of this size to, but for
+     * the parts already uploaded; and those to abort and complete the upload.
+     */
+    public JsonObjectBuilder generateTemporaryS3UploadPartUrls(String globalId, String storageIdentifier, String uploadId,
+            long fileSize, long partSize, Set<Integer> uploadedParts) throws IOException {
+
         JsonObjectBuilder response = Json.createObjectBuilder();
         key = getMainFileKey();
-        java.util.Date expiration = new java.util.Date();
-        long msec = expiration.getTime();
-        msec += 60 * 1000 * getUrlExpirationMinutes();
-        expiration.setTime(msec);
-        
-        if (fileSize <= minPartSize) {
-            response.add("url", generateTemporaryS3UploadUrl(key, expiration));
-        } else {
-            JsonObjectBuilder urls = Json.createObjectBuilder();
-            InitiateMultipartUploadRequest initiationRequest = new InitiateMultipartUploadRequest(bucketName, key);
-            final boolean taggingDisabled = JvmSettings.DISABLE_S3_TAGGING.lookupOptional(Boolean.class, this.driverId).orElse(false);
-            if (!taggingDisabled) {
-                initiationRequest.putCustomRequestHeader(Headers.S3_TAGGING, "dv-state=temp");
+        Date expiration = getUploadUrlExpiration();
+
+        JsonObjectBuilder urls = Json.createObjectBuilder();
+        for (int i = 1; i <= getPartCount(fileSize, partSize); i++) {
+            if (uploadedParts.contains(i)) {
+                continue;
             }
-            InitiateMultipartUploadResult initiationResponse = s3.initiateMultipartUpload(initiationRequest);
-            String uploadId = initiationResponse.getUploadId();
-            for (int i = 1; i <= (fileSize / minPartSize) + (fileSize % minPartSize > 0 ? 1 : 0); i++) {
-                GeneratePresignedUrlRequest uploadPartUrlRequest = new GeneratePresignedUrlRequest(bucketName, key)
-                        .withMethod(HttpMethod.PUT).withExpiration(expiration);
-                uploadPartUrlRequest.addRequestParameter("uploadId", uploadId);
-                uploadPartUrlRequest.addRequestParameter("partNumber", Integer.toString(i));
-                URL presignedUrl;
-                try {
-                    presignedUrl = s3.generatePresignedUrl(uploadPartUrlRequest);
-                } catch (SdkClientException sce) {
-                    logger.warning("SdkClientException generating temporary S3 url for " + key + " (" + sce.getMessage()
-                            + ")");
-                    presignedUrl = null;
-                }
-                String urlString = null;
-                if (presignedUrl != null) {
-                    if(!StringUtil.isEmpty(proxy)) {
-                        urlString = presignedUrl.toString().replace(endpoint, proxy);
-                    } else {
-                        urlString = presignedUrl.toString();
-                    }
+            GeneratePresignedUrlRequest uploadPartUrlRequest = new GeneratePresignedUrlRequest(bucketName, key)
+                    .withMethod(HttpMethod.PUT).withExpiration(expiration);
+            uploadPartUrlRequest.addRequestParameter("uploadId", uploadId);
+            uploadPartUrlRequest.addRequestParameter("partNumber", Integer.toString(i));
+            URL presignedUrl;
+            try {
+                presignedUrl = s3.generatePresignedUrl(uploadPartUrlRequest);
+            } catch (SdkClientException sce) {
+                logger.warning("SdkClientException generating temporary S3 url for " + key + " (" + sce.getMessage()
+                        + ")");
+                presignedUrl = null;
+            }
+            String urlString = null;
+            if (presignedUrl != null) {
+                if(!StringUtil.isEmpty(proxy)) {
+                    urlString = presignedUrl.toString().replace(endpoint, proxy);
+                } else {
+                    urlString = presignedUrl.toString();
                 }
-                urls.add(Integer.toString(i), urlString);
             }
-            response.add("urls", urls);
-            response.add("abort", "/api/datasets/mpupload?globalid=" + globalId + "&uploadid=" + uploadId
-                    + "&storageidentifier=" + storageIdentifier);
-            response.add("complete", "/api/datasets/mpupload?globalid=" + globalId + "&uploadid=" + uploadId
-                    + "&storageidentifier=" + storageIdentifier);
-
+            urls.add(Integer.toString(i), urlString);
         }
-        response.add("partSize", minPartSize);
+        response.add("urls", urls);
+        response.add("abort", "/api/datasets/mpupload?globalid=" + globalId + "&uploadid=" + uploadId
+                + "&storageidentifier=" + storageIdentifier);
+        response.add("complete", "/api/datasets/mpupload?globalid=" + globalId + "&uploadid=" + uploadId
+                + "&storageidentifier=" + storageIdentifier);
+        response.add("uploadId", uploadId);
+        response.add("partSize", partSize);
 
         return response;
     }
+
+    /**
+     * @return the parts of a multipart upload of the main file uploaded so
+     * far: their ETags, by part number.
+     */
+    public Map<Integer, String> listUploadedParts(String uploadId) throws IOException {
+        key = getMainFileKey();
+        Map<Integer, String> parts = new TreeMap<>();
+        ListPartsRequest listPartsRequest = new ListPartsRequest(bucketName, key, uploadId);
+        try {
+            PartListing partListing;
+            do {
+                partListing = s3.listParts(listPartsRequest);
+                for (PartSummary part : partListing.getParts()) {
+                    parts.put(part.getPartNumber(), part.getETag());
+                }
+                listPartsRequest.setPartNumberMarker(partListing.getNextPartNumberMarker());
+            } while (partListing.isTruncated());
+        } catch (SdkClientException sce) {
+            throw new IOException("Could not list the parts uploaded to " + key + " (" + sce.getMessage() + ")", sce);
+        }
+        return parts;
+    }
+
+    private Date getUploadUrlExpiration() {
+        java.util.Date expiration = new java.util.Date();
+        long msec = expiration.getTime();
+        msec += 60 * 1000 * getUrlExpirationMinutes();
+        expiration.setTime(msec);
+        return expiration;
+    }
     
-    int getUrlExpirationMinutes() {
+    public int getUrlExpirationMinutes() {
         String optionValue = getConfigParam(URL_EXPIRATION_MINUTES); 
         if (optionValue != null) {
             Integer num; 
@@ -1280,8 +1397,16 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         
     }
 
-    public static void abortMultipartUpload(String globalId, String storageIdentifier, String uploadId)
-            throws IOException {
+    /**
+     * @return the access to the main file of a multipart upload, started
+     * with {@link #initiateMultipartUpload()}.
+     */
+    public static S3AccessIO<DataFile> getMultipartUploadAccess(String globalId, String storageIdentifier) throws IOException {
+        String driverId = DataAccess.getDriverIdAndStorageLocation(storageIdentifier)[0];
+        return new S3AccessIO<>(getBucketName(driverId) + "/" + getMultipartUploadKey(globalId, storageIdentifier, driverId), driverId);
+    }
+
+    private static String getMultipartUploadKey(String globalId, String storageIdentifier, String driverId) throws IOException {
         String baseKey = null;
         int index = globalId.indexOf(":");
         if (index >= 0) {
@@ -1289,30 +1414,27 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         } else {
             throw new IOException("Invalid Global ID (expected form with '<type>:' prefix)");
         }
+        return getMainFileKey(baseKey, storageIdentifier, driverId);
+    }
+
+    public static void abortMultipartUpload(String globalId, String storageIdentifier, String uploadId)
+            throws IOException {
         String[] info = DataAccess.getDriverIdAndStorageLocation(storageIdentifier);
         String driverId = info[0];
         AmazonS3 s3Client = getClient(driverId);
         String bucketName = getBucketName(driverId);
-        String key = getMainFileKey(baseKey, storageIdentifier, driverId);
+        String key = getMultipartUploadKey(globalId, storageIdentifier, driverId);
         AbortMultipartUploadRequest req = new AbortMultipartUploadRequest(bucketName, key, uploadId);
         s3Client.abortMultipartUpload(req);
     }
 
     public static void completeMultipartUpload(String globalId, String storageIdentifier, String uploadId,
             List<PartETag> etags) throws IOException {
-        String baseKey = null;
-        int index = globalId.indexOf(":");
-        if (index >= 0) {
-            baseKey = globalId.substring(index + 1);
-        } else {
-            throw new IOException("Invalid Global ID (expected form with '<type>:' prefix)");
-        }
-
         String[] info = DataAccess.getDriverIdAndStorageLocation(storageIdentifier);
         String driverId = info[0];
         AmazonS3 s3Client = getClient(driverId);
         String bucketName = getBucketName(driverId);
-        String key = getMainFileKey(baseKey, storageIdentifier, driverId);
+        String key = getMultipartUploadKey(globalId, storageIdentifier, driverId);
         CompleteMultipartUploadRequest req = new CompleteMultipartUploadRequest(bucketName, key, uploadId, etags);
         s3Client.completeMultipartUpload(req);
     }
@@ -1428,6 +1550,90 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         return toDelete;
     }
 
+    /**
+     * Deletes the objects, and their auxiliary objects, up to
+     * {@link #MAX_KEYS_PER_DELETE} at a time. The auxiliary objects are found
+     * by listing the folder (of the dataset) of the objects once, when there
+     * are many of them in it; or else by listing those of each object.
+     */
+    @Override
+    public List<String> deleteLocations(List<String> storageLocations) {
+        // the keys of the main objects, by folder, and their locations:
+        Map<String, Set<String>> byFolder = new HashMap<>();
+        Map<String, String> locations = new HashMap<>();
+        List<String> elsewhere = new ArrayList<>();
+        for (String storageLocation : storageLocations) {
+            String bucketAndKey = DataAccess.getDriverIdAndStorageLocation(storageLocation)[1];
+            int slash = bucketAndKey.indexOf('/');
+            if (slash < 0 || !bucketAndKey.substring(0, slash).equals(bucketName)) {
+                elsewhere.add(storageLocation);
+                continue;
+            }
+            String mainKey = bucketAndKey.substring(slash + 1);
+            byFolder.computeIfAbsent(mainKey.substring(0, mainKey.lastIndexOf('/') + 1), folder -> new HashSet<>()).add(mainKey);
+            locations.put(mainKey, storageLocation);
+        }
+
+        Set<String> failed = new LinkedHashSet<>(super.deleteLocations(elsewhere));
+        for (Map.Entry<String, Set<String>> folder : byFolder.entrySet()) {
+            Set<String> mainKeys = folder.getValue();
+            List<String> keys = new ArrayList<>(mainKeys);
+            try {
+                if (mainKeys.size() >= MIN_KEYS_TO_LIST_FOLDER) {
+                    for (S3ObjectSummary item : listObjectsWithPrefix(folder.getKey())) {
+                        if (!mainKeys.contains(item.getKey()) && getMainName(item.getKey(), mainKeys) != null) {
+                            keys.add(item.getKey());
+                        }
+                    }
+                } else {
+                    for (String mainKey : mainKeys) {
+                        for (S3ObjectSummary item : listObjectsWithPrefix(mainKey + ".")) {
+                            keys.add(item.getKey());
+                        }
+                    }
+                }
+            } catch (IOException ex) {
+                logger.warning("Could not list the auxiliary objects in " + folder.getKey() + ": " + ex.getMessage());
+                mainKeys.forEach(mainKey -> failed.add(locations.get(mainKey)));
+                continue;
+            }
+
+            for (int from = 0; from < keys.size(); from += MAX_KEYS_PER_DELETE) {
+                List<String> chunk = keys.subList(from, Math.min(keys.size(), from + MAX_KEYS_PER_DELETE));
+                DeleteObjectsRequest request = new DeleteObjectsRequest(bucketName)
+                        .withKeys(chunk.stream().map(KeyVersion::new).collect(Collectors.toList()))
+                        .withQuiet(true);
+                try {
+                    s3.deleteObjects(request);
+                } catch (MultiObjectDeleteException ex) {
+                    for (MultiObjectDeleteException.DeleteError error : ex.getErrors()) {
+                        logger.fine("Could not delete " + error.getKey() + ": " + error.getMessage());
+                        failed.add(locations.get(getMainName(error.getKey(), mainKeys)));
+                    }
+                } catch (SdkClientException ex) {
+                    logger.warning("Could not delete " + chunk.size() + " objects in " + folder.getKey() + ": " + ex.getMessage());
+                    chunk.forEach(key -> failed.add(locations.get(getMainName(key, mainKeys))));
+                }
+            }
+        }
+        failed.remove(null);
+        return new ArrayList<>(failed);
+    }
+
+    private List<S3ObjectSummary> listObjectsWithPrefix(String prefix) throws IOException {
+        try {
+            ObjectListing listing = s3.listObjects(new ListObjectsRequest().withBucketName(bucketName).withPrefix(prefix));
+            List<S3ObjectSummary> summaries = new ArrayList<>(listing.getObjectSummaries());
+            while (listing.isTruncated()) {
+                listing = s3.listNextBatchOfObjects(listing);
+                summaries.addAll(listing.getObjectSummaries());
+            }
+            return summaries;
+        } catch (SdkClientException ex) {
+            throw new IOException("S3AccessIO: Failed to list the objects in " + prefix, ex);
+        }
+    }
+
     @Override
     public long retrieveSizeFromMedia() throws IOException {
         key = getMainFileKey();
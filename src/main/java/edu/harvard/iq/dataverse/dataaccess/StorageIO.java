@@ -35,11 +35,15 @@ import java.nio.channels.Channel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -51,6 +55,8 @@ import java.util.regex.Pattern;
 
 public abstract class StorageIO<T extends DvObject> {
 
+    private static final Logger logger = Logger.getLogger(StorageIO.class.getCanonicalName());
+
     static final String INGEST_SIZE_LIMIT = "ingestsizelimit";
     static final String PUBLIC = "public";
     static final String TYPE = "type";
@@ -198,6 +204,60 @@ public abstract class StorageIO<T extends DvObject> {
 
     public abstract void deleteAllAuxObjects() throws IOException;
 
+    private static volatile AuxObjectLedger auxObjectLedger;
+
+    /**
+     * @param ledger told about every auxiliary object the drivers save or
+     * delete from now on; null for none (the default, e.g. in unit tests).
+     */
+    public static void setAuxObjectLedger(AuxObjectLedger ledger) {
+        auxObjectLedger = ledger;
+    }
+
+    /**
+     * Tells the {@link AuxObjectLedger} (if any) that the auxiliary object has
+     * been saved. Called by the drivers, once they have saved it; and, after
+     * they have closed it, by those that write the object through a channel
+     * of their own.
+     *
+     * @param size of the object, if known; null to look it up.
+     */
+    public void auxObjectSaved(String auxItemTag, Long size) {
+        AuxObjectLedger ledger = auxObjectLedger;
+        if (ledger != null && dvObject != null) {
+            try {
+                ledger.auxObjectSaved(dvObject, auxItemTag, size != null ? size : getAuxObjectSize(auxItemTag));
+            } catch (Exception ex) {
+                // (the ledger can be reconciled with the storage later)
+                logger.log(Level.WARNING, "Could not record the size of the auxiliary object " + auxItemTag
+                        + " of " + dvObject.getId(), ex);
+            }
+        }
+    }
+
+    protected void auxObjectDeleted(String auxItemTag) {
+        AuxObjectLedger ledger = auxObjectLedger;
+        if (ledger != null && dvObject != null && dvObject.getId() != null) {
+            try {
+                ledger.auxObjectDeleted(dvObject.getId(), auxItemTag);
+            } catch (Exception ex) {
+                logger.log(Level.WARNING, "Could not record the deletion of the auxiliary object " + auxItemTag
+                        + " of " + dvObject.getId(), ex);
+            }
+        }
+    }
+
+    protected void allAuxObjectsDeleted() {
+        AuxObjectLedger ledger = auxObjectLedger;
+        if (ledger != null && dvObject != null && dvObject.getId() != null) {
+            try {
+                ledger.allAuxObjectsDeleted(dvObject.getId());
+            } catch (Exception ex) {
+                logger.log(Level.WARNING, "Could not record the deletion of the auxiliary objects of " + dvObject.getId(), ex);
+            }
+        }
+    }
+
     private DataAccessRequest req;
     private InputStream in = null;
     private OutputStream out;
@@ -642,6 +702,47 @@ public abstract class StorageIO<T extends DvObject> {
 
     public abstract List<String> cleanUp(Predicate<String> filter, boolean dryRun) throws IOException;
 
+    /**
+     * Permanently deletes the stored objects at the locations passed (as
+     * returned by {@link #getStorageLocation()}, all of them of the driver of
+     * this StorageIO), along with their auxiliary objects. The objects already
+     * gone count as deleted.
+     * 
+     * By default they are deleted one at a time, through direct StorageIOs;
+     * the stores that can delete several objects at once do so.
+     * 
+     * @return the locations that could not be deleted.
+     */
+    public List<String> deleteLocations(List<String> storageLocations) {
+        List<String> failed = new ArrayList<>();
+        for (String storageLocation : storageLocations) {
+            try {
+                DataAccess.getDirectStorageIO(storageLocation).delete();
+            } catch (IOException | RuntimeException ex) {
+                logger.fine("Could not delete " + storageLocation + ": " + ex.getMessage());
+                failed.add(storageLocation);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * @return the name of the main object (in {@code mainNames}) that the
+     * object is, or is an auxiliary object of (named
+     * {@code <main name>.<aux tag>}); null if neither.
+     */
+    static String getMainName(String name, Set<String> mainNames) {
+        if (mainNames.contains(name)) {
+            return name;
+        }
+        for (int dot = name.indexOf('.'); dot > 0; dot = name.indexOf('.', dot + 1)) {
+            if (mainNames.contains(name.substring(0, dot))) {
+                return name.substring(0, dot);
+            }
+        }
+        return null;
+    }
+
     /**
      * A storage-type-specific mechanism for retrieving the size of a file. Intended
      * primarily as a way to get the size before it has been recorded in the
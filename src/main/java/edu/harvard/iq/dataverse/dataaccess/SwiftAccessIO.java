@@ -329,6 +329,7 @@ public class SwiftAccessIO<T extends DvObject> extends StorageIO<T> {
             swiftFileObject.copyObject(swiftContainer, swiftAuxObject);
             // I'm assuming we don't need to delete the main object here - ?
             //swiftFileObject.delete();
+            auxObjectSaved(auxItemTag, null);
 
         } catch (IOException ioex) {
             String failureMsg = ioex.getMessage();
@@ -379,6 +380,7 @@ public class SwiftAccessIO<T extends DvObject> extends StorageIO<T> {
             File inputFile = fileSystemPath.toFile();
             StoredObject swiftAuxObject = openSwiftAuxFile(true, auxItemTag);
             swiftAuxObject.uploadObject(inputFile);
+            auxObjectSaved(auxItemTag, inputFile.length());
 
         } catch (IOException ex) {
             String failureMsg = ex.getMessage();
@@ -407,6 +409,7 @@ public class SwiftAccessIO<T extends DvObject> extends StorageIO<T> {
         try {
             StoredObject swiftAuxObject = openSwiftAuxFile(true, auxItemTag);
             swiftAuxObject.uploadObject(inputStream);
+            auxObjectSaved(auxItemTag, null);
 
         } catch (IOException ex) {
             String failureMsg = ex.getMessage();
@@ -450,6 +453,7 @@ public class SwiftAccessIO<T extends DvObject> extends StorageIO<T> {
         }
 
         swiftAuxObject.delete();
+        auxObjectDeleted(auxItemTag);
     }
 
     @Override
@@ -469,6 +473,7 @@ public class SwiftAccessIO<T extends DvObject> extends StorageIO<T> {
                 victim.delete();
             }
         }
+        allAuxObjectsDeleted();
     }
 
     @Override
@@ -2038,19 +2038,29 @@ public class AddReplaceFileHelper{
     public Response addFiles(String jsonData, Dataset dataset, User authUser) {
         msgt("(addFilesToDataset) jsonData: " + jsonData.toString());
 
-        JsonArrayBuilder jarr = Json.createArrayBuilder();
-
-        JsonArray filesJson = null;
-
-        int totalNumberofFiles = 0;
-        int successNumberofFiles = 0;
         // -----------------------------------------------------------
         // Read jsonData and Parse files information from jsondata  :
         // -----------------------------------------------------------
+        JsonArray filesJson;
         try {
             filesJson = JsonUtil.getJsonArray(jsonData);
+        } catch (jakarta.json.stream.JsonParsingException ex) {
+            ex.printStackTrace();
+            return error(BAD_REQUEST, "Json Parsing Exception :" + ex.getMessage());
+        }
+        return addFiles(filesJson, dataset, authUser);
+    }
 
+    /**
+     * Add multiple pre-positioned files, as {@link #addFiles(String, Dataset, User)}
+     * does; with the jsonData already parsed.
+     */
+    public Response addFiles(JsonArray filesJson, Dataset dataset, User authUser) {
+        JsonArrayBuilder jarr = Json.createArrayBuilder();
 
+        int totalNumberofFiles = 0;
+        int successNumberofFiles = 0;
+        try {
             if (filesJson != null) {
                 totalNumberofFiles = filesJson.getValuesAs(JsonObject.class).size();
                 workingVersion = dataset.getOrCreateEditVersion();
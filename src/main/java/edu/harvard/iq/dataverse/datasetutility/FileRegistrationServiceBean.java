@@ -0,0 +1,210 @@
+package edu.harvard.iq.dataverse.datasetutility;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.DataFileServiceBean;
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.DatasetServiceBean;
+import edu.harvard.iq.dataverse.DvObject;
+import edu.harvard.iq.dataverse.EjbDataverseEngine;
+import edu.harvard.iq.dataverse.PermissionServiceBean;
+import edu.harvard.iq.dataverse.dataaccess.DataAccess;
+import edu.harvard.iq.dataverse.dataaccess.StorageIO;
+import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
+import edu.harvard.iq.dataverse.ingest.IngestServiceBean;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.FileUtil;
+import edu.harvard.iq.dataverse.util.SystemConfig;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Registers files that are already in the storage of a dataset (uploaded
+ * directly, transferred with Globus...) as datafiles of its draft version: all
+ * of them with a single command, in one transaction. Used by the addFiles API
+ * and the Globus uploads, in process.
+ *
+ * Calculates the checksums the descriptions of the files are missing first,
+ * on a pool of threads of its own, reading several files from the storage at
+ * the same time; the number of threads is configured with the
+ * {@link JvmSettings#FILES_REGISTRATION_THREADS} setting, and shared by all
+ * the registrations.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class FileRegistrationServiceBean {
+
+    private static final Logger logger = Logger.getLogger(FileRegistrationServiceBean.class.getCanonicalName());
+
+    @Resource
+    ManagedThreadFactory threadFactory;
+
+    @EJB
+    IngestServiceBean ingestService;
+    @EJB
+    DatasetServiceBean datasetService;
+    @EJB
+    DataFileServiceBean fileService;
+    @EJB
+    PermissionServiceBean permissionService;
+    @EJB
+    EjbDataverseEngine commandEngine;
+    @EJB
+    SystemConfig systemConfig;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        int threads = Math.max(1, JvmSettings.FILES_REGISTRATION_THREADS.lookupOptional(Integer.class).orElse(4));
+        executor = Executors.newFixedThreadPool(threads, threadFactory);
+        logger.fine("Calculating the checksums of the files being registered on " + threads + " threads");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Adds the checksums (with the fixity algorithm of the installation) and
+     * MIME types (from their names) missing from the descriptions of the
+     * files, in the format of the addFiles API. The files whose checksums are
+     * missing, and can't be calculated (not in the storage of the dataset...),
+     * are left out, and added to {@code failed} instead.
+     *
+     * @return the descriptions of the other files, in the same order.
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public JsonArray addMissingDetails(Dataset dataset, JsonArray files, List<JsonObject> failed, Logger log)
+            throws InterruptedException {
+        DataFile.ChecksumType checksumType = systemConfig.getFileFixityChecksumAlgorithm();
+        List<Future<String>> checksums = new ArrayList<>();
+        for (JsonObject file : files.getValuesAs(JsonObject.class)) {
+            if (hasChecksum(file)) {
+                checksums.add(null);
+            } else {
+                String location = getStorageLocation(dataset, file.getString(OptionalFileParams.STORAGE_IDENTIFIER_ATTR_NAME, ""));
+                checksums.add(executor.submit(() -> calculateChecksum(location, checksumType)));
+            }
+        }
+
+        JsonArrayBuilder completed = Json.createArrayBuilder();
+        for (int i = 0; i < files.size(); i++) {
+            JsonObject file = files.getJsonObject(i);
+            String checksum = null;
+            if (checksums.get(i) != null) {
+                try {
+                    checksum = checksums.get(i).get();
+                } catch (ExecutionException ee) {
+                    log.log(Level.WARNING, "Could not calculate the checksum of " + file.getString(OptionalFileParams.FILE_NAME_ATTR_NAME, "")
+                            + " (" + file.getString(OptionalFileParams.STORAGE_IDENTIFIER_ATTR_NAME, "") + ")", ee.getCause());
+                    failed.add(file);
+                    continue;
+                }
+            }
+            completed.add(addMissingDetails(file, checksum, checksumType));
+        }
+        return completed.build();
+    }
+
+    /**
+     * Adds the files to the draft version of the dataset, as the addFiles API
+     * does; without the transaction of the caller (if any), so that the
+     * locks it removes are visible to the command.
+     *
+     * @param files the descriptions of the files, as in the addFiles API.
+     * @return the response of the addFiles API.
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public Response addFiles(Long datasetId, JsonArray files, DataverseRequest dataverseRequest) {
+        Dataset dataset = datasetService.find(datasetId);
+        AddReplaceFileHelper addFileHelper = new AddReplaceFileHelper(
+                dataverseRequest,
+                ingestService,
+                datasetService,
+                fileService,
+                permissionService,
+                commandEngine,
+                systemConfig
+        );
+        return addFileHelper.addFiles(files, dataset, dataverseRequest.getUser());
+    }
+
+    private static boolean hasChecksum(JsonObject file) {
+        return file.containsKey(OptionalFileParams.CHECKSUM_OBJECT_NAME)
+                || !file.getString(OptionalFileParams.LEGACY_CHECKSUM_ATTR_NAME, "").isBlank();
+    }
+
+    private static String calculateChecksum(String location, DataFile.ChecksumType checksumType) throws Exception {
+        StorageIO<DvObject> storageIO = DataAccess.getDirectStorageIO(location);
+        try (InputStream in = storageIO.getInputStream()) {
+            return FileUtil.calculateChecksum(in, checksumType);
+        }
+    }
+
+    /**
+     * @param checksum the checksum of the file, if missing from its
+     * description; null otherwise.
+     */
+    static JsonObject addMissingDetails(JsonObject file, String checksum, DataFile.ChecksumType checksumType) {
+        JsonObjectBuilder completed = Json.createObjectBuilder(file);
+        if (checksum != null) {
+            completed.add(OptionalFileParams.CHECKSUM_OBJECT_NAME, Json.createObjectBuilder()
+                    .add(OptionalFileParams.CHECKSUM_OBJECT_TYPE, checksumType.toString())
+                    .add(OptionalFileParams.CHECKSUM_OBJECT_VALUE, checksum));
+        }
+        if (file.getString(OptionalFileParams.MIME_TYPE_ATTR_NAME, "").isBlank()) {
+            completed.add(OptionalFileParams.MIME_TYPE_ATTR_NAME, getMimeType(file.getString(OptionalFileParams.FILE_NAME_ATTR_NAME, "")));
+        }
+        return completed.build();
+    }
+
+    static String getMimeType(String fileName) {
+        String type = FileUtil.determineFileTypeByNameAndExtension(fileName);
+        if (type != null && !type.isBlank() && FileUtil.useRecognizedType(FileUtil.MIME_TYPE_UNDETERMINED_DEFAULT, type)) {
+            return type;
+        }
+        return FileUtil.MIME_TYPE_UNDETERMINED_DEFAULT;
+    }
+
+    /**
+     * @param storageIdentifier of a file of the dataset, as in the addFiles
+     * API; e.g. s3://bucket:1781cfeb8a7-748c270a227c
+     * @return the full location of the file in the storage; e.g.
+     * s3://bucket/10.5072/FK2/3S6G2E/1781cfeb8a7-748c270a227c
+     */
+    static String getStorageLocation(Dataset dataset, String storageIdentifier) {
+        String[] parts = DataAccess.getDriverIdAndStorageLocation(storageIdentifier);
+        // (S3 stores include the name of the bucket)
+        String[] bits = parts[1].split(":");
+        String bucketName = bits.length > 1 ? bits[0] : "";
+        return parts[0] + DataAccess.SEPARATOR + bucketName + "/" + dataset.getAuthorityForFileStorage() + "/"
+                + dataset.getIdentifierForFileStorage() + "/" + bits[bits.length - 1];
+    }
+}
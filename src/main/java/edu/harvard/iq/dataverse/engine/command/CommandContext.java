@@ -1,6 +1,8 @@
 package edu.harvard.iq.dataverse.engine.command;
 
 import edu.harvard.iq.dataverse.DataFileServiceBean;
+import edu.harvard.iq.dataverse.DataFileValidationServiceBean;
+import edu.harvard.iq.dataverse.DatasetEventServiceBean;
 import edu.harvard.iq.dataverse.DatasetFieldServiceBean;
 import edu.harvard.iq.dataverse.DatasetLinkingServiceBean;
 import edu.harvard.iq.dataverse.DatasetServiceBean;
@@ -82,6 +84,8 @@ public interface CommandContext {
     
     public IngestServiceBean ingest();
 
+    public DataFileValidationServiceBean fileValidation();
+
     public PermissionServiceBean permissions();
 
     public RoleAssigneeServiceBean roleAssignees();
@@ -120,6 +124,8 @@ public interface CommandContext {
     
     public StorageUseServiceBean storageUse();
 
+    public DatasetEventServiceBean datasetEvents();
+
     public SystemConfig systemConfig();
 
     public PrivateUrlServiceBean privateUrl();
@@ -5,6 +5,8 @@ import edu.harvard.iq.dataverse.GlobalId;
 import edu.harvard.iq.dataverse.search.IndexServiceBean;
 import edu.harvard.iq.dataverse.authorization.Permission;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import edu.harvard.iq.dataverse.authorization.users.User;
+import edu.harvard.iq.dataverse.engine.command.Command;
 import edu.harvard.iq.dataverse.engine.command.AbstractVoidCommand;
 import edu.harvard.iq.dataverse.engine.command.CommandContext;
 import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
@@ -51,21 +53,7 @@ public class DeleteDataFileCommand extends AbstractVoidCommand {
 
     @Override
     protected void executeImpl(CommandContext ctxt) throws CommandException {
-        if (destroy) {
-            //todo: clean this logic up!
-            //for now, if called as destroy, will check for superuser acess
-            if (doomed.getOwner().isReleased() && (!(getUser() instanceof AuthenticatedUser) || !getUser().isSuperuser())) {
-                throw new PermissionException("Destroy can only be called by superusers.",
-                        this, Collections.singleton(Permission.DeleteDatasetDraft), doomed);
-            }
-        } else // since this is not a destroy, we want to make sure the file is a draft
-        // we'll do three sanity checks
-        // 1. confirm the file is not released
-        // 2. confirm the file is only attached to one version (i.e. only has one fileMetadata)
-        // 3. confirm that version is not released
-        if (doomed.isReleased() || doomed.getFileMetadatas().size() > 1 || doomed.getFileMetadata().getDatasetVersion().isReleased()) {
-            throw new CommandException("Cannot delete file: the DataFile is published, is attached to more than one Dataset Version, or is attached to a released Dataset Version.", this);
-        }
+        checkCanDelete(doomed, destroy, this);
 
         // We need to delete a bunch of physical files, either from the file system,
         // or from some other storage medium where the datafile is stored, 
@@ -85,43 +73,7 @@ public class DeleteDataFileCommand extends AbstractVoidCommand {
             // with local filesystem as the storage mechanism). 
             
             if (FileUtil.isPackageFile(doomed)) {
-                try { 
-                    String datasetDirectory = doomed.getOwner().getFileSystemDirectory().toString();
-                    Path datasetDirectoryPath = Paths.get(datasetDirectory, doomed.getStorageIdentifier());
-                            
-                        Files.walkFileTree(datasetDirectoryPath, new SimpleFileVisitor<Path>(){
-                        @Override 
-                        public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
-                          throws IOException {
-                          Files.delete(file);
-                          return FileVisitResult.CONTINUE;
-                        }
-
-                        @Override 
-                        public FileVisitResult visitFileFailed(final Path file, final IOException e) {
-                          return handleException(e);
-                        }
-
-                        private FileVisitResult handleException(final IOException e) {
-                          logger.warning("Failed to delete file due to"+e.getMessage());
-                          return FileVisitResult.TERMINATE;
-                        }
-
-                        @Override 
-                        public FileVisitResult postVisitDirectory(final Path dir, final IOException e)
-                          throws IOException {
-                          if(e!=null)return handleException(e);
-                          Files.delete(dir);
-                          return FileVisitResult.CONTINUE;
-                        }
-                        }
-                );
-                    
-                } catch (IOException ioex) {
-                    throw new CommandExecutionException("Failed to delete package file "+doomed.getStorageIdentifier(), ioex, this);
-                }
-                
-                logger.info("Successfully deleted the package file "+doomed.getStorageIdentifier());
+                deletePackageFile(doomed, this);
                 
             } else {
                 logger.fine("Skipping deleting the physical file on the storage volume (will be done outside the command)");
@@ -204,6 +156,86 @@ public class DeleteDataFileCommand extends AbstractVoidCommand {
                 */
             }
         }
+        deleteIdentifier(doomed);
+        DataFile doomedAndMerged = ctxt.em().merge(doomed);
+        ctxt.em().remove(doomedAndMerged);
+        /**
+         * @todo consider adding an em.flush here (despite the performance
+         * impact) if you need to operate on the dataset below. Without the
+         * flush, the dataset still thinks it has the file that was just
+         * deleted.
+         */
+        // ctxt.em().flush();
+
+    }
+    
+    /**
+     * Checks that the file can be deleted: a file of a released dataset only
+     * by a superuser, destroying it; otherwise only a draft file.
+     */
+    static void checkCanDelete(DataFile doomed, boolean destroy, Command<?> command) throws CommandException {
+        if (destroy) {
+            //todo: clean this logic up!
+            //for now, if called as destroy, will check for superuser acess
+            User user = command.getRequest().getUser();
+            if (doomed.getOwner().isReleased() && (!(user instanceof AuthenticatedUser) || !user.isSuperuser())) {
+                throw new PermissionException("Destroy can only be called by superusers.",
+                        command, Collections.singleton(Permission.DeleteDatasetDraft), doomed);
+            }
+        } else // since this is not a destroy, we want to make sure the file is a draft
+        // we'll do three sanity checks
+        // 1. confirm the file is not released
+        // 2. confirm the file is only attached to one version (i.e. only has one fileMetadata)
+        // 3. confirm that version is not released
+        if (doomed.isReleased() || doomed.getFileMetadatas().size() > 1 || doomed.getFileMetadata().getDatasetVersion().isReleased()) {
+            throw new CommandException("Cannot delete file: the DataFile is published, is attached to more than one Dataset Version, or is attached to a released Dataset Version.", command);
+        }
+    }
+
+    /**
+     * Deletes a "package" file, right away: they are not supported by
+     * StorageIO (they only work with the local filesystem).
+     */
+    static void deletePackageFile(DataFile doomed, Command<?> command) throws CommandException {
+        try {
+            String datasetDirectory = doomed.getOwner().getFileSystemDirectory().toString();
+            Path datasetDirectoryPath = Paths.get(datasetDirectory, doomed.getStorageIdentifier());
+
+            Files.walkFileTree(datasetDirectoryPath, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+                        throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(final Path file, final IOException e) {
+                    return handleException(e);
+                }
+
+                private FileVisitResult handleException(final IOException e) {
+                    logger.warning("Failed to delete file due to" + e.getMessage());
+                    return FileVisitResult.TERMINATE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(final Path dir, final IOException e)
+                        throws IOException {
+                    if (e != null) return handleException(e);
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+
+        } catch (IOException ioex) {
+            throw new CommandExecutionException("Failed to delete package file " + doomed.getStorageIdentifier(), ioex, command);
+        }
+
+        logger.info("Successfully deleted the package file " + doomed.getStorageIdentifier());
+    }
+
+    static void deleteIdentifier(DataFile doomed) {
         GlobalId pid = doomed.getGlobalId();
         if (pid != null) {
             PidProvider pidProvider = PidUtil.getPidProvider(pid.getProviderId());
@@ -216,18 +248,27 @@ public class DeleteDataFileCommand extends AbstractVoidCommand {
                 logger.log(Level.WARNING, "Identifier deletion was not successfull:", e.getMessage());
             }
         }
-        DataFile doomedAndMerged = ctxt.em().merge(doomed);
-        ctxt.em().remove(doomedAndMerged);
-        /**
-         * @todo consider adding an em.flush here (despite the performance
-         * impact) if you need to operate on the dataset below. Without the
-         * flush, the dataset still thinks it has the file that was just
-         * deleted.
-         */
-        // ctxt.em().flush();
+    }
 
+    /**
+     * @return the size counted as the storage use of the file, that is freed
+     * by deleting it; 0 if it is harvested, or unknown.
+     */
+    static long getStoredSize(DataFile doomed) {
+        if (doomed.isHarvested()) {
+            return 0;
+        }
+        long storedSize = doomed.getFilesize();
+        // ingested tabular data files also have saved originals that 
+        // are counted as "storage use"
+        Long savedOriginalSize = doomed.getOriginalFileSize(); 
+        if (savedOriginalSize != null) {
+            // Note that DataFile.getFilesize() can return -1 (for "unknown"):
+            storedSize = storedSize > 0 ? storedSize + savedOriginalSize : savedOriginalSize; 
+        }
+        return Math.max(0, storedSize);
     }
-    
+
     @Override 
     public String describe() {
         StringBuilder sb = new StringBuilder();
@@ -241,18 +282,9 @@ public class DeleteDataFileCommand extends AbstractVoidCommand {
     @Override
     public boolean onSuccess(CommandContext ctxt, Object r) {
         // Adjust the storage use for the parent containers: 
-        if (!doomed.isHarvested()) {
-            long storedSize = doomed.getFilesize();
-            // ingested tabular data files also have saved originals that 
-            // are counted as "storage use"
-            Long savedOriginalSize = doomed.getOriginalFileSize(); 
-            if (savedOriginalSize != null) {
-                // Note that DataFile.getFilesize() can return -1 (for "unknown"):
-                storedSize = storedSize > 0 ? storedSize + savedOriginalSize : savedOriginalSize; 
-            }
-            if (storedSize > 0) {
-                ctxt.storageUse().incrementStorageSizeRecursively(doomed.getOwner().getId(), (0L - storedSize));
-            }
+        long storedSize = getStoredSize(doomed);
+        if (storedSize > 0) {
+            ctxt.storageUse().incrementStorageSizeRecursively(doomed.getOwner().getId(), (0L - storedSize));
         }
         /**
          * We *could* re-index the entire dataset but it's more efficient to
@@ -0,0 +1,91 @@
+package edu.harvard.iq.dataverse.engine.command.impl;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.authorization.Permission;
+import edu.harvard.iq.dataverse.engine.command.AbstractVoidCommand;
+import edu.harvard.iq.dataverse.engine.command.CommandContext;
+import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
+import edu.harvard.iq.dataverse.engine.command.RequiredPermissions;
+import edu.harvard.iq.dataverse.engine.command.exception.CommandException;
+import edu.harvard.iq.dataverse.search.IndexResponse;
+import edu.harvard.iq.dataverse.search.IndexServiceBean;
+import edu.harvard.iq.dataverse.util.FileUtil;
+import edu.harvard.iq.dataverse.util.StringUtil;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Deletes the data files of a dataset, as {@link DeleteDataFileCommand} does
+ * one of them; but with a single permission check, and a single update of the
+ * storage use and of the search index, however many files there are.
+ *
+ * As with a single file, the physical files are not deleted here; the caller
+ * passes them to {@code DataFileServiceBean.finalizeFileDeletes} once the
+ * deletion is committed.
+ */
+@RequiredPermissions(Permission.EditDataset)
+public class DeleteDataFilesCommand extends AbstractVoidCommand {
+
+    private static final Logger logger = Logger.getLogger(DeleteDataFilesCommand.class.getCanonicalName());
+
+    private final Dataset dataset;
+    private final List<DataFile> doomed;
+    private final boolean destroy;
+
+    public DeleteDataFilesCommand(Dataset dataset, List<DataFile> doomed, DataverseRequest aRequest, boolean destroy) {
+        super(aRequest, dataset);
+        this.dataset = dataset;
+        this.doomed = new ArrayList<>(doomed);
+        this.destroy = destroy;
+    }
+
+    @Override
+    protected void executeImpl(CommandContext ctxt) throws CommandException {
+        for (DataFile file : doomed) {
+            DeleteDataFileCommand.checkCanDelete(file, destroy, this);
+        }
+        logger.log(Level.FINE, "Deleting {0} DataFiles of the dataset {1}", new Object[]{doomed.size(), dataset.getId()});
+
+        for (DataFile file : doomed) {
+            if (!file.isHarvested() && !StringUtil.isEmpty(file.getStorageIdentifier()) && FileUtil.isPackageFile(file)) {
+                DeleteDataFileCommand.deletePackageFile(file, this);
+            }
+            DeleteDataFileCommand.deleteIdentifier(file);
+            // (no flush in between: see DeleteDataFileCommand)
+            ctxt.em().remove(ctxt.em().merge(file));
+        }
+    }
+
+    @Override
+    public String describe() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(super.describe());
+        sb.append("DataFiles:");
+        sb.append(doomed.size());
+        sb.append(" ");
+        return sb.toString();
+    }
+
+    @Override
+    public boolean onSuccess(CommandContext ctxt, Object r) {
+        long storedSize = 0;
+        List<String> solrIdsToDelete = new ArrayList<>();
+        for (DataFile file : doomed) {
+            storedSize += DeleteDataFileCommand.getStoredSize(file);
+            String solrIdOfDraftFile = IndexServiceBean.solrDocIdentifierFile + file.getId() + IndexServiceBean.draftSuffix;
+            solrIdsToDelete.add(solrIdOfDraftFile);
+            solrIdsToDelete.add(solrIdOfDraftFile + IndexServiceBean.discoverabilityPermissionSuffix);
+        }
+        if (storedSize > 0) {
+            ctxt.storageUse().incrementStorageSizeRecursively(dataset.getId(), (0L - storedSize));
+        }
+        if (!solrIdsToDelete.isEmpty()) {
+            IndexResponse resultOfSolrDeletionAttempt = ctxt.solrIndex().deleteMultipleSolrIds(solrIdsToDelete);
+            logger.log(Level.FINE, "Result of attempt to delete file IDs from the search index: {0}", resultOfSolrDeletionAttempt.getMessage());
+        }
+        return true;
+    }
+}
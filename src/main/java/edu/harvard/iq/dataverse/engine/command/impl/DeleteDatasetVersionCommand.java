@@ -1,5 +1,6 @@
 package edu.harvard.iq.dataverse.engine.command.impl;
 
+import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DatasetVersion;
 import edu.harvard.iq.dataverse.FileMetadata;
@@ -16,6 +17,7 @@ import edu.harvard.iq.dataverse.engine.command.exception.CommandException;
 import edu.harvard.iq.dataverse.engine.command.exception.IllegalCommandException;
 import edu.harvard.iq.dataverse.privateurl.PrivateUrl;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.logging.Logger;
@@ -53,16 +55,20 @@ public class DeleteDatasetVersionCommand extends AbstractVoidCommand {
                 Long versionId = doomedVersion.getId();
 
                 // files
+                List<DataFile> doomedFiles = new ArrayList<>();
                 Iterator<FileMetadata> fmIt = doomedVersion.getFileMetadatas().iterator();
                 while (fmIt.hasNext()) {
                     FileMetadata fmd = fmIt.next();
                     if (!fmd.getDataFile().isReleased()) {
                         // if file is draft (ie. new to this version, delete
                         // and remove fileMetadata from list (so that it won't try to merge)
-                        ctxt.engine().submit(new DeleteDataFileCommand(fmd.getDataFile(), getRequest()));
+                        doomedFiles.add(fmd.getDataFile());
                         fmIt.remove(); 
                     }
                 }
+                if (!doomedFiles.isEmpty()) {
+                    ctxt.engine().submit(new DeleteDataFilesCommand(doomed, doomedFiles, getRequest(), false));
+                }
 
                 DatasetVersion doomedAndMerged = ctxt.em().merge(doomedVersion);
                 ctxt.em().remove(doomedAndMerged);
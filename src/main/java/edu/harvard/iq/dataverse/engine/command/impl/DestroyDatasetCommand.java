@@ -22,7 +22,6 @@ import edu.harvard.iq.dataverse.pidproviders.PidUtil;
 import edu.harvard.iq.dataverse.search.IndexResponse;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -75,17 +74,19 @@ public class DestroyDatasetCommand extends AbstractVoidCommand {
         // optimistic lock issues... (plus the physical files need to be 
         // deleted too!)
         DatasetVersion dv = managedDoomed.getLatestVersion();
-        Iterator <DataFile> dfIt = managedDoomed.getFiles().iterator();
-        while (dfIt.hasNext()){
-            DataFile df = dfIt.next();
+        List<DataFile> doomedFiles = new ArrayList<>(managedDoomed.getFiles());
+        for (DataFile df : doomedFiles) {
             // Gather potential Solr IDs of files. As of this writing deaccessioned files are never indexed.
             String solrIdOfPublishedFile = IndexServiceBean.solrDocIdentifierFile + df.getId();
             datasetAndFileSolrIdsToDelete.add(solrIdOfPublishedFile);
             String solrIdOfDraftFile = IndexServiceBean.solrDocIdentifierFile + df.getId() + IndexServiceBean.draftSuffix;
             datasetAndFileSolrIdsToDelete.add(solrIdOfDraftFile);
-            ctxt.engine().submit(new DeleteDataFileCommand(df, getRequest(), true));
-            dfIt.remove();
         }
+        // (all of them in one command, rather than one command per file)
+        if (!doomedFiles.isEmpty()) {
+            ctxt.engine().submit(new DeleteDataFilesCommand(managedDoomed, doomedFiles, getRequest(), true));
+        }
+        managedDoomed.getFiles().clear();
         dv.setFileMetadatas(null);
         
         
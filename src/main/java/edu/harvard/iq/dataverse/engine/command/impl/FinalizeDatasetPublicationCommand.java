@@ -2,7 +2,9 @@ package edu.harvard.iq.dataverse.engine.command.impl;
 
 import edu.harvard.iq.dataverse.ControlledVocabularyValue;
 import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.DataFileValidationServiceBean;
 import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.DatasetEventServiceBean;
 import edu.harvard.iq.dataverse.DatasetField;
 import edu.harvard.iq.dataverse.DatasetFieldConstant;
 import edu.harvard.iq.dataverse.DatasetLock;
@@ -15,6 +17,7 @@ import edu.harvard.iq.dataverse.UserNotification;
 import edu.harvard.iq.dataverse.authorization.Permission;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.dataset.DatasetUtil;
+import edu.harvard.iq.dataverse.datasetutility.FileSizeChecker;
 import edu.harvard.iq.dataverse.engine.command.CommandContext;
 import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import edu.harvard.iq.dataverse.engine.command.RequiredPermissions;
@@ -23,6 +26,7 @@ import edu.harvard.iq.dataverse.export.ExportService;
 import edu.harvard.iq.dataverse.pidproviders.PidProvider;
 import edu.harvard.iq.dataverse.pidproviders.PidUtil;
 import edu.harvard.iq.dataverse.privateurl.PrivateUrl;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.util.BundleUtil;
 import edu.harvard.iq.dataverse.workflow.WorkflowContext.TriggerType;
@@ -30,6 +34,7 @@ import java.io.IOException;
 import java.sql.Timestamp;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -39,6 +44,7 @@ import edu.harvard.iq.dataverse.engine.command.Command;
 import edu.harvard.iq.dataverse.util.FileUtil;
 import java.util.ArrayList;
 import java.util.concurrent.Future;
+import jakarta.json.Json;
 import org.apache.solr.client.solrj.SolrServerException;
 
 
@@ -63,6 +69,9 @@ public class FinalizeDatasetPublicationCommand extends AbstractPublishDatasetCom
     List<Dataverse> dataversesToIndex = new ArrayList<>();
     
     public static final String FILE_VALIDATION_ERROR = "FILE VALIDATION ERROR";
+
+    // how many files publicized are recorded (for resuming) in one transaction:
+    private static final int PUBLICIZED_PIDS_RECORD_BATCH_SIZE = 100;
     
     public FinalizeDatasetPublicationCommand(Dataset aDataset, DataverseRequest aRequest) {
         this( aDataset, aRequest, false );
@@ -299,6 +308,10 @@ public class FinalizeDatasetPublicationCommand extends AbstractPublishDatasetCom
         }
         ctxt.index().asyncIndexDataset(dataset, true);
         
+        ctxt.datasetEvents().publish(dataset.getId(), DatasetEventServiceBean.Type.PUBLICATION_DONE,
+                Json.createObjectBuilder()
+                        .add("version", dataset.getLatestVersion().getFriendlyVersionNumber()));
+        
         return retVal;
     }
 
@@ -344,21 +357,57 @@ public class FinalizeDatasetPublicationCommand extends AbstractPublishDatasetCom
 
             long datasetSize = DatasetUtil.getDownloadSizeNumeric(dataset.getLatestVersion(), false);
             if (maxDatasetSize == -1 || datasetSize < maxDatasetSize) {
+                // Files that have already been validated (on an earlier
+                // publication), and whose checksums haven't changed since, are
+                // not validated again; unless incremental validation is
+                // disabled:
+                boolean incremental = JvmSettings.FILES_VALIDATION_INCREMENTAL.lookupOptional(Boolean.class).orElse(true);
+                List<DataFile> dataFilesToValidate = new ArrayList<>();
+                long bytesToValidate = 0;
                 for (DataFile dataFile : dataset.getFiles()) {
-                    // TODO: Should we validate all the files in the dataset, or only
-                    // the files that haven't been published previously?
-                    // (the decision was made to validate all the files on every
-                    // major release; we can revisit the decision if there's any
-                    // indication that this makes publishing take significantly longer.
+                    if (incremental && dataFile.getChecksumValidationTime() != null) {
+                        logger.fine("Datafile " + dataFile.getId() + " was validated on " + dataFile.getChecksumValidationTime() + "; skipping");
+                        continue;
+                    }
                     String driverId = FileUtil.getStorageDriver(dataFile);
                     if(StorageIO.isDataverseAccessible(driverId) && (maxFileSize == -1 || dataFile.getFilesize() < maxFileSize)) {
-                        FileUtil.validateDataFileChecksum(dataFile);
+                        // The files are validated on other threads; so
+                        // everything the validation needs from the entities is
+                        // looked up here:
+                        dataFile.getStorageIO();
+                        dataFile.isTabularData();
+                        dataFile.getIngestReport();
+                        dataFilesToValidate.add(dataFile);
+                        bytesToValidate += dataFile.getFilesize() == null ? 0 : dataFile.getFilesize();
                     }
                     else {
                         String message = "Checksum Validation skipped for this datafile: " + dataFile.getId() + ", because of the size of the datafile limit (set to " + maxFileSize + " ); ";
                         logger.info(message);
                     }
                 }
+
+                // The progress is reported on the finalizePublication lock:
+                DatasetLock lock = dataset.getLockFor(DatasetLock.Reason.finalizePublication);
+                DataFileValidationServiceBean.ProgressListener progressListener = null;
+                if (lock != null && lock.getId() != null) {
+                    Long lockId = lock.getId();
+                    String lockInfo = lock.getInfo() == null ? "" : lock.getInfo();
+                    int filesToValidate = dataFilesToValidate.size();
+                    long totalBytes = bytesToValidate;
+                    progressListener = (validatedFiles, validatedBytes) -> ctxt.datasets().updateDatasetLockInfo(lockId,
+                            lockInfo + " (validated " + validatedFiles + " of " + filesToValidate + " files; "
+                            + FileSizeChecker.bytesToHumanReadable(validatedBytes) + " of "
+                            + FileSizeChecker.bytesToHumanReadable(totalBytes) + ")");
+                }
+                ctxt.fileValidation().validateChecksums(dataFilesToValidate, progressListener);
+
+                Timestamp validationTime = new Timestamp(new Date().getTime());
+                for (DataFile dataFile : dataFilesToValidate) {
+                    dataFile.setChecksumValidationTime(validationTime);
+                }
+                if (progressListener != null) {
+                    ctxt.datasets().updateDatasetLockInfo(lock.getId(), lock.getInfo());
+                }
             }
             else {
                 String message = "Checksum Validation skipped for this dataset: " + dataset.getId() + ", because of the size of the dataset limit (set to " + maxDatasetSize + " ); ";
@@ -404,16 +453,7 @@ public class FinalizeDatasetPublicationCommand extends AbstractPublishDatasetCom
             if (registerGlobalIdsForFiles 
                     && dataset.getLatestVersion().getMinorVersionNumber() != null
                     && dataset.getLatestVersion().getMinorVersionNumber().equals((long) 0)) {
-                // A false return value indicates a failure in calling the service
-                for (DataFile df : dataset.getFiles()) {
-                    logger.log(Level.FINE, "registering global id for file {0}", df.getId());
-                    // A false return value indicates a failure in calling the service
-                    if (!pidProvider.publicizeIdentifier(df)) {
-                        throw new Exception();
-                    }
-                    df.setGlobalIdCreateTime(getTimestamp());
-                    df.setIdentifierRegistered(true);
-                }
+                publicizeFileIdentifiers(dataset, pidProvider, ctxt);
             }
             if (!pidProvider.publicizeIdentifier(dataset)) {
                 throw new Exception();
@@ -421,6 +461,7 @@ public class FinalizeDatasetPublicationCommand extends AbstractPublishDatasetCom
             dataset.setGlobalIdCreateTime(new Date()); // TODO these two methods should be in the responsibility of the
                                                        // pidProvider.
             dataset.setIdentifierRegistered(true);
+            ctxt.datasets().deletePublicizedFilePids(dataset.getId());
         } catch (Throwable e) {
             logger.warning("Failed to register the identifier " + dataset.getGlobalId().asString()
                     + ", or to register a file in the dataset; notifying the user(s), unlocking the dataset");
@@ -435,6 +476,55 @@ public class FinalizeDatasetPublicationCommand extends AbstractPublishDatasetCom
         }
     }
     
+    /**
+     * Publicizes the PIDs of the files, several at a time (see
+     * {@link PidProvider#publicizeIdentifiers(List, java.util.function.Consumer)}).
+     * The files publicized are recorded as they go, outside of the transaction
+     * of the command: if the publication fails, the next attempt resumes
+     * where this one stopped.
+     */
+    private void publicizeFileIdentifiers(Dataset dataset, PidProvider pidProvider, CommandContext ctxt) throws Exception {
+        Map<Long, String[]> publicizedEarlier = ctxt.datasets().findPublicizedFilePids(dataset.getId());
+        List<DataFile> filesToPublicize = new ArrayList<>();
+        for (DataFile df : dataset.getFiles()) {
+            String[] pid = publicizedEarlier.get(df.getId());
+            if (pid != null && (df.getIdentifier() == null || df.getIdentifier().equals(pid[2]))) {
+                logger.log(Level.FINE, "global id for file {0} registered earlier", df.getId());
+                // (an identifier generated by the earlier attempt has been
+                // rolled back with it)
+                df.setProtocol(pid[0]);
+                df.setAuthority(pid[1]);
+                df.setIdentifier(pid[2]);
+                df.setGlobalIdCreateTime(getTimestamp());
+                df.setIdentifierRegistered(true);
+            } else {
+                filesToPublicize.add(df);
+            }
+        }
+        if (filesToPublicize.isEmpty()) {
+            return;
+        }
+        logger.log(Level.FINE, "registering global ids for {0} files", filesToPublicize.size());
+
+        List<DvObject> toRecord = new ArrayList<>();
+        List<DvObject> notPublicized = pidProvider.publicizeIdentifiers(filesToPublicize, df -> {
+            df.setGlobalIdCreateTime(getTimestamp());
+            df.setIdentifierRegistered(true);
+            toRecord.add(df);
+            if (toRecord.size() >= PUBLICIZED_PIDS_RECORD_BATCH_SIZE) {
+                ctxt.datasets().recordPublicizedFilePids(dataset.getId(), toRecord);
+                toRecord.clear();
+            }
+        });
+        if (!toRecord.isEmpty()) {
+            ctxt.datasets().recordPublicizedFilePids(dataset.getId(), toRecord);
+        }
+        if (!notPublicized.isEmpty()) {
+            // A non-empty return value indicates a failure in calling the service
+            throw new Exception("Failed to register the global ids of " + notPublicized.size() + " files");
+        }
+    }
+    
     private void updateFiles(Timestamp updateTime, CommandContext ctxt) throws CommandException {
         for (DataFile dataFile : getDataset().getFiles()) {
             if (dataFile.getPublicationDate() == null) {
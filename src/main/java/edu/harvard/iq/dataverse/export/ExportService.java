@@ -17,6 +17,7 @@ import edu.harvard.iq.dataverse.util.BundleUtil;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -35,6 +36,7 @@ import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -44,11 +46,18 @@ import java.util.Optional;
 import java.util.ServiceConfigurationError;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jakarta.ws.rs.core.MediaType;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.TeeOutputStream;
 
 /**
  *
@@ -59,6 +68,16 @@ public class ExportService {
     private static ExportService service;
     private ServiceLoader<Exporter> loader;
     private Map<String, Exporter> exporterMap = new HashMap<>();
+    // The exporters, in the order they have to run in: the exporters of each
+    // "level" only depend on the formats of the levels before, and can run
+    // at the same time.
+    private List<List<Exporter>> exportLevels;
+    // the formats other exporters depend on:
+    private Set<String> prerequisiteFormats = new HashSet<>();
+
+    // runs the exporters of a level concurrently; injected by the
+    // ExportServiceHelper bean. Without it, they run on the calling thread.
+    private static ExecutorService exportExecutor;
 
     private static final Logger logger = Logger.getLogger(ExportService.class.getCanonicalName());
 
@@ -106,6 +125,70 @@ public class ExportService {
             logger.log(Level.FINE, "SL: " + exp.getFormatName() + " from " + exp.getClass().getCanonicalName()
                     + " and classloader: " + exp.getClass().getClassLoader().getClass().getCanonicalName());
         });
+
+        /*
+         * Step 4 - Sort the exporters by their prerequisites, once.
+         */
+        sortExporters();
+    }
+
+    // A service with these exporters only, for the tests.
+    ExportService(Collection<Exporter> exporters) {
+        exporters.forEach(exp -> exporterMap.put(exp.getFormatName(), exp));
+        sortExporters();
+    }
+
+    private void sortExporters() {
+        exportLevels = sortByPrerequisites(exporterMap.values());
+        exporterMap.values().forEach(exp -> exp.getPrerequisiteFormatName().ifPresent(prerequisiteFormats::add));
+    }
+
+    static void injectExecutor(ExecutorService executor) {
+        exportExecutor = executor;
+    }
+
+    /**
+     * Sorts the exporters into "levels": the first level has the exporters
+     * without a prerequisite format; every following level the exporters
+     * whose prerequisite is exported by one of the levels before it.
+     * Exporters whose prerequisite format is not available (or that depend on
+     * each other in a cycle) can never run, and are left out.
+     */
+    static List<List<Exporter>> sortByPrerequisites(Collection<Exporter> exporters) {
+        Set<String> formats = new HashSet<>();
+        exporters.forEach(exp -> formats.add(exp.getFormatName()));
+
+        List<Exporter> remaining = new ArrayList<>();
+        for (Exporter exp : exporters) {
+            Optional<String> prerequisite = exp.getPrerequisiteFormatName();
+            if (prerequisite.isPresent() && !formats.contains(prerequisite.get())) {
+                logger.warning("Prerequisite format " + prerequisite.get() + " of the " + exp.getFormatName()
+                        + " exporter is not available; " + exp.getFormatName() + " will not be exported.");
+            } else {
+                remaining.add(exp);
+            }
+        }
+
+        List<List<Exporter>> levels = new ArrayList<>();
+        Set<String> exported = new HashSet<>();
+        while (!remaining.isEmpty()) {
+            List<Exporter> level = new ArrayList<>();
+            for (Exporter exp : remaining) {
+                Optional<String> prerequisite = exp.getPrerequisiteFormatName();
+                if (prerequisite.isEmpty() || exported.contains(prerequisite.get())) {
+                    level.add(exp);
+                }
+            }
+            if (level.isEmpty()) {
+                remaining.forEach(exp -> logger.warning("The prerequisites of the " + exp.getFormatName()
+                        + " exporter depend on each other; " + exp.getFormatName() + " will not be exported."));
+                break;
+            }
+            remaining.removeAll(level);
+            level.forEach(exp -> exported.add(exp.getFormatName()));
+            levels.add(level);
+        }
+        return levels;
     }
 
     public static synchronized ExportService getInstance() {
@@ -253,25 +336,41 @@ public class ExportService {
                 throw new ExportException("No released version for dataset " + dataset.getGlobalId().toString());
             }
             InternalExportDataProvider dataProvider = new InternalExportDataProvider(releasedVersion);
+            if (exportExecutor != null && exportLevels.stream().anyMatch(level -> level.size() > 1)) {
+                // (the exporters of a level will run on other threads: the
+                // representations of the version they may ask for are built
+                // here first, for them not to touch the entities; the storage
+                // of the dataset has already been looked up by
+                // clearAllCachedFormats() above)
+                dataProvider.buildRepresentations();
+            }
 
-            for (Exporter e : exporterMap.values()) {
-                String formatName = e.getFormatName();
-                if(e.getPrerequisiteFormatName().isPresent()) {
-                    String prereqFormatName = e.getPrerequisiteFormatName().get();
-                    try (InputStream preReqStream = getExport(dataset, prereqFormatName)) {
-                        dataProvider.setPrerequisiteInputStream(preReqStream);
-                        cacheExport(dataset, dataProvider, formatName, e);
-                        dataProvider.setPrerequisiteInputStream(null);
-                    } catch (IOException ioe) {
-                        throw new ExportException ("Could not get prerequisite " + e.getPrerequisiteFormatName() + " to create " + formatName + "export for dataset " + dataset.getId(), ioe);
+            // A local copy of every export that is a prerequisite of another,
+            // so that it doesn't have to be read back from the storage; only
+            // once it has been exported successfully:
+            Map<String, File> prerequisiteCopies = new ConcurrentHashMap<>();
+            AtomicBoolean allExported = new AtomicBoolean(true);
+            try {
+                for (List<Exporter> level : exportLevels) {
+                    List<Callable<Void>> exports = new ArrayList<>();
+                    for (Exporter e : level) {
+                        exports.add(() -> {
+                            if (!cacheExport(dataset, dataProvider, e, prerequisiteCopies)) {
+                                allExported.set(false);
+                            }
+                            return null;
+                        });
                     }
-                } else {
-                    cacheExport(dataset, dataProvider, formatName, e);
+                    runAll(exports);
                 }
+            } finally {
+                prerequisiteCopies.values().forEach(File::delete);
             }
             // Finally, if we have been able to successfully export in all available
             // formats, we'll increment the "last exported" time stamp:
-            dataset.setLastExportTime(new Timestamp(new Date().getTime()));
+            if (allExported.get()) {
+                dataset.setLastExportTime(new Timestamp(new Date().getTime()));
+            }
 
         } catch (ServiceConfigurationError serviceError) {
             throw new ExportException("Service configuration error during export. " + serviceError.getMessage());
@@ -283,6 +382,88 @@ public class ExportService {
 
     }
 
+    // Runs the exports (of one level) on the export executor, if there is
+    // one, and waits for all of them to finish.
+    private void runAll(List<Callable<Void>> exports) throws ExportException {
+        if (exportExecutor == null || exports.size() == 1) {
+            for (Callable<Void> export : exports) {
+                try {
+                    export.call();
+                } catch (ExportException | RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new ExportException("Unexpected exception exporting metadata", e);
+                }
+            }
+            return;
+        }
+        try {
+            List<Future<Void>> results = exportExecutor.invokeAll(exports);
+            for (Future<Void> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException ee) {
+                    Throwable cause = ee.getCause();
+                    if (cause instanceof ExportException) {
+                        throw (ExportException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new ExportException("Unexpected exception exporting metadata", cause);
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ExportException("Interrupted while exporting metadata", ie);
+        }
+    }
+
+    // Runs one exporter of exportAllFormats(); with the local copy of its
+    // prerequisite export, if it has one; and making a copy of its own
+    // export, if other exporters depend on it. An exporter whose
+    // prerequisite failed is skipped. Returns false if the export failed, or
+    // was skipped.
+    private boolean cacheExport(Dataset dataset, InternalExportDataProvider dataProvider, Exporter exporter,
+            Map<String, File> prerequisiteCopies) throws ExportException {
+        String formatName = exporter.getFormatName();
+        File copy = null;
+        if (prerequisiteFormats.contains(formatName)) {
+            try {
+                copy = File.createTempFile("export_" + formatName, ".tmp");
+            } catch (IOException ioe) {
+                throw new ExportException("IO Exception thrown before exporting as " + "export_" + formatName + ".cached", ioe);
+            }
+        }
+        boolean exported = false;
+        try {
+            if (exporter.getPrerequisiteFormatName().isPresent()) {
+                String prereqFormatName = exporter.getPrerequisiteFormatName().get();
+                File prerequisite = prerequisiteCopies.get(prereqFormatName);
+                if (prerequisite == null) {
+                    logger.warning("Not creating export_" + formatName + ".cached for dataset " + dataset.getId()
+                            + ": its prerequisite " + prereqFormatName + " could not be exported");
+                    return false;
+                }
+                try (InputStream preReqStream = new FileInputStream(prerequisite)) {
+                    exported = cacheExport(dataset, new InternalExportDataProvider(dataProvider, preReqStream), formatName, exporter, copy);
+                } catch (IOException ioe) {
+                    throw new ExportException ("Could not get prerequisite " + prereqFormatName + " to create " + formatName + "export for dataset " + dataset.getId(), ioe);
+                }
+            } else {
+                exported = cacheExport(dataset, dataProvider, formatName, exporter, copy);
+            }
+        } finally {
+            if (copy != null) {
+                if (exported) {
+                    prerequisiteCopies.put(formatName, copy);
+                } else {
+                    copy.delete();
+                }
+            }
+        }
+        return exported;
+    }
+
     public void clearAllCachedFormats(Dataset dataset) throws IOException {
         try {
 
@@ -311,20 +492,23 @@ public class ExportService {
                     throw new ExportException(
                             "No published version found during export. " + dataset.getGlobalId().toString());
                 }
+                boolean exported;
                 if(e.getPrerequisiteFormatName().isPresent()) {
                     String prereqFormatName = e.getPrerequisiteFormatName().get();
                     try (InputStream preReqStream = getExport(dataset, prereqFormatName)) {
                         InternalExportDataProvider dataProvider = new InternalExportDataProvider(releasedVersion, preReqStream);
-                        cacheExport(dataset, dataProvider, formatName, e);
+                        exported = cacheExport(dataset, dataProvider, formatName, e, null);
                     } catch (IOException ioe) {
                         throw new ExportException ("Could not get prerequisite " + e.getPrerequisiteFormatName() + " to create " + formatName + "export for dataset " + dataset.getId(), ioe);
                     }
                 } else {
                     InternalExportDataProvider dataProvider = new InternalExportDataProvider(releasedVersion);
-                    cacheExport(dataset, dataProvider, formatName, e);
+                    exported = cacheExport(dataset, dataProvider, formatName, e, null);
                 }
                 // As with exportAll, we should update the lastexporttime for the dataset
-                dataset.setLastExportTime(new Timestamp(new Date().getTime()));
+                if (exported) {
+                    dataset.setLastExportTime(new Timestamp(new Date().getTime()));
+                }
             } else {
                 throw new ExportException("Exporter not found");
             }
@@ -352,9 +536,11 @@ public class ExportService {
     }
 
     // This method runs the selected metadata exporter, caching the output
-    // in a file in the dataset directory / container based on its DOI:
-    private void cacheExport(Dataset dataset, InternalExportDataProvider dataProvider, String format, Exporter exporter)
-            throws ExportException {
+    // in a file in the dataset directory / container based on its DOI
+    // (and writing a copy of it to the local file "copy", if not null).
+    // Returns false if the exporter failed:
+    private boolean cacheExport(Dataset dataset, InternalExportDataProvider dataProvider, String format, Exporter exporter,
+            File copy) throws ExportException {
         
         OutputStream outputStream = null;
         try {
@@ -380,6 +566,9 @@ public class ExportService {
                 tempFile = File.createTempFile("tempFileToExport", ".tmp");
                 outputStream = new FileOutputStream(tempFile);
             }
+            if (copy != null) {
+                outputStream = new TeeOutputStream(outputStream, new FileOutputStream(copy));
+            }
 
             try {
                 // Write the metadata export file to the outputStream, which may be the final
@@ -393,7 +582,10 @@ public class ExportService {
                     storageIO.savePathAsAux(Paths.get(tempFile.getAbsolutePath()), "export_" + format + ".cached");
                     boolean tempFileDeleted = tempFile.delete();
                     logger.fine("tempFileDeleted: " + tempFileDeleted);
+                } else {
+                    storageIO.auxObjectSaved("export_" + format + ".cached", null);
                 }
+                return true;
             } catch (ExportException exex) {
                 /*
                  * This exception is from the particular exporter and may not affect other
@@ -404,6 +596,18 @@ public class ExportService {
                  * ignore beyond terminating any loop over exporters.
                  */
                 logger.warning("Exception thrown while creating export_" + format + ".cached : " + exex.getMessage());
+                IOUtils.closeQuietly(outputStream);
+                if (tempFileUsed) {
+                    tempFile.delete();
+                } else {
+                    // (what the exporter wrote before it failed is not kept)
+                    try {
+                        storageIO.deleteAuxObject("export_" + format + ".cached");
+                    } catch (IOException ioex) {
+                        logger.fine("Could not delete the incomplete export_" + format + ".cached: " + ioex.getMessage());
+                    }
+                }
+                return false;
             } catch (IOException ioex) {
                 throw new ExportException("IO Exception thrown exporting as " + "export_" + format + ".cached");
             }
@@ -0,0 +1,51 @@
+package edu.harvard.iq.dataverse.export;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+
+/**
+ * This is a small helper bean: as it is a singleton and built at application
+ * start (=deployment), it creates the pool of (managed) threads the
+ * {@link ExportService} runs the exporters of a dataset on, and injects it
+ * into the ExportService. The size of the pool is configured with the
+ * {@link JvmSettings#EXPORT_FORMAT_THREADS} setting.
+ */
+@Singleton
+@Startup
+public class ExportServiceHelper {
+
+    private static final Logger logger = Logger.getLogger(ExportServiceHelper.class.getCanonicalName());
+
+    @Resource
+    ManagedThreadFactory threadFactory;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void injectExecutor() {
+        int threads = JvmSettings.EXPORT_FORMAT_THREADS.lookupOptional(Integer.class)
+                .orElse(Runtime.getRuntime().availableProcessors());
+        if (threads > 1) {
+            executor = Executors.newFixedThreadPool(threads, threadFactory);
+            ExportService.injectExecutor(executor);
+            logger.fine("Running metadata exporters on " + threads + " threads");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ExportService.injectExecutor(null);
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
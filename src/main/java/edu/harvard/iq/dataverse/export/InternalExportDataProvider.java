@@ -1,13 +1,18 @@
 package edu.harvard.iq.dataverse.export;
 
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 import jakarta.json.Json;
 import jakarta.json.JsonArray;
 import jakarta.json.JsonArrayBuilder;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonObjectBuilder;
+import jakarta.json.stream.JsonGenerator;
 import edu.harvard.iq.dataverse.DataCitation;
 import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.DatasetVersion;
@@ -24,61 +29,172 @@ import edu.harvard.iq.dataverse.util.json.JsonUtil;
  */
 public class InternalExportDataProvider implements ExportDataProvider {
 
+    /**
+     * The representations of the dataset version, shared by the providers of
+     * the exporters running at the same time. They are built on first use;
+     * or, for exporters that run on other threads, all of them up front, on
+     * the calling thread (see {@link #buildRepresentations()}), so that the
+     * (lazily loaded, and not thread-safe) entities are never touched by the
+     * threads of the exporters.
+     */
+    private static class Representations {
+        private JsonObject json = null;
+        private JsonObject schemaDotOrg = null;
+        private JsonObject ore = null;
+        private String dataCiteXml = null;
+        private JsonArray fileDetails = null;
+        // once they were built up front; with what the failed ones threw:
+        private boolean prebuilt = false;
+        private final Map<String, RuntimeException> failures = new HashMap<>();
+    }
+
     private DatasetVersion dv;
-    private JsonObject jsonRepresentation = null;
-    private JsonObject schemaDotOrgRepresentation = null;
-    private JsonObject oreRepresentation = null;
+    private final Representations representations;
     private InputStream is = null;
 
     InternalExportDataProvider(DatasetVersion dv) {
         this.dv = dv;
+        this.representations = new Representations();
     }
     
     InternalExportDataProvider(DatasetVersion dv, InputStream is) {
-        this.dv = dv;
+        this(dv);
         this.is=is;
     }
 
+    /**
+     * A provider that shares the representations of the dataset version with
+     * another, but has a prerequisite stream of its own; for exporters
+     * running at the same time.
+     */
+    InternalExportDataProvider(InternalExportDataProvider shared, InputStream is) {
+        this.dv = shared.dv;
+        this.representations = shared.representations;
+        this.is = is;
+    }
+
+    /**
+     * Builds all the representations of the dataset version, on the calling
+     * thread, before the exporters are handed to other threads: they then
+     * never touch the entities. Those that can't be built throw what they
+     * threw here once an exporter asks for them.
+     */
+    void buildRepresentations() {
+        synchronized (representations) {
+            tryBuild("json", this::getDatasetJson);
+            tryBuild("schemaDotOrg", this::getDatasetSchemaDotOrg);
+            tryBuild("ore", this::getDatasetORE);
+            tryBuild("dataCiteXml", this::getDataCiteXml);
+            tryBuild("fileDetails", this::getDatasetFileDetails);
+            representations.prebuilt = true;
+        }
+    }
+
+    private void tryBuild(String name, Runnable getter) {
+        try {
+            getter.run();
+        } catch (RuntimeException e) {
+            representations.failures.put(name, e);
+        }
+    }
+
+    /**
+     * Builds the representation, unless they were all built up front: it
+     * then failed (or is null), and is not built again on this thread.
+     */
+    private <T> T build(String name, Supplier<T> builder) {
+        if (representations.prebuilt) {
+            RuntimeException failure = representations.failures.get(name);
+            if (failure != null) {
+                throw failure;
+            }
+            return null;
+        }
+        return builder.get();
+    }
+
     @Override
     public JsonObject getDatasetJson() {
-        if (jsonRepresentation == null) {
-            final JsonObjectBuilder datasetAsJsonBuilder = JsonPrinter.jsonAsDatasetDto(dv);
-            jsonRepresentation = datasetAsJsonBuilder.build();
+        synchronized (representations) {
+            if (representations.json == null) {
+                representations.json = build("json", () -> {
+                    final JsonObjectBuilder datasetAsJsonBuilder = JsonPrinter.jsonAsDatasetDto(dv);
+                    return datasetAsJsonBuilder.build();
+                });
+            }
+            return representations.json;
         }
-        return jsonRepresentation;
+    }
+
+    /**
+     * Writes the same JSON as {@link #getDatasetJson()} to the stream. Unless
+     * it has already been built for another exporter, it is written as it is
+     * generated, the files one at a time, without building it in memory.
+     */
+    void writeDatasetJson(OutputStream outputStream) {
+        JsonGenerator generator = Json.createGenerator(outputStream);
+        synchronized (representations) {
+            if (representations.json != null) {
+                generator.write(representations.json);
+            } else {
+                build("json", () -> {
+                    JsonPrinter.writeJsonAsDatasetDto(generator, dv);
+                    return null;
+                });
+            }
+        }
+        generator.flush();
     }
 
     @Override
     public JsonObject getDatasetSchemaDotOrg() {
-        if (schemaDotOrgRepresentation == null) {
-            String jsonLdAsString = dv.getJsonLd();
-            schemaDotOrgRepresentation = JsonUtil.getJsonObject(jsonLdAsString);
+        synchronized (representations) {
+            if (representations.schemaDotOrg == null) {
+                representations.schemaDotOrg = build("schemaDotOrg", () -> {
+                    String jsonLdAsString = dv.getJsonLd();
+                    return JsonUtil.getJsonObject(jsonLdAsString);
+                });
+            }
+            return representations.schemaDotOrg;
         }
-        return schemaDotOrgRepresentation;
     }
 
     @Override
     public JsonObject getDatasetORE() {
-        if (oreRepresentation == null) {
-            oreRepresentation = new OREMap(dv).getOREMap();
+        synchronized (representations) {
+            if (representations.ore == null) {
+                representations.ore = build("ore", () -> new OREMap(dv).getOREMap());
+            }
+            return representations.ore;
         }
-        return oreRepresentation;
     }
 
     @Override
     public String getDataCiteXml() {
-        return DOIDataCiteRegisterService.getMetadataFromDvObject(
-                dv.getDataset().getGlobalId().asString(), new DataCitation(dv).getDataCiteMetadata(), dv.getDataset());
+        synchronized (representations) {
+            if (representations.dataCiteXml == null) {
+                representations.dataCiteXml = build("dataCiteXml", () -> DOIDataCiteRegisterService.getMetadataFromDvObject(
+                        dv.getDataset().getGlobalId().asString(), new DataCitation(dv).getDataCiteMetadata(), dv.getDataset()));
+            }
+            return representations.dataCiteXml;
+        }
     }
     
     @Override
     public JsonArray getDatasetFileDetails() {
-        JsonArrayBuilder jab = Json.createArrayBuilder();
-        for (FileMetadata fileMetadata : dv.getFileMetadatas()) {
-            DataFile dataFile = fileMetadata.getDataFile();
-            jab.add(JsonPrinter.json(dataFile, fileMetadata, true));
+        synchronized (representations) {
+            if (representations.fileDetails == null) {
+                representations.fileDetails = build("fileDetails", () -> {
+                    JsonArrayBuilder jab = Json.createArrayBuilder();
+                    for (FileMetadata fileMetadata : dv.getFileMetadatas()) {
+                        DataFile dataFile = fileMetadata.getDataFile();
+                        jab.add(JsonPrinter.json(dataFile, fileMetadata, true));
+                    }
+                    return jab.build();
+                });
+            }
+            return representations.fileDetails;
         }
-        return jab.build();
     }
     
     @Override
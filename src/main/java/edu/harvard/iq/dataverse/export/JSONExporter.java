@@ -35,7 +35,12 @@ public class JSONExporter implements Exporter {
     @Override
     public void exportDataset(ExportDataProvider dataProvider, OutputStream outputStream) throws ExportException {
         try{
-            outputStream.write(dataProvider.getDatasetJson().toString().getBytes("UTF8"));
+            if (dataProvider instanceof InternalExportDataProvider) {
+                // (written as it is generated, rather than as one large string)
+                ((InternalExportDataProvider) dataProvider).writeDatasetJson(outputStream);
+            } else {
+                outputStream.write(dataProvider.getDatasetJson().toString().getBytes("UTF8"));
+            }
             outputStream.flush();
         } catch (Exception e){
             throw new ExportException("Unknown exception caught during JSON export.");
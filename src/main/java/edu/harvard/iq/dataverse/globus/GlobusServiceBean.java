@@ -15,18 +15,14 @@ import jakarta.inject.Inject;
 import jakarta.inject.Named;
 import jakarta.json.Json;
 import jakarta.json.JsonArray;
-import jakarta.json.JsonArrayBuilder;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonObjectBuilder;
-import jakarta.json.JsonPatch;
 import jakarta.json.JsonString;
 import jakarta.json.JsonValue.ValueType;
 import jakarta.json.stream.JsonParsingException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.ws.rs.HttpMethod;
-
-import static edu.harvard.iq.dataverse.util.json.JsonPrinter.json;
-import static edu.harvard.iq.dataverse.util.json.JsonPrinter.toJsonArray;
+import jakarta.ws.rs.core.Response;
 
 import java.io.*;
 
@@ -39,15 +35,10 @@ import java.text.SimpleDateFormat;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 import org.apache.commons.codec.binary.StringUtils;
 import org.primefaces.PrimeFaces;
@@ -60,12 +51,12 @@ import edu.harvard.iq.dataverse.authorization.users.PrivateUrlUser;
 import edu.harvard.iq.dataverse.authorization.users.User;
 import edu.harvard.iq.dataverse.dataaccess.DataAccess;
 import edu.harvard.iq.dataverse.dataaccess.GlobusAccessibleStore;
-import edu.harvard.iq.dataverse.dataaccess.StorageIO;
+import edu.harvard.iq.dataverse.datasetutility.FileRegistrationServiceBean;
+import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import edu.harvard.iq.dataverse.privateurl.PrivateUrl;
 import edu.harvard.iq.dataverse.privateurl.PrivateUrlServiceBean;
 import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
-import edu.harvard.iq.dataverse.util.FileUtil;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import edu.harvard.iq.dataverse.util.URLTokenUtil;
 import edu.harvard.iq.dataverse.util.UrlSignerUtil;
@@ -93,6 +84,8 @@ public class GlobusServiceBean implements java.io.Serializable {
     FileDownloadServiceBean fileDownloadService;
     @EJB
     DataFileServiceBean dataFileService;
+    @EJB
+    FileRegistrationServiceBean fileRegistrationService;
 
     private static final Logger logger = Logger.getLogger(GlobusServiceBean.class.getCanonicalName());
     private static final SimpleDateFormat logFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH-mm-ss");
@@ -633,7 +626,7 @@ public class GlobusServiceBean implements java.io.Serializable {
 
     @Asynchronous
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
-    public void globusUpload(JsonObject jsonData, ApiToken token, Dataset dataset, String httpRequestUrl,
+    public void globusUpload(JsonObject jsonData, DataverseRequest dataverseRequest, Dataset dataset,
             AuthenticatedUser authUser) throws ExecutionException, InterruptedException, MalformedURLException {
 
         Integer countAll = 0;
@@ -710,8 +703,9 @@ public class GlobusServiceBean implements java.io.Serializable {
              * another service bean. Despite the removeDatasetLocks method having the
              * REQUIRES_NEW transaction annotation, when the globusUpload method and that
              * method were in the same bean (globusUpload was in the DatasetServiceBean to
-             * start), the globus lock was still seen in the API call initiated in the
-             * addFilesAsync method called within the globusUpload method. I.e. it appeared
+             * start), the globus lock was still seen in the addFiles API call initiated
+             * within the globusUpload method (the files are now added in process, outside
+             * of its transaction, see FileRegistrationServiceBean). I.e. it appeared
              * that the lock removal was not committed/visible outside this method until
              * globusUpload itself ended.
              */
@@ -729,97 +723,24 @@ public class GlobusServiceBean implements java.io.Serializable {
             try {
                 //
 
-                List<String> inputList = new ArrayList<String>();
                 JsonArray filesJsonArray = jsonData.getJsonArray("files");
 
                 if (filesJsonArray != null) {
-                    String datasetIdentifier = dataset.getAuthorityForFileStorage() + "/"
-                            + dataset.getIdentifierForFileStorage();
-
-                    for (JsonObject fileJsonObject : filesJsonArray.getValuesAs(JsonObject.class)) {
-
-                        // storageIdentifier s3://gcs5-bucket1:1781cfeb8a7-748c270a227c from
-                        // externalTool
-                        String storageIdentifier = fileJsonObject.getString("storageIdentifier");
-                        String[] parts = DataAccess.getDriverIdAndStorageLocation(storageIdentifier);
-                        String storeId = parts[0];
-                        // If this is an S3 store, we need to split out the bucket name
-                        String[] bits = parts[1].split(":");
-                        String bucketName = "";
-                        if (bits.length > 1) {
-                            bucketName = bits[0];
-                        }
-                        String fileId = bits[bits.length - 1];
-
-                        // fullpath s3://gcs5-bucket1/10.5072/FK2/3S6G2E/1781cfeb8a7-4ad9418a5873
-                        // or globus:///10.5072/FK2/3S6G2E/1781cfeb8a7-4ad9418a5873
-                        String fullPath = storeId + "://" + bucketName + "/" + datasetIdentifier + "/" + fileId;
-                        String fileName = fileJsonObject.getString("fileName");
-
-                        inputList.add(fileId + "IDsplit" + fullPath + "IDsplit" + fileName);
-                    }
-
-                    // calculateMissingMetadataFields: checksum, mimetype
-                    JsonObject newfilesJsonObject = calculateMissingMetadataFields(inputList, globusLogger);
-                    JsonArray newfilesJsonArray = newfilesJsonObject.getJsonArray("files");
-                    logger.fine("Size: " + newfilesJsonArray.size());
-                    logger.fine("Val: " + JsonUtil.prettyPrint(newfilesJsonArray.getJsonObject(0)));
-                    JsonArrayBuilder jsonDataSecondAPI = Json.createArrayBuilder();
-
-                    for (JsonObject fileJsonObject : filesJsonArray.getValuesAs(JsonObject.class)) {
-
-                        countAll++;
-                        String storageIdentifier = fileJsonObject.getString("storageIdentifier");
-                        String fileName = fileJsonObject.getString("fileName");
-                        String[] parts = DataAccess.getDriverIdAndStorageLocation(storageIdentifier);
-                        // If this is an S3 store, we need to split out the bucket name
-                        String[] bits = parts[1].split(":");
-                        if (bits.length > 1) {
-                        }
-                        String fileId = bits[bits.length - 1];
-
-                        List<JsonObject> newfileJsonObject = IntStream.range(0, newfilesJsonArray.size())
-                                .mapToObj(index -> ((JsonObject) newfilesJsonArray.get(index)).getJsonObject(fileId))
-                                .filter(Objects::nonNull).collect(Collectors.toList());
-                        if (newfileJsonObject != null) {
-                            logger.fine("List Size: " + newfileJsonObject.size());
-                            // if (!newfileJsonObject.get(0).getString("hash").equalsIgnoreCase("null")) {
-                            JsonPatch path = Json.createPatchBuilder()
-                                    .add("/md5Hash", newfileJsonObject.get(0).getString("hash")).build();
-                            fileJsonObject = path.apply(fileJsonObject);
-                            path = Json.createPatchBuilder()
-                                    .add("/mimeType", newfileJsonObject.get(0).getString("mime")).build();
-                            fileJsonObject = path.apply(fileJsonObject);
-                            jsonDataSecondAPI.add(fileJsonObject);
-                            countSuccess++;
-                            // } else {
-                            // globusLogger.info(fileName
-                            // + " will be skipped from adding to dataset by second API due to missing
-                            // values ");
-                            // countError++;
-                            // }
-                        } else {
-                            globusLogger.info(fileName
-                                    + " will be skipped from adding to dataset by second API due to missing values ");
-                            countError++;
-                        }
+                    countAll = filesJsonArray.size();
+
+                    // add the missing checksums and mime types
+                    List<JsonObject> failedFiles = new ArrayList<>();
+                    JsonArray newfilesJsonArray = fileRegistrationService.addMissingDetails(dataset, filesJsonArray, failedFiles, globusLogger);
+                    for (JsonObject failedFile : failedFiles) {
+                        globusLogger.info(failedFile.getString("fileName", "")
+                                + " will be skipped from adding to dataset due to missing values ");
                     }
 
-                    String newjsonData = jsonDataSecondAPI.build().toString();
-
-                    globusLogger.info("Successfully generated new JsonData for Second API call");
-
-                    String command = "curl -H \"X-Dataverse-key:" + token.getTokenString() + "\" -X POST "
-                            + httpRequestUrl + "/api/datasets/:persistentId/addFiles?persistentId=doi:"
-                            + datasetIdentifier + " -F jsonData='" + newjsonData + "'";
-                    System.out.println("*******====command ==== " + command);
-
-                    // ToDo - refactor to call AddReplaceFileHelper.addFiles directly instead of
-                    // calling API
-
-                    String output = addFilesAsync(command, globusLogger);
-                    if (output.equalsIgnoreCase("ok")) {
-                        // if(!taskSkippedFiles)
+                    Response response = fileRegistrationService.addFiles(dataset.getId(), newfilesJsonArray, dataverseRequest);
+                    if (response.getStatus() == Response.Status.OK.getStatusCode()) {
+                        countSuccess = ((JsonObject) response.getEntity()).getJsonObject("data").getJsonObject("Result")
+                                .getInt("Number of files successfully added");
+                        countError = countAll - countSuccess;
                         if (countError == 0) {
                             userNotificationService.sendNotification((AuthenticatedUser) authUser,
                                     new Timestamp(new Date().getTime()), UserNotification.Type.GLOBUSUPLOADCOMPLETED,
@@ -830,10 +751,10 @@ public class GlobusServiceBean implements java.io.Serializable {
                                     UserNotification.Type.GLOBUSUPLOADCOMPLETEDWITHERRORS, dataset.getId(),
                                     countSuccess + " files added out of " + countAll, true);
                         }
-                        globusLogger.info("Successfully completed api/datasets/:persistentId/addFiles call ");
+                        globusLogger.info("Successfully added the files to the dataset ");
                     } else {
-                        globusLogger.log(Level.SEVERE,
-                                "******* Error while executing api/datasets/:persistentId/add call ", command);
+                        globusLogger.log(Level.SEVERE, "******* Error while adding the files to the dataset: "
+                                + response.getEntity());
                     }
 
                 }
@@ -859,60 +780,6 @@ public class GlobusServiceBean implements java.io.Serializable {
         }
     }
 
-    public String addFilesAsync(String curlCommand, Logger globusLogger)
-            throws ExecutionException, InterruptedException {
-        CompletableFuture<String> addFilesFuture = CompletableFuture.supplyAsync(() -> {
-            try {
-                Thread.sleep(2000);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-            return (addFiles(curlCommand, globusLogger));
-        }, executor).exceptionally(ex -> {
-            globusLogger.fine("Something went wrong : " + ex.getLocalizedMessage());
-            ex.printStackTrace();
-            return null;
-        });
-
-        String result = addFilesFuture.get();
-
-        return result;
-    }
-
-    private String addFiles(String curlCommand, Logger globusLogger) {
-        ProcessBuilder processBuilder = new ProcessBuilder();
-        Process process = null;
-        String line;
-        String status = "";
-
-        try {
-            globusLogger.info("Call to :  " + curlCommand);
-            processBuilder.command("bash", "-c", curlCommand);
-            process = processBuilder.start();
-            process.waitFor();
-
-            BufferedReader br = new BufferedReader(new InputStreamReader(process.getInputStream()));
-
-            StringBuilder sb = new StringBuilder();
-            while ((line = br.readLine()) != null)
-                sb.append(line);
-            globusLogger.info(" API Output :  " + sb.toString());
-            JsonObject jsonObject = null;
-            jsonObject = JsonUtil.getJsonObject(sb.toString());
-
-            status = jsonObject.getString("status");
-        } catch (Exception ex) {
-            if (ex instanceof JsonParsingException) {
-                globusLogger.log(Level.SEVERE, "Error parsing dataset json.");
-            } else {
-                globusLogger.log(Level.SEVERE,
-                        "******* Unexpected Exception while executing api/datasets/:persistentId/add call ", ex);
-            }
-        }
-
-        return status;
-    }
-
     @Asynchronous
     public void globusDownload(String jsonData, Dataset dataset, User authUser) throws MalformedURLException {
 
@@ -1006,8 +873,6 @@ public class GlobusServiceBean implements java.io.Serializable {
         }
     }
 
-    Executor executor = Executors.newFixedThreadPool(10);
-
     private GlobusTask globusStatusCheck(GlobusEndpoint endpoint, String taskId, Logger globusLogger)
             throws MalformedURLException {
         boolean taskCompletion = false;
@@ -1078,109 +943,6 @@ public class GlobusServiceBean implements java.io.Serializable {
         return status;
     }
 
-    public JsonObject calculateMissingMetadataFields(List<String> inputList, Logger globusLogger)
-            throws InterruptedException, ExecutionException, IOException {
-
-        List<CompletableFuture<FileDetailsHolder>> hashvalueCompletableFutures = inputList.stream()
-                .map(iD -> calculateDetailsAsync(iD, globusLogger)).collect(Collectors.toList());
-
-        CompletableFuture<Void> allFutures = CompletableFuture
-                .allOf(hashvalueCompletableFutures.toArray(new CompletableFuture[hashvalueCompletableFutures.size()]));
-
-        CompletableFuture<List<FileDetailsHolder>> allCompletableFuture = allFutures.thenApply(future -> {
-            return hashvalueCompletableFutures.stream().map(completableFuture -> completableFuture.join())
-                    .collect(Collectors.toList());
-        });
-
-        CompletableFuture<?> completableFuture = allCompletableFuture.thenApply(files -> {
-            return files.stream().map(d -> json(d)).collect(toJsonArray());
-        });
-
-        JsonArrayBuilder filesObject = (JsonArrayBuilder) completableFuture.get();
-
-        JsonObject output = Json.createObjectBuilder().add("files", filesObject).build();
-
-        return output;
-
-    }
-
-    private CompletableFuture<FileDetailsHolder> calculateDetailsAsync(String id, Logger globusLogger) {
-
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                Thread.sleep(2000);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-            try {
-                return (calculateDetails(id, globusLogger));
-            } catch (InterruptedException | IOException e) {
-                e.printStackTrace();
-            }
-            return null;
-        }, executor).exceptionally(ex -> {
-            return null;
-        });
-    }
-
-    private FileDetailsHolder calculateDetails(String id, Logger globusLogger)
-            throws InterruptedException, IOException {
-        int count = 0;
-        String checksumVal = "";
-        InputStream in = null;
-        String fileId = id.split("IDsplit")[0];
-        String fullPath = id.split("IDsplit")[1];
-        String fileName = id.split("IDsplit")[2];
-
-        // ToDo: what if the file does not exist in s3
-        // ToDo: what if checksum calculation failed
-
-        do {
-            try {
-                StorageIO<DvObject> dataFileStorageIO = DataAccess.getDirectStorageIO(fullPath);
-                in = dataFileStorageIO.getInputStream();
-                checksumVal = FileUtil.calculateChecksum(in, DataFile.ChecksumType.MD5);
-                count = 3;
-            } catch (IOException ioex) {
-                count = 3;
-                logger.fine(ioex.getMessage());
-                globusLogger.info(
-                        "DataFile (fullPath " + fullPath + ") does not appear to be accessible within Dataverse: ");
-            } catch (Exception ex) {
-                count = count + 1;
-                ex.printStackTrace();
-                logger.info(ex.getMessage());
-                Thread.sleep(5000);
-            }
-
-        } while (count < 3);
-
-        if (checksumVal.length() == 0) {
-            checksumVal = "Not available in Dataverse";
-        }
-
-        String mimeType = calculatemime(fileName);
-        globusLogger.info(" File Name " + fileName + "  File Details " + fileId + " checksum = " + checksumVal
-                + " mimeType = " + mimeType);
-        return new FileDetailsHolder(fileId, checksumVal, mimeType);
-        // getBytes(in)+"" );
-        // calculatemime(fileName));
-    }
-
-    public String calculatemime(String fileName) throws InterruptedException {
-
-        String finalType = FileUtil.MIME_TYPE_UNDETERMINED_DEFAULT;
-        String type = FileUtil.determineFileTypeByNameAndExtension(fileName);
-
-        if (type != null && !type.isBlank()) {
-            if (FileUtil.useRecognizedType(finalType, type)) {
-                finalType = type;
-            }
-        }
-
-        return finalType;
-    }
-
     private GlobusEndpoint getGlobusEndpoint(DvObject dvObject) {
         Dataset dataset = null;
         if (dvObject instanceof Dataset) {
@@ -270,6 +270,33 @@ public class OAIRecordServiceBean implements java.io.Serializable {
     }
     
     
+    /**
+     * Looks up the dataset, and exports it in all formats, in a transaction of
+     * its own. Used by the export-all jobs, that export many datasets at the
+     * same time, each on a thread of its own.
+     *
+     * @return the display name and the persistent id of the dataset, if it
+     * was exported; null if it did not need to be (see
+     * {@link DatasetServiceBean#isExportNeeded(Dataset, boolean)}).
+     */
+    @TransactionAttribute(REQUIRES_NEW)
+    public String exportAllFormatsInNewTransaction(Long datasetId, boolean forceReExport) throws ExportException {
+        Dataset dataset = datasetService.find(datasetId);
+        if (dataset == null || !datasetService.isExportNeeded(dataset, forceReExport)) {
+            return null;
+        }
+        String datasetInfo = dataset.getDisplayName() + " " + dataset.getGlobalId().asString();
+        try {
+            ExportService exportServiceInstance = ExportService.getInstance();
+            exportServiceInstance.exportAllFormats(dataset);
+            dataset = datasetService.merge(dataset);
+        } catch (Exception e) {
+            logger.log(Level.FINE, "Caught unknown exception while trying to export", e);
+            throw new ExportException(datasetInfo + "; " + e.getMessage());
+        }
+        return datasetInfo;
+    }
+    
     public OAIRecord findOAIRecordBySetNameandGlobalId(String setName, String globalId) {
         OAIRecord oaiRecord = null;
         
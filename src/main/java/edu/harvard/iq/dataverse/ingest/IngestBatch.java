@@ -0,0 +1,57 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The files of one {@link IngestMessage}, ingested as separate
+ * {@link IngestJob}s; keeps track of the jobs that are still running and of
+ * the files that failed, so that the user can be notified once the last one
+ * is done.
+ */
+class IngestBatch {
+
+    private final IngestMessage ingestMessage;
+    private final AtomicInteger remaining;
+    private final StringBuilder failedFiles = new StringBuilder();
+    private boolean withErrors = false;
+
+    IngestBatch(IngestMessage ingestMessage) {
+        this(ingestMessage, ingestMessage.getFileIds().size());
+    }
+
+    /**
+     * @param jobs the number of jobs of the batch; fewer than the files of
+     * the message, if some of them were already queued.
+     */
+    IngestBatch(IngestMessage ingestMessage, int jobs) {
+        this.ingestMessage = ingestMessage;
+        this.remaining = new AtomicInteger(jobs);
+    }
+
+    IngestMessage getIngestMessage() {
+        return ingestMessage;
+    }
+
+    synchronized void addFailedFile(String fileName) {
+        withErrors = true;
+        failedFiles.append(String.format("<li>%s</li>", fileName));
+    }
+
+    synchronized boolean isWithErrors() {
+        return withErrors;
+    }
+
+    /**
+     * @return the list of the files that failed to ingest, as html.
+     */
+    synchronized String getFailedFilesList() {
+        return "<ul>" + failedFiles + "</ul>";
+    }
+
+    /**
+     * @return true if this was the last job of the batch.
+     */
+    boolean jobDone() {
+        return remaining.decrementAndGet() == 0;
+    }
+}
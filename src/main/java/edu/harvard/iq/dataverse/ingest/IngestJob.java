@@ -0,0 +1,87 @@
+package edu.harvard.iq.dataverse.ingest;
+
+/**
+ * The ingest of one file, as queued and run by the {@link IngestScheduler}.
+ */
+public class IngestJob {
+
+    private final Long dataFileId;
+    private final Long datasetId;
+    private final Long userId;
+    private final String fileName;
+    private final String contentType;
+    private final long size;
+    private final long estimatedMemory;
+    private final long queuedTime = System.currentTimeMillis();
+    private volatile long startTime = 0;
+
+    // the batch (IngestMessage) the job was submitted with:
+    private final IngestBatch batch;
+
+    public IngestJob(Long dataFileId, Long datasetId, Long userId, String fileName, String contentType, long size, IngestBatch batch) {
+        this.dataFileId = dataFileId;
+        this.datasetId = datasetId;
+        this.userId = userId;
+        this.fileName = fileName;
+        this.contentType = contentType;
+        this.size = size;
+        this.estimatedMemory = IngestScheduler.estimateMemory(contentType, size);
+        this.batch = batch;
+    }
+
+    public Long getDataFileId() {
+        return dataFileId;
+    }
+
+    public Long getDatasetId() {
+        return datasetId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the estimated amount of memory (in bytes) the ingest of the
+     * file will need, used for admission control.
+     */
+    public long getEstimatedMemory() {
+        return estimatedMemory;
+    }
+
+    public long getQueuedTime() {
+        return queuedTime;
+    }
+
+    /**
+     * @return the time the job was started; 0 if it is still queued.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
+    IngestBatch getBatch() {
+        return batch;
+    }
+
+    @Override
+    public String toString() {
+        return "IngestJob[datafile " + dataFileId + ", dataset " + datasetId + ", " + size + " bytes]";
+    }
+}
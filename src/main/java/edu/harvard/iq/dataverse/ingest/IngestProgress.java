@@ -0,0 +1,103 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * The progress of the tabular ingest of one file, as reported by the ingest
+ * plugin reading it: the number of bytes of the file that have been read so
+ * far, and the rate they are being read at.
+ *
+ * Plugins update it from the ingest thread; the values can be read from any
+ * other thread. A line with the progress is logged every
+ * {@link #LOG_INTERVAL_SECONDS} seconds, so that the progress of a long
+ * ingest can be followed in the server log.
+ */
+public class IngestProgress {
+
+    private static final Logger logger = Logger.getLogger(IngestProgress.class.getCanonicalName());
+
+    static final long LOG_INTERVAL_SECONDS = 30;
+
+    private final Long dataFileId;
+    private final String fileName;
+    private final long totalBytes;
+    private final long startTime = System.nanoTime();
+    private final long startTimeMillis = System.currentTimeMillis();
+
+    private volatile long bytesRead = 0;
+    private long lastLogged = startTime;
+
+    /**
+     * @param totalBytes the size of the file; 0 if not known.
+     */
+    public IngestProgress(Long dataFileId, String fileName, long totalBytes) {
+        this.dataFileId = dataFileId;
+        this.fileName = fileName;
+        this.totalBytes = totalBytes;
+    }
+
+    public Long getDataFileId() {
+        return dataFileId;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    /**
+     * Called by the ingest plugin as it reads the file; cheap enough to be
+     * called for every row (or every few rows) of data.
+     */
+    public void setBytesRead(long bytesRead) {
+        this.bytesRead = bytesRead;
+
+        long now = System.nanoTime();
+        if (now - lastLogged > TimeUnit.SECONDS.toNanos(LOG_INTERVAL_SECONDS)) {
+            lastLogged = now;
+            logger.info(toString());
+        }
+    }
+
+    /**
+     * @return the average number of bytes read per second, since the start
+     * of the ingest.
+     */
+    public long getBytesPerSecond() {
+        long elapsed = System.nanoTime() - startTime;
+        if (elapsed <= 0) {
+            return 0;
+        }
+        return (long) (bytesRead / (elapsed / 1e9));
+    }
+
+    /**
+     * @return the percentage of the file read so far; -1 if the size of the
+     * file is not known.
+     */
+    public int getPercentComplete() {
+        if (totalBytes <= 0) {
+            return -1;
+        }
+        return (int) Math.min(100, bytesRead * 100 / totalBytes);
+    }
+
+    @Override
+    public String toString() {
+        return "Ingest of " + fileName + " (datafile id " + dataFileId + "): "
+                + bytesRead + (totalBytes > 0 ? " of " + totalBytes + " bytes (" + getPercentComplete() + "%)" : " bytes")
+                + " read, at " + getBytesPerSecond() + " bytes/second";
+    }
+}
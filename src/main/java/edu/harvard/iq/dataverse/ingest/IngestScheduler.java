@@ -0,0 +1,280 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Decides which queued ingest job runs next, on a pool of a fixed number of
+ * workers.
+ *
+ * <ul>
+ * <li>Fairness: the queued jobs are grouped by user, and the jobs of every
+ * user by dataset; the next job is taken from the next user, and from the
+ * next dataset of that user, in round-robin order. So one user uploading
+ * hundreds of files to a dataset doesn't hold up the ingest of the files of
+ * everybody else.</li>
+ * <li>Priority: within a dataset, the smallest files are ingested first; and
+ * "small" files (up to {@code smallFileSize} bytes) of any dataset are
+ * started before larger ones.</li>
+ * <li>Admission control: the memory the ingest of each file will need is
+ * estimated from its size and format (see {@link #estimateMemory}); a job is
+ * only started if the estimates of the running jobs plus its own fit in the
+ * memory budget. A job larger than the whole budget is run on its own.</li>
+ * </ul>
+ *
+ * This class only keeps track of the queued and running jobs; the jobs are
+ * run by the {@link IngestSchedulerBean}. It is thread-safe.
+ */
+public class IngestScheduler {
+
+    // a per-job allowance for the ingest plugins, buffers, etc.:
+    static final long BASE_JOB_MEMORY = 32L * 1024 * 1024;
+
+    private final int workers;
+    private final long memoryBudget;
+    private final long smallFileSize;
+
+    // the queued jobs, by user, then by dataset, in round-robin order:
+    private final Deque<UserQueue> users = new ArrayDeque<>();
+    private final Map<Long, UserQueue> usersById = new LinkedHashMap<>();
+    private int queued = 0;
+
+    private final List<IngestJob> active = new ArrayList<>();
+    private long activeMemory = 0;
+
+    public IngestScheduler(int workers, long memoryBudget, long smallFileSize) {
+        this.workers = Math.max(1, workers);
+        this.memoryBudget = memoryBudget;
+        this.smallFileSize = smallFileSize;
+    }
+
+    /**
+     * Estimates the amount of memory the ingest of a file will need, from its
+     * size and format. The readers of most formats stream the data, and
+     * only need memory in proportion to the number of variables; Excel files
+     * are compressed, and their shared strings table is kept in memory; R
+     * data files are converted by Rserve and read back in full.
+     */
+    static long estimateMemory(String contentType, long size) {
+        int multiplier = 1;
+        if (contentType != null) {
+            if (contentType.contains("spreadsheetml")) {
+                multiplier = 10;
+            } else if (contentType.contains("rlang") || contentType.contains("rdata")) {
+                multiplier = 2;
+            }
+        }
+        return BASE_JOB_MEMORY + multiplier * Math.max(0, size);
+    }
+
+    public synchronized void add(IngestJob job) {
+        UserQueue user = usersById.get(job.getUserId());
+        if (user == null) {
+            user = new UserQueue(job.getUserId());
+            usersById.put(job.getUserId(), user);
+            users.addLast(user);
+        }
+        user.add(job);
+        queued++;
+    }
+
+    /**
+     * Takes the next job to run off the queue, if there is a free worker and
+     * a queued job that fits in the memory budget.
+     *
+     * @return the job, now counted as running; or null.
+     */
+    public synchronized IngestJob next() {
+        if (queued == 0 || active.size() >= workers) {
+            return null;
+        }
+
+        IngestJob first = null;
+        IngestJob selected = null;
+        // the small files first; then the next job in round-robin order:
+        for (UserQueue user : users) {
+            for (DatasetQueue dataset : user.datasets) {
+                IngestJob candidate = dataset.jobs.peek();
+                if (first == null) {
+                    first = candidate;
+                }
+                if (candidate.getSize() <= smallFileSize && fits(candidate)) {
+                    selected = candidate;
+                    break;
+                }
+            }
+            if (selected != null) {
+                break;
+            }
+        }
+        if (selected == null) {
+            if (fits(first) || active.isEmpty()) {
+                selected = first;
+            } else {
+                // The job that is next in line doesn't fit; rather than start
+                // other large jobs in front of it, wait for memory to be freed.
+                return null;
+            }
+        }
+
+        remove(selected);
+        selected.setStartTime(System.currentTimeMillis());
+        active.add(selected);
+        activeMemory += selected.getEstimatedMemory();
+        return selected;
+    }
+
+    /**
+     * Called when a job returned by {@link #next()} is done (whether it
+     * succeeded or not).
+     */
+    public synchronized void complete(IngestJob job) {
+        if (active.remove(job)) {
+            activeMemory -= job.getEstimatedMemory();
+        }
+    }
+
+    /**
+     * @return true if there are queued or running jobs for files of the
+     * dataset.
+     */
+    public synchronized boolean hasJobs(Long datasetId) {
+        for (IngestJob job : active) {
+            if (datasetId.equals(job.getDatasetId())) {
+                return true;
+            }
+        }
+        for (UserQueue user : users) {
+            if (user.datasetsById.containsKey(datasetId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the ingest of the file is queued or running.
+     */
+    public synchronized boolean hasFile(Long dataFileId) {
+        for (IngestJob job : active) {
+            if (dataFileId.equals(job.getDataFileId())) {
+                return true;
+            }
+        }
+        for (UserQueue user : users) {
+            for (DatasetQueue dataset : user.datasets) {
+                for (IngestJob job : dataset.jobs) {
+                    if (dataFileId.equals(job.getDataFileId())) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    public synchronized int getQueueDepth() {
+        return queued;
+    }
+
+    /**
+     * @return the numbers of queued jobs, by dataset id.
+     */
+    public synchronized Map<Long, Integer> getQueuedByDataset() {
+        Map<Long, Integer> byDataset = new LinkedHashMap<>();
+        for (UserQueue user : users) {
+            for (DatasetQueue dataset : user.datasets) {
+                byDataset.merge(dataset.datasetId, dataset.jobs.size(), Integer::sum);
+            }
+        }
+        return byDataset;
+    }
+
+    public synchronized List<IngestJob> getActiveJobs() {
+        return new ArrayList<>(active);
+    }
+
+    public synchronized long getActiveMemory() {
+        return activeMemory;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public long getSmallFileSize() {
+        return smallFileSize;
+    }
+
+    private boolean fits(IngestJob job) {
+        return activeMemory + job.getEstimatedMemory() <= memoryBudget;
+    }
+
+    /*
+     * Removes the job (the head of its dataset queue) from the queue, and
+     * moves its user, and its dataset, to the end of the round-robin order.
+     */
+    private void remove(IngestJob job) {
+        UserQueue user = usersById.get(job.getUserId());
+        DatasetQueue dataset = user.datasetsById.get(job.getDatasetId());
+        dataset.jobs.poll();
+        queued--;
+
+        user.datasets.remove(dataset);
+        if (dataset.jobs.isEmpty()) {
+            user.datasetsById.remove(dataset.datasetId);
+        } else {
+            user.datasets.addLast(dataset);
+        }
+
+        users.remove(user);
+        if (user.datasets.isEmpty()) {
+            usersById.remove(user.userId);
+        } else {
+            users.addLast(user);
+        }
+    }
+
+    private static class UserQueue {
+
+        final Long userId;
+        final Deque<DatasetQueue> datasets = new ArrayDeque<>();
+        final Map<Long, DatasetQueue> datasetsById = new LinkedHashMap<>();
+
+        UserQueue(Long userId) {
+            this.userId = userId;
+        }
+
+        void add(IngestJob job) {
+            DatasetQueue dataset = datasetsById.get(job.getDatasetId());
+            if (dataset == null) {
+                dataset = new DatasetQueue(job.getDatasetId());
+                datasetsById.put(job.getDatasetId(), dataset);
+                datasets.addLast(dataset);
+            }
+            dataset.jobs.add(job);
+        }
+    }
+
+    private static class DatasetQueue {
+
+        final Long datasetId;
+        // smallest files first; in the order they were queued otherwise:
+        final PriorityQueue<IngestJob> jobs = new PriorityQueue<>(
+                Comparator.comparingLong(IngestJob::getSize).thenComparingLong(IngestJob::getQueuedTime));
+
+        DatasetQueue(Long datasetId) {
+            this.datasetId = datasetId;
+        }
+    }
+}
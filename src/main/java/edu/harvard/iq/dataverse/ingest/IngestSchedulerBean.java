@@ -0,0 +1,319 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.DataFileServiceBean;
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.DatasetEventServiceBean;
+import edu.harvard.iq.dataverse.DatasetLock;
+import edu.harvard.iq.dataverse.DatasetServiceBean;
+import edu.harvard.iq.dataverse.UserNotification;
+import edu.harvard.iq.dataverse.UserNotificationServiceBean;
+import edu.harvard.iq.dataverse.authorization.AuthenticationServiceBean;
+import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.BundleUtil;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.DependsOn;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.json.Json;
+
+/**
+ * Runs the tabular ingest jobs submitted through the ingest JMS queue (see
+ * {@link IngestMessageBean}) on a pool of worker threads, in the order
+ * decided by the {@link IngestScheduler}: round-robin across users and
+ * datasets, small files first, and only as many at a time as fit in the
+ * memory budget.
+ *
+ * The number of workers, the memory budget and the size of a "small" file
+ * are configured with the {@link JvmSettings#INGEST_WORKERS},
+ * {@link JvmSettings#INGEST_MEMORY_BUDGET} and
+ * {@link JvmSettings#INGEST_SMALL_FILE_SIZE} settings.
+ *
+ * The queue is only kept in memory (the JMS messages are acknowledged once
+ * their files are queued); it is rebuilt on startup from the files still
+ * being ingested when {@link JvmSettings#INGEST_RESUME_ON_STARTUP} is on. That
+ * is only for installations with a single server: which server ingests a file
+ * isn't recorded, so the files being ingested by the other servers would be
+ * queued again too.
+ */
+@Singleton
+@Startup
+@DependsOn("StartupFlywayMigrator")
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class IngestSchedulerBean {
+
+    private static final Logger logger = Logger.getLogger(IngestSchedulerBean.class.getCanonicalName());
+
+    @EJB
+    DatasetServiceBean datasetService;
+    @EJB
+    DataFileServiceBean datafileService;
+    @EJB
+    IngestServiceBean ingestService;
+    @EJB
+    UserNotificationServiceBean userNotificationService;
+    @EJB
+    AuthenticationServiceBean authenticationServiceBean;
+    @EJB
+    DatasetEventServiceBean datasetEventService;
+
+    @Resource
+    ManagedThreadFactory threadFactory;
+
+    private IngestScheduler scheduler;
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        int workers = JvmSettings.INGEST_WORKERS.lookupOptional(Integer.class)
+                .orElse(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        // (in MB) half of the heap, by default:
+        long memoryBudget = JvmSettings.INGEST_MEMORY_BUDGET.lookupOptional(Long.class)
+                .orElse(Runtime.getRuntime().maxMemory() / 2 / (1024 * 1024)) * 1024 * 1024;
+        long smallFileSize = JvmSettings.INGEST_SMALL_FILE_SIZE.lookupOptional(Long.class).orElse(10L * 1024 * 1024);
+
+        scheduler = new IngestScheduler(workers, memoryBudget, smallFileSize);
+        executor = Executors.newFixedThreadPool(scheduler.getWorkers(), threadFactory);
+        logger.info("Ingest scheduler started with " + scheduler.getWorkers() + " workers and a memory budget of "
+                + memoryBudget + " bytes");
+
+        if (JvmSettings.INGEST_RESUME_ON_STARTUP.lookupOptional(Boolean.class).orElse(false)) {
+            try {
+                resumeIngests();
+            } catch (Exception ex) {
+                logger.log(Level.WARNING, "Could not resume the ingests interrupted by the last shutdown", ex);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues the ingest of the files in the message. The dataset stays
+     * locked (with an Ingest lock), until the last queued file of the
+     * dataset is done.
+     */
+    public void submit(IngestMessage ingestMessage) {
+        // (the files already queued, e.g. when a message is delivered again
+        // after the queue was rebuilt on startup, are not queued twice)
+        List<Long> datafile_ids = ingestMessage.getFileIds().stream()
+                .filter(datafile_id -> !scheduler.hasFile(datafile_id))
+                .collect(Collectors.toList());
+        IngestBatch batch = new IngestBatch(ingestMessage, datafile_ids.size());
+        List<IngestJob> jobs = new ArrayList<>();
+        for (Long datafile_id : datafile_ids) {
+            DataFile dataFile = datafileService.find(datafile_id);
+            String fileName = null;
+            String contentType = null;
+            long size = 0;
+            if (dataFile != null) {
+                fileName = dataFile.getCurrentName();
+                contentType = dataFile.getContentType();
+                size = dataFile.getFilesize();
+            }
+            jobs.add(new IngestJob(datafile_id, ingestMessage.getDatasetId(), ingestMessage.getAuthenticatedUserId(),
+                    fileName, contentType, size, batch));
+        }
+        if (jobs.isEmpty()) {
+            return;
+        }
+        jobs.forEach(scheduler::add);
+        logger.fine("Queued " + jobs.size() + " ingest job(s) for dataset " + ingestMessage.getDatasetId()
+                + "; queue depth: " + scheduler.getQueueDepth());
+        dispatch();
+    }
+
+    /*
+     * Rebuilds the queue, which is only kept in memory, from the files whose
+     * ingest was queued or running when the application was last shut down
+     * (or crashed): they are still in the "in progress" state. The datasets
+     * keep (or get back) their Ingest lock until they are done; the Ingest
+     * locks of the datasets with no such files are stale, and released.
+     */
+    private void resumeIngests() {
+        Map<Long, IngestMessage> byDataset = new LinkedHashMap<>();
+        for (DataFile dataFile : datafileService.findIngestsInProgress()) {
+            if (dataFile.getIngestStatus() != DataFile.INGEST_STATUS_INPROGRESS || dataFile.getOwner() == null) {
+                // (those only scheduled are queued once their upload is saved)
+                continue;
+            }
+            Dataset dataset = dataFile.getOwner();
+            IngestMessage ingestMessage = byDataset.get(dataset.getId());
+            if (ingestMessage == null) {
+                DatasetLock lock = dataset.getLockFor(DatasetLock.Reason.Ingest);
+                AuthenticatedUser user = lock != null && lock.getUser() != null ? lock.getUser() : dataset.getCreator();
+                if (user == null) {
+                    logger.warning("Not resuming the ingest of the files of dataset " + dataset.getId() + ": no user to notify");
+                    continue;
+                }
+                ingestMessage = new IngestMessage(user.getId());
+                ingestMessage.setDatasetId(dataset.getId());
+                ingestMessage.setInfo(lock != null ? lock.getInfo() : null);
+                byDataset.put(dataset.getId(), ingestMessage);
+            }
+            ingestMessage.addFileId(dataFile.getId());
+        }
+
+        for (IngestMessage ingestMessage : byDataset.values()) {
+            datasetService.addDatasetLock(ingestMessage.getDatasetId(), DatasetLock.Reason.Ingest,
+                    ingestMessage.getAuthenticatedUserId(), ingestMessage.getInfo());
+            submit(ingestMessage);
+        }
+        if (!byDataset.isEmpty()) {
+            logger.info("Resumed the ingest of " + scheduler.getQueueDepth() + " file(s) of " + byDataset.size() + " dataset(s)");
+        }
+
+        List<DatasetLock> locks = datasetService.listLocks(DatasetLock.Reason.Ingest, null);
+        for (DatasetLock lock : locks == null ? List.<DatasetLock>of() : locks) {
+            if (lock.getDataset() != null && !byDataset.containsKey(lock.getDataset().getId())) {
+                logger.info("Releasing the stale Ingest lock of dataset " + lock.getDataset().getId());
+                datasetService.removeDatasetLocks(lock.getDataset(), DatasetLock.Reason.Ingest);
+            }
+        }
+    }
+
+    public IngestScheduler getScheduler() {
+        return scheduler;
+    }
+
+    private void dispatch() {
+        IngestJob job;
+        while ((job = scheduler.next()) != null) {
+            IngestJob next = job;
+            executor.execute(() -> run(next));
+        }
+    }
+
+    private void run(IngestJob job) {
+        try {
+            ingest(job);
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Unexpected exception running " + job, ex);
+        } finally {
+            scheduler.complete(job);
+            if (job.getBatch().jobDone()) {
+                try {
+                    finishBatch(job.getBatch());
+                } catch (Exception ex) {
+                    logger.log(Level.WARNING, "Unexpected exception finishing the ingest of dataset " + job.getDatasetId(), ex);
+                }
+            }
+            dispatch();
+        }
+    }
+
+    private void ingest(IngestJob job) {
+        Long datafile_id = job.getDataFileId();
+        IngestBatch batch = job.getBatch();
+
+        logger.fine("Start ingest job;");
+        try {
+
+            DataFile datafile = datafileService.find(datafile_id);
+
+            if (ingestService.ingestAsTabular(datafile_id)) {
+                logger.fine("Finished ingest job;");
+                // We used to list the successfully ingested files in the "success"
+                // and "mixed success and failure" emails. Now we never list successfully
+                // ingested files.
+            } else {
+                logger.warning("Error occurred during ingest job for file id " + datafile_id + "!");
+                batch.addFailedFile(datafile.getCurrentName());
+            }
+
+        } catch (Exception ex) {
+            // TODO:
+            // this solution is working - but it would be cleaner to instead
+            // make sure that all the exceptions are interrupted and appropriate
+            // action taken still on the ingest service side.
+            // -- L.A. Aug. 13 2014;
+            logger.info("Unknown exception occurred  during ingest (supressed stack trace); re-setting ingest status.");
+            if (datafile_id != null) {
+                logger.fine("looking up datafile for id " + datafile_id);
+                DataFile datafile = datafileService.find(datafile_id);
+                if (datafile != null) {
+
+                    batch.addFailedFile(datafile.getCurrentName());
+
+                    datafile.SetIngestProblem();
+                    IngestReport errorReport = new IngestReport();
+                    errorReport.setFailure();
+                    if (ex.getMessage() != null) {
+                        errorReport.setReport(BundleUtil.getStringFromBundle("file.ingest.saveFailed.detail.message") + ex.getMessage());
+                    } else {
+                        errorReport.setReport(BundleUtil.getStringFromBundle("file.ingest.saveFailed.message"));
+                    }
+                    errorReport.setDataFile(datafile);
+                    datafile.setIngestReport(errorReport);
+                    datafile.setDataTables(null);
+
+                    logger.info("trying to save datafile and the failed ingest report, id=" + datafile_id);
+                    datafile = datafileService.save(datafile);
+
+                    if (job.getDatasetId() != null) {
+                        ingestService.sendFailNotification(job.getDatasetId());
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Notifies the user that submitted the files (and the clients waiting for
+     * the events of the dataset), and removes the ingest lock from the
+     * dataset, unless more files of the dataset are still queued.
+     */
+    private void finishBatch(IngestBatch batch) {
+        IngestMessage ingestMessage = batch.getIngestMessage();
+        try {
+            AuthenticatedUser authenticatedUser = authenticationServiceBean.findByID(ingestMessage.getAuthenticatedUserId());
+            if (authenticatedUser == null) {
+                logger.warning("No user to notify of the ingest of the files of dataset " + ingestMessage.getDatasetId());
+                return;
+            }
+            userNotificationService.sendNotification(
+                    authenticatedUser,
+                    Timestamp.from(Instant.now()),
+                    !batch.isWithErrors() ? UserNotification.Type.INGESTCOMPLETED : UserNotification.Type.INGESTCOMPLETEDWITHERRORS,
+                    ingestMessage.getDatasetId(),
+                    batch.getFailedFilesList(),
+                    true
+            );
+        } finally {
+            datasetEventService.publish(ingestMessage.getDatasetId(), DatasetEventServiceBean.Type.INGEST_DONE,
+                    Json.createObjectBuilder()
+                            .add("files", ingestMessage.getFileIds().size())
+                            .add("withErrors", batch.isWithErrors()));
+            // (note that the assumption here is that all of the datafiles
+            // packed into this IngestMessage belong to the same dataset)
+            if (ingestMessage.getDatasetId() != null && !scheduler.hasJobs(ingestMessage.getDatasetId())) {
+                Dataset dataset = datasetService.find(ingestMessage.getDatasetId());
+                if (dataset != null && dataset.getId() != null) {
+                    datasetService.removeDatasetLocks(dataset, DatasetLock.Reason.Ingest);
+                }
+            }
+        }
+    }
+}
@@ -71,6 +71,7 @@ import edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.sav.SAVFileReade
 import edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.sav.SAVFileReaderSpi;
 import edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.por.PORFileReader;
 import edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.por.PORFileReaderSpi;
+import edu.harvard.iq.dataverse.settings.FeatureFlags;
 import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.storageuse.StorageUseServiceBean;
 import edu.harvard.iq.dataverse.storageuse.UploadSessionQuotaLimit;
@@ -112,6 +113,7 @@ import java.util.ListIterator;
 import java.util.logging.Logger;
 import java.util.Hashtable;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
 import jakarta.inject.Named;
@@ -141,6 +143,8 @@ import ucar.nc2.NetcdfFiles;
 @Named
 public class IngestServiceBean {
     private static final Logger logger = Logger.getLogger(IngestServiceBean.class.getCanonicalName());
+    // the progress of the tabular ingests running right now, by datafile id:
+    private static final Map<Long, IngestProgress> INGEST_PROGRESS = new ConcurrentHashMap<>();
     @EJB
     VariableServiceBean variableService;
     @EJB 
@@ -930,6 +934,22 @@ public class IngestServiceBean {
     }
     
     
+    /**
+     * @return the progress of the tabular ingest of the file, if it is
+     * running right now on this server; null otherwise.
+     */
+    public IngestProgress getIngestProgress(Long dataFileId) {
+        return INGEST_PROGRESS.get(dataFileId);
+    }
+
+    /**
+     * @return the progress of all the tabular ingests running right now on
+     * this server.
+     */
+    public Collection<IngestProgress> getIngestProgress() {
+        return INGEST_PROGRESS.values();
+    }
+
     public boolean ingestAsTabular(Long datafile_id) {
         DataFile dataFile = fileService.find(datafile_id);
         boolean ingestSuccessful = false;
@@ -1034,6 +1054,20 @@ public class IngestServiceBean {
             dataFile.setContentType(newType);
         }
         
+        // Some plugins can make use of random access to the local copy
+        // of the file (for ex., large CSV files can be read in chunks, in
+        // parallel):
+        ingestPlugin.setSourceFile(localFile);
+        if (ingestPlugin instanceof CSVFileReader) {
+            CSVFileReader csvFileReader = (CSVFileReader) ingestPlugin;
+            csvFileReader.setParallelThreads(JvmSettings.INGEST_CSV_PARALLEL_THREADS.lookupOptional(Integer.class).orElse(1));
+        }
+        
+        IngestProgress progress = new IngestProgress(dataFile.getId(), dataFile.getFileMetadata().getLabel(),
+                localFile != null ? localFile.length() : dataFile.getFilesize());
+        ingestPlugin.setProgress(progress);
+        INGEST_PROGRESS.put(datafile_id, progress);
+        
         TabularDataIngest tabDataIngest = null; 
         try {
             tabDataIngest = ingestPlugin.read(inputStream, storingWithVariableHeader, additionalData);
@@ -1054,6 +1088,7 @@ public class IngestServiceBean {
             
         } finally {
         	IOUtils.closeQuietly(inputStream);
+        	INGEST_PROGRESS.remove(datafile_id);
         }
 
         String originalContentType = dataFile.getContentType();
@@ -1292,9 +1327,9 @@ public class IngestServiceBean {
         } else if (mimeType.equals(FileUtil.MIME_TYPE_RDATA)) {
             ingestPlugin = new RDATAFileReader(new RDATAFileReaderSpi());
         } else if (mimeType.equals(FileUtil.MIME_TYPE_CSV) || mimeType.equals(FileUtil.MIME_TYPE_CSV_ALT)) {
-            ingestPlugin = new CSVFileReader(new CSVFileReaderSpi(), ',');
+            ingestPlugin = new CSVFileReader(new CSVFileReaderSpi(), ',', FeatureFlags.CSV_SINGLE_PASS_INGEST.enabled());
         } else if (mimeType.equals(FileUtil.MIME_TYPE_TSV) /*|| mimeType.equals(FileUtil.MIME_TYPE_TSV_ALT)*/) {
-            ingestPlugin = new CSVFileReader(new CSVFileReaderSpi(), '\t');
+            ingestPlugin = new CSVFileReader(new CSVFileReaderSpi(), '\t', FeatureFlags.CSV_SINGLE_PASS_INGEST.enabled());
         }  else if (mimeType.equals(FileUtil.MIME_TYPE_XLSX)) {
             ingestPlugin = new XLSXFileReader(new XLSXFileReaderSpi());
         } else if (mimeType.equals(FileUtil.MIME_TYPE_SPSS_SAV)) {
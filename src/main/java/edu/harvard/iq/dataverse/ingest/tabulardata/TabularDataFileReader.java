@@ -21,6 +21,7 @@
 package edu.harvard.iq.dataverse.ingest.tabulardata;
 
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
+import edu.harvard.iq.dataverse.ingest.IngestProgress;
 import edu.harvard.iq.dataverse.ingest.tabulardata.spi.*;
 //import edu.harvard.iq.dataverse.ingest.plugin.metadata.*;
 import java.io.*;
@@ -76,6 +77,36 @@ public abstract class TabularDataFileReader {
     public void setDataLanguageEncoding(String dataLanguageEncoding) {
         this.dataLanguageEncoding = dataLanguageEncoding;
     }
+
+    protected File sourceFile;
+
+    public File getSourceFile() {
+        return sourceFile;
+    }
+
+    /**
+     * Sets the local file the stream passed to {@link #read} is read from,
+     * when there is one. Readers that can make use of random access to the
+     * file (for ex., to memory-map it, or to read it in parallel) may use it;
+     * others simply ignore it.
+     */
+    public void setSourceFile(File sourceFile) {
+        this.sourceFile = sourceFile;
+    }
+
+    protected IngestProgress progress;
+
+    public IngestProgress getProgress() {
+        return progress;
+    }
+
+    /**
+     * Sets the object the reader reports its progress to (the number of
+     * bytes of the file read so far), if it supports it.
+     */
+    public void setProgress(IngestProgress progress) {
+        this.progress = progress;
+    }
     
     /**
      * Reads the statistical data file from a supplied
@@ -0,0 +1,411 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.csv;
+
+import edu.harvard.iq.dataverse.DataTable;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.io.input.BoundedInputStream;
+
+/**
+ * Reads a CSV (or TSV) file in chunks, in parallel.
+ *
+ * The file is split at record boundaries by a sequential scan of its bytes,
+ * that only keeps track of whether it is inside a quoted value (so that line
+ * breaks in quoted values are not mistaken for the end of a record); as soon
+ * as a chunk boundary has been found, the chunk is handed to a worker thread.
+ * Every chunk is then parsed, typed and written to its own part of the
+ * tab-delimited file, speculatively, the same way the single-pass mode of
+ * the {@link CSVFileReader} does it.
+ *
+ * Once all the chunks have been read, their type inference is merged in file
+ * order (see {@link CSVTypeInference#append}), the parts are fixed up for the
+ * final column types (again in parallel) and concatenated.
+ *
+ * Splitting the file at the byte level requires a character encoding in which
+ * the delimiters, quotes and line breaks can't be a part of another character
+ * (such as UTF-8 or the ISO-8859 family), see {@link #isSplittable}.
+ */
+class CSVChunkedReader {
+
+    private static final Logger logger = Logger.getLogger(CSVChunkedReader.class.getCanonicalName());
+
+    /**
+     * Chunks are never made smaller than this, so that the cost of setting up
+     * and merging a chunk is small compared to the cost of reading it.
+     */
+    static final long MIN_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    private final CSVFormat format;
+    private final Charset charset;
+    private final int threads;
+    private final long minChunkSize;
+
+    CSVChunkedReader(CSVFormat format, Charset charset, int threads, long minChunkSize) {
+        this.format = format;
+        this.charset = charset;
+        this.threads = threads;
+        this.minChunkSize = minChunkSize;
+    }
+
+    /**
+     * @return true if files in this encoding can be split at record boundaries
+     * by looking at the bytes only.
+     */
+    static boolean isSplittable(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8)
+                || charset.equals(StandardCharsets.US_ASCII)
+                || charset.name().startsWith("ISO-8859-")
+                || charset.name().startsWith("windows-125");
+    }
+
+    /**
+     * Reads the CSV file, populates the data table and writes the
+     * tab-delimited file.
+     *
+     * @return the number of cases (rows)
+     */
+    int read(File csvFile, DataTable dataTable, boolean saveWithVariableHeader, File tabFile) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            String variableNameHeader;
+            int columnCount;
+
+            try (FileChannel channel = FileChannel.open(csvFile.toPath(), StandardOpenOption.READ)) {
+                long size = channel.size();
+                RecordBoundaryScanner scanner = new RecordBoundaryScanner(channel, format);
+
+                // The header is the first record (not counting the empty lines
+                // that may precede it, in a TSV file):
+                Map<String, Integer> headers;
+                long dataStart = 0;
+                do {
+                    dataStart = scanner.next(dataStart + 1);
+                    try (CSVRecordTokenizer tokenizer = openTokenizer(csvFile, 0, dataStart, 0)) {
+                        headers = tokenizer.readHeader();
+                    }
+                } while (headers.isEmpty() && dataStart < size);
+
+                variableNameHeader = CSVFileReader.initDataVariables(headers.keySet(), dataTable, saveWithVariableHeader);
+                if (saveWithVariableHeader && variableNameHeader == null) {
+                    throw new IOException("failed to generate the Variable Names header");
+                }
+                columnCount = headers.size();
+
+                long chunkLength = Math.max(minChunkSize, (size - dataStart) / (threads * 4L));
+                long start = dataStart;
+                while (start < size) {
+                    long lineNumber = scanner.getLineNumber();
+                    long end = scanner.next(start + chunkLength);
+                    Chunk chunk = new Chunk(csvFile, start, end, lineNumber, columnCount);
+                    chunk.future = executor.submit(() -> {
+                        chunk.read();
+                        return null;
+                    });
+                    chunks.add(chunk);
+                    start = end;
+                }
+            }
+            logger.fine("Reading " + csvFile + " in " + chunks.size() + " chunks");
+
+            for (Chunk chunk : chunks) {
+                await(chunk.future);
+            }
+
+            // Merge the type inference of the chunks, in order:
+            CSVTypeInference typeInference = new CSVTypeInference(columnCount);
+            long caseCount = 0;
+            for (Chunk chunk : chunks) {
+                boolean[] replay = typeInference.append(chunk.typeInference);
+                for (boolean replayColumn : replay) {
+                    if (replayColumn) {
+                        chunk.replay(typeInference, replay);
+                        break;
+                    }
+                }
+                caseCount += chunk.writer.getCaseCount();
+            }
+
+            for (Chunk chunk : chunks) {
+                chunk.future = executor.submit(() -> {
+                    chunk.fixup(typeInference);
+                    return null;
+                });
+            }
+            for (Chunk chunk : chunks) {
+                await(chunk.future);
+            }
+
+            try (FileChannel tabOut = FileChannel.open(tabFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                if (saveWithVariableHeader) {
+                    ByteBuffer header = ByteBuffer.wrap((variableNameHeader + "\n").getBytes(charset));
+                    while (header.hasRemaining()) {
+                        tabOut.write(header);
+                    }
+                }
+                for (Chunk chunk : chunks) {
+                    try (FileChannel partIn = FileChannel.open(chunk.partFile.toPath(), StandardOpenOption.READ)) {
+                        long transferred = 0;
+                        long partSize = partIn.size();
+                        while (transferred < partSize) {
+                            transferred += partIn.transferTo(transferred, partSize - transferred, tabOut);
+                        }
+                    }
+                }
+            }
+
+            dataTable.setCaseQuantity(caseCount);
+            typeInference.applyTo(dataTable);
+            return (int) caseCount;
+        } finally {
+            executor.shutdownNow();
+            for (Chunk chunk : chunks) {
+                chunk.delete();
+            }
+        }
+    }
+
+    private void await(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading the file", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            } else if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    private CSVRecordTokenizer openTokenizer(File csvFile, long start, long end, long lineNumber) throws IOException {
+        FileChannel channel = FileChannel.open(csvFile.toPath(), StandardOpenOption.READ);
+        channel.position(start);
+        return new CSVRecordTokenizer(
+                new InputStreamReader(new BoundedInputStream(Channels.newInputStream(channel), end - start), charset),
+                format, lineNumber);
+    }
+
+    /**
+     * A chunk of the file, [start, end), starting at a record boundary.
+     */
+    private class Chunk {
+
+        private final File csvFile;
+        private final long start;
+        private final long end;
+        private final long lineNumber;
+        private final int columnCount;
+
+        private Future<?> future;
+        private CSVTypeInference typeInference;
+        private CSVSpeculativeWriter writer;
+        private File partFile;
+
+        Chunk(File csvFile, long start, long end, long lineNumber, int columnCount) {
+            this.csvFile = csvFile;
+            this.start = start;
+            this.end = end;
+            this.lineNumber = lineNumber;
+            this.columnCount = columnCount;
+        }
+
+        /**
+         * Reads the chunk, writing it speculatively to the part file.
+         */
+        void read() throws IOException {
+            typeInference = new CSVTypeInference(columnCount);
+            partFile = File.createTempFile("part-", ".tab");
+            writer = new CSVSpeculativeWriter(typeInference, true, new BufferedWriter(new FileWriter(partFile)));
+
+            try (CSVRecordTokenizer tokenizer = openTokenizer(csvFile, start, end, lineNumber);
+                    CSVSpeculativeWriter speculativeWriter = writer) {
+                String[] record;
+                while ((record = tokenizer.next()) != null) {
+                    CSVFileReader.checkRecordLength(record, columnCount, tokenizer.getLineNumber());
+                    speculativeWriter.write(record);
+                }
+            }
+        }
+
+        /**
+         * Examines the values of the given columns of the chunk once more,
+         * updating the merged type inference of the chunks preceding it.
+         */
+        void replay(CSVTypeInference merged, boolean[] columns) throws IOException {
+            try (CSVRecordTokenizer tokenizer = openTokenizer(csvFile, start, end, lineNumber)) {
+                String[] record;
+                while ((record = tokenizer.next()) != null) {
+                    for (int i = 0; i < columnCount; i++) {
+                        if (columns[i]) {
+                            merged.update(i, record[i]);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Re-formats the cells of the part file that were written with a
+         * different format than the final one.
+         */
+        void fixup(CSVTypeInference finalTypes) throws IOException {
+            long[] fixupUntilCase = new long[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                int formatClass = typeInference.getFormatClass(i);
+                if (formatClass == finalTypes.getFormatClass(i)) {
+                    fixupUntilCase[i] = writer.getWidenedAtCase()[i];
+                } else if (formatClass != CSVTypeInference.CLASS_STRING) {
+                    fixupUntilCase[i] = writer.getCaseCount();
+                } else {
+                    // The values have been written as Strings already, and
+                    // can't be recovered; we have to start over (this is not
+                    // expected to happen, since a column that is a String
+                    // column in a chunk is a String column in the whole file).
+                    rewrite(finalTypes);
+                    return;
+                }
+            }
+            writer.fixup(partFile, finalTypes, fixupUntilCase, false);
+        }
+
+        private void rewrite(CSVTypeInference finalTypes) throws IOException {
+            logger.warning("Re-writing the chunk of " + csvFile + " starting at byte " + start);
+            try (CSVRecordTokenizer tokenizer = openTokenizer(csvFile, start, end, lineNumber);
+                    CSVSpeculativeWriter finalWriter = new CSVSpeculativeWriter(finalTypes, false, new BufferedWriter(new FileWriter(partFile)))) {
+                String[] record;
+                while ((record = tokenizer.next()) != null) {
+                    finalWriter.write(record);
+                }
+                finalWriter.deleteFixupFile();
+            }
+        }
+
+        void delete() {
+            if (partFile != null) {
+                partFile.delete();
+            }
+            if (writer != null) {
+                writer.deleteFixupFile();
+            }
+        }
+    }
+
+    /**
+     * Finds record boundaries in a CSV file, by scanning its bytes in sequence.
+     *
+     * Follows the quoting rules of the {@link CSVRecordTokenizer}: a quote
+     * only starts a quoted value at the beginning of a value (after leading
+     * whitespace, if surrounding spaces are ignored), and a doubled quote
+     * inside a quoted value is an escaped quote. Only line feeds are taken as
+     * boundaries, so files with (old Mac style) bare carriage returns as line
+     * breaks are never split.
+     */
+    static class RecordBoundaryScanner {
+
+        private final FileChannel channel;
+        private final byte delimiter;
+        private final byte quoteChar;
+        private final boolean ignoreSurroundingSpaces;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+
+        private long position = 0;
+        private long lineNumber = 0;
+        private boolean atValueStart = true;
+        private boolean inQuotes = false;
+        private boolean afterClosingQuote = false;
+
+        RecordBoundaryScanner(FileChannel channel, CSVFormat format) {
+            this.channel = channel;
+            this.delimiter = (byte) format.getDelimiter();
+            this.quoteChar = format.getQuoteCharacter() == null ? 0 : (byte) format.getQuoteCharacter().charValue();
+            this.ignoreSurroundingSpaces = format.getIgnoreSurroundingSpaces();
+            buffer.limit(0);
+        }
+
+        /**
+         * Scans ahead to the first record boundary at or after the target
+         * position; must be called with increasing targets.
+         *
+         * @return the position right after the line break that ends the
+         * record, or the size of the file if there is no such line break.
+         */
+        long next(long target) throws IOException {
+            while (true) {
+                if (!buffer.hasRemaining()) {
+                    buffer.clear();
+                    int n = channel.read(buffer, position);
+                    buffer.flip();
+                    if (n <= 0) {
+                        return position;
+                    }
+                }
+                byte b = buffer.get();
+                position++;
+
+                if (b == '\n') {
+                    lineNumber++;
+                }
+                if (inQuotes) {
+                    if (b == quoteChar) {
+                        inQuotes = false;
+                        afterClosingQuote = true;
+                    }
+                    continue;
+                }
+                if (afterClosingQuote) {
+                    afterClosingQuote = false;
+                    if (b == quoteChar) {
+                        // an escaped (doubled) quote
+                        inQuotes = true;
+                        continue;
+                    }
+                }
+
+                if (b == '\n') {
+                    atValueStart = true;
+                    if (position >= target) {
+                        return position;
+                    }
+                } else if (b == delimiter || b == '\r') {
+                    atValueStart = true;
+                } else if (atValueStart) {
+                    if (b == quoteChar) {
+                        inQuotes = true;
+                        atValueStart = false;
+                    } else if (!(ignoreSurroundingSpaces && b > 0 && Character.isWhitespace((char) b))) {
+                        atValueStart = false;
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return the number of line feeds scanned so far.
+         */
+        long getLineNumber() {
+            return lineNumber;
+        }
+    }
+}
@@ -31,20 +31,17 @@ import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataIngest;
 import edu.harvard.iq.dataverse.util.BundleUtil;
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.math.BigDecimal;
+import java.io.Writer;
 import java.math.MathContext;
+import java.nio.charset.Charset;
 import java.math.RoundingMode;
-import java.text.ParseException;
-import java.text.ParsePosition;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Date;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -71,23 +68,11 @@ public class CSVFileReader extends TabularDataFileReader {
     private static final String FORMAT_IEEE754 = "%+#." + DIGITS_OF_PRECISION_DOUBLE + "e";
     private MathContext doubleMathContext;
     private CSVFormat inFormat;
+    private boolean singlePass = false;
+    private int parallelThreads = 1;
+    private long minChunkSize = CSVChunkedReader.MIN_CHUNK_SIZE;
     //private final Set<Character> firstNumCharSet = new HashSet<>();
 
-    // DATE FORMATS
-    private static SimpleDateFormat[] DATE_FORMATS = new SimpleDateFormat[]{
-        new SimpleDateFormat("yyyy-MM-dd"), //new SimpleDateFormat("yyyy/MM/dd"),
-    //new SimpleDateFormat("MM/dd/yyyy"),
-    //new SimpleDateFormat("MM-dd-yyyy"),
-    };
-
-    // TIME FORMATS
-    private static SimpleDateFormat[] TIME_FORMATS = new SimpleDateFormat[]{
-        // Date-time up to seconds with timezone, e.g. 2013-04-08 13:14:23 -0500
-        new SimpleDateFormat("yyyy-MM-dd HH:mm:ss z"),
-        // Date-time up to seconds and no timezone, e.g. 2013-04-08 13:14:23
-        new SimpleDateFormat("yyyy-MM-dd HH:mm:ss")
-    };
-
     public CSVFileReader(TabularDataFileReaderSpi originator, char delim) {
         super(originator);
         if (delim == ','){
@@ -97,6 +82,28 @@ public class CSVFileReader extends TabularDataFileReader {
         }
     }
 
+    /**
+     * @param singlePass if true, the file is read using the single-pass mode,
+     * see {@link #readFileSinglePass}
+     */
+    public CSVFileReader(TabularDataFileReaderSpi originator, char delim, boolean singlePass) {
+        this(originator, delim);
+        this.singlePass = singlePass;
+    }
+
+    /**
+     * @param parallelThreads the number of threads to read a large file
+     * with, if the source file is known (see {@link #setSourceFile}); 1 (the default) means that files are
+     * always read sequentially.
+     */
+    public void setParallelThreads(int parallelThreads) {
+        this.parallelThreads = parallelThreads;
+    }
+
+    void setMinChunkSize(long minChunkSize) {
+        this.minChunkSize = minChunkSize;
+    }
+
     private void init() throws IOException {
         doubleMathContext = new MathContext(DIGITS_OF_PRECISION_DOUBLE, RoundingMode.HALF_EVEN);
         //firstNumCharSet.addAll(Arrays.asList(new Character[]{'+', '-', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9'}));
@@ -122,9 +129,16 @@ public class CSVFileReader extends TabularDataFileReader {
         BufferedReader localBufferedReader = new BufferedReader(new InputStreamReader(stream));
 
         File tabFileDestination = File.createTempFile("data-", ".tab");
-        PrintWriter tabFileWriter = new PrintWriter(tabFileDestination.getAbsolutePath());
 
-        int lineCount = readFile(localBufferedReader, dataTable, saveWithVariableHeader, tabFileWriter);
+        if (isChunkable()) {
+            new CSVChunkedReader(inFormat, Charset.defaultCharset(), parallelThreads, minChunkSize)
+                    .read(sourceFile, dataTable, saveWithVariableHeader, tabFileDestination);
+        } else if (singlePass) {
+            readFileSinglePass(localBufferedReader, dataTable, saveWithVariableHeader, tabFileDestination);
+        } else {
+            PrintWriter tabFileWriter = new PrintWriter(tabFileDestination.getAbsolutePath());
+            readFile(localBufferedReader, dataTable, saveWithVariableHeader, tabFileWriter);
+        }
 
         logger.fine("Tab file produced: " + tabFileDestination.getAbsolutePath());
 
@@ -136,65 +150,29 @@ public class CSVFileReader extends TabularDataFileReader {
 
     }
 
+    /**
+     * @return true if the file can be read in chunks, in parallel: it has to
+     * be large enough to be worth it, and its encoding has to allow splitting
+     * it at record boundaries.
+     */
+    private boolean isChunkable() {
+        return parallelThreads > 1
+                && sourceFile != null
+                && sourceFile.length() > minChunkSize
+                && CSVChunkedReader.isSplittable(Charset.defaultCharset());
+    }
+
     public int readFile(BufferedReader csvReader, DataTable dataTable, boolean saveWithVariableHeader, PrintWriter finalOut) throws IOException {
 
-        List<DataVariable> variableList = new ArrayList<>();
         CSVParser parser = new CSVParser(csvReader, inFormat.withHeader());
         Map<String, Integer> headers = parser.getHeaderMap();
 
-        int i = 0;
-        String variableNameHeader = null;
-        
-        for (String varName : headers.keySet()) {
-            // @todo: is .keySet() guaranteed to return the names in the right order?
-            if (varName == null || varName.isEmpty()) {
-                // TODO:
-                // Add a sensible variable name validation algorithm.
-                // -- L.A. 4.0 alpha 1
-                throw new IOException(BundleUtil.getStringFromBundle("ingest.csv.invalidHeader"));
-            }
-
-            DataVariable dv = new DataVariable(i, dataTable);
-            dv.setName(varName);
-            dv.setLabel(varName);
-            variableList.add(dv);
-
-            dv.setTypeCharacter();
-            dv.setIntervalDiscrete();
-            
-            if (saveWithVariableHeader) {
-                    variableNameHeader = variableNameHeader == null
-                            ? varName 
-                            : variableNameHeader.concat("\t" + varName);
-                }
-            
-            i++;
-        }
-
-        dataTable.setVarQuantity((long) variableList.size());
-        dataTable.setDataVariables(variableList);
+        String variableNameHeader = initDataVariables(headers.keySet(), dataTable, saveWithVariableHeader);
 
-        boolean[] isNumericVariable = new boolean[headers.size()];
-        boolean[] isIntegerVariable = new boolean[headers.size()];
-        boolean[] isTimeVariable = new boolean[headers.size()];
-        boolean[] isDateVariable = new boolean[headers.size()];
-
-        for (i = 0; i < headers.size(); i++) {
-            // OK, let's assume that every variable is numeric;
-            // but we'll go through the file and examine every value; the
-            // moment we find a value that's not a legit numeric one, we'll
-            // assume that it is in fact a String.
-            isNumericVariable[i] = true;
-            isIntegerVariable[i] = true;
-            isDateVariable[i] = true;
-            isTimeVariable[i] = true;
-        }
+        CSVTypeInference typeInference = new CSVTypeInference(headers.size());
 
         // First, "learning" pass.
         // (we'll save the incoming stream in another temp file:)
-        SimpleDateFormat[] selectedDateTimeFormat = new SimpleDateFormat[headers.size()];
-        SimpleDateFormat[] selectedDateFormat = new SimpleDateFormat[headers.size()];
-
         File firstPassTempFile = File.createTempFile("firstpass-", ".csv");
 
         try (CSVPrinter csvFilePrinter = new CSVPrinter(
@@ -211,113 +189,8 @@ public class CSVFileReader extends TabularDataFileReader {
                     throw new IOException(BundleUtil.getStringFromBundle("ingest.csv.recordMismatch", args));
                 }
 
-                for (i = 0; i < headers.size(); i++) {
-                    String varString = record.get(i);
-                    isIntegerVariable[i] = isIntegerVariable[i]
-                                           && varString != null
-                                           && (varString.isEmpty()
-                                               || varString.equals("null")
-                                               || (StringUtils.isNumeric(varString)
-                                                    || (varString.substring(0,1).matches("[+-]") 
-                                                        && StringUtils.isNumeric(varString.substring(1)))));
-                    if (isNumericVariable[i]) {
-                        // If variable might be "numeric" test to see if this value is a parsable number:
-                        if (varString != null && !varString.isEmpty()) {
-
-                            boolean isNumeric = false;
-                            boolean isInteger = false;
-
-                            if (varString.equalsIgnoreCase("NaN")
-                                || varString.equalsIgnoreCase("NA")
-                                || varString.equalsIgnoreCase("Inf")
-                                || varString.equalsIgnoreCase("+Inf")
-                                || varString.equalsIgnoreCase("-Inf")
-                                || varString.equalsIgnoreCase("null")) {
-                                continue;
-                            } else {
-                                try {
-                                    Double testDoubleValue = new Double(varString);
-                                    continue;
-                                } catch (NumberFormatException ex) {
-                                    // the token failed to parse as a double
-                                    // so the column is a string variable.
-                                }
-                            }
-                            isNumericVariable[i] = false;
-                        }
-                    }
-
-                    // If this is not a numeric column, see if it is a date collumn
-                    // by parsing the cell as a date or date-time value:
-                    if (!isNumericVariable[i]) {
-
-                        Date dateResult = null;
-
-                        if (isTimeVariable[i]) {
-                            if (varString != null && !varString.isEmpty()) {
-                                boolean isTime = false;
-
-                                if (selectedDateTimeFormat[i] != null) {
-                                    ParsePosition pos = new ParsePosition(0);
-                                    dateResult = selectedDateTimeFormat[i].parse(varString, pos);
-
-                                    if (dateResult != null && pos.getIndex() == varString.length()) {
-                                        // OK, successfully parsed a value!
-                                        isTime = true;
-                                    }
-                                } else {
-                                    for (SimpleDateFormat format : TIME_FORMATS) {
-                                        ParsePosition pos = new ParsePosition(0);
-                                        dateResult = format.parse(varString, pos);
-                                        if (dateResult != null && pos.getIndex() == varString.length()) {
-                                            // OK, successfully parsed a value!
-                                            isTime = true;
-                                            selectedDateTimeFormat[i] = format;
-                                            break;
-                                        }
-                                    }
-                                }
-                                if (!isTime) {
-                                    isTimeVariable[i] = false;
-                                    // if the token didn't parse as a time value,
-                                    // we will still try to parse it as a date, below.
-                                    // unless this column is NOT a date.
-                                } else {
-                                    // And if it is a time value, we are going to assume it's
-                                    // NOT a date.
-                                    isDateVariable[i] = false;
-                                }
-                            }
-                        }
-
-                        if (isDateVariable[i]) {
-                            if (varString != null && !varString.isEmpty()) {
-                                boolean isDate = false;
-
-                                // TODO:
-                                // Strictly speaking, we should be doing the same thing
-                                // here as with the time formats above; select the
-                                // first one that works, then insist that all the
-                                // other values in this column match it... but we
-                                // only have one, as of now, so it should be ok.
-                                // -- L.A. 4.0 beta
-                                for (SimpleDateFormat format : DATE_FORMATS) {
-                                    // Strict parsing - it will throw an
-                                    // exception if it doesn't parse!
-                                    format.setLenient(false);
-                                    try {
-                                        format.parse(varString);
-                                        isDate = true;
-                                        selectedDateFormat[i] = format;
-                                        break;
-                                    } catch (ParseException ex) {
-                                        //Do nothing
-                                    }
-                                }
-                                isDateVariable[i] = isDate;
-                            }
-                        }
-                    }
+                for (int i = 0; i < headers.size(); i++) {
+                    typeInference.update(i, record.get(i));
                 }
 
                 csvFilePrinter.printRecord(record);
@@ -327,27 +200,9 @@ public class CSVFileReader extends TabularDataFileReader {
         parser.close();
         csvReader.close();
 
-        // Re-type the variables that we've determined are numerics:
-        for (i = 0; i < headers.size(); i++) {
-            if (isNumericVariable[i]) {
-                dataTable.getDataVariables().get(i).setTypeNumeric();
+        // Re-type the variables that we've determined are numerics, dates and times:
+        typeInference.applyTo(dataTable);
 
-                if (isIntegerVariable[i]) {
-                    dataTable.getDataVariables().get(i).setIntervalDiscrete();
-                } else {
-                    dataTable.getDataVariables().get(i).setIntervalContinuous();
-                }
-            } else if (isDateVariable[i] && selectedDateFormat[i] != null) {
-                // Dates are still Strings, i.e., they are "character" and "discrete";
-                // But we add special format values for them:
-                dataTable.getDataVariables().get(i).setFormat(DATE_FORMATS[0].toPattern());
-                dataTable.getDataVariables().get(i).setFormatCategory("date");
-            } else if (isTimeVariable[i] && selectedDateTimeFormat[i] != null) {
-                // Same for time values:
-                dataTable.getDataVariables().get(i).setFormat(selectedDateTimeFormat[i].toPattern());
-                dataTable.getDataVariables().get(i).setFormatCategory("time");
-            }
-        }
         // Second, final pass.
         try (BufferedReader secondPassReader = new BufferedReader(new FileReader(firstPassTempFile))) {
             parser = new CSVParser(secondPassReader, inFormat.withHeader());
@@ -369,102 +224,12 @@ public class CSVFileReader extends TabularDataFileReader {
                     throw new IOException(BundleUtil.getStringFromBundle("ingest.csv.recordMismatch", args));
                 }
 
-                for (i = 0; i < headers.size(); i++) {
-                    String varString = record.get(i);
-                    if (isNumericVariable[i]) {
-                        if (varString == null || varString.isEmpty() || varString.equalsIgnoreCase("NA")) {
-                            // Missing value - represented as an empty string in
-                            // the final tab file
-                            caseRow[i] = "";
-                        } else if (varString.equalsIgnoreCase("NaN")) {
-                            // "Not a Number" special value:
-                            caseRow[i] = "NaN";
-                        } else if (varString.equalsIgnoreCase("Inf")
-                                || varString.equalsIgnoreCase("+Inf")) {
-                            // Positive infinity:
-                            caseRow[i] = "Inf";
-                        } else if (varString.equalsIgnoreCase("-Inf")) {
-                            // Negative infinity:
-                            caseRow[i] = "-Inf";
-                        } else if (varString.equalsIgnoreCase("null")) {
-                            // By request from Gus - "NULL" is recognized as a
-                            // numeric zero:
-                            caseRow[i] = isIntegerVariable[i] ? "0" : "0.0";
-                        } else {
-                            /* No re-formatting is done on any other numeric values.
-                             * We'll save them as they were, for archival purposes.
-                             * The alternative solution - formatting in sci. notation
-                             * is commented-out below.
-                             */
-                            caseRow[i] = varString;
-                            /*
-                             if (isIntegerVariable[i]) {
-                                try {
-                                    Integer testIntegerValue = new Integer(varString);
-                                    caseRow[i] = testIntegerValue.toString();
-                                } catch (NumberFormatException ex) {
-                                    throw new IOException("Failed to parse a value recognized as an integer in the first pass! (?)");
-                                }
-                            } else {
-                                try {
-                                    Double testDoubleValue = new Double(varString);
-                                    if (testDoubleValue.equals(0.0)) {
-                                        caseRow[i] = "0.0";
-                                    } else {
-                                                                            // One possible implementation:
-                                        //
-                                        // Round our fractional values to 15 digits
-                                        // (minimum number of digits of precision guaranteed by
-                                        // type Double) and format the resulting representations
-                                        // in a IEEE 754-like "scientific notation" - for ex.,
-                                        // 753.24 will be encoded as 7.5324e2
-                                        BigDecimal testBigDecimal = new BigDecimal(varString, doubleMathContext);
-                                        caseRow[i] = String.format(FORMAT_IEEE754, testBigDecimal);
-
-                                        // Strip meaningless zeros and extra + signs:
-                                        caseRow[i] = caseRow[i].replaceFirst("00*e", "e");
-                                        caseRow[i] = caseRow[i].replaceFirst("\\.e", ".0e");
-                                        caseRow[i] = caseRow[i].replaceFirst("e\\+00", "");
-                                        caseRow[i] = caseRow[i].replaceFirst("^\\+", "");
-                                    }
-                                } catch (NumberFormatException ex) {
-                                    throw new IOException("Failed to parse a value recognized as numeric in the first pass! (?)");
-                                }
-                            }
-                             */
-                        }
-                    } else if (isTimeVariable[i] || isDateVariable[i]) {
-                        // Time and Dates are stored NOT quoted (don't ask).
-                        if (varString != null) {
-                            // Dealing with quotes:
-                            // remove the leading and trailing quotes, if present:
-                            varString = varString.replaceFirst("^\"*", "");
-                            varString = varString.replaceFirst("\"*$", "");
-                            caseRow[i] = varString;
-                        } else {
-                            caseRow[i] = "";
-                        }
-                    } else {
-                        // Treat as a String:
-                        // Strings are stored in tab files quoted;
-                        // Missing values are stored as an empty string
-                        // between two tabs (or one tab and the new line);
-                        // Empty strings stored as "" (quoted empty string).
-                        // For the purposes  of this CSV ingest reader, we are going
-                        // to assume that all the empty strings in the file are
-                        // indeed empty strings, and NOT missing values:
-                        if (varString != null) {
-                            // escape the quotes, newlines, and tabs:
-                            varString = varString.replace("\"", "\\\"");
-                            varString = varString.replace("\n", "\\n");
-                            varString = varString.replace("\t", "\\t");
-                            // final pair of quotes:
-                            varString = "\"" + varString + "\"";
-                            caseRow[i] = varString;
-                        } else {
-                            caseRow[i] = "\"\"";
-                        }
-                    }
+                for (int i = 0; i < headers.size(); i++) {
+                    /* No re-formatting is done on numeric values, other than
+                     * the special values (NA, NaN, Inf, null). We'll save them
+                     * as they were, for archival purposes.
+                     */
+                    caseRow[i] = typeInference.format(i, record.get(i));
                 }
                 finalOut.println(StringUtils.join(caseRow, "\t"));
             }
@@ -483,4 +248,123 @@ public class CSVFileReader extends TabularDataFileReader {
         return (int) linecount;
     }
 
+    /**
+     * Single-pass version of {@link #readFile}: the CSV file is parsed only
+     * once, and the tab-delimited file is written directly, without the
+     * intermediate "first pass" copy of the input.
+     *
+     * The column types are inferred incrementally, and every row is written
+     * out speculatively, formatted according to the types known at that point;
+     * see {@link CSVSpeculativeWriter}. If no column was widened after its
+     * first value, the output is final as soon as the input has been read.
+     *
+     * @param csvReader the input
+     * @param dataTable data table to populate with the variables
+     * @param saveWithVariableHeader whether to add the variable name header to the tab file
+     * @param tabFile the tab-delimited file to write
+     * @return the number of cases (rows)
+     * @throws IOException if a reading or writing error occurs
+     */
+    public int readFileSinglePass(BufferedReader csvReader, DataTable dataTable, boolean saveWithVariableHeader, File tabFile) throws IOException {
+        CSVTypeInference typeInference;
+        CSVSpeculativeWriter speculativeWriter = null;
+
+        try (CSVRecordTokenizer tokenizer = new CSVRecordTokenizer(csvReader, inFormat)) {
+            Map<String, Integer> headers = tokenizer.readHeader();
+            String variableNameHeader = initDataVariables(headers.keySet(), dataTable, saveWithVariableHeader);
+            int columnCount = headers.size();
+
+            Writer tabOut = new BufferedWriter(new FileWriter(tabFile));
+            // Save the variable name header, if requested
+            if (saveWithVariableHeader) {
+                if (variableNameHeader == null) {
+                    tabOut.close();
+                    throw new IOException("failed to generate the Variable Names header");
+                }
+                tabOut.write(variableNameHeader);
+                tabOut.write('\n');
+            }
+
+            typeInference = new CSVTypeInference(columnCount);
+            speculativeWriter = new CSVSpeculativeWriter(typeInference, true, tabOut);
+
+            try (CSVSpeculativeWriter writer = speculativeWriter) {
+                String[] record;
+                while ((record = tokenizer.next()) != null) {
+                    checkRecordLength(record, columnCount, tokenizer.getLineNumber());
+                    writer.write(record);
+                }
+            }
+
+            dataTable.setCaseQuantity(speculativeWriter.getCaseCount());
+            typeInference.applyTo(dataTable);
+
+            speculativeWriter.fixup(tabFile, typeInference, speculativeWriter.getWidenedAtCase(), saveWithVariableHeader);
+        } finally {
+            if (speculativeWriter != null) {
+                speculativeWriter.deleteFixupFile();
+            }
+        }
+
+        return dataTable.getCaseQuantity().intValue();
+    }
+
+    /**
+     * Checks that a record has as many values as there are columns.
+     *
+     * @param lineNumber the number of lines read, up to and including the record
+     */
+    static void checkRecordLength(String[] record, int columnCount, long lineNumber) throws IOException {
+        if (record.length != columnCount) {
+            List<String> args = Arrays.asList(new String[]{"" + (lineNumber - 1),
+                                                           "" + columnCount,
+                                                           "" + record.length});
+            throw new IOException(BundleUtil.getStringFromBundle("ingest.csv.recordMismatch", args));
+        }
+    }
+
+    /**
+     * Creates the (character, discrete) data variables for the column names
+     * in the header.
+     *
+     * @return the variable name header line for the tab file, if requested
+     */
+    static String initDataVariables(Set<String> varNames, DataTable dataTable, boolean saveWithVariableHeader) throws IOException {
+        List<DataVariable> variableList = new ArrayList<>();
+
+        int i = 0;
+        String variableNameHeader = null;
+        
+        for (String varName : varNames) {
+            // @todo: is .keySet() guaranteed to return the names in the right order?
+            if (varName == null || varName.isEmpty()) {
+                // TODO:
+                // Add a sensible variable name validation algorithm.
+                // -- L.A. 4.0 alpha 1
+                throw new IOException(BundleUtil.getStringFromBundle("ingest.csv.invalidHeader"));
+            }
+
+            DataVariable dv = new DataVariable(i, dataTable);
+            dv.setName(varName);
+            dv.setLabel(varName);
+            variableList.add(dv);
+
+            dv.setTypeCharacter();
+            dv.setIntervalDiscrete();
+            
+            if (saveWithVariableHeader) {
+                    variableNameHeader = variableNameHeader == null
+                            ? varName 
+                            : variableNameHeader.concat("\t" + varName);
+                }
+            
+            i++;
+        }
+
+        dataTable.setVarQuantity((long) variableList.size());
+        dataTable.setDataVariables(variableList);
+
+        return variableNameHeader;
+    }
+
 }
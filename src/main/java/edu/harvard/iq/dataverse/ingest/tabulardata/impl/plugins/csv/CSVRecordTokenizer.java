@@ -0,0 +1,277 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.csv.CSVFormat;
+
+/**
+ * A lightweight CSV tokenizer, used by the single-pass mode of the
+ * {@link CSVFileReader}.
+ *
+ * It follows the semantics of the Apache Commons CSV parser for the formats
+ * the ingest uses ({@link CSVFormat#EXCEL} and {@link CSVFormat#TDF}: quoting
+ * with doubled quotes, surrounding spaces, empty lines), but works directly on
+ * a char buffer: the common case of an unquoted value is cut out of the buffer
+ * as a single String, and no per-record objects other than the values
+ * themselves are allocated. Quoted values, that may contain delimiters and
+ * line breaks, take the slower path.
+ */
+class CSVRecordTokenizer implements Closeable {
+
+    private static final int EOF = -1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String[] EMPTY_RECORD = new String[0];
+
+    private final Reader reader;
+    private final char delimiter;
+    private final int quoteChar;
+    private final boolean ignoreSurroundingSpaces;
+    private final boolean ignoreEmptyLines;
+    private final boolean allowMissingColumnNames;
+
+    private final char[] buf = new char[BUFFER_SIZE];
+    private int pos = 0;
+    private int limit = 0;
+
+    private final List<String> values = new ArrayList<>();
+    private final StringBuilder sb = new StringBuilder();
+
+    private long lineNumber;
+    private long recordNumber = 0;
+
+    CSVRecordTokenizer(Reader reader, CSVFormat format) {
+        this(reader, format, 0);
+    }
+
+    /**
+     * @param lineNumber the number of line breaks that precede the input,
+     * when it is a part of a larger file; used in error messages.
+     */
+    CSVRecordTokenizer(Reader reader, CSVFormat format, long lineNumber) {
+        this.reader = reader;
+        this.lineNumber = lineNumber;
+        this.delimiter = format.getDelimiter();
+        this.quoteChar = format.getQuoteCharacter() == null ? EOF : format.getQuoteCharacter();
+        this.ignoreSurroundingSpaces = format.getIgnoreSurroundingSpaces();
+        this.ignoreEmptyLines = format.getIgnoreEmptyLines();
+        this.allowMissingColumnNames = format.getAllowMissingColumnNames();
+    }
+
+    /**
+     * Reads the first record of the file as the header, the way
+     * {@code CSVFormat.withHeader()} does.
+     *
+     * @return the column names, mapped to the column positions.
+     */
+    Map<String, Integer> readHeader() throws IOException {
+        Map<String, Integer> headerMap = new LinkedHashMap<>();
+        String[] headerRecord = next();
+        if (headerRecord != null) {
+            for (int i = 0; i < headerRecord.length; i++) {
+                String header = headerRecord[i];
+                boolean emptyHeader = header.trim().isEmpty();
+                if (headerMap.containsKey(header) && (!emptyHeader || !allowMissingColumnNames)) {
+                    throw new IllegalArgumentException("The header contains a duplicate name: \"" + header
+                            + "\" in " + Arrays.toString(headerRecord));
+                }
+                headerMap.put(header, i);
+            }
+        }
+        // Like the Commons CSV parser, we don't count the header as a record:
+        recordNumber = 0;
+        return headerMap;
+    }
+
+    /**
+     * @return the values of the next record, or null at the end of the file.
+     */
+    String[] next() throws IOException {
+        values.clear();
+
+        int c = peek();
+        if (ignoreEmptyLines) {
+            while (c == '\r' || c == '\n') {
+                pos++;
+                consumeLineEnd(c);
+                c = peek();
+            }
+        }
+        if (c == EOF) {
+            return null;
+        }
+
+        boolean endOfRecord = false;
+        while (!endOfRecord) {
+            if (ignoreSurroundingSpaces) {
+                while (c != EOF && c != delimiter && c != '\r' && c != '\n' && Character.isWhitespace((char) c)) {
+                    pos++;
+                    c = peek();
+                }
+            }
+            if (c == quoteChar) {
+                pos++;
+                values.add(readEncapsulatedValue());
+                c = peek();
+                // Only whitespace is allowed between the closing quote and the delimiter:
+                while (c != delimiter && c != '\r' && c != '\n' && c != EOF) {
+                    if (!Character.isWhitespace((char) c)) {
+                        throw new IOException("(line " + getLineNumber() + ") invalid char between encapsulated token and delimiter");
+                    }
+                    pos++;
+                    c = peek();
+                }
+            } else {
+                values.add(readSimpleValue());
+                c = peek();
+            }
+
+            if (c == delimiter) {
+                pos++;
+                c = peek();
+            } else {
+                if (c != EOF) {
+                    pos++;
+                    consumeLineEnd(c);
+                }
+                endOfRecord = true;
+            }
+        }
+
+        recordNumber++;
+        return values.toArray(EMPTY_RECORD);
+    }
+
+    /**
+     * @return the number of line breaks read so far.
+     */
+    long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return the number of (non-header) records read so far.
+     */
+    long getRecordNumber() {
+        return recordNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private String readSimpleValue() throws IOException {
+        boolean spansBuffers = false;
+        int start = pos;
+        while (true) {
+            while (pos < limit) {
+                char ch = buf[pos];
+                if (ch == delimiter || ch == '\r' || ch == '\n') {
+                    break;
+                }
+                pos++;
+            }
+            if (pos < limit) {
+                break;
+            }
+            // The value continues past the end of the buffer:
+            if (!spansBuffers) {
+                sb.setLength(0);
+                spansBuffers = true;
+            }
+            sb.append(buf, start, pos - start);
+            if (!fill()) {
+                start = pos;
+                break;
+            }
+            start = 0;
+        }
+
+        String value;
+        if (spansBuffers) {
+            sb.append(buf, start, pos - start);
+            value = sb.toString();
+        } else {
+            value = new String(buf, start, pos - start);
+        }
+
+        if (ignoreSurroundingSpaces) {
+            int end = value.length();
+            while (end > 0 && Character.isWhitespace(value.charAt(end - 1))) {
+                end--;
+            }
+            value = value.substring(0, end);
+        }
+        return value;
+    }
+
+    private String readEncapsulatedValue() throws IOException {
+        long startLine = getLineNumber();
+        sb.setLength(0);
+        int start = pos;
+        char last = 0;
+        while (true) {
+            if (pos == limit) {
+                sb.append(buf, start, pos - start);
+                if (!fill()) {
+                    throw new IOException("(startline " + startLine + ") EOF reached before encapsulated token finished");
+                }
+                start = 0;
+            }
+            char ch = buf[pos];
+            if (ch == quoteChar) {
+                sb.append(buf, start, pos - start);
+                pos++;
+                if (peek() == quoteChar) {
+                    // A doubled quote is an escaped quote:
+                    sb.append(ch);
+                    pos++;
+                    start = pos;
+                    last = ch;
+                } else {
+                    return sb.toString();
+                }
+            } else {
+                if (ch == '\r' || (ch == '\n' && last != '\r')) {
+                    lineNumber++;
+                }
+                last = ch;
+                pos++;
+            }
+        }
+    }
+
+    private void consumeLineEnd(int c) throws IOException {
+        if (c == '\r' && peek() == '\n') {
+            pos++;
+        }
+        lineNumber++;
+    }
+
+    private int peek() throws IOException {
+        if (pos == limit && !fill()) {
+            return EOF;
+        }
+        return buf[pos];
+    }
+
+    private boolean fill() throws IOException {
+        int n;
+        do {
+            n = reader.read(buf, 0, buf.length);
+        } while (n == 0);
+        if (n < 0) {
+            pos = limit;
+            return false;
+        }
+        pos = 0;
+        limit = n;
+        return true;
+    }
+}
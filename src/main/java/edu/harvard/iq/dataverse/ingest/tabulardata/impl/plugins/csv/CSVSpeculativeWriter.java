@@ -0,0 +1,271 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.csv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes the cases of a CSV file to a tab-delimited file speculatively, i.e.
+ * formatted according to the column types inferred up to that point, and
+ * fixes them up once the final column types are known.
+ *
+ * Since a column can only ever be widened (see {@link CSVTypeInference}), the
+ * cases written before a column was widened are the only ones that need to be
+ * fixed up, and only in that column. To make that possible, the original
+ * values of the cells that can't be recovered from the formatted ones (special
+ * numeric values, such as "NA" or "null", quoted dates) are saved in a small
+ * side file ("fixup file") as the cases are written.
+ */
+class CSVSpeculativeWriter implements Closeable {
+
+    private final CSVTypeInference typeInference;
+    private final boolean inferTypes;
+    private final Writer tabOut;
+    private final File fixupFile;
+    private final DataOutputStream fixupOut;
+
+    private final int columnCount;
+    private final long[] widenedAtCase;
+    private final String[] caseRow;
+    private final StringBuilder rowBuffer = new StringBuilder();
+    private long caseCount = 0;
+
+    /**
+     * @param typeInference the column types; updated with every case written,
+     * unless inferTypes is false, in which case the types are assumed to be
+     * final already
+     * @param tabOut the tab-delimited output
+     */
+    CSVSpeculativeWriter(CSVTypeInference typeInference, boolean inferTypes, Writer tabOut) throws IOException {
+        this.typeInference = typeInference;
+        this.inferTypes = inferTypes;
+        this.tabOut = tabOut;
+        this.columnCount = typeInference.getColumnCount();
+        this.widenedAtCase = new long[columnCount];
+        this.caseRow = new String[columnCount];
+        this.fixupFile = File.createTempFile("fixup-", ".bin");
+        this.fixupOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fixupFile)));
+    }
+
+    /**
+     * Writes the next case; the record must have the same number of values as
+     * there are columns.
+     */
+    void write(String[] record) throws IOException {
+        long caseNumber = caseCount++;
+
+        boolean unsplittable = false;
+        for (int i = 0; i < columnCount; i++) {
+            if (inferTypes) {
+                int formatClass = typeInference.getFormatClass(i);
+                if (typeInference.update(i, record[i]) != formatClass) {
+                    widenedAtCase[i] = caseNumber;
+                }
+            }
+            caseRow[i] = typeInference.format(i, record[i]);
+            if (typeInference.getFormatClass(i) != CSVTypeInference.CLASS_STRING
+                    && (caseRow[i].indexOf('\t') > -1 || caseRow[i].indexOf('\n') > -1)) {
+                unsplittable = true;
+            }
+        }
+
+        rowBuffer.setLength(0);
+        for (int i = 0; i < columnCount; i++) {
+            if (i > 0) {
+                rowBuffer.append('\t');
+            }
+            rowBuffer.append(caseRow[i]);
+        }
+
+        if (!inferTypes) {
+            // Nothing will need to be fixed up.
+        } else if (unsplittable) {
+            // (Unquoted) values with tabs or new lines in them; the
+            // row can't be split into cells again, so we save all of it:
+            fixupOut.writeLong(caseNumber);
+            fixupOut.writeInt(-1);
+            fixupOut.writeInt(rowBuffer.length());
+            for (int i = 0; i < columnCount; i++) {
+                writeFixupString(fixupOut, record[i]);
+            }
+        } else {
+            for (int i = 0; i < columnCount; i++) {
+                if (typeInference.getFormatClass(i) != CSVTypeInference.CLASS_STRING
+                        && !caseRow[i].equals(record[i])) {
+                    fixupOut.writeLong(caseNumber);
+                    fixupOut.writeInt(i);
+                    writeFixupString(fixupOut, record[i]);
+                }
+            }
+        }
+
+        tabOut.append(rowBuffer);
+        tabOut.write('\n');
+    }
+
+    long getCaseCount() {
+        return caseCount;
+    }
+
+    /**
+     * @return for every column, the number of cases written before the column
+     * was last widened; these are the cases that were written with a different
+     * format than the final one.
+     */
+    long[] getWidenedAtCase() {
+        return widenedAtCase;
+    }
+
+    File getFixupFile() {
+        return fixupFile;
+    }
+
+    /**
+     * Closes the outputs; the fixup file stays around until
+     * {@link #deleteFixupFile()} is called.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            fixupOut.close();
+        } finally {
+            tabOut.close();
+        }
+    }
+
+    void deleteFixupFile() {
+        fixupFile.delete();
+    }
+
+    /**
+     * Re-formats the cells that were written with a different format than the
+     * final one.
+     *
+     * @param tabFile the tab-delimited file written by this writer
+     * @param finalTypes the final column types
+     * @param fixupUntilCase for every column, the number of (leading) cases
+     * that need to be re-formatted
+     * @param hasVariableHeader whether the tab file starts with a header line
+     */
+    void fixup(File tabFile, CSVTypeInference finalTypes, long[] fixupUntilCase, boolean hasVariableHeader) throws IOException {
+        long fixupCases = 0;
+        for (long until : fixupUntilCase) {
+            fixupCases = Math.max(fixupCases, until);
+        }
+        if (fixupCases == 0) {
+            return;
+        }
+
+        File fixedTabFile = File.createTempFile("data-", ".tab");
+
+        try (BufferedReader tabIn = new BufferedReader(new FileReader(tabFile));
+                Writer fixedOut = new BufferedWriter(new FileWriter(fixedTabFile));
+                DataInputStream fixupIn = new DataInputStream(new BufferedInputStream(new FileInputStream(fixupFile)))) {
+
+            StringBuilder cell = new StringBuilder();
+            long nextFixupCase = readFixupCase(fixupIn);
+
+            if (hasVariableHeader) {
+                int c;
+                while ((c = tabIn.read()) != -1) {
+                    fixedOut.write(c);
+                    if (c == '\n') {
+                        break;
+                    }
+                }
+            }
+
+            for (long caseNumber = 0; caseNumber < fixupCases; caseNumber++) {
+                int fixupColumn = -2;
+                if (nextFixupCase == caseNumber) {
+                    fixupColumn = fixupIn.readInt();
+                }
+
+                if (fixupColumn == -1) {
+                    // The whole row was saved:
+                    long emittedLength = fixupIn.readInt() + 1;
+                    while (emittedLength > 0) {
+                        emittedLength -= tabIn.skip(emittedLength);
+                    }
+                    for (int i = 0; i < columnCount; i++) {
+                        caseRow[i] = finalTypes.format(i, readFixupString(fixupIn));
+                    }
+                    nextFixupCase = readFixupCase(fixupIn);
+                } else {
+                    int i = 0;
+                    int c;
+                    cell.setLength(0);
+                    while ((c = tabIn.read()) != -1 && c != '\n') {
+                        if (c == '\t') {
+                            caseRow[i++] = cell.toString();
+                            cell.setLength(0);
+                        } else {
+                            cell.append((char) c);
+                        }
+                    }
+                    caseRow[i] = cell.toString();
+
+                    for (i = 0; i < columnCount; i++) {
+                        String original = caseRow[i];
+                        if (fixupColumn == i) {
+                            original = readFixupString(fixupIn);
+                            nextFixupCase = readFixupCase(fixupIn);
+                            fixupColumn = nextFixupCase == caseNumber ? fixupIn.readInt() : -2;
+                        }
+                        if (caseNumber < fixupUntilCase[i]) {
+                            caseRow[i] = finalTypes.format(i, original);
+                        }
+                    }
+                }
+
+                for (int i = 0; i < columnCount; i++) {
+                    if (i > 0) {
+                        fixedOut.write('\t');
+                    }
+                    fixedOut.write(caseRow[i]);
+                }
+                fixedOut.write('\n');
+            }
+
+            // The rest of the cases are final as written:
+            tabIn.transferTo(fixedOut);
+        }
+
+        Files.move(fixedTabFile.toPath(), tabFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writeFixupString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readFixupString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long readFixupCase(DataInputStream in) throws IOException {
+        try {
+            return in.readLong();
+        } catch (EOFException eof) {
+            return -1;
+        }
+    }
+}
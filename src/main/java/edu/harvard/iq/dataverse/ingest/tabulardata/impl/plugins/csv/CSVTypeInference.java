@@ -0,0 +1,400 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.csv;
+
+import edu.harvard.iq.dataverse.DataTable;
+import edu.harvard.iq.dataverse.datavariable.DataVariable;
+import java.text.ParseException;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.regex.Pattern;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Per-column type inference for the CSV ingest.
+ *
+ * Every column starts out as a (discrete) numeric, and is "widened" as values
+ * that don't fit are encountered: numeric discrete, then numeric continuous,
+ * then a date or time, then finally a plain character (String) variable. The
+ * type of a column only ever moves in this direction, which is what allows the
+ * single-pass reader to emit the tab file speculatively and to fix up only the
+ * columns that were widened after the fact.
+ *
+ * The date and time formats are instance fields (rather than static ones) since
+ * {@link SimpleDateFormat} is not thread-safe.
+ */
+class CSVTypeInference {
+
+    /**
+     * The "formatting classes" of a column, in the order in which a column can
+     * be widened. Values are formatted in the tab file according to the class.
+     */
+    static final int CLASS_INTEGER = 0;
+    static final int CLASS_CONTINUOUS = 1;
+    static final int CLASS_DATE_OR_TIME = 2;
+    static final int CLASS_STRING = 3;
+
+    // Bits of the encoded state of a column, see getState()
+    private static final int STATE_NUMERIC = 1;
+    private static final int STATE_TIME = 2;
+    private static final int STATE_DATE = 4;
+
+    private static final Pattern LEADING_QUOTES = Pattern.compile("^\"*");
+    private static final Pattern TRAILING_QUOTES = Pattern.compile("\"*$");
+
+    // DATE FORMATS
+    private final SimpleDateFormat[] dateFormats = new SimpleDateFormat[]{
+        new SimpleDateFormat("yyyy-MM-dd"), //new SimpleDateFormat("yyyy/MM/dd"),
+    //new SimpleDateFormat("MM/dd/yyyy"),
+    //new SimpleDateFormat("MM-dd-yyyy"),
+    };
+
+    // TIME FORMATS
+    private final SimpleDateFormat[] timeFormats = new SimpleDateFormat[]{
+        // Date-time up to seconds with timezone, e.g. 2013-04-08 13:14:23 -0500
+        new SimpleDateFormat("yyyy-MM-dd HH:mm:ss z"),
+        // Date-time up to seconds and no timezone, e.g. 2013-04-08 13:14:23
+        new SimpleDateFormat("yyyy-MM-dd HH:mm:ss")
+    };
+
+    private final int columnCount;
+    private final boolean[] isNumericVariable;
+    private final boolean[] isIntegerVariable;
+    private final boolean[] isTimeVariable;
+    private final boolean[] isDateVariable;
+    private final SimpleDateFormat[] selectedDateTimeFormat;
+    private final SimpleDateFormat[] selectedDateFormat;
+
+    // For merging the inference of chunks of a file read in parallel: the
+    // first non-empty value of every column, and the state right after it.
+    private final String[] firstValue;
+    private final int[] stateAfterFirstValue;
+
+    CSVTypeInference(int columnCount) {
+        this.columnCount = columnCount;
+        isNumericVariable = new boolean[columnCount];
+        isIntegerVariable = new boolean[columnCount];
+        isTimeVariable = new boolean[columnCount];
+        isDateVariable = new boolean[columnCount];
+        selectedDateTimeFormat = new SimpleDateFormat[columnCount];
+        selectedDateFormat = new SimpleDateFormat[columnCount];
+        firstValue = new String[columnCount];
+        stateAfterFirstValue = new int[columnCount];
+
+        for (int i = 0; i < columnCount; i++) {
+            // OK, let's assume that every variable is numeric;
+            // but we'll go through the file and examine every value; the
+            // moment we find a value that's not a legit numeric one, we'll
+            // assume that it is in fact a String.
+            isNumericVariable[i] = true;
+            isIntegerVariable[i] = true;
+            isDateVariable[i] = true;
+            isTimeVariable[i] = true;
+        }
+        for (SimpleDateFormat format : dateFormats) {
+            // Strict parsing - it will throw an exception if it doesn't parse!
+            format.setLenient(false);
+        }
+    }
+
+    int getColumnCount() {
+        return columnCount;
+    }
+
+    /**
+     * Examines the next value of column i, widening the type of the column if
+     * the value doesn't fit.
+     *
+     * @return the formatting class of the column after the value was examined.
+     */
+    int update(int i, String varString) {
+        int formatClass = updateState(i, varString);
+        if (firstValue[i] == null && varString != null && !varString.isEmpty()) {
+            firstValue[i] = varString;
+            stateAfterFirstValue[i] = getState(i);
+        }
+        return formatClass;
+    }
+
+    private int updateState(int i, String varString) {
+        isIntegerVariable[i] = isIntegerVariable[i]
+                               && varString != null
+                               && (varString.isEmpty()
+                                   || varString.equals("null")
+                                   || StringUtils.isNumeric(varString)
+                                   || ((varString.charAt(0) == '+' || varString.charAt(0) == '-')
+                                       && StringUtils.isNumeric(varString.substring(1))));
+        if (isNumericVariable[i]) {
+            // If variable might be "numeric" test to see if this value is a parsable number:
+            if (varString != null && !varString.isEmpty()) {
+                if (varString.equalsIgnoreCase("NaN")
+                    || varString.equalsIgnoreCase("NA")
+                    || varString.equalsIgnoreCase("Inf")
+                    || varString.equalsIgnoreCase("+Inf")
+                    || varString.equalsIgnoreCase("-Inf")
+                    || varString.equalsIgnoreCase("null")) {
+                    return getFormatClass(i);
+                }
+                try {
+                    Double.parseDouble(varString);
+                    return getFormatClass(i);
+                } catch (NumberFormatException ex) {
+                    // the token failed to parse as a double
+                    // so the column is a string variable.
+                }
+                isNumericVariable[i] = false;
+            }
+        }
+
+        // If this is not a numeric column, see if it is a date collumn
+        // by parsing the cell as a date or date-time value:
+        if (!isNumericVariable[i]) {
+
+            Date dateResult = null;
+
+            if (isTimeVariable[i]) {
+                if (varString != null && !varString.isEmpty()) {
+                    boolean isTime = false;
+
+                    if (selectedDateTimeFormat[i] != null) {
+                        ParsePosition pos = new ParsePosition(0);
+                        dateResult = selectedDateTimeFormat[i].parse(varString, pos);
+
+                        if (dateResult != null && pos.getIndex() == varString.length()) {
+                            // OK, successfully parsed a value!
+                            isTime = true;
+                        }
+                    } else {
+                        for (SimpleDateFormat format : timeFormats) {
+                            ParsePosition pos = new ParsePosition(0);
+                            dateResult = format.parse(varString, pos);
+                            if (dateResult != null && pos.getIndex() == varString.length()) {
+                                // OK, successfully parsed a value!
+                                isTime = true;
+                                selectedDateTimeFormat[i] = format;
+                                break;
+                            }
+                        }
+                    }
+                    if (!isTime) {
+                        isTimeVariable[i] = false;
+                        // if the token didn't parse as a time value,
+                        // we will still try to parse it as a date, below.
+                        // unless this column is NOT a date.
+                    } else {
+                        // And if it is a time value, we are going to assume it's
+                        // NOT a date.
+                        isDateVariable[i] = false;
+                    }
+                }
+            }
+
+            if (isDateVariable[i]) {
+                if (varString != null && !varString.isEmpty()) {
+                    boolean isDate = false;
+
+                    // TODO:
+                    // Strictly speaking, we should be doing the same thing
+                    // here as with the time formats above; select the
+                    // first one that works, then insist that all the
+                    // other values in this column match it... but we
+                    // only have one, as of now, so it should be ok.
+                    // -- L.A. 4.0 beta
+                    for (SimpleDateFormat format : dateFormats) {
+                        try {
+                            format.parse(varString);
+                            isDate = true;
+                            selectedDateFormat[i] = format;
+                            break;
+                        } catch (ParseException ex) {
+                            //Do nothing
+                        }
+                    }
+                    isDateVariable[i] = isDate;
+                }
+            }
+        }
+        return getFormatClass(i);
+    }
+
+    /**
+     * Appends the inference of a chunk of the file, that was read
+     * independently of (and concurrently with) the chunks preceding it, i.e.
+     * starting from the initial state, to the inference of those chunks.
+     *
+     * This gives the same result as if the values of the chunk had been
+     * examined with {@link #update} in sequence, except for the columns that
+     * are returned: for these the outcome depends on the state the column was
+     * in at the start of the chunk (for example, a column that is known to
+     * contain dates, while the chunk on its own only has "NA" values), so
+     * their values have to be replayed through {@link #update}.
+     *
+     * @return for every column, whether the values of the chunk need to be
+     * replayed.
+     */
+    boolean[] append(CSVTypeInference chunk) {
+        boolean[] replay = new boolean[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            if (isNumericVariable[i]) {
+                // The values are only tested as dates or times once a column
+                // is known not to be numeric; so the chunk went through
+                // exactly the same steps as this column would have:
+                setState(i, chunk.getState(i));
+            } else if (!isTimeVariable[i] && !isDateVariable[i]) {
+                // A String column stays a String column.
+            } else if (chunk.firstValue[i] == null) {
+                // Nothing but empty values.
+            } else if ((chunk.stateAfterFirstValue[i] & STATE_NUMERIC) == 0
+                    && peekState(i, chunk.firstValue[i]) == chunk.stateAfterFirstValue[i]) {
+                // The chunk's very first value made the column non-numeric,
+                // and left it in the same state it leaves this column in;
+                // from there on the steps are the same:
+                setState(i, chunk.getState(i));
+            } else {
+                replay[i] = true;
+                continue;
+            }
+            isIntegerVariable[i] = isIntegerVariable[i] && chunk.isIntegerVariable[i];
+        }
+        return replay;
+    }
+
+    /**
+     * @return the state of column i, other than the "integer" flag (which
+     * doesn't depend on anything but the values themselves), encoded as an int.
+     */
+    private int getState(int i) {
+        int state = (isNumericVariable[i] ? STATE_NUMERIC : 0)
+                | (isTimeVariable[i] ? STATE_TIME : 0)
+                | (isDateVariable[i] ? STATE_DATE : 0);
+        state |= (Arrays.asList(timeFormats).indexOf(selectedDateTimeFormat[i]) + 1) << 3;
+        state |= (Arrays.asList(dateFormats).indexOf(selectedDateFormat[i]) + 1) << 6;
+        return state;
+    }
+
+    private void setState(int i, int state) {
+        isNumericVariable[i] = (state & STATE_NUMERIC) != 0;
+        isTimeVariable[i] = (state & STATE_TIME) != 0;
+        isDateVariable[i] = (state & STATE_DATE) != 0;
+        int timeFormat = (state >> 3) & 7;
+        selectedDateTimeFormat[i] = timeFormat == 0 ? null : timeFormats[timeFormat - 1];
+        int dateFormat = (state >> 6) & 7;
+        selectedDateFormat[i] = dateFormat == 0 ? null : dateFormats[dateFormat - 1];
+    }
+
+    /**
+     * @return the state column i would be in after examining the value,
+     * without actually changing it.
+     */
+    private int peekState(int i, String varString) {
+        int state = getState(i);
+        boolean isInteger = isIntegerVariable[i];
+        updateState(i, varString);
+        int peekedState = getState(i);
+        setState(i, state);
+        isIntegerVariable[i] = isInteger;
+        return peekedState;
+    }
+
+    /**
+     * @return the class that determines how the values of column i are
+     * formatted in the tab file, given what has been seen so far.
+     */
+    int getFormatClass(int i) {
+        if (isNumericVariable[i]) {
+            return isIntegerVariable[i] ? CLASS_INTEGER : CLASS_CONTINUOUS;
+        } else if (isTimeVariable[i] || isDateVariable[i]) {
+            return CLASS_DATE_OR_TIME;
+        }
+        return CLASS_STRING;
+    }
+
+    /**
+     * Formats a value of column i for the tab-delimited file, according to the
+     * current formatting class of the column.
+     */
+    String format(int i, String varString) {
+        if (isNumericVariable[i]) {
+            if (varString == null || varString.isEmpty() || varString.equalsIgnoreCase("NA")) {
+                // Missing value - represented as an empty string in
+                // the final tab file
+                return "";
+            } else if (varString.equalsIgnoreCase("NaN")) {
+                // "Not a Number" special value:
+                return "NaN";
+            } else if (varString.equalsIgnoreCase("Inf")
+                    || varString.equalsIgnoreCase("+Inf")) {
+                // Positive infinity:
+                return "Inf";
+            } else if (varString.equalsIgnoreCase("-Inf")) {
+                // Negative infinity:
+                return "-Inf";
+            } else if (varString.equalsIgnoreCase("null")) {
+                // By request from Gus - "NULL" is recognized as a
+                // numeric zero:
+                return isIntegerVariable[i] ? "0" : "0.0";
+            }
+            /* No re-formatting is done on any other numeric values.
+             * We'll save them as they were, for archival purposes.
+             */
+            return varString;
+        } else if (isTimeVariable[i] || isDateVariable[i]) {
+            // Time and Dates are stored NOT quoted (don't ask).
+            if (varString == null) {
+                return "";
+            }
+            if (varString.indexOf('"') < 0) {
+                return varString;
+            }
+            // Dealing with quotes:
+            // remove the leading and trailing quotes, if present:
+            varString = LEADING_QUOTES.matcher(varString).replaceFirst("");
+            return TRAILING_QUOTES.matcher(varString).replaceFirst("");
+        }
+        // Treat as a String:
+        // Strings are stored in tab files quoted;
+        // Missing values are stored as an empty string
+        // between two tabs (or one tab and the new line);
+        // Empty strings stored as "" (quoted empty string).
+        // For the purposes  of this CSV ingest reader, we are going
+        // to assume that all the empty strings in the file are
+        // indeed empty strings, and NOT missing values:
+        if (varString == null) {
+            return "\"\"";
+        }
+        // escape the quotes, newlines, and tabs:
+        varString = varString.replace("\"", "\\\"");
+        varString = varString.replace("\n", "\\n");
+        varString = varString.replace("\t", "\\t");
+        // final pair of quotes:
+        return "\"" + varString + "\"";
+    }
+
+    /**
+     * Re-types the variables of the data table according to the inferred
+     * column types.
+     */
+    void applyTo(DataTable dataTable) {
+        for (int i = 0; i < columnCount; i++) {
+            DataVariable dv = dataTable.getDataVariables().get(i);
+            if (isNumericVariable[i]) {
+                dv.setTypeNumeric();
+
+                if (isIntegerVariable[i]) {
+                    dv.setIntervalDiscrete();
+                } else {
+                    dv.setIntervalContinuous();
+                }
+            } else if (isDateVariable[i] && selectedDateFormat[i] != null) {
+                // Dates are still Strings, i.e., they are "character" and "discrete";
+                // But we add special format values for them:
+                dv.setFormat(dateFormats[0].toPattern());
+                dv.setFormatCategory("date");
+            } else if (isTimeVariable[i] && selectedDateTimeFormat[i] != null) {
+                // Same for time values:
+                dv.setFormat(selectedDateTimeFormat[i].toPattern());
+                dv.setFormatCategory("time");
+            }
+        }
+    }
+}
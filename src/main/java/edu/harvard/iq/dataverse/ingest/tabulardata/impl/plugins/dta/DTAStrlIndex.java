@@ -0,0 +1,324 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.dta;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+
+/**
+ * An index of the strLs (GSOs) of a Stata 13+ (dta 117+) file, by their
+ * (v,o) pairs, used to look up the strL values referenced in the data
+ * section as the data is read.
+ *
+ * Instead of caching the strL values themselves (which can be anything up to
+ * 2 GB each, and there may be one for every cell of every strL variable) in
+ * a map, the index only keeps the position of every GSO in the file: the
+ * index is built by scanning the strLs section once, and written to a
+ * temporary file, sorted by (v,o), that is memory-mapped and binary-searched.
+ * The values are read from the (memory-mapped) data file on demand.
+ */
+class DTAStrlIndex implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(DTAStrlIndex.class.getCanonicalName());
+
+    private static final String GSO_HEAD = "GSO";
+    private static final String STRLS_OPEN = "<strls>";
+    private static final int GSO_TYPE_BINARY = 129;
+
+    /* the index entries are (key, position) pairs of longs: */
+    private static final int ENTRY_SIZE = 16;
+    private static final int ENTRIES_PER_WINDOW_BITS = 26;
+
+    private static final long DATA_WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private final int dtaVersion;
+    private final FileChannel dataChannel;
+    private final ByteOrder byteOrder;
+    private File indexFile;
+    private FileChannel indexChannel;
+    private MappedByteBuffer[] indexWindows;
+    private long size = 0;
+
+    /* the currently mapped window of the data file: */
+    private MappedByteBuffer dataWindow;
+    private long dataWindowStart;
+
+    private DTAStrlIndex(File dtaFile, int dtaVersion, boolean lsf) throws IOException {
+        this.dtaVersion = dtaVersion;
+        this.byteOrder = lsf ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        this.dataChannel = FileChannel.open(dtaFile.toPath(), StandardOpenOption.READ);
+    }
+
+    /**
+     * Builds the index by scanning the strLs section of the file.
+     *
+     * @param strlsOffset the offset of the strLs section (of the opening
+     * {@code <strls>} tag), as found in the map of the file
+     */
+    static DTAStrlIndex build(File dtaFile, int dtaVersion, boolean lsf, long strlsOffset) throws IOException {
+        DTAStrlIndex index = new DTAStrlIndex(dtaFile, dtaVersion, lsf);
+        try {
+            index.scan(strlsOffset);
+        } catch (IOException | RuntimeException ex) {
+            index.close();
+            throw ex;
+        }
+        return index;
+    }
+
+    /**
+     * @return the number of strLs in the index.
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Looks up the strL value for the (v,o) pair.
+     *
+     * @return the value; null if there is no strL with this (v,o) in the
+     * file.
+     */
+    String lookup(long v, long o) throws IOException {
+        long key = key(v, o);
+        if (key == -1) {
+            return null;
+        }
+        long low = 0;
+        long high = size - 1;
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            int cmp = Long.compareUnsigned(keyAt(mid), key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return readValue(positionAt(mid));
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            dataChannel.close();
+            if (indexChannel != null) {
+                indexChannel.close();
+            }
+        } finally {
+            if (indexFile != null) {
+                indexFile.delete();
+            }
+        }
+    }
+
+    /*
+     * The keys sort the (v,o) pairs by o first, then v; this is the order
+     * the GSOs are normally written in, so that sorting the index is not
+     * normally necessary. In dta 117, v and o are 4 bytes each; in 118+, the
+     * (v,o) pairs in the data section are 2 and 6 bytes.
+     * (unsigned values; so the keys are compared as unsigned longs)
+     */
+    private long key(long v, long o) {
+        if (dtaVersion == 117) {
+            if (v < 0 || v > 0xFFFFFFFFL || o < 0 || o > 0xFFFFFFFFL) {
+                return -1;
+            }
+            return (o << 32) | v;
+        }
+        if (v < 0 || v > 0xFFFFL || o < 0 || o > 0xFFFFFFFFFFFFL) {
+            return -1;
+        }
+        return (o << 16) | v;
+    }
+
+    private void scan(long strlsOffset) throws IOException {
+        long position = strlsOffset;
+        if (!STRLS_OPEN.equals(readAscii(position, STRLS_OPEN.length()))) {
+            throw new IOException("Could not find the opening tag " + STRLS_OPEN + " at offset " + strlsOffset);
+        }
+        position += STRLS_OPEN.length();
+
+        indexFile = File.createTempFile("strlIndex.", ".bin");
+        boolean sorted = true;
+        long lastKey = 0;
+        int oLength = dtaVersion == 117 ? 4 : 8;
+
+        try (DataOutputStream indexOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+            while (position + GSO_HEAD.length() <= dataChannel.size()
+                    && GSO_HEAD.equals(readAscii(position, GSO_HEAD.length()))) {
+                position += GSO_HEAD.length();
+
+                long v = readUInt(position);
+                position += 4;
+                long o = oLength == 4 ? readUInt(position) : mapData(position, 8).getLong((int) (position - dataWindowStart));
+                position += oLength;
+
+                long gsoPosition = position;
+                // skip the type byte and the contents:
+                long length = readUInt(position + 1);
+                position += 1 + 4 + length;
+
+                long key = key(v, o);
+                if (key == -1) {
+                    // can't be referenced from the data section
+                    continue;
+                }
+                if (size > 0 && Long.compareUnsigned(key, lastKey) <= 0) {
+                    if (key == lastKey) {
+                        throw new IOException("Multiple GSO definitions for v,o " + v + "," + o);
+                    }
+                    sorted = false;
+                }
+                lastKey = key;
+                indexOut.writeLong(key);
+                indexOut.writeLong(gsoPosition);
+                size++;
+            }
+        }
+        logger.fine("Indexed " + size + " strLs; the strLs section ends at offset " + position);
+
+        indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        mapIndex();
+        if (!sorted) {
+            sortIndex();
+        }
+    }
+
+    private void mapIndex() throws IOException {
+        int windows = (int) ((size + (1L << ENTRIES_PER_WINDOW_BITS) - 1) >> ENTRIES_PER_WINDOW_BITS);
+        indexWindows = new MappedByteBuffer[windows];
+        for (int i = 0; i < windows; i++) {
+            long start = ((long) i << ENTRIES_PER_WINDOW_BITS) * ENTRY_SIZE;
+            long length = Math.min((1L << ENTRIES_PER_WINDOW_BITS) * ENTRY_SIZE, size * ENTRY_SIZE - start);
+            indexWindows[i] = indexChannel.map(FileChannel.MapMode.READ_WRITE, start, length);
+        }
+    }
+
+    /*
+     * The GSOs were not written in (v,o) order; this is not expected to
+     * happen with files written by Stata, so a simple in-place heap sort of
+     * the mapped index is good enough.
+     */
+    private void sortIndex() {
+        logger.fine("Sorting the strL index");
+        for (long i = size / 2 - 1; i >= 0; i--) {
+            siftDown(i, size);
+        }
+        for (long end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+        for (long i = 1; i < size; i++) {
+            if (keyAt(i) == keyAt(i - 1)) {
+                throw new IllegalStateException("Multiple GSO definitions for the same v,o");
+            }
+        }
+    }
+
+    private void siftDown(long root, long end) {
+        while (true) {
+            long child = 2 * root + 1;
+            if (child >= end) {
+                return;
+            }
+            if (child + 1 < end && Long.compareUnsigned(keyAt(child), keyAt(child + 1)) < 0) {
+                child++;
+            }
+            if (Long.compareUnsigned(keyAt(root), keyAt(child)) >= 0) {
+                return;
+            }
+            swap(root, child);
+            root = child;
+        }
+    }
+
+    private void swap(long i, long j) {
+        long key = keyAt(i);
+        long position = positionAt(i);
+        setEntry(i, keyAt(j), positionAt(j));
+        setEntry(j, key, position);
+    }
+
+    private long keyAt(long i) {
+        return indexWindows[(int) (i >> ENTRIES_PER_WINDOW_BITS)].getLong(entryOffset(i));
+    }
+
+    private long positionAt(long i) {
+        return indexWindows[(int) (i >> ENTRIES_PER_WINDOW_BITS)].getLong(entryOffset(i) + 8);
+    }
+
+    private void setEntry(long i, long key, long position) {
+        MappedByteBuffer window = indexWindows[(int) (i >> ENTRIES_PER_WINDOW_BITS)];
+        window.putLong(entryOffset(i), key);
+        window.putLong(entryOffset(i) + 8, position);
+    }
+
+    private static int entryOffset(long i) {
+        return (int) (i & ((1L << ENTRIES_PER_WINDOW_BITS) - 1)) * ENTRY_SIZE;
+    }
+
+    /*
+     * Reads the value of the GSO; the position is that of the type byte,
+     * that follows the (v,o) pair.
+     */
+    private String readValue(long position) throws IOException {
+        int type = mapData(position, 1).get((int) (position - dataWindowStart)) & 0xFF;
+        long length = readUInt(position + 1);
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("strL too long: " + length + " bytes");
+        }
+        byte[] contents = new byte[(int) length];
+        long contentsPosition = position + 5;
+        int read = 0;
+        while (read < length) {
+            int chunk = (int) Math.min(length - read, DATA_WINDOW_SIZE);
+            MappedByteBuffer window = mapData(contentsPosition + read, chunk);
+            window.get((int) (contentsPosition + read - dataWindowStart), contents, read, chunk);
+            read += chunk;
+        }
+
+        if (type == GSO_TYPE_BINARY) {
+            return new String(contents, StandardCharsets.UTF_8);
+        }
+        // ascii strLs are null-terminated:
+        return new String(contents, 0, Math.max(0, (int) length - 1), StandardCharsets.US_ASCII);
+    }
+
+    private long readUInt(long position) throws IOException {
+        return mapData(position, 4).getInt((int) (position - dataWindowStart)) & 0xFFFFFFFFL;
+    }
+
+    private String readAscii(long position, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        mapData(position, length).get((int) (position - dataWindowStart), bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    /*
+     * Makes sure that the bytes [position, position + length) of the data
+     * file are in the mapped window, re-mapping it if necessary.
+     */
+    private MappedByteBuffer mapData(long position, int length) throws IOException {
+        if (position + length > dataChannel.size()) {
+            throw new IOException("Unexpected end of file reading the strLs section, at offset " + position);
+        }
+        if (dataWindow == null || position < dataWindowStart
+                || position + length > dataWindowStart + dataWindow.capacity()) {
+            dataWindowStart = position;
+            long windowSize = Math.min(Math.max(DATA_WINDOW_SIZE, length), dataChannel.size() - position);
+            dataWindow = dataChannel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+            dataWindow.order(byteOrder);
+        }
+        return dataWindow;
+    }
+}
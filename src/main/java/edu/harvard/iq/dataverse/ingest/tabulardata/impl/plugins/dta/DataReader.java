@@ -37,6 +37,10 @@ public class DataReader {
         LSF = lsf;
     }
 
+    public boolean isLSF() {
+        return Boolean.TRUE.equals(LSF);
+    }
+
     // this returns the *absolute* byte offest in the stream. 
     public long getByteOffset() {
         return byte_offset + buffer_byte_offset;
@@ -101,6 +105,40 @@ public class DataReader {
         return bytes;
     }
 
+    /* 
+     * Skips the requested number of bytes, without allocating a byte array 
+     * for them (unlike readBytes()); used to skip sections of the file 
+     * that have already been processed by other means.
+     */
+    public void skipBytes(long n) throws IOException {
+        if (n < 0) {
+            throw new IOException("DataReader.skipBytes called to skip a negative number of bytes.");
+        }
+        if (this.buffer_size - buffer_byte_offset >= n) {
+            buffer_byte_offset += n;
+            return;
+        }
+
+        // skip the rest of the buffer, and then the remaining bytes
+        // in the stream itself:
+        long remaining = n - (this.buffer_size - buffer_byte_offset);
+        byte_offset += this.buffer_size;
+        while (remaining > 0) {
+            long skipped = stream.skip(remaining);
+            if (skipped <= 0) {
+                if (stream.read() < 0) {
+                    throw new IOException("DataReader.skipBytes: reached the end of the stream.");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+            byte_offset += skipped;
+        }
+        buffer_byte_offset = 0;
+        this.buffer_size = 0;
+        bufferMoreBytes();
+    }
+
     /* 
      * This method tries to read and buffer the DEFAULT_BUFFER_SIZE bytes
      * and sets the current buffer size accordingly.
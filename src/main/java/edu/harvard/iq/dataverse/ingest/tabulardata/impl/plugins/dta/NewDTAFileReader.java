@@ -261,6 +261,15 @@ public class NewDTAFileReader extends TabularDataFileReader {
     
     private Map<String, String> cachedGSOs;
 
+    // When the file is available locally, the STRLs are looked up in an 
+    // index of the STRLs section, built before the data section is read, 
+    // so that the data rows can be written out in their final form as 
+    // they are read (see readData()):
+    private DTAStrlIndex strlIndex = null;
+
+    // how often (in rows) the ingest progress is updated:
+    private static final int PROGRESS_UPDATE_ROWS = 1000;
+
     private NumberFormat twoDigitFormatter = new DecimalFormat("00");
 
     private NumberFormat doubleNumberFormatter = new DecimalFormat();
@@ -369,12 +378,24 @@ public class NewDTAFileReader extends TabularDataFileReader {
         if (storeWithVariableHeader) {
             variableHeaderLine = generateVariableHeader(dataTable.getDataVariables());
         }
-        readData(dataReader, variableHeaderLine);
 
-        // (potentially) large, (potentially) non-ASCII character strings
-        // saved outside the <data> section, and referenced 
-        // in the data with (v,o) notation - docs have more info
-        readSTRLs(dataReader);
+        try {
+            if (hasSTRLs && sourceFile != null) {
+                strlIndex = DTAStrlIndex.build(sourceFile, DTAVersion, dataReader.isLSF(), dtaMap.getOffset_strls());
+                logger.fine("Indexed " + strlIndex.size() + " STRLs");
+            }
+            readData(dataReader, variableHeaderLine);
+
+            // (potentially) large, (potentially) non-ASCII character strings
+            // saved outside the <data> section, and referenced 
+            // in the data with (v,o) notation - docs have more info
+            readSTRLs(dataReader);
+        } finally {
+            if (strlIndex != null) {
+                strlIndex.close();
+                strlIndex = null;
+            }
+        }
         readValueLabels(dataReader);
         dataReader.readClosingTag(TAG_DTA);
 
@@ -940,6 +961,11 @@ public class NewDTAFileReader extends TabularDataFileReader {
                         o = reader.readULong(6);
                         byte_offset += 6;
                     }
+                    if (strlIndex != null) {
+                        dataRow[columnCounter] = lookupGSO(v, o);
+                        continue;
+                    }
+
                     // create v,o pair; save, for now:
                     String voPair = v + "," + o;
                     dataRow[columnCounter] = voPair;
@@ -975,10 +1001,18 @@ public class NewDTAFileReader extends TabularDataFileReader {
 
             logger.fine("finished reading " + i + "-th row");
 
+            if (progress != null && i % PROGRESS_UPDATE_ROWS == 0) {
+                progress.setBytesRead(reader.getByteOffset());
+            }
+
         }  // for (rows)
 
         pwout.close();
 
+        if (progress != null) {
+            progress.setBytesRead(reader.getByteOffset());
+        }
+
         reader.readClosingTag(TAG_DATA);
         logger.fine("NewDTA Ingest: readData(): end.");
 
@@ -990,7 +1024,14 @@ public class NewDTAFileReader extends TabularDataFileReader {
     private void readSTRLs(DataReader reader) throws IOException {
         logger.fine("STRLs section; at offset " + reader.getByteOffset() + "; dta map offset: " + dtaMap.getOffset_strls());
 
-        if (hasSTRLs) {
+        if (strlIndex != null) {
+            // The STRLs have already been looked up, as the data section 
+            // was read; all that's left to do is skip the section:
+            reader.readOpeningTag(TAG_STRLS);
+            long closingTagOffset = dtaMap.getOffset_vallabs() - ("</" + TAG_STRLS + ">").length();
+            reader.skipBytes(closingTagOffset - reader.getByteOffset());
+            reader.readClosingTag(TAG_STRLS);
+        } else if (hasSTRLs) {
             reader.readOpeningTag(TAG_STRLS);
 
             File intermediateTabFile = ingesteddata.getTabDelimitedFile();
@@ -1083,6 +1124,24 @@ public class NewDTAFileReader extends TabularDataFileReader {
         //reader.readClosingTag(TAG_STRLS);
     }
 
+    /*
+     * Looks up the STRL referenced by the (v,o) pair in the index of the 
+     * STRLs section. 
+     */
+    private String lookupGSO(long v, long o) throws IOException {
+        if (v == 0 && o == 0) {
+            // This is a code for an empty string - "";
+            // doesn't need to be defined or looked up.
+            return "\"\"";
+        }
+
+        String gsoString = strlIndex.lookup(v, o);
+        if (gsoString == null) {
+            throw new IOException("GSO string unavailable for v,o value " + v + "," + o);
+        }
+        return escapeCharacterString(gsoString);
+    }
+
     private String readGSO(DataReader reader, long v, long o) throws IOException {
         if (!reader.checkTag(STRL_GSO_HEAD)) {
             return null;
@@ -0,0 +1,198 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.sav;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The input the data section of an SPSS/SAV file is decoded from.
+ *
+ * The data section is read in blocks of 8 bytes (OBS units), or multiples
+ * thereof; when the file is available locally, it is memory-mapped, so that
+ * the blocks are copied straight out of the page cache, instead of going
+ * through the buffers of an input stream. Otherwise, the input stream the
+ * metadata was read from is used.
+ */
+abstract class SAVDataInput implements AutoCloseable {
+
+    /**
+     * Reads the next block of bytes into the buffer; if there are fewer bytes
+     * than the size of the buffer left, the rest of the buffer is zeroed.
+     *
+     * @return the number of bytes read; -1 at the end of the data.
+     */
+    abstract int read(byte[] buffer) throws IOException;
+
+    /**
+     * @return true if there are bytes left to read.
+     */
+    abstract boolean hasRemaining() throws IOException;
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    static SAVDataInput of(BufferedInputStream stream) {
+        return new StreamInput(stream);
+    }
+
+    /**
+     * Memory-maps the file from the given offset (the start of the data
+     * section) to its end.
+     */
+    static SAVDataInput map(File file, long offset) throws IOException {
+        return new MappedInput(file, offset, MappedInput.WINDOW_SIZE);
+    }
+
+    /**
+     * As {@link #map(File, long)}, in windows of the given size.
+     */
+    static SAVDataInput map(File file, long offset, long windowSize) throws IOException {
+        return new MappedInput(file, offset, windowSize);
+    }
+
+    private static class StreamInput extends SAVDataInput {
+
+        private final BufferedInputStream stream;
+
+        StreamInput(BufferedInputStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        int read(byte[] buffer) throws IOException {
+            // (readNBytes, unlike read, doesn't stop short of the end of the
+            // stream when the underlying stream has nothing available)
+            int nbytes = stream.readNBytes(buffer, 0, buffer.length);
+            Arrays.fill(buffer, nbytes, buffer.length, (byte) 0);
+            return nbytes == 0 && buffer.length > 0 ? -1 : nbytes;
+        }
+
+        @Override
+        boolean hasRemaining() throws IOException {
+            return stream.available() > 0;
+        }
+    }
+
+    /**
+     * Maps the file in windows of (at most) WINDOW_SIZE bytes. A block (a
+     * case, say) may span two windows, or more, when the windows are not a
+     * multiple of its size, or smaller than it: it is then copied from as
+     * many windows as it takes, mapping the next one each time.
+     */
+    private static class MappedInput extends SAVDataInput {
+
+        private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+        private final FileChannel channel;
+        private final long windowSize;
+        private final long end;
+        private long windowStart;
+        private MappedByteBuffer window;
+
+        MappedInput(File file, long offset, long windowSize) throws IOException {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            this.windowSize = Math.max(1, windowSize);
+            end = channel.size();
+            windowStart = offset;
+            mapWindow();
+        }
+
+        private void mapWindow() throws IOException {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(windowSize, end - windowStart));
+        }
+
+        @Override
+        int read(byte[] buffer) throws IOException {
+            int nbytes = 0;
+            while (nbytes < buffer.length) {
+                if (!window.hasRemaining()) {
+                    if (windowStart + window.capacity() >= end) {
+                        break;
+                    }
+                    windowStart += window.capacity();
+                    mapWindow();
+                }
+                int n = Math.min(buffer.length - nbytes, window.remaining());
+                window.get(buffer, nbytes, n);
+                nbytes += n;
+            }
+            if (nbytes == 0 && buffer.length > 0) {
+                return -1;
+            }
+            Arrays.fill(buffer, nbytes, buffer.length, (byte) 0);
+            return nbytes;
+        }
+
+        @Override
+        boolean hasRemaining() {
+            return window.hasRemaining() || windowStart + window.capacity() < end;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * A buffered input stream that keeps track of the number of bytes that
+     * have been read from it, i.e. of its position in the file; used to find
+     * the offset of the data section.
+     */
+    static class PositionTrackingInputStream extends BufferedInputStream {
+
+        private long position = 0;
+        private long markedPosition = 0;
+
+        PositionTrackingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getPosition() {
+            return position;
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                position++;
+            }
+            return b;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+
+        @Override
+        public synchronized long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+            super.mark(readlimit);
+            markedPosition = position;
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            super.reset();
+            position = markedPosition;
+        }
+    }
+}
@@ -47,6 +47,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -345,6 +346,14 @@ public class SAVFileReader  extends TabularDataFileReader{
             throw new IOException ("this plugin does not support external raw data files");
         }
         
+        // If the file is available locally, the data section will be 
+        // memory-mapped; for that we need to know where it starts:
+        SAVDataInput.PositionTrackingInputStream trackingStream = null;
+        if (sourceFile != null) {
+            trackingStream = new SAVDataInput.PositionTrackingInputStream(stream);
+            stream = trackingStream;
+        }
+        
         /* 
          * this "try" block is for catching unknown/unexpected exceptions 
          * thrown anywhere in the ingest code:
@@ -422,7 +431,11 @@ public class SAVFileReader  extends TabularDataFileReader{
 
 	    methodCurrentlyExecuted = "decodeRecordTypeData";
 	    dbgLog.fine("***** SAVFileReader: executing method decodeRecordTypeData");
-	    decodeRecordTypeData(stream, storeWithVariableHeader); 
+	    try (SAVDataInput dataInput = trackingStream != null
+	            ? SAVDataInput.map(sourceFile, trackingStream.getPosition())
+	            : SAVDataInput.of(stream)) {
+	        decodeRecordTypeData(dataInput, storeWithVariableHeader);
+	    }
 
 		
 	} catch (IllegalArgumentException e) {
@@ -2308,7 +2321,7 @@ public class SAVFileReader  extends TabularDataFileReader{
     
     
 
-    void decodeRecordTypeData(BufferedInputStream stream, boolean storeWithVariableHeader) throws IOException {
+    void decodeRecordTypeData(SAVDataInput dataInput, boolean storeWithVariableHeader) throws IOException {
         dbgLog.fine("decodeRecordTypeData(): start");
 
 	///String fileUnfValue = null;
@@ -2316,13 +2329,13 @@ public class SAVFileReader  extends TabularDataFileReader{
 
 
 
-        if (stream ==null){
-            throw new IllegalArgumentException("stream == null!");
+        if (dataInput ==null){
+            throw new IllegalArgumentException("dataInput == null!");
         }
         if (isDataSectionCompressed){
-            decodeRecordTypeDataCompressed(stream, storeWithVariableHeader);
+            decodeRecordTypeDataCompressed(dataInput, storeWithVariableHeader);
         } else {
-            decodeRecordTypeDataUnCompressed(stream, storeWithVariableHeader);
+            decodeRecordTypeDataUnCompressed(dataInput, storeWithVariableHeader);
         }
             
         /* UNF calculation was here... */
@@ -2330,7 +2343,7 @@ public class SAVFileReader  extends TabularDataFileReader{
         dbgLog.fine("***** decodeRecordTypeData(): end *****");
     }
 
-    PrintWriter createOutputWriter (BufferedInputStream stream) throws IOException {
+    PrintWriter createOutputWriter () throws IOException {
         PrintWriter pwout = null;
 	FileOutputStream fileOutTab = null;
 	        
@@ -2362,15 +2375,15 @@ public class SAVFileReader  extends TabularDataFileReader{
 
     }
 
-    void decodeRecordTypeDataCompressed(BufferedInputStream stream, boolean storeWithVariableHeader) throws IOException {
+    void decodeRecordTypeDataCompressed(SAVDataInput dataInput, boolean storeWithVariableHeader) throws IOException {
 
         dbgLog.fine("***** decodeRecordTypeDataCompressed(): start *****");
 
-        if (stream == null) {
-            throw new IllegalArgumentException("decodeRecordTypeDataCompressed: stream == null!");
+        if (dataInput == null) {
+            throw new IllegalArgumentException("decodeRecordTypeDataCompressed: dataInput == null!");
         }
 
-        PrintWriter pwout = createOutputWriter(stream);
+        PrintWriter pwout = createOutputWriter();
 
         int varQnty = dataTable.getVarQuantity().intValue();
         int caseQnty = dataTable.getCaseQuantity().intValue();
@@ -2416,6 +2429,22 @@ public class SAVFileReader  extends TabularDataFileReader{
         // -- L.A. 4.0 alpha
         List<String> casewiseRecordForTabFile = new ArrayList<String>();
 
+        // The working objects below are allocated once, and reused for
+        // every block and every case; with millions of cases, allocating
+        // them anew every time is what makes the ingest slow and heap-hungry.
+        // (For the same reason, the per-value debug messages are only 
+        // built when they are going to be logged.)
+        boolean isLoggableFine = dbgLog.isLoggable(Level.FINE);
+        byte[] octate = new byte[LENGTH_SAV_OBS_BLOCK];
+        byte[] uncompressedByte = new byte[LENGTH_SAV_OBS_BLOCK];
+        ByteBuffer bb_double = ByteBuffer.wrap(uncompressedByte);
+        if (isLittleEndian) {
+            bb_double.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        StringBuilder sb = new StringBuilder();
+        Set<Integer> removeJset = new HashSet<Integer>();
+        List<String> newDataLine = new ArrayList<String>();
+
         try {
             // this compression is applied only to non-float data, i.e. integer;
             // 8-byte float datum is kept in tact
@@ -2424,11 +2453,11 @@ public class SAVFileReader  extends TabularDataFileReader{
             OBSERVATION:
             while (true) {
 
-                dbgLog.fine("SAV Reader: compressed: ii=" + ii + "-th iteration");
-
-                byte[] octate = new byte[LENGTH_SAV_OBS_BLOCK];
+                if (isLoggableFine) {
+                    dbgLog.fine("SAV Reader: compressed: ii=" + ii + "-th iteration");
+                }
 
-                int nbytes = stream.read(octate);
+                int nbytes = dataInput.read(octate);
 
                 // processCompressedOBSblock ()
 
@@ -2438,7 +2467,6 @@ public class SAVFileReader  extends TabularDataFileReader{
                 for (int i = 0; i < LENGTH_SAV_OBS_BLOCK; i++) {
 
 
-                    dbgLog.finer("i=" + i + "-th iteration");
                     int octate_i = octate[i];
                     //dbgLog.fine("octate="+octate_i);
                     if (octate_i < 0) {
@@ -2459,41 +2487,34 @@ public class SAVFileReader  extends TabularDataFileReader{
                             // FD: uncompressed data follows after this octate
                             // long string datum or float datum
                             // read the following octate
-                            byte[] uncompressedByte = new byte[LENGTH_SAV_OBS_BLOCK];
-                            int ucbytes = stream.read(uncompressedByte);
+                            int ucbytes = dataInput.read(uncompressedByte);
                             int typeIndex = (ii * OBS + i) % nOBS;
 
                             if ((OBSwiseTypelList.get(typeIndex) > 0) ||
                                     (OBSwiseTypelList.get(typeIndex) == -1)) {
                                 // code= >0 |-1: string or its conitiguous block
                                 // decode as a string object
-                                String strdatum = new String(
-                                        Arrays.copyOfRange(uncompressedByte,
-                                        0, LENGTH_SAV_OBS_BLOCK), defaultCharSet);
+                                String strdatum = new String(uncompressedByte,
+                                        0, LENGTH_SAV_OBS_BLOCK, defaultCharSet);
                                 //out.println("str_datum="+strdatum+"<-");
                                 // add this non-missing-value string datum
                                 casewiseRecordForTabFile.add(strdatum);
                             //out.println("casewiseRecordForTabFile(String)="+casewiseRecordForTabFile);
                             } else if (OBSwiseTypelList.get(typeIndex) == -2) {
-                                String strdatum = new String(
-                                        Arrays.copyOfRange(uncompressedByte,
-                                        0, LENGTH_SAV_OBS_BLOCK - 1), defaultCharSet);
+                                String strdatum = new String(uncompressedByte,
+                                        0, LENGTH_SAV_OBS_BLOCK - 1, defaultCharSet);
                                 casewiseRecordForTabFile.add(strdatum);
                             //out.println("casewiseRecordForTabFile(String)="+casewiseRecordForTabFile);
                             } else if (OBSwiseTypelList.get(typeIndex) == 0) {
                                 // code= 0: numeric
 
-                                ByteBuffer bb_double = ByteBuffer.wrap(
-                                        uncompressedByte, 0, LENGTH_SAV_OBS_BLOCK);
-                                if (isLittleEndian) {
-                                    bb_double.order(ByteOrder.LITTLE_ENDIAN);
-                                }
-
-                                Double ddatum = bb_double.getDouble();
+                                double ddatum = bb_double.getDouble(0);
                                 // out.println("ddatum="+ddatum);
                                 // add this non-missing-value numeric datum
                                 casewiseRecordForTabFile.add(doubleNumberFormatter.format(ddatum));
-                                dbgLog.fine("SAV Reader: compressed: added value to dataLine: " + ddatum);
+                                if (isLoggableFine) {
+                                    dbgLog.fine("SAV Reader: compressed: added value to dataLine: " + ddatum);
+                                }
 
                             } else {
                                 dbgLog.fine("SAV Reader: out-of-range exception");
@@ -2565,8 +2586,10 @@ public class SAVFileReader  extends TabularDataFileReader{
                                 // datum is compressed
                                 //Integer unCompressed = Integer.valueOf(byteCode -100);
                                 // add this uncompressed numeric datum
-                                Double unCompressed = Double.valueOf(byteCode - 100);
-                                dbgLog.fine("SAV Reader: compressed: default case: " + unCompressed);
+                                double unCompressed = byteCode - 100;
+                                if (isLoggableFine) {
+                                    dbgLog.fine("SAV Reader: compressed: default case: " + unCompressed);
+                                }
 
                                 casewiseRecordForTabFile.add(doubleNumberFormatter.format(unCompressed));
                             // out.println("uncompressed="+unCompressed);
@@ -2597,7 +2620,9 @@ public class SAVFileReader  extends TabularDataFileReader{
                     // Also, the "varCounter" variable name is entirely
                     // misleading -- it counts not variables, but OBS blocks.
 
-                    dbgLog.fine("SAV Reader: compressed: OBS counter=" + varCounter + "(ii=" + ii + ")");
+                    if (isLoggableFine) {
+                        dbgLog.fine("SAV Reader: compressed: OBS counter=" + varCounter + "(ii=" + ii + ")");
+                    }
 
                     if ((ii * OBS + i + 1) % nOBS == 0) {
 
@@ -2617,12 +2642,14 @@ public class SAVFileReader  extends TabularDataFileReader{
                             //out.println("casewiseRecordForTabFile(before)="+casewiseRecordForTabFile);
                             //out.println("casewiseRecordForTabFile(before:size)="+casewiseRecordForTabFile.size());
 
-                            StringBuilder sb = new StringBuilder("");
+                            sb.setLength(0);
                             int firstPosition = 0;
 
-                            Set<Integer> removeJset = new HashSet<Integer>();
+                            removeJset.clear();
                             for (int j = 0; j < nOBS; j++) {
-                                dbgLog.fine("RTD: j=" + j + "-th type =" + OBSwiseTypelList.get(j));
+                                if (isLoggableFine) {
+                                    dbgLog.fine("RTD: j=" + j + "-th type =" + OBSwiseTypelList.get(j));
+                                }
                                 if ((OBSwiseTypelList.get(j) == -1) ||
                                         (OBSwiseTypelList.get(j) == -2)) {
                                     // Continued String variable found at j-th
@@ -2662,7 +2689,7 @@ public class SAVFileReader  extends TabularDataFileReader{
                             //out.println("removeJset="+removeJset);
 
                             // a new list that stores a new case with concatanated string data
-                            List<String> newDataLine = new ArrayList<String>();
+                            newDataLine.clear();
 
                             for (int jl = 0; jl < casewiseRecordForTabFile.size(); jl++) {
                                 //out.println("jl="+jl+"-th datum =["+casewiseRecordForTabFile.get(jl)+"]");
@@ -2692,7 +2719,10 @@ public class SAVFileReader  extends TabularDataFileReader{
                             //out.println("new casewiseRecordForTabFile="+newDataLine);
                             //out.println("new casewiseRecordForTabFile(size)="+newDataLine.size());
 
+                            // (the lists swap roles, rather than being re-allocated)
+                            List<String> oldDataLine = casewiseRecordForTabFile;
                             casewiseRecordForTabFile = newDataLine;
+                            newDataLine = oldDataLine;
 
                         } // end-if: stringContinuousVar-exist case
 
@@ -2701,7 +2731,9 @@ public class SAVFileReader  extends TabularDataFileReader{
 
                         for (int k = 0; k < casewiseRecordForTabFile.size(); k++) {
 
-                            dbgLog.fine("k=" + k + "-th variableTypelList=" + variableTypelList.get(k));
+                            if (isLoggableFine) {
+                                dbgLog.fine("k=" + k + "-th variableTypelList=" + variableTypelList.get(k));
+                            }
 
                             if (variableTypelList.get(k) > 0) {
 
@@ -2738,7 +2770,6 @@ public class SAVFileReader  extends TabularDataFileReader{
                             if (casewiseRecordForTabFile.get(k) != null && !casewiseRecordForTabFile.get(k).equals(MissingValueForTextDataFileNumeric)) {
 				
                                 String variableFormatType = variableFormatTypeList[k];
-                                dbgLog.finer("k=" + k + "th printFormatTable format=" + printFormatTable.get(variableNameList.get(k)));
 
                                 int formatDecimalPointPosition = formatDecimalPointPositionList.get(k);
 				
@@ -2920,7 +2951,7 @@ public class SAVFileReader  extends TabularDataFileReader{
 
                 } // loop-i (OBS unit)
 
-                if ((hasReachedEOF) || (stream.available() == 0)) {
+                if ((hasReachedEOF) || !dataInput.hasRemaining()) {
                     // reached the end of this file
                     // do exit-processing
 
@@ -2950,11 +2981,11 @@ public class SAVFileReader  extends TabularDataFileReader{
     }
 
 
-    void decodeRecordTypeDataUnCompressed(BufferedInputStream stream, boolean storeWithVariableHeader) throws IOException {
+    void decodeRecordTypeDataUnCompressed(SAVDataInput dataInput, boolean storeWithVariableHeader) throws IOException {
         dbgLog.fine("***** decodeRecordTypeDataUnCompressed(): start *****");
 
-        if (stream ==null){
-            throw new IllegalArgumentException("decodeRecordTypeDataUnCompressed: stream == null!");
+        if (dataInput ==null){
+            throw new IllegalArgumentException("decodeRecordTypeDataUnCompressed: dataInput == null!");
         }
 
         int varQnty = dataTable.getVarQuantity().intValue();
@@ -2963,7 +2994,7 @@ public class SAVFileReader  extends TabularDataFileReader{
         // 
         // set-up tab file
         
-        PrintWriter pwout = createOutputWriter ( stream ); 
+        PrintWriter pwout = createOutputWriter(); 
         
         boolean hasStringVarContinuousBlock = 
             obsNonVariableBlockSet.size() > 0 ? true : false;
@@ -3022,14 +3053,22 @@ public class SAVFileReader  extends TabularDataFileReader{
             pwout.println(generateVariableHeader(dataTable.getDataVariables()));
         }
 
+        // The working objects are allocated once, and reused for every case
+        // (see the comment in decodeRecordTypeDataCompressed()):
+        boolean isLoggableFine = dbgLog.isLoggable(Level.FINE);
+        byte[] buffer = new byte[OBS*nOBS];
+        ByteBuffer bb_buffer = ByteBuffer.wrap(buffer);
+        if (isLittleEndian){
+            bb_buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        StringBuilder sb = new StringBuilder();
+        Set<Integer> removeJset = new HashSet<Integer>();
+        List<String> newDataLine = new ArrayList<String>();
+
         try {
             for (int i = 0; ; i++){  // case-wise loop
                 
-                byte[] buffer = new byte[OBS*nOBS];
-                
-                int nbytesuc =  stream.read(buffer);
-                
-                StringBuilder sb_stringStorage = new StringBuilder("");
+                int nbytesuc =  dataInput.read(buffer);
 
                 for (int k=0; k < nOBS; k++){
                     int offset= OBS*k;
@@ -3047,35 +3086,32 @@ public class SAVFileReader  extends TabularDataFileReader{
                     boolean isNumeric = OBSwiseTypelList.get(k)==0 ? true : false;
                     
                     if (isNumeric){
-                        dbgLog.finer(k+"-th variable is numeric");
                         // interprete as double
-                        ByteBuffer bb_double = ByteBuffer.wrap(
-                            buffer, offset , LENGTH_SAV_OBS_BLOCK);
-                        if (isLittleEndian){
-                            bb_double.order(ByteOrder.LITTLE_ENDIAN);
-                        }
-                        //char[] hexpattern =
-                        String dphex = new String(Hex.encodeHex(
-                                Arrays.copyOfRange(bb_double.array(),
-                                offset, offset+LENGTH_SAV_OBS_BLOCK)));
-                        dbgLog.finer("dphex="+ dphex);
+                        // (the raw bytes, in the order they are stored, are 
+                        // checked against the sysmis patterns, both little 
+                        // and big endian; this is the same as comparing 
+                        // their hex representation, without building it)
+                        long rawBits = isLittleEndian
+                                ? Long.reverseBytes(bb_buffer.getLong(offset))
+                                : bb_buffer.getLong(offset);
                             
-                        if ((dphex.equals("ffffffffffffefff"))||
-                            (dphex.equals("ffefffffffffffff"))){
+                        if ((rawBits == 0xffffffffffffefffL)||
+                            (rawBits == 0xffefffffffffffffL)){
                             //casewiseRecordForTabFile.add(systemMissingValue);
                             // add the numeric missing value
 			    dbgLog.fine("SAV Reader: adding: Missing Value (numeric)");
                             casewiseRecordForTabFile.add(MissingValueForTextDataFileNumeric);
                         } else {
-                            Double ddatum  = bb_double.getDouble();
-                            dbgLog.fine("SAV Reader: adding: ddatum="+ddatum);
+                            double ddatum  = bb_buffer.getDouble(offset);
+                            if (isLoggableFine) {
+                                dbgLog.fine("SAV Reader: adding: ddatum="+ddatum);
+                            }
 
                             // add this non-missing-value numeric datum
                             casewiseRecordForTabFile.add(doubleNumberFormatter.format(ddatum)) ;
                         }
                     
                     } else {
-                        dbgLog.finer(k+"-th variable is string");
                         // string case
                         // strip space-padding
                         // do not trim: string might have spaces within it
@@ -3083,10 +3119,8 @@ public class SAVFileReader  extends TabularDataFileReader{
                         // "20 20 20 20 20 20 20 20"
                         
                         
-                        String strdatum = new String(
-                            Arrays.copyOfRange(buffer,
-                            offset, (offset+LENGTH_SAV_OBS_BLOCK)),defaultCharSet);
-                        dbgLog.finer("str_datum="+strdatum);
+                        String strdatum = new String(buffer,
+                            offset, LENGTH_SAV_OBS_BLOCK, defaultCharSet);
                         // add this non-missing-value string datum 
                         casewiseRecordForTabFile.add(strdatum);
 
@@ -3103,12 +3137,11 @@ public class SAVFileReader  extends TabularDataFileReader{
                     //dbgLog.fine("casewiseRecordForTabFile(before)="+casewiseRecordForTabFile);
                     //dbgLog.fine("casewiseRecordForTabFile(before:size)="+casewiseRecordForTabFile.size());
 
-                    StringBuilder sb = new StringBuilder("");
+                    sb.setLength(0);
                     int firstPosition = 0;
 
-                    Set<Integer> removeJset = new HashSet<Integer>();
+                    removeJset.clear();
                     for (int j=0; j< nOBS; j++){
-                        dbgLog.finer("j="+j+"-th type ="+OBSwiseTypelList.get(j));
                         if (OBSwiseTypelList.get(j) == -1){
                             // String continued fount at j-th 
                             // look back the j-1 
@@ -3139,7 +3172,7 @@ public class SAVFileReader  extends TabularDataFileReader{
                         } // end-of-if: continuous-OBS only
                     } // end of loop-j
 
-                    List<String> newDataLine = new ArrayList<String>();
+                    newDataLine.clear();
                     
                     for (int jl=0; jl<casewiseRecordForTabFile.size();jl++){
                         //out.println("jl="+jl+"-th datum =["+casewiseRecordForTabFile.get(jl)+"]");
@@ -3149,10 +3182,15 @@ public class SAVFileReader  extends TabularDataFileReader{
                         } 
                     }
 
-                    dbgLog.fine("new casewiseRecordForTabFile="+newDataLine);
-                    dbgLog.fine("new casewiseRecordForTabFile(size)="+newDataLine.size());
+                    if (isLoggableFine) {
+                        dbgLog.fine("new casewiseRecordForTabFile="+newDataLine);
+                        dbgLog.fine("new casewiseRecordForTabFile(size)="+newDataLine.size());
+                    }
                     
+                    // (the lists swap roles, rather than being re-allocated)
+                    List<String> oldDataLine = casewiseRecordForTabFile;
                     casewiseRecordForTabFile = newDataLine;
+                    newDataLine = oldDataLine;
 
                 } // end-if: stringContinuousVar-exist case
 
@@ -3341,7 +3379,7 @@ public class SAVFileReader  extends TabularDataFileReader{
                 // reset the case-wise working objects
                 casewiseRecordForTabFile.clear();
                 
-                if (stream.available() == 0){
+                if (!dataInput.hasRemaining()){
                     // reached the end of this file
                     // do exit-processing
 
@@ -8,6 +8,7 @@ package edu.harvard.iq.dataverse.makedatacount;
 import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DatasetVersion;
+import edu.harvard.iq.dataverse.DownloadEventServiceBean;
 import edu.harvard.iq.dataverse.DataverseRequestServiceBean;
 import edu.harvard.iq.dataverse.batch.util.LoggingUtil;
 import static edu.harvard.iq.dataverse.makedatacount.MakeDataCountUtil.LOG_HEADER;
@@ -36,10 +37,16 @@ public class MakeDataCountLoggingServiceBean {
     
     @EJB
     SystemConfig systemConfig;
+    @EJB
+    DownloadEventServiceBean downloadEventService;
 
     public void logEntry(MakeDataCountEntry entry) {
-        if(systemConfig.getMDCLogPath() != null) {
-            LoggingUtil.saveLogFileAppendWithHeader(entry.toString(), systemConfig.getMDCLogPath(), getLogFileName() , LOG_HEADER);
+        String logPath = systemConfig.getMDCLogPath();
+        if(logPath != null) {
+            // appended behind the request, unless too many entries are waiting
+            if (!downloadEventService.enqueue(logPath, getLogFileName(), entry.toString())) {
+                LoggingUtil.saveLogFileAppendWithHeader(entry.toString(), logPath, getLogFileName() , LOG_HEADER);
+            }
         }
     }
     
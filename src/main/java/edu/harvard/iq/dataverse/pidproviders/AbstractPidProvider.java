@@ -5,12 +5,24 @@ import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DatasetField;
 import edu.harvard.iq.dataverse.DvObject;
 import edu.harvard.iq.dataverse.GlobalId;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.ReadRateLimiter;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import jakarta.json.Json;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonObjectBuilder;
 
+import java.io.InterruptedIOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -24,6 +36,10 @@ public abstract class AbstractPidProvider implements PidProvider {
     public static String UNAVAILABLE = ":unav";
     public static final String SEPARATOR = "/";
 
+    // the delay before the first retry of a failed request; doubled for every
+    // further retry:
+    static final long RETRY_DELAY_MILLIS = 1000;
+
     protected PidProviderFactoryBean pidProviderService;
 
     private String protocol;
@@ -43,6 +59,12 @@ public abstract class AbstractPidProvider implements PidProvider {
     private String id;
     private String label;
 
+    // limits the requests of publicizeIdentifiers() to the configured rate
+    // (one "byte" per request); shared by all the batches of this provider.
+    // Null if there's no limit:
+    private ReadRateLimiter requestRateLimiter;
+    private boolean requestRateLimiterInitialized = false;
+
     protected AbstractPidProvider(String id, String label, String protocol) {
         this.id = id;
         this.label = label;
@@ -548,6 +570,161 @@ public abstract class AbstractPidProvider implements PidProvider {
         return providerSpecification.build();
     }
     
+    /**
+     * Prepares the publication of the identifier of the object, for
+     * {@link #publicizeIdentifiers(List, Consumer)}: does everything that
+     * needs the object, and the entities it refers to (generating the
+     * identifier if needed, building the metadata to send), on the calling
+     * thread; and returns the request to the PID service, which may be sent
+     * from another thread.
+     * 
+     * @return the request; returning true if it succeeded. Or null (the
+     *         default) if the provider doesn't support sending its requests
+     *         from other threads; the identifiers are then publicized one at a
+     *         time, on the calling thread, with
+     *         {@link #publicizeIdentifier(DvObject)}.
+     */
+    protected Callable<Boolean> preparePublicizeIdentifier(DvObject dvObject) {
+        return null;
+    }
+
+    /**
+     * Publicizes the identifiers of the objects several at a time (up to the
+     * {@link JvmSettings#PID_PROVIDER_MAX_CONCURRENT_REQUESTS} of this
+     * provider), at most at {@link JvmSettings#PID_PROVIDER_MAX_REQUESTS_PER_SECOND},
+     * retrying a failed request up to {@link JvmSettings#PID_PROVIDER_MAX_RETRIES}
+     * times with an exponential backoff. Stops at the first object whose
+     * identifier can't be publicized.
+     */
+    @Override
+    public List<DvObject> publicizeIdentifiers(List<? extends DvObject> dvObjects, Consumer<DvObject> listener) {
+        int maxConcurrentRequests = JvmSettings.PID_PROVIDER_MAX_CONCURRENT_REQUESTS
+                .lookupOptional(Integer.class, getId()).orElse(4);
+        int maxRetries = JvmSettings.PID_PROVIDER_MAX_RETRIES.lookupOptional(Integer.class, getId()).orElse(3);
+        ThreadFactory threadFactory = pidProviderService != null ? pidProviderService.getThreadFactory()
+                : Executors.defaultThreadFactory();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, maxConcurrentRequests), threadFactory);
+        try {
+            return publicizeIdentifiers(dvObjects, listener, executor, Math.max(1, maxConcurrentRequests), maxRetries);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    List<DvObject> publicizeIdentifiers(List<? extends DvObject> dvObjects, Consumer<DvObject> listener,
+            ExecutorService executor, int maxConcurrentRequests, int maxRetries) {
+        ReadRateLimiter limiter = getRequestRateLimiter();
+        CompletionService<DvObject> completion = new ExecutorCompletionService<>(executor);
+        List<Future<DvObject>> pending = new ArrayList<>();
+        Set<DvObject> publicized = Collections.newSetFromMap(new IdentityHashMap<>());
+        try {
+            for (DvObject dvObject : dvObjects) {
+                Callable<Boolean> request = preparePublicizeIdentifier(dvObject);
+                if (request == null) {
+                    // (the provider can only publicize on the calling thread)
+                    if (!sendWithRetries(() -> publicizeIdentifier(dvObject), limiter, maxRetries)) {
+                        break;
+                    }
+                    publicized.add(dvObject);
+                    notify(listener, dvObject);
+                    continue;
+                }
+                pending.add(completion.submit(() -> sendWithRetries(request, limiter, maxRetries) ? dvObject : null));
+                // The requests of a few objects per thread are kept waiting
+                // at most; the calling thread prepares the next ones while
+                // the threads send them:
+                Future<DvObject> done;
+                while ((done = pending.size() >= 2 * maxConcurrentRequests ? completion.take() : completion.poll()) != null) {
+                    pending.remove(done);
+                    if (!complete(done, publicized, listener)) {
+                        return notPublicized(dvObjects, publicized, pending);
+                    }
+                }
+            }
+            while (!pending.isEmpty()) {
+                Future<DvObject> done = completion.take();
+                pending.remove(done);
+                if (!complete(done, publicized, listener)) {
+                    break;
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        return notPublicized(dvObjects, publicized, pending);
+    }
+
+    private static boolean complete(Future<DvObject> done, Set<DvObject> publicized, Consumer<DvObject> listener)
+            throws InterruptedException {
+        try {
+            DvObject dvObject = done.get();
+            if (dvObject != null) {
+                publicized.add(dvObject);
+                notify(listener, dvObject);
+                return true;
+            }
+        } catch (ExecutionException ee) {
+            logger.log(Level.WARNING, "Failed to publicize an identifier", ee.getCause());
+        }
+        return false;
+    }
+
+    private static List<DvObject> notPublicized(List<? extends DvObject> dvObjects, Set<DvObject> publicized,
+            List<Future<DvObject>> pending) {
+        pending.forEach(request -> request.cancel(true));
+        List<DvObject> notPublicized = new ArrayList<>();
+        for (DvObject dvObject : dvObjects) {
+            if (!publicized.contains(dvObject)) {
+                notPublicized.add(dvObject);
+            }
+        }
+        return notPublicized;
+    }
+
+    private static void notify(Consumer<DvObject> listener, DvObject dvObject) {
+        if (listener != null) {
+            listener.accept(dvObject);
+        }
+    }
+
+    /**
+     * Sends the request, within the rate limit; retrying it, after an
+     * exponentially growing delay, if it fails.
+     * 
+     * @return whether the request eventually succeeded.
+     */
+    static boolean sendWithRetries(Callable<Boolean> request, ReadRateLimiter limiter, int maxRetries)
+            throws InterruptedException {
+        for (int attempt = 0;; attempt++) {
+            try {
+                if (limiter != null) {
+                    limiter.acquire(1);
+                }
+                if (Boolean.TRUE.equals(request.call())) {
+                    return true;
+                }
+            } catch (InterruptedIOException iioe) {
+                throw new InterruptedException(iioe.getMessage());
+            } catch (Exception e) {
+                logger.log(Level.FINE, "PID request failed", e);
+            }
+            if (attempt >= maxRetries) {
+                return false;
+            }
+            Thread.sleep(RETRY_DELAY_MILLIS << Math.min(attempt, 10));
+        }
+    }
+
+    private synchronized ReadRateLimiter getRequestRateLimiter() {
+        if (!requestRateLimiterInitialized) {
+            long maxRequestsPerSecond = JvmSettings.PID_PROVIDER_MAX_REQUESTS_PER_SECOND
+                    .lookupOptional(Long.class, getId()).orElse(0L);
+            requestRateLimiter = maxRequestsPerSecond > 0 ? new ReadRateLimiter(maxRequestsPerSecond) : null;
+            requestRateLimiterInitialized = true;
+        }
+        return requestRateLimiter;
+    }
+
     @Override
     public boolean updateIdentifier(DvObject dvObject) {
         //By default, these are the same
@@ -6,6 +6,7 @@ import jakarta.json.JsonObject;
 import jakarta.json.JsonValue;
 
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 public interface PidProvider {
@@ -53,6 +54,30 @@ public interface PidProvider {
     String getIdentifier(DvObject dvObject);
     
     boolean publicizeIdentifier(DvObject studyIn);
+
+    /**
+     * Publicizes the identifiers of several objects, e.g. of the files of a
+     * dataset being published. The default publicizes them one at a time, and
+     * stops at the first failure; providers calling a remote service may send
+     * several requests at a time (within the limits of the service), and retry
+     * the failed ones.
+     * 
+     * @param listener notified of each object whose identifier has been
+     *                 publicized, on the calling thread. May be null.
+     * @return the objects whose identifiers haven't been publicized; empty if
+     *         they all have.
+     */
+    default List<DvObject> publicizeIdentifiers(List<? extends DvObject> dvObjects, Consumer<DvObject> listener) {
+        for (int i = 0; i < dvObjects.size(); i++) {
+            if (!publicizeIdentifier(dvObjects.get(i))) {
+                return new ArrayList<>(dvObjects.subList(i, dvObjects.size()));
+            }
+            if (listener != null) {
+                listener.accept(dvObjects.get(i));
+            }
+        }
+        return new ArrayList<>();
+    }
     
     boolean updateIdentifier(DvObject dvObject);
     
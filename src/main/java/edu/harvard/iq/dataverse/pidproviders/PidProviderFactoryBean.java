@@ -19,9 +19,11 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Singleton;
 import jakarta.ejb.Startup;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
 import jakarta.inject.Inject;
 import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
@@ -58,6 +60,8 @@ public class PidProviderFactoryBean {
     protected DvObjectServiceBean dvObjectService;
     @Inject
     SystemConfig systemConfig;
+    @Resource
+    ManagedThreadFactory threadFactory;
 
     private ServiceLoader<PidProviderFactory> loader;
     private Map<String, PidProviderFactory> pidProviderFactoryMap = new HashMap<>();
@@ -227,6 +231,14 @@ public class PidProviderFactoryBean {
         return dvObjectService.isGlobalIdLocallyUnique(globalId);
     }
 
+    /**
+     * @return the factory of the threads the providers send their requests on,
+     *         when publicizing several identifiers at a time.
+     */
+    public ManagedThreadFactory getThreadFactory() {
+        return threadFactory;
+    }
+
     String generateNewIdentifierByStoredProcedure() {
         return dvObjectService.generateNewIdentifierByStoredProcedure();
     }
@@ -66,10 +66,17 @@ public class DOIDataCiteRegisterService {
     }
 
     public String registerIdentifier(String identifier, Map<String, String> metadata, DvObject dvObject) throws IOException {
-        String retString = "";
         String xmlMetadata = getMetadataFromDvObject(identifier, metadata, dvObject);
-        String target = metadata.get("_target");
-        
+        return registerIdentifier(identifier, xmlMetadata, metadata.get("_target"));
+    }
+
+    /**
+     * As above, with the metadata already converted to xml; this doesn't
+     * touch the DvObject, and can be called from any thread.
+     */
+    public String registerIdentifier(String identifier, String xmlMetadata, String target) throws IOException {
+        String retString = "";
+
         retString = client.postMetadata(xmlMetadata);
         client.postUrl(identifier.substring(identifier.indexOf(":") + 1), target);
 
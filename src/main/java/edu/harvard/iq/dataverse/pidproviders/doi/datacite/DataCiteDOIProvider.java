@@ -7,6 +7,7 @@ import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -194,6 +195,16 @@ public class DataCiteDOIProvider extends AbstractDOIProvider {
     @Override
     public boolean publicizeIdentifier(DvObject dvObject) {
         logger.log(Level.FINE, "updateIdentifierStatus");
+        try {
+            return preparePublicizeIdentifier(dvObject).call();
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "modifyMetadata failed: " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    @Override
+    protected Callable<Boolean> preparePublicizeIdentifier(DvObject dvObject) {
         if (dvObject.getIdentifier() == null || dvObject.getIdentifier().isEmpty()) {
             dvObject = generatePid(dvObject);
         }
@@ -202,13 +213,11 @@ public class DataCiteDOIProvider extends AbstractDOIProvider {
         metadata.put("_status", FINDABLE);
         metadata.put("datacite.publicationyear", generateYear(dvObject));
         metadata.put("_target", getTargetUrl(dvObject));
-        try {
-            doiDataCiteRegisterService.registerIdentifier(identifier, metadata, dvObject);
+        String xmlMetadata = DOIDataCiteRegisterService.getMetadataFromDvObject(identifier, metadata, dvObject);
+        return () -> {
+            doiDataCiteRegisterService.registerIdentifier(identifier, xmlMetadata, metadata.get("_target"));
             return true;
-        } catch (Exception e) {
-            logger.log(Level.WARNING, "modifyMetadata failed: " + e.getMessage(), e);
-            return false;
-        }
+        };
     }
 
     @Override
@@ -40,19 +40,27 @@ public class DataCiteRESTfullClient implements Closeable {
     
     private static final Logger logger = Logger.getLogger(DataCiteRESTfullClient.class.getCanonicalName());
 
+    // (the requests to publicize several identifiers are sent concurrently)
+    private static final int MAX_CONNECTIONS = 20;
+
     private String url;
     private CloseableHttpClient httpClient;
-    private HttpClientContext context;
+    // one context (with its authentication cache) per thread, as they are not
+    // thread-safe:
+    private ThreadLocal<HttpClientContext> context;
     private String encoding = "utf-8";
     
     public DataCiteRESTfullClient(String url, String username, String password) {
         this.url = url;
-        context = HttpClientContext.create();
         CredentialsProvider credsProvider = new BasicCredentialsProvider();
         credsProvider.setCredentials(new AuthScope(null, -1), new UsernamePasswordCredentials(username, password));
-        context.setCredentialsProvider(credsProvider);
+        context = ThreadLocal.withInitial(() -> {
+            HttpClientContext threadContext = HttpClientContext.create();
+            threadContext.setCredentialsProvider(credsProvider);
+            return threadContext;
+        });
 
-        httpClient = HttpClients.createDefault();
+        httpClient = HttpClients.custom().setMaxConnPerRoute(MAX_CONNECTIONS).setMaxConnTotal(MAX_CONNECTIONS).build();
     }
 
     public void close() {
@@ -74,7 +82,7 @@ public class DataCiteRESTfullClient implements Closeable {
     public String getUrl(String doi) {
         HttpGet httpGet = new HttpGet(this.url + "/doi/" + doi);
         try {
-            HttpResponse response = httpClient.execute(httpGet,context);
+            HttpResponse response = httpClient.execute(httpGet, context.get());
             String data = EntityUtils.toString(response.getEntity(), encoding);
             if (response.getStatusLine().getStatusCode() != 200) {
                 throw new RuntimeException("Response code: " + response.getStatusLine().getStatusCode() + ", " + data);
@@ -98,7 +106,7 @@ public class DataCiteRESTfullClient implements Closeable {
         httpPost.setHeader("Content-Type", "text/plain;charset=UTF-8");
         httpPost.setEntity(new StringEntity("doi=" + doi + "\nurl=" + url, "utf-8"));
 
-        HttpResponse response = httpClient.execute(httpPost, context);
+        HttpResponse response = httpClient.execute(httpPost, context.get());
         String data = EntityUtils.toString(response.getEntity(), encoding);
         if (response.getStatusLine().getStatusCode() != 201) {
             String errMsg = "Response from postUrl: " + response.getStatusLine().getStatusCode() + ", " + data;
@@ -118,7 +126,7 @@ public class DataCiteRESTfullClient implements Closeable {
         HttpGet httpGet = new HttpGet(this.url + "/metadata/" + doi);
         httpGet.setHeader("Accept", "application/xml");
         try {
-            HttpResponse response = httpClient.execute(httpGet,context);
+            HttpResponse response = httpClient.execute(httpGet, context.get());
             String data = EntityUtils.toString(response.getEntity(), encoding);
             if (response.getStatusLine().getStatusCode() != 200) {
                 String errMsg = "Response from getMetadata: " + response.getStatusLine().getStatusCode() + ", " + data;
@@ -141,7 +149,7 @@ public class DataCiteRESTfullClient implements Closeable {
     public boolean testDOIExists(String doi) throws IOException {
         HttpGet httpGet = new HttpGet(this.url + "/metadata/" + doi);
         httpGet.setHeader("Accept", "application/xml");
-        HttpResponse response = httpClient.execute(httpGet, context);
+        HttpResponse response = httpClient.execute(httpGet, context.get());
         if (response.getStatusLine().getStatusCode() != 200) {
             EntityUtils.consumeQuietly(response.getEntity());
             return false;
@@ -160,7 +168,7 @@ public class DataCiteRESTfullClient implements Closeable {
         HttpPost httpPost = new HttpPost(this.url + "/metadata");
         httpPost.setHeader("Content-Type", "application/xml;charset=UTF-8");
         httpPost.setEntity(new StringEntity(metadata, "utf-8"));
-        HttpResponse response = httpClient.execute(httpPost, context);
+        HttpResponse response = httpClient.execute(httpPost, context.get());
         String data = EntityUtils.toString(response.getEntity(), encoding);
         if (response.getStatusLine().getStatusCode() != 201) {
             String errMsg = "Response from postMetadata: " + response.getStatusLine().getStatusCode() + ", " + data;
@@ -179,7 +187,7 @@ public class DataCiteRESTfullClient implements Closeable {
     public String inactiveDataset(String doi) {
         HttpDelete httpDelete = new HttpDelete(this.url + "/metadata/" + doi);
         try {
-            HttpResponse response = httpClient.execute(httpDelete,context);
+            HttpResponse response = httpClient.execute(httpDelete, context.get());
             String data = EntityUtils.toString(response.getEntity(), encoding);
             if (response.getStatusLine().getStatusCode() != 200) {
                 String errMsg = "Response code: " + response.getStatusLine().getStatusCode() + ", " + data;
@@ -7,6 +7,7 @@ import edu.harvard.iq.dataverse.pidproviders.doi.AbstractDOIProvider;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 public class FakeDOIProvider extends AbstractDOIProvider {
 
@@ -71,6 +72,17 @@ public class FakeDOIProvider extends AbstractDOIProvider {
         }
         return true;
     }
+
+    /**
+     * Nothing to send; but goes through the same (concurrent, rate-limited)
+     * path as the providers with a remote service, when publicizing several
+     * identifiers - e.g. to test their settings.
+     */
+    @Override
+    protected Callable<Boolean> preparePublicizeIdentifier(DvObject dvObject) {
+        boolean publicized = publicizeIdentifier(dvObject);
+        return () -> publicized;
+    }
     
     @Override
     protected String getProviderKeyName() {
@@ -133,6 +133,9 @@ public class IndexServiceBean {
     @EJB
     DatasetFieldServiceBean datasetFieldService;
 
+    @EJB
+    DatasetEventServiceBean datasetEventService;
+
     public static final String solrDocIdentifierDataverse = "dataverse_";
     public static final String solrDocIdentifierFile = "datafile_";
     public static final String solrDocIdentifierDataset = "dataset_";
@@ -434,6 +437,7 @@ public class IndexServiceBean {
             // Time context will automatically start on creation and stop when leaving the try block
             try (var timeContext = indexTimer.time()) {
                 indexDataset(next, doNormalSolrDocCleanUp);
+                datasetEventService.publish(id, DatasetEventServiceBean.Type.INDEX_DONE);
             } catch (Exception e) { // catch all possible exceptions; otherwise when something unexpected happes the dataset wold remain locked and impossible to reindex
                 String failureLogText = "Indexing failed. You can kickoff a re-index of this dataset with: \r\n curl http://localhost:8080/api/admin/index/datasets/" + dataset.getId().toString();
                 failureLogText += "\r\n" + e.getLocalizedMessage();
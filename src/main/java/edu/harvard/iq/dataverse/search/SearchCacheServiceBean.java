@@ -0,0 +1,104 @@
+package edu.harvard.iq.dataverse.search;
+
+import edu.harvard.iq.dataverse.DatasetFieldServiceBean;
+import edu.harvard.iq.dataverse.DatasetFieldType;
+import edu.harvard.iq.dataverse.authorization.groups.Group;
+import edu.harvard.iq.dataverse.authorization.groups.GroupServiceBean;
+import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+
+/**
+ * Keeps what {@link SearchServiceBean} needs from the database for every
+ * search, but rarely changes, in memory:
+ * <ul>
+ * <li>the dataset field types, used to pick the facets and highlights; until
+ * the metadata blocks are loaded again on this server, or for
+ * {@link JvmSettings#SEARCH_FIELD_TYPES_TTL} seconds at most (for the changes
+ * made on other servers);</li>
+ * <li>the groups of the users, by user and IP address, used in the permission
+ * filter; for {@link JvmSettings#SEARCH_GROUPS_TTL} seconds.</li>
+ * </ul>
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class SearchCacheServiceBean {
+
+    private static final Logger logger = Logger.getLogger(SearchCacheServiceBean.class.getCanonicalName());
+
+    // the most groups kept; the expired ones are dropped beyond that
+    private static final int MAX_GROUPS_ENTRIES = 10000;
+
+    @EJB
+    DatasetFieldServiceBean datasetFieldService;
+    @EJB
+    GroupServiceBean groupService;
+
+    private record Expiring<T>(T value, long expiresAt) {
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    private volatile Expiring<List<DatasetFieldType>> datasetFieldTypes;
+    private final Map<String, Expiring<Set<Group>>> groups = new ConcurrentHashMap<>();
+
+    /**
+     * @return all the dataset field types, ordered by id; the list is shared,
+     * and not to be changed.
+     */
+    public List<DatasetFieldType> findAllDatasetFieldTypes() {
+        long now = System.currentTimeMillis();
+        Expiring<List<DatasetFieldType>> cached = datasetFieldTypes;
+        if (cached == null || cached.isExpired(now)) {
+            // (two searches at the same time may both load them; no harm done)
+            long ttl = 1000 * JvmSettings.SEARCH_FIELD_TYPES_TTL.lookupOptional(Long.class).orElse(300L);
+            cached = new Expiring<>(Collections.unmodifiableList(datasetFieldService.findAllOrderedById()), now + ttl);
+            datasetFieldTypes = cached;
+        }
+        return cached.value();
+    }
+
+    /**
+     * To be called when the metadata blocks or their fields change.
+     */
+    public void clearDatasetFieldTypes() {
+        datasetFieldTypes = null;
+    }
+
+    /**
+     * @return the groups of the user of the request, and their ancestors.
+     */
+    public Set<Group> findGroups(DataverseRequest dataverseRequest) {
+        long ttl = 1000 * JvmSettings.SEARCH_GROUPS_TTL.lookupOptional(Long.class).orElse(10L);
+        if (ttl <= 0) {
+            return groupService.collectAncestors(groupService.groupsFor(dataverseRequest));
+        }
+        long now = System.currentTimeMillis();
+        // (the IP address too, since it determines the IP groups)
+        String key = dataverseRequest.getUser().getIdentifier() + "@" + dataverseRequest.getSourceAddress();
+        Expiring<Set<Group>> cached = groups.get(key);
+        if (cached == null || cached.isExpired(now)) {
+            cached = new Expiring<>(Collections.unmodifiableSet(groupService.collectAncestors(groupService.groupsFor(dataverseRequest))), now + ttl);
+            if (groups.size() >= MAX_GROUPS_ENTRIES) {
+                groups.values().removeIf(entry -> entry.isExpired(now));
+                if (groups.size() >= MAX_GROUPS_ENTRIES) {
+                    logger.fine("Too many users searching at once to keep their groups; starting over");
+                    groups.clear();
+                }
+            }
+            groups.put(key, cached);
+        }
+        return cached.value();
+    }
+}
@@ -2,15 +2,14 @@ package edu.harvard.iq.dataverse.search;
 
 import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.DatasetFieldConstant;
-import edu.harvard.iq.dataverse.DatasetFieldServiceBean;
 import edu.harvard.iq.dataverse.DatasetFieldType;
 import edu.harvard.iq.dataverse.DatasetVersionServiceBean;
 import edu.harvard.iq.dataverse.Dataverse;
 import edu.harvard.iq.dataverse.DataverseFacet;
 import edu.harvard.iq.dataverse.DataverseMetadataBlockFacet;
+import edu.harvard.iq.dataverse.DvObject;
 import edu.harvard.iq.dataverse.DvObjectServiceBean;
 import edu.harvard.iq.dataverse.authorization.groups.Group;
-import edu.harvard.iq.dataverse.authorization.groups.GroupServiceBean;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.authorization.users.GuestUser;
 import edu.harvard.iq.dataverse.authorization.users.PrivateUrlUser;
@@ -27,6 +26,7 @@ import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
@@ -34,15 +34,14 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.MissingResourceException;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jakarta.ejb.EJB;
-import jakarta.ejb.EJBTransactionRolledbackException;
 import jakarta.ejb.Stateless;
-import jakarta.ejb.TransactionRolledbackLocalException;
 import jakarta.inject.Named;
-import jakarta.persistence.NoResultException;
 import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.SolrQuery.SortClause;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.BaseHttpSolrClient.RemoteSolrException;
@@ -52,6 +51,7 @@ import org.apache.solr.client.solrj.response.RangeFacet;
 import org.apache.solr.client.solrj.response.SpellCheckResponse;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CursorMarkParams;
 
 @Stateless
 @Named
@@ -63,21 +63,16 @@ public class SearchServiceBean {
      * We're trying to make the SearchServiceBean lean, mean, and fast, with as
      * few injections of EJBs as possible.
      */
-    /**
-     * @todo Can we do without the DatasetFieldServiceBean?
-     */
     @EJB
     DvObjectServiceBean dvObjectService;
     @EJB
     DatasetVersionServiceBean datasetVersionService;
     @EJB
-    DatasetFieldServiceBean datasetFieldService;
-    @EJB
-    GroupServiceBean groupService;
-    @EJB
     SystemConfig systemConfig;
     @EJB
     SolrClientService solrClientService;
+    @EJB
+    SearchCacheServiceBean searchCacheService;
     
     /**
      * Import note: "onlyDatatRelatedToMe" relies on filterQueries for providing
@@ -272,7 +267,7 @@ public class SearchServiceBean {
             }
         }
 
-        List<DatasetFieldType> datasetFields = datasetFieldService.findAllOrderedById();
+        List<DatasetFieldType> datasetFields = searchCacheService.findAllDatasetFieldTypes();
         Map<String, String> solrFieldsToHightlightOnMap = new HashMap<>();
         if (addHighlights) {
             solrQuery.setHighlight(true).setHighlightSnippets(1);
@@ -459,17 +454,15 @@ public class SearchServiceBean {
         Object searchFieldsObject = new SearchFields();
         Field[] staticSearchFields = searchFieldsObject.getClass().getDeclaredFields();
         String titleSolrField = null;
-        try {
-            DatasetFieldType titleDatasetField = datasetFieldService.findByName(DatasetFieldConstant.title);
-            titleSolrField = titleDatasetField.getSolrField().getNameSearchable();
-        } catch (EJBTransactionRolledbackException ex) {
-            logger.info("Couldn't find " + DatasetFieldConstant.title);
-            if (ex.getCause() instanceof TransactionRolledbackLocalException) {
-                if (ex.getCause().getCause() instanceof NoResultException) {
-                    logger.info("Caught NoResultException");
-                }
+        for (DatasetFieldType datasetFieldType : datasetFields) {
+            if (DatasetFieldConstant.title.equals(datasetFieldType.getName())) {
+                titleSolrField = datasetFieldType.getSolrField().getNameSearchable();
+                break;
             }
         }
+        if (titleSolrField == null) {
+            logger.info("Couldn't find " + DatasetFieldConstant.title);
+        }
         Map<String, String> datasetfieldFriendlyNamesBySolrField = new HashMap<>();
         Map<String, String> staticSolrFieldFriendlyNamesBySolrField = new HashMap<>();
         String baseUrl = systemConfig.getDataverseSiteUrl();
@@ -559,9 +552,6 @@ public class SearchServiceBean {
 //            logger.info(id + ": " + description);
             solrSearchResult.setId(id);
             solrSearchResult.setEntityId(entityid);
-            if (retrieveEntities) {
-                solrSearchResult.setEntity(dvObjectService.findDvObject(entityid));
-            }
             solrSearchResult.setIdentifier(identifier);
             solrSearchResult.setPersistentUrl(persistentUrl);
             solrSearchResult.setType(type);
@@ -703,6 +693,9 @@ public class SearchServiceBean {
             solrSearchResult.setParent(parent);
             solrSearchResults.add(solrSearchResult);
         }
+        if (retrieveEntities) {
+            retrieveEntities(solrSearchResults);
+        }
         Map<String, List<String>> spellingSuggestionsByToken = new HashMap<>();
         SpellCheckResponse spellCheckResponse = queryResponse.getSpellCheckResponse();
         if (spellCheckResponse != null) {
@@ -971,6 +964,83 @@ public class SearchServiceBean {
         return Character.toUpperCase(name.charAt(0)) + name.substring(1);
     }
 
+    /**
+     * Finds all the objects matching the query, a page at a time, with a Solr
+     * cursor; without the facets, highlights, etc. of {@link #search}. The
+     * results only have their ids, entity ids, types and sort names.
+     *
+     * @param pageConsumer called with each page of results, in order.
+     */
+    public void searchPages(DataverseRequest dataverseRequest, String query, List<String> filterQueries, int numResultsPerPage,
+            Consumer<List<SolrSearchResult>> pageConsumer) throws SearchException {
+        SolrQuery solrQuery = new SolrQuery();
+        query = SearchUtil.sanitizeQuery(query);
+        solrQuery.setQuery(query);
+        solrQuery.setParam("qt", "/select");
+        solrQuery.setFields(SearchFields.ID, SearchFields.ENTITY_ID, SearchFields.TYPE, SearchFields.NAME_SORT);
+        // (a cursor needs the unique key as the last sort field)
+        solrQuery.setSort(SortClause.desc(SearchFields.TYPE));
+        solrQuery.addSort(SortClause.asc(SearchFields.ID));
+        for (String filterQuery : filterQueries) {
+            solrQuery.addFilterQuery(filterQuery);
+        }
+        String permissionFilterQuery = this.getPermissionFilterQuery(dataverseRequest, solrQuery, null, false, false);
+        if (permissionFilterQuery != null) {
+            solrQuery.addFilterQuery(permissionFilterQuery);
+        }
+        solrQuery.setRows(numResultsPerPage);
+
+        String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+        while (true) {
+            solrQuery.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+            QueryResponse queryResponse;
+            try {
+                // (POST, since the filter queries may be long lists of ids)
+                queryResponse = solrClientService.getSolrClient().query(solrQuery, SolrRequest.METHOD.POST);
+            } catch (SolrServerException | IOException | RemoteSolrException ex) {
+                throw new SearchException("Internal Dataverse Search Engine Error", ex);
+            }
+            List<SolrSearchResult> page = new ArrayList<>();
+            for (SolrDocument solrDocument : queryResponse.getResults()) {
+                String nameSort = (String) solrDocument.getFieldValue(SearchFields.NAME_SORT);
+                SolrSearchResult solrSearchResult = new SolrSearchResult(query, nameSort);
+                solrSearchResult.setId((String) solrDocument.getFieldValue(SearchFields.ID));
+                solrSearchResult.setEntityId((Long) solrDocument.getFieldValue(SearchFields.ENTITY_ID));
+                solrSearchResult.setType((String) solrDocument.getFieldValue(SearchFields.TYPE));
+                solrSearchResult.setNameSort(nameSort);
+                page.add(solrSearchResult);
+            }
+            if (!page.isEmpty()) {
+                pageConsumer.accept(page);
+            }
+            String nextCursorMark = queryResponse.getNextCursorMark();
+            if (nextCursorMark == null || nextCursorMark.equals(cursorMark)) {
+                return;
+            }
+            cursorMark = nextCursorMark;
+        }
+    }
+
+    /**
+     * Looks up the entities of the results all at once, rather than one at a
+     * time.
+     */
+    private void retrieveEntities(List<SolrSearchResult> solrSearchResults) {
+        Set<Long> entityIds = new HashSet<>();
+        for (SolrSearchResult solrSearchResult : solrSearchResults) {
+            if (solrSearchResult.getEntityId() != null) {
+                entityIds.add(solrSearchResult.getEntityId());
+            }
+        }
+        Map<Long, DvObject> entities = new HashMap<>();
+        for (DvObject entity : dvObjectService.findByIds(entityIds)) {
+            entities.put(entity.getId(), entity);
+        }
+        for (SolrSearchResult solrSearchResult : solrSearchResults) {
+            solrSearchResult.setEntity(entities.get(solrSearchResult.getEntityId()));
+        }
+    }
+
     /**
      * Moved this logic out of the "search" function
      *
@@ -1006,7 +1076,7 @@ public class SearchServiceBean {
         
         if (user instanceof GuestUser) {
             // Yes, GuestUser may be part of one or more groups; such as IP Groups.
-            groups = groupService.collectAncestors(groupService.groupsFor(dataverseRequest));
+            groups = searchCacheService.findGroups(dataverseRequest);
         } else {
             if (!(user instanceof AuthenticatedUser)) {
                 logger.severe("Should never reach here. A User must be an AuthenticatedUser or a Guest");
@@ -1046,7 +1116,7 @@ public class SearchServiceBean {
             // (5) Work with Authenticated User who is not a Superuser
             // ----------------------------------------------------
 
-            groups = groupService.collectAncestors(groupService.groupsFor(dataverseRequest));
+            groups = searchCacheService.findGroups(dataverseRequest);
         }
         
         if (FeatureFlags.AVOID_EXPENSIVE_SOLR_JOIN.enabled()) {
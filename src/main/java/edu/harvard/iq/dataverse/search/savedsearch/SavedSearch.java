@@ -3,6 +3,7 @@ package edu.harvard.iq.dataverse.search.savedsearch;
 import edu.harvard.iq.dataverse.Dataverse;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import java.io.Serializable;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
 import jakarta.persistence.CascadeType;
@@ -49,6 +50,12 @@ public class SavedSearch implements Serializable {
     @JoinColumn(nullable = false)
     private AuthenticatedUser creator;
 
+    /**
+     * When the links of the saved search were last all made; the next time,
+     * only the objects indexed since then are searched.
+     */
+    private Timestamp lastLinkTime;
+
     public List<String> getFilterQueriesAsStrings() {
         List<String> filterQueries = new ArrayList<>();
         for (SavedSearchFilterQuery filterQueryToAdd : getSavedSearchFilterQueries()) {
@@ -114,6 +121,14 @@ public class SavedSearch implements Serializable {
         this.creator = creator;
     }
 
+    public Timestamp getLastLinkTime() {
+        return lastLinkTime;
+    }
+
+    public void setLastLinkTime(Timestamp lastLinkTime) {
+        this.lastLinkTime = lastLinkTime;
+    }
+
     public List<SavedSearchFilterQuery> getSavedSearchFilterQueries() {
         return savedSearchFilterQueries;
     }
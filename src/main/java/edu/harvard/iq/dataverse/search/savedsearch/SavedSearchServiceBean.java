@@ -11,23 +11,34 @@ import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.authorization.users.GuestUser;
 import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import edu.harvard.iq.dataverse.search.SearchServiceBean;
-import edu.harvard.iq.dataverse.search.SolrQueryResponse;
 import edu.harvard.iq.dataverse.search.SolrSearchResult;
 import edu.harvard.iq.dataverse.engine.command.exception.CommandException;
 import edu.harvard.iq.dataverse.engine.command.impl.LinkDatasetCommand;
 import edu.harvard.iq.dataverse.engine.command.impl.LinkDataverseCommand;
 import edu.harvard.iq.dataverse.search.SearchException;
 import edu.harvard.iq.dataverse.search.SearchFields;
-import edu.harvard.iq.dataverse.search.SortBy;
 import edu.harvard.iq.dataverse.util.SystemConfig;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import jakarta.annotation.Resource;
 import jakarta.ejb.EJB;
+import jakarta.ejb.EJBException;
 import jakarta.ejb.Schedule;
+import jakarta.ejb.SessionContext;
 import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
 import jakarta.inject.Named;
 import jakarta.json.Json;
 import jakarta.json.JsonArrayBuilder;
@@ -53,11 +64,20 @@ public class SavedSearchServiceBean {
     EjbDataverseEngine commandEngine;
     @EJB
     SystemConfig systemConfig;
+    @Resource
+    SessionContext sessionContext;
 
     private final String resultString = "result";
 
+    private static final int PAGE_SIZE = 1000;
+    // beyond this many objects indexed since the last run, everything is searched
+    private static final int MAX_IDS_INDEXED_SINCE = 10000;
+    // how long before the last run to look for objects indexed: they may not
+    // have been searchable yet at the time
+    private static final long INDEX_TIME_MARGIN = 10 * 60 * 1000L;
+
     @PersistenceContext(unitName = "VDCNet-ejbPU")
-    private EntityManager em;
+    EntityManager em;
 
     public SavedSearch find(long id) {
         TypedQuery<SavedSearch> typedQuery = em.createQuery("SELECT OBJECT(o) FROM SavedSearch AS o WHERE o.id = :id", SavedSearch.class);
@@ -130,26 +150,48 @@ public class SavedSearchServiceBean {
         if (systemConfig.isTimerServer()) {
             logger.info("Linking saved searches");
             try {
-                JsonObjectBuilder makeLinksForAllSavedSearches = makeLinksForAllSavedSearches(false);
+                JsonObjectBuilder makeLinksForAllSavedSearches = sessionContext.getBusinessObject(SavedSearchServiceBean.class)
+                        .makeLinksForAllSavedSearches(false, false);
             } catch (SearchException | CommandException ex) {
                 Logger.getLogger(SavedSearchServiceBean.class.getName()).log(Level.SEVERE, null, ex);
             }       
         }
     }
 
-    public JsonObjectBuilder makeLinksForAllSavedSearches(boolean debugFlag) throws SearchException, CommandException {
+    /**
+     * Runs the saved searches one after the other, each in a transaction of
+     * its own; only on the objects indexed since the last time they were run,
+     * unless {@code full}. They are all recorded as run at the start of the
+     * run, so that the next run looks them up together, and misses none of
+     * the objects indexed while it lasted.
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public JsonObjectBuilder makeLinksForAllSavedSearches(boolean debugFlag, boolean full) throws SearchException, CommandException {
         JsonObjectBuilder response = Json.createObjectBuilder();
         List<SavedSearch> allSavedSearches = findAll();
         JsonArrayBuilder savedSearchArrayBuilder = Json.createArrayBuilder();
+        SavedSearchServiceBean self = sessionContext.getBusinessObject(SavedSearchServiceBean.class);
+        Timestamp runTime = new Timestamp(System.currentTimeMillis());
+        // (the saved searches last run at the same time are run on the same objects)
+        Map<Timestamp, List<Long>> idsIndexedSince = new HashMap<>();
         for (SavedSearch savedSearch : allSavedSearches) {
             DataverseRequest dataverseRequest = new DataverseRequest(savedSearch.getCreator(), getHttpServletRequest());
-            JsonObjectBuilder perSavedSearchResponse = makeLinksForSingleSavedSearch(dataverseRequest, savedSearch, debugFlag);
+            JsonObjectBuilder perSavedSearchResponse = self.makeLinksForSingleSavedSearch(dataverseRequest, savedSearch, debugFlag, full,
+                    idsIndexedSince, runTime);
             savedSearchArrayBuilder.add(perSavedSearchResponse);
         }
         response.add("hits by saved search", savedSearchArrayBuilder);
         return response;
     }
 
+    public JsonObjectBuilder makeLinksForSingleSavedSearch(DataverseRequest dvReq, SavedSearch savedSearch, boolean debugFlag) throws SearchException, CommandException {
+        return makeLinksForSingleSavedSearch(dvReq, savedSearch, debugFlag, false);
+    }
+
+    public JsonObjectBuilder makeLinksForSingleSavedSearch(DataverseRequest dvReq, SavedSearch savedSearch, boolean debugFlag, boolean full) throws SearchException, CommandException {
+        return makeLinksForSingleSavedSearch(dvReq, savedSearch, debugFlag, full, new HashMap<>(), new Timestamp(System.currentTimeMillis()));
+    }
+
     /**
      * The "Saved Search" and highly related "Linked Dataverses and Linked
      * Datasets" features can be thought of as periodic execution of the
@@ -162,18 +204,28 @@ public class SavedSearchServiceBean {
      * if the users loses the permission that the command requires? Should the
      * commands continue to be executed periodically as some "system" user?
      *
+     * Once the saved search has been run, and all its hits linked, only the
+     * objects indexed since then are searched the next time (unless
+     * {@code full}). The hits are looked up and linked a page at a time. So a
+     * link removed since is not made again, unless the object it linked to is
+     * indexed again, or the saved search is run in full.
+     *
+     * @param idsIndexedSince the ids of the objects indexed since a given
+     * time, as looked up so far; shared by the saved searches of a run.
+     * @param runTime when the run started: recorded as the last link time of
+     * the saved search, if all its hits were linked.
      * @return Debug information in the form of a JSON object, which is much
      * more structured that a simple String.
      */
-    public JsonObjectBuilder makeLinksForSingleSavedSearch(DataverseRequest dvReq, SavedSearch savedSearch, boolean debugFlag) throws SearchException, CommandException {
+    public JsonObjectBuilder makeLinksForSingleSavedSearch(DataverseRequest dvReq, SavedSearch savedSearch, boolean debugFlag, boolean full,
+            Map<Timestamp, List<Long>> idsIndexedSince, Timestamp runTime) throws SearchException, CommandException {
         logger.info("SAVED SEARCH (" + savedSearch.getId() + ") START search and link process");
         Date start = new Date();
         JsonObjectBuilder response = Json.createObjectBuilder();
         JsonArrayBuilder savedSearchArrayBuilder = Json.createArrayBuilder();
         JsonArrayBuilder infoPerHit = Json.createArrayBuilder();
-        SolrQueryResponse queryResponse = findHits(savedSearch);
 
-        List skipList = new ArrayList(); // a list for the definition point itself and already linked objects
+        Set<Long> skipList = new HashSet<>(); // the definition point itself and already linked objects
         skipList.add(savedSearch.getDefinitionPoint().getId());
         
         TypedQuery<Long> typedQuery = em.createNamedQuery("DataverseLinkingDataverse.findIdsByLinkingDataverseId", Long.class)
@@ -183,93 +235,186 @@ public class SavedSearchServiceBean {
         typedQuery = em.createNamedQuery("DatasetLinkingDataverse.findIdsByLinkingDataverseId", Long.class)
             .setParameter("linkingDataverseId", savedSearch.getDefinitionPoint().getId());
         skipList.addAll(typedQuery.getResultList());
-           
-        for (SolrSearchResult solrSearchResult : queryResponse.getSolrSearchResults()) {
+
+        // since saved search can only link Dataverses and Datasets, we can limit our search
+        List<String> searchFilterQueries = savedSearch.getFilterQueriesAsStrings();
+        searchFilterQueries.add("dvObjectType:(dataverses OR datasets)");
+        Timestamp indexedSince = full ? null : savedSearch.getLastLinkTime();
+        boolean search = true;
+        if (indexedSince != null) {
+            List<Long> ids = idsIndexedSince.computeIfAbsent(indexedSince, this::findIdsIndexedSince);
+            if (ids.isEmpty()) {
+                search = false;
+            } else if (ids.size() <= MAX_IDS_INDEXED_SINCE) {
+                searchFilterQueries.add("{!terms f=" + SearchFields.ENTITY_ID + "}"
+                        + ids.stream().map(String::valueOf).collect(Collectors.joining(",")));
+            } else {
+                // (as good as all of them)
+                indexedSince = null;
+            }
+        }
+
+        AtomicInteger failed = new AtomicInteger();
+        if (search) {
+            SavedSearchServiceBean self = sessionContext.getBusinessObject(SavedSearchServiceBean.class);
+            // run the search as GuestUser to only link published objects
+            searchService.searchPages(new DataverseRequest(GuestUser.get(), getHttpServletRequest()), savedSearch.getQuery(),
+                    searchFilterQueries, PAGE_SIZE,
+                    page -> failed.addAndGet(linkHits(self, dvReq, savedSearch.getDefinitionPoint(), page, skipList, infoPerHit)));
+        }
+        if (failed.get() == 0) {
+            // (otherwise, the hits that couldn't be linked are searched again the next time)
+            setLastLinkTime(savedSearch, runTime);
+        }
+        
+        JsonObjectBuilder info = getInfo(savedSearch, infoPerHit);
+        if (indexedSince != null) {
+            info.add("indexedSince", indexedSince.toString());
+        }
+        if (debugFlag) {
+            info.add("debug", getDebugInfo(savedSearch));
+        }
+        savedSearchArrayBuilder.add(info);
+        response.add("hits for saved search id " + savedSearch.getId(), savedSearchArrayBuilder);
+        
+        logger.info("SAVED SEARCH (" + savedSearch.getId() + ") total time in ms: " + (new Date().getTime() - start.getTime()));
+        return response;
+    }
+
+    /**
+     * Links the definition point to the hits of a page that aren't linked yet,
+     * all in a single transaction; or one at a time, if that fails.
+     *
+     * @return the number of hits that could not be linked.
+     */
+    private int linkHits(SavedSearchServiceBean self, DataverseRequest dvReq, Dataverse definitionPoint, List<SolrSearchResult> page,
+            Set<Long> skipList, JsonArrayBuilder infoPerHit) {
+        Map<Long, DvObject> dvObjects = new HashMap<>();
+        for (DvObject dvObject : dvObjectService.findByIds(page.stream().map(SolrSearchResult::getEntityId)
+                .filter(id -> !skipList.contains(id)).collect(Collectors.toSet()))) {
+            dvObjects.put(dvObject.getId(), dvObject);
+        }
+
+        List<JsonObjectBuilder> hitInfos = new ArrayList<>();
+        Map<Long, JsonObjectBuilder> hitInfosToLink = new HashMap<>();
+        List<DvObject> toLink = new ArrayList<>();
+        for (SolrSearchResult solrSearchResult : page) {
 
             JsonObjectBuilder hitInfo = Json.createObjectBuilder();
             hitInfo.add("name", solrSearchResult.getNameSort());
             hitInfo.add("dvObjectId", solrSearchResult.getEntityId());
+            hitInfos.add(hitInfo);
             
             if (skipList.contains(solrSearchResult.getEntityId())) {
                 hitInfo.add(resultString, "Skipping because would link to itself or an already linked entity.");
-                infoPerHit.add(hitInfo);
                 continue;
             }
 
-            DvObject dvObjectThatDefinitionPointWillLinkTo = dvObjectService.findDvObject(solrSearchResult.getEntityId());
+            DvObject dvObjectThatDefinitionPointWillLinkTo = dvObjects.get(solrSearchResult.getEntityId());
             if (dvObjectThatDefinitionPointWillLinkTo == null) {
                 hitInfo.add(resultString, "Could not find DvObject with id " + solrSearchResult.getEntityId());
-                infoPerHit.add(hitInfo);
                 continue;
             }   
                     
             if (dvObjectThatDefinitionPointWillLinkTo.isInstanceofDataverse()) {
                 Dataverse dataverseToLinkTo = (Dataverse) dvObjectThatDefinitionPointWillLinkTo;
-                if (dataverseToLinkToIsAlreadyPartOfTheSubtree(savedSearch.getDefinitionPoint(), dataverseToLinkTo)) {
-                    hitInfo.add(resultString, "Skipping because " + dataverseToLinkTo + " is already part of the subtree for " + savedSearch.getDefinitionPoint());
+                if (dataverseToLinkToIsAlreadyPartOfTheSubtree(definitionPoint, dataverseToLinkTo)) {
+                    hitInfo.add(resultString, "Skipping because " + dataverseToLinkTo + " is already part of the subtree for " + definitionPoint);
                 } else {
-                    DataverseLinkingDataverse link = commandEngine.submitInNewTransaction(new LinkDataverseCommand(dvReq, savedSearch.getDefinitionPoint(), dataverseToLinkTo));
-                    hitInfo.add(resultString, "Persisted DataverseLinkingDataverse id " + link.getId() + " link of " + dataverseToLinkTo + " to " + savedSearch.getDefinitionPoint());
+                    toLink.add(dataverseToLinkTo);
+                    hitInfosToLink.put(dataverseToLinkTo.getId(), hitInfo);
                 }
             } else if (dvObjectThatDefinitionPointWillLinkTo.isInstanceofDataset()) {
                 Dataset datasetToLinkTo = (Dataset) dvObjectThatDefinitionPointWillLinkTo;
-                if (datasetToLinkToIsAlreadyPartOfTheSubtree(savedSearch.getDefinitionPoint(), datasetToLinkTo)) {
+                if (datasetToLinkToIsAlreadyPartOfTheSubtree(definitionPoint, datasetToLinkTo)) {
                     // already there from normal search/browse
-                    hitInfo.add(resultString, "Skipping because dataset " + datasetToLinkTo.getId() + " is already part of the subtree for " + savedSearch.getDefinitionPoint().getAlias());
-                } else if (datasetAncestorAlreadyLinked(savedSearch.getDefinitionPoint(), datasetToLinkTo)) {
+                    hitInfo.add(resultString, "Skipping because dataset " + datasetToLinkTo.getId() + " is already part of the subtree for " + definitionPoint.getAlias());
+                } else if (datasetAncestorAlreadyLinked(definitionPoint, datasetToLinkTo)) {
                     hitInfo.add(resultString, "FIXME: implement this?");
                 }
                 else {
-                    DatasetLinkingDataverse link = commandEngine.submitInNewTransaction(new LinkDatasetCommand(dvReq, savedSearch.getDefinitionPoint(), datasetToLinkTo));
-                    hitInfo.add(resultString, "Persisted DatasetLinkingDataverse id " + link.getId() + " link of " + link.getDataset() + " to " + link.getLinkingDataverse());
+                    toLink.add(datasetToLinkTo);
+                    hitInfosToLink.put(datasetToLinkTo.getId(), hitInfo);
                 }
             } else {
                 hitInfo.add(resultString, "Unexpected DvObject type.");
             }
-            infoPerHit.add(hitInfo);
+            // (whatever the outcome, a hit is looked at only once)
+            skipList.add(solrSearchResult.getEntityId());
         }
-        
-        JsonObjectBuilder info = getInfo(savedSearch, infoPerHit);
-        if (debugFlag) {
-            info.add("debug", getDebugInfo(savedSearch));
+
+        int failed = 0;
+        if (!toLink.isEmpty()) {
+            Map<Long, String> results;
+            try {
+                results = self.link(dvReq, definitionPoint, toLink);
+            } catch (CommandException | EJBException ex) {
+                logger.log(Level.FINE, "Could not link the page of hits at once; linking them one at a time", ex);
+                results = new HashMap<>();
+                for (DvObject dvObject : toLink) {
+                    try {
+                        results.putAll(self.link(dvReq, definitionPoint, List.of(dvObject)));
+                    } catch (CommandException | EJBException e) {
+                        failed++;
+                        results.put(dvObject.getId(), "Could not link " + dvObject + " to " + definitionPoint + ": " + e.getLocalizedMessage());
+                    }
+                }
+            }
+            for (DvObject dvObject : toLink) {
+                hitInfosToLink.get(dvObject.getId()).add(resultString, results.get(dvObject.getId()));
+            }
         }
-        savedSearchArrayBuilder.add(info);
-        response.add("hits for saved search id " + savedSearch.getId(), savedSearchArrayBuilder);
-        
-        logger.info("SAVED SEARCH (" + savedSearch.getId() + ") total time in ms: " + (new Date().getTime() - start.getTime()));
-        return response;
+        hitInfos.forEach(infoPerHit::add);
+        return failed;
     }
 
-    private SolrQueryResponse findHits(SavedSearch savedSearch) throws SearchException {
-        String sortField = SearchFields.TYPE; // first return dataverses, then datasets
-        String sortOrder = SortBy.DESCENDING;
-        SortBy sortBy = new SortBy(sortField, sortOrder);
-        int paginationStart = 0;
-        boolean dataRelatedToMe = false;
-        int numResultsPerPage = Integer.MAX_VALUE;
-        List<Dataverse> dataverses = new ArrayList<>();
-        dataverses.add(savedSearch.getDefinitionPoint());
-        
-        // since saved search can only link Dataverses and Datasets, we can limit our search
-        List<String> searchFilterQueries = savedSearch.getFilterQueriesAsStrings();        
-        searchFilterQueries.add("dvObjectType:(dataverses OR datasets)");
-                        
-        // run the search as GuestUser to only link published objects
-        SolrQueryResponse solrQueryResponse = searchService.search(
-                new DataverseRequest(GuestUser.get(), getHttpServletRequest()),
-                dataverses,
-                savedSearch.getQuery(),
-                searchFilterQueries,
-                sortBy.getField(),
-                sortBy.getOrder(),
-                paginationStart,
-                dataRelatedToMe,
-                numResultsPerPage,
-                false, // do not retrieve entities
-                null,
-                null
-        );
-        return solrQueryResponse;
+    /**
+     * Links the definition point to the dataverses and datasets, in a
+     * transaction of its own.
+     *
+     * @return what was done, by the id of the object linked to.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public Map<Long, String> link(DataverseRequest dvReq, Dataverse definitionPoint, List<DvObject> dvObjects) throws CommandException {
+        Map<Long, Object> links = new LinkedHashMap<>();
+        for (DvObject dvObject : dvObjects) {
+            if (dvObject.isInstanceofDataverse()) {
+                links.put(dvObject.getId(), commandEngine.submit(new LinkDataverseCommand(dvReq, definitionPoint, (Dataverse) dvObject)));
+            } else {
+                links.put(dvObject.getId(), commandEngine.submit(new LinkDatasetCommand(dvReq, definitionPoint, (Dataset) dvObject)));
+            }
+        }
+        em.flush(); // for the ids of the links
+        Map<Long, String> results = new HashMap<>();
+        for (Map.Entry<Long, Object> link : links.entrySet()) {
+            if (link.getValue() instanceof DataverseLinkingDataverse dataverseLink) {
+                results.put(link.getKey(), "Persisted DataverseLinkingDataverse id " + dataverseLink.getId() + " link of " + dataverseLink.getDataverse() + " to " + definitionPoint);
+            } else if (link.getValue() instanceof DatasetLinkingDataverse datasetLink) {
+                results.put(link.getKey(), "Persisted DatasetLinkingDataverse id " + datasetLink.getId() + " link of " + datasetLink.getDataset() + " to " + datasetLink.getLinkingDataverse());
+            }
+        }
+        return results;
+    }
+
+    private void setLastLinkTime(SavedSearch savedSearch, Timestamp lastLinkTime) {
+        savedSearch.setLastLinkTime(lastLinkTime);
+        if (!em.contains(savedSearch)) {
+            em.createNativeQuery("UPDATE savedsearch SET lastlinktime = ?1 WHERE id = ?2")
+                    .setParameter(1, lastLinkTime)
+                    .setParameter(2, savedSearch.getId())
+                    .executeUpdate();
+        }
+    }
+
+    /**
+     * @return the ids of the dataverses and datasets indexed since then; or
+     * shortly before, in case they weren't searchable yet.
+     */
+    private List<Long> findIdsIndexedSince(Timestamp since) {
+        List<Number> ids = em.createNativeQuery("SELECT id FROM dvobject WHERE dtype IN ('Dataverse', 'Dataset') AND indextime >= ?1")
+                .setParameter(1, new Timestamp(since.getTime() - INDEX_TIME_MARGIN))
+                .getResultList();
+        return ids.stream().map(Number::longValue).toList();
     }
 
     private JsonObjectBuilder getInfo(SavedSearch savedSearch, JsonArrayBuilder infoPerHit) {
@@ -91,6 +91,18 @@ public enum FeatureFlags {
      * @since Dataverse 6.3
      */
     DISABLE_RETURN_TO_AUTHOR_REASON("disable-return-to-author-reason"),
+    /**
+     * With this flag enabled, CSV and TSV files are ingested in a single pass:
+     * the column types are inferred while the file is read, and the
+     * tab-delimited file is written directly, instead of first writing a
+     * temporary copy of the file and then parsing it again. Only the columns
+     * whose type turns out to be wider than initially assumed are re-written.
+     *
+     * @apiNote Raise flag by setting
+     * "dataverse.feature.csv-single-pass-ingest"
+     * @since Dataverse @TODO:
+     */
+    CSV_SINGLE_PASS_INGEST("csv-single-pass-ingest"),
     ;
     
     final String flag;
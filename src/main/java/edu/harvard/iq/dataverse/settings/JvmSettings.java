@@ -51,11 +51,46 @@ public enum JvmSettings {
     DOCROOT_DIRECTORY(SCOPE_FILES, "docroot"),
     GUESTBOOK_AT_REQUEST(SCOPE_FILES, "guestbook-at-request"),
     GLOBUS_CACHE_MAXAGE(SCOPE_FILES, "globus-cache-maxage"),
+    
+    // FILE VALIDATION (ON PUBLICATION) SETTINGS
+    SCOPE_FILES_VALIDATION(SCOPE_FILES, "validation"),
+    FILES_VALIDATION_INCREMENTAL(SCOPE_FILES_VALIDATION, "incremental"),
+    FILES_VALIDATION_THREADS(SCOPE_FILES_VALIDATION, "threads"),
+    FILES_VALIDATION_MAX_READ_RATE(SCOPE_FILES_VALIDATION, "max-read-rate"),
+    
+    // FILE REGISTRATION (ADDFILES API, GLOBUS) SETTINGS
+    SCOPE_FILES_REGISTRATION(SCOPE_FILES, "registration"),
+    FILES_REGISTRATION_THREADS(SCOPE_FILES_REGISTRATION, "threads"),
+    
+    // FILE DELETION (FROM THE STORAGE) SETTINGS
+    SCOPE_FILES_DELETION(SCOPE_FILES, "deletion"),
+    FILES_DELETION_INTERVAL(SCOPE_FILES_DELETION, "interval"),
+    FILES_DELETION_BATCH_SIZE(SCOPE_FILES_DELETION, "batch-size"),
+    FILES_DELETION_THREADS(SCOPE_FILES_DELETION, "threads"),
+    FILES_DELETION_MAX_ATTEMPTS(SCOPE_FILES_DELETION, "max-attempts"),
+    
+    // MULTIPART (DIRECT) UPLOAD SETTINGS
+    SCOPE_FILES_MULTIPART_UPLOADS(SCOPE_FILES, "multipart-uploads"),
+    FILES_MULTIPART_UPLOADS_TARGET_PARTS(SCOPE_FILES_MULTIPART_UPLOADS, "target-parts"),
+    FILES_MULTIPART_UPLOADS_MAX_IDLE(SCOPE_FILES_MULTIPART_UPLOADS, "max-idle"),
 
     //STORAGE DRIVER SETTINGS
     SCOPE_DRIVER(SCOPE_FILES),
     DISABLE_S3_TAGGING(SCOPE_DRIVER, "disable-tagging"),
     
+    // INGEST SETTINGS
+    SCOPE_INGEST(PREFIX, "ingest"),
+    INGEST_CSV_PARALLEL_THREADS(SCOPE_INGEST, "csv-parallel-threads"),
+    INGEST_WORKERS(SCOPE_INGEST, "workers"),
+    INGEST_MEMORY_BUDGET(SCOPE_INGEST, "memory-budget"),
+    INGEST_SMALL_FILE_SIZE(SCOPE_INGEST, "small-file-size"),
+    INGEST_RESUME_ON_STARTUP(SCOPE_INGEST, "resume-on-startup"),
+    
+    // METADATA EXPORT SETTINGS
+    SCOPE_EXPORT(PREFIX, "export"),
+    EXPORT_WORKERS(SCOPE_EXPORT, "workers"),
+    EXPORT_FORMAT_THREADS(SCOPE_EXPORT, "format-threads"),
+    
     // SOLR INDEX SETTINGS
     SCOPE_SOLR(PREFIX, "solr"),
     SOLR_HOST(SCOPE_SOLR, "host"),
@@ -68,6 +103,18 @@ public enum JvmSettings {
     SCOPE_SOLR_CONCURENCY(SCOPE_SOLR, "concurrency"),
     MAX_ASYNC_INDEXES(SCOPE_SOLR_CONCURENCY, "max-async-indexes"),
 
+    // SEARCH SETTINGS
+    SCOPE_SEARCH(PREFIX, "search"),
+    SEARCH_FIELD_TYPES_TTL(SCOPE_SEARCH, "field-types-ttl"),
+    SEARCH_GROUPS_TTL(SCOPE_SEARCH, "groups-ttl"),
+
+    // WORKFLOW SETTINGS
+    SCOPE_WORKFLOWS(PREFIX, "workflows"),
+    WORKFLOWS_MAX_PARALLEL_STEPS(SCOPE_WORKFLOWS, "max-parallel-steps"),
+    WORKFLOWS_STEP_TIMEOUT(SCOPE_WORKFLOWS, "step-timeout"),
+    WORKFLOWS_NODE_ID(SCOPE_WORKFLOWS, "node-id"),
+    WORKFLOWS_HEARTBEAT_TIMEOUT(SCOPE_WORKFLOWS, "heartbeat-timeout"),
+
     // RSERVE CONNECTION
     SCOPE_RSERVE(PREFIX, "rserve"),
     RSERVE_HOST(SCOPE_RSERVE, "host"),
@@ -110,6 +157,9 @@ public enum JvmSettings {
     PID_PROVIDER_DATAFILE_PID_FORMAT(SCOPE_PID_PROVIDER, "datafile-pid-format"),
     PID_PROVIDER_MANAGED_LIST(SCOPE_PID_PROVIDER, "managed-list"),
     PID_PROVIDER_EXCLUDED_LIST(SCOPE_PID_PROVIDER, "excluded-list"),
+    PID_PROVIDER_MAX_CONCURRENT_REQUESTS(SCOPE_PID_PROVIDER, "max-concurrent-requests"),
+    PID_PROVIDER_MAX_REQUESTS_PER_SECOND(SCOPE_PID_PROVIDER, "max-requests-per-second"),
+    PID_PROVIDER_MAX_RETRIES(SCOPE_PID_PROVIDER, "max-retries"),
 
         
     // PROVIDER EZID - these settings were formerly kept together with DataCite ones
@@ -209,6 +259,12 @@ public enum JvmSettings {
     MAIL_MTA_SUPPORT_UTF8(SCOPE_MAIL_MTA, "allow-utf8-addresses"),
     // Placeholder setting for a large list of extra settings
     MAIL_MTA_SETTING(SCOPE_MAIL_MTA),
+    // Outbox settings
+    SCOPE_MAIL_OUTBOX(SCOPE_MAIL, "outbox"),
+    MAIL_OUTBOX_INTERVAL(SCOPE_MAIL_OUTBOX, "interval"),
+    MAIL_OUTBOX_BATCH_SIZE(SCOPE_MAIL_OUTBOX, "batch-size"),
+    MAIL_OUTBOX_MAX_ATTEMPTS(SCOPE_MAIL_OUTBOX, "max-attempts"),
+    MAIL_OUTBOX_DIGEST_TYPES(SCOPE_MAIL_OUTBOX, "digest-types"),
     
     // AUTH SETTINGS
     SCOPE_AUTH(PREFIX, "auth"),
@@ -246,6 +302,32 @@ public enum JvmSettings {
     // STORAGE USE SETTINGS
     SCOPE_STORAGEUSE(PREFIX, "storageuse"),
     STORAGEUSE_DISABLE_UPDATES(SCOPE_STORAGEUSE, "disable-storageuse-increments"),
+
+    // SHARED (SECOND LEVEL) CACHE SETTINGS
+    SCOPE_CACHE(PREFIX, "cache"),
+    SCOPE_CACHE_SHARED(SCOPE_CACHE, "shared"),
+    CACHE_SHARED_ENTITIES(SCOPE_CACHE_SHARED, "entities"),
+    CACHE_SHARED_TTL(SCOPE_CACHE_SHARED, "ttl"),
+    CACHE_SHARED_COORDINATION(SCOPE_CACHE_SHARED, "coordination"),
+    CACHE_SHARED_POLL_INTERVAL(SCOPE_CACHE_SHARED, "poll-interval"),
+    SCOPE_CACHE_RATE_LIMIT(SCOPE_CACHE, "rate-limit"),
+    CACHE_RATE_LIMIT_RECONCILE_INTERVAL(SCOPE_CACHE_RATE_LIMIT, "reconcile-interval"),
+    SCOPE_CACHE_DATASET_LOCKS(SCOPE_CACHE, "dataset-locks"),
+    CACHE_DATASET_LOCKS_TTL(SCOPE_CACHE_DATASET_LOCKS, "ttl"),
+
+    // DOWNLOAD COUNTS SETTINGS
+    SCOPE_DOWNLOADCOUNTS(PREFIX, "download-counts"),
+    DOWNLOADCOUNTS_FLUSH_INTERVAL(SCOPE_DOWNLOADCOUNTS, "flush-interval"),
+
+    // DOWNLOAD EVENTS SETTINGS
+    SCOPE_DOWNLOAD_EVENTS(PREFIX, "download-events"),
+    DOWNLOAD_EVENTS_DIRECTORY(SCOPE_DOWNLOAD_EVENTS, "directory"),
+    DOWNLOAD_EVENTS_FLUSH_INTERVAL(SCOPE_DOWNLOAD_EVENTS, "flush-interval"),
+    DOWNLOAD_EVENTS_MAX_PENDING(SCOPE_DOWNLOAD_EVENTS, "max-pending"),
+
+    // DATASET EVENTS SETTINGS
+    SCOPE_DATASET_EVENTS(PREFIX, "dataset-events"),
+    DATASET_EVENTS_MAX_SUBSCRIBERS(SCOPE_DATASET_EVENTS, "max-subscribers"),
     ;
 
     private static final String SCOPE_SEPARATOR = ".";
@@ -0,0 +1,290 @@
+package edu.harvard.iq.dataverse.storageuse;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.DatasetServiceBean;
+import edu.harvard.iq.dataverse.DvObject;
+import edu.harvard.iq.dataverse.dataaccess.AuxObjectLedger;
+import edu.harvard.iq.dataverse.dataaccess.DataAccess;
+import edu.harvard.iq.dataverse.dataaccess.StorageIO;
+import edu.harvard.iq.dataverse.export.ExportService;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.Asynchronous;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.DependsOn;
+import jakarta.ejb.EJB;
+import jakarta.ejb.SessionContext;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * Keeps the sizes of the auxiliary objects of the datafiles and datasets
+ * (saved originals, thumbnails, cached format conversions and metadata
+ * exports...) in the auxobjectsize table, as the storage drivers save and
+ * delete them; so that the storage taken by the cached extras of a dataset is
+ * a sum in the database, instead of a listing of the storage.
+ *
+ * The objects saved before the ledger was there (or that it missed) are
+ * listed from the storage the first time the size of a dataset is needed, or
+ * by the reconciliation API; the datasets already listed are in the
+ * auxobjectsizereconciliation table. The auxiliary objects of the files not
+ * committed yet (e.g. the thumbnails saved while the files are uploaded) are
+ * recorded once they are; or, if they are still not by the end of the
+ * transaction, their dataset is listed again the next time.
+ */
+@Singleton
+@Startup
+@DependsOn("StartupFlywayMigrator")
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class AuxObjectSizeServiceBean implements AuxObjectLedger {
+
+    private static final Logger logger = Logger.getLogger(AuxObjectSizeServiceBean.class.getCanonicalName());
+
+    @PersistenceContext(unitName = "VDCNet-ejbPU")
+    EntityManager em;
+    @Resource
+    SessionContext sessionContext;
+    @Resource
+    TransactionSynchronizationRegistry transactionRegistry;
+    @EJB
+    DatasetServiceBean datasetService;
+
+    private AuxObjectSizeServiceBean self;
+
+    @PostConstruct
+    public void init() {
+        // (through the container, for the transactions of the methods below)
+        self = sessionContext.getBusinessObject(AuxObjectSizeServiceBean.class);
+        StorageIO.setAuxObjectLedger(self);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        StorageIO.setAuxObjectLedger(null);
+    }
+
+    /**
+     * Records the size once the current transaction, if any, is over: the
+     * object may only be committed (and get its id) with it.
+     */
+    @Override
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public void auxObjectSaved(DvObject dvObject, String auxItemTag, long size) {
+        if (transactionRegistry.getTransactionKey() == null) {
+            record(dvObject, auxItemTag, size);
+            return;
+        }
+        try {
+            transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    // (the object is in the storage, whether the transaction
+                    // was committed or not)
+                    record(dvObject, auxItemTag, size);
+                }
+            });
+        } catch (IllegalStateException e) {
+            // (the transaction is being committed already)
+            record(dvObject, auxItemTag, size);
+        }
+    }
+
+    /*
+     * Records the size of the auxiliary object; or, if the object isn't
+     * committed (under that id at least), lets its dataset be listed from the
+     * storage again the next time its size is needed.
+     */
+    private void record(DvObject dvObject, String auxItemTag, long size) {
+        try {
+            if (dvObject.getId() != null && self.recordSize(dvObject.getId(), auxItemTag, size) > 0) {
+                return;
+            }
+            DvObject dataset = dvObject instanceof Dataset ? dvObject : dvObject.getOwner();
+            if (dataset instanceof Dataset && dataset.getId() != null) {
+                self.clearReconciliation(dataset.getId());
+            }
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Could not record the size of the auxiliary object " + auxItemTag
+                    + " of " + dvObject.getId(), ex);
+        }
+    }
+
+    /**
+     * @return the number of rows written: 0 if the object isn't committed.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public int recordSize(Long dvObjectId, String auxItemTag, long size) {
+        return em.createNativeQuery("INSERT INTO auxobjectsize (dvobject_id, auxtag, size)"
+                + " SELECT id, ?2, ?3 FROM dvobject WHERE id = ?1"
+                + " ON CONFLICT (dvobject_id, auxtag) DO UPDATE SET size = EXCLUDED.size")
+                .setParameter(1, dvObjectId)
+                .setParameter(2, auxItemTag)
+                .setParameter(3, size)
+                .executeUpdate();
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void clearReconciliation(Long datasetId) {
+        em.createNativeQuery("DELETE FROM auxobjectsizereconciliation WHERE dataset_id = ?1")
+                .setParameter(1, datasetId)
+                .executeUpdate();
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void auxObjectDeleted(Long dvObjectId, String auxItemTag) {
+        em.createNativeQuery("DELETE FROM auxobjectsize WHERE dvobject_id = ?1 AND auxtag = ?2")
+                .setParameter(1, dvObjectId)
+                .setParameter(2, auxItemTag)
+                .executeUpdate();
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void allAuxObjectsDeleted(Long dvObjectId) {
+        em.createNativeQuery("DELETE FROM auxobjectsize WHERE dvobject_id = ?1")
+                .setParameter(1, dvObjectId)
+                .executeUpdate();
+    }
+
+    public boolean isReconciled(Long datasetId) {
+        return !em.createNativeQuery("SELECT 1 FROM auxobjectsizereconciliation WHERE dataset_id = ?1")
+                .setParameter(1, datasetId)
+                .getResultList().isEmpty();
+    }
+
+    /**
+     * @param versionId of the version whose files to count; null for all the
+     * files of the dataset.
+     * @return the sizes of the auxiliary objects of the files, and of the
+     * metadata exports of the dataset, added up.
+     */
+    public long findCachedExtrasSize(Long datasetId, Long versionId) {
+        String filesSql = versionId == null
+                ? "SELECT COALESCE(SUM(a.size), 0) FROM auxobjectsize a JOIN dvobject o ON o.id = a.dvobject_id WHERE o.owner_id = ?1"
+                : "SELECT COALESCE(SUM(a.size), 0) FROM auxobjectsize a JOIN filemetadata fm ON fm.datafile_id = a.dvobject_id WHERE fm.datasetversion_id = ?1";
+        Number files = (Number) em.createNativeQuery(filesSql)
+                .setParameter(1, versionId == null ? datasetId : versionId)
+                .getSingleResult();
+        Number exports = (Number) em.createNativeQuery("SELECT COALESCE(SUM(size), 0) FROM auxobjectsize"
+                + " WHERE dvobject_id = ?1 AND auxtag LIKE 'export\\_%'")
+                .setParameter(1, datasetId)
+                .getSingleResult();
+        return files.longValue() + exports.longValue();
+    }
+
+    /**
+     * Replaces what the ledger has for the dataset with what is in the
+     * storage: the auxiliary objects of its files, and its metadata exports.
+     * Lists the storage outside of any transaction; then replaces the rows in
+     * one.
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void reconcile(Dataset dataset) throws IOException {
+        Map<Long, Map<String, Long>> sizes = new HashMap<>();
+        for (DataFile dataFile : dataset.getFiles()) {
+            StorageIO<DataFile> storageIO = dataFile.getStorageIO();
+            List<String> auxObjects = storageIO.listAuxObjects();
+            Map<String, Long> fileSizes = new HashMap<>();
+            if (auxObjects != null) {
+                for (String auxItemTag : auxObjects) {
+                    fileSizes.put(auxItemTag, storageIO.getAuxObjectSize(auxItemTag));
+                }
+            }
+            sizes.put(dataFile.getId(), fileSizes);
+        }
+        StorageIO<Dataset> datasetSIO = DataAccess.getStorageIO(dataset);
+        Map<String, Long> exportSizes = new HashMap<>();
+        for (String[] exportProvider : ExportService.getInstance().getExportersLabels()) {
+            String exportLabel = "export_" + exportProvider[1] + ".cached";
+            try {
+                exportSizes.put(exportLabel, datasetSIO.getAuxObjectSize(exportLabel));
+            } catch (IOException ioex) {
+                // safe to ignore; object not cached
+            }
+        }
+        sizes.put(dataset.getId(), exportSizes);
+        self.replace(dataset.getId(), sizes);
+    }
+
+    /**
+     * @param sizes of the auxiliary objects, by tag, by id of the file (or
+     * dataset).
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void replace(Long datasetId, Map<Long, Map<String, Long>> sizes) {
+        em.createNativeQuery("DELETE FROM auxobjectsize WHERE dvobject_id IN (SELECT id FROM dvobject WHERE owner_id = ?1)"
+                + " OR (dvobject_id = ?1 AND auxtag LIKE 'export\\_%')")
+                .setParameter(1, datasetId)
+                .executeUpdate();
+        for (Map.Entry<Long, Map<String, Long>> object : sizes.entrySet()) {
+            for (Map.Entry<String, Long> auxObject : object.getValue().entrySet()) {
+                em.createNativeQuery("INSERT INTO auxobjectsize (dvobject_id, auxtag, size) VALUES (?1, ?2, ?3)"
+                        + " ON CONFLICT (dvobject_id, auxtag) DO UPDATE SET size = EXCLUDED.size")
+                        .setParameter(1, object.getKey())
+                        .setParameter(2, auxObject.getKey())
+                        .setParameter(3, auxObject.getValue())
+                        .executeUpdate();
+            }
+        }
+        em.createNativeQuery("INSERT INTO auxobjectsizereconciliation (dataset_id, reconciletime) VALUES (?1, now())"
+                + " ON CONFLICT (dataset_id) DO UPDATE SET reconciletime = EXCLUDED.reconciletime")
+                .setParameter(1, datasetId)
+                .executeUpdate();
+    }
+
+    /**
+     * @return the ids of the (local) datasets; only those not reconciled yet,
+     * unless {@code all}.
+     */
+    public List<Long> findDatasetIdsToReconcile(boolean all) {
+        List<Number> ids = em.createNativeQuery("SELECT d.id FROM dataset d WHERE d.harvestingclient_id IS NULL"
+                + (all ? "" : " AND NOT EXISTS (SELECT 1 FROM auxobjectsizereconciliation r WHERE r.dataset_id = d.id)")
+                + " ORDER BY d.id")
+                .getResultList();
+        return ids.stream().map(Number::longValue).toList();
+    }
+
+    /**
+     * Reconciles the datasets, one after the other, in the background. Called
+     * by the auxObjectSizes/reconcile admin API.
+     */
+    @Asynchronous
+    public void reconcileAll(List<Long> datasetIds) {
+        int failed = 0;
+        for (Long datasetId : datasetIds) {
+            Dataset dataset = datasetService.find(datasetId);
+            if (dataset == null) {
+                continue;
+            }
+            try {
+                self.reconcile(dataset);
+            } catch (Exception ex) {
+                failed++;
+                logger.log(Level.WARNING, "Could not reconcile the sizes of the auxiliary objects of dataset " + datasetId, ex);
+            }
+        }
+        logger.info("Finished reconciling the sizes of the auxiliary objects of " + datasetIds.size() + " datasets ("
+                + failed + " failed).");
+    }
+}
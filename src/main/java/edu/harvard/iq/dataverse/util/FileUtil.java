@@ -1439,6 +1439,10 @@ public class FileUtil implements java.io.Serializable  {
     	return s3io;
     }
     
+    private static InputStream limit(InputStream in, ReadRateLimiter limiter) {
+        return limiter == null ? in : limiter.limit(in);
+    }
+
     private static InputStream getOriginalFileInputStream(StorageIO<DataFile> storage, boolean isTabularData) throws IOException {
         storage.open(DataAccessOption.READ_ACCESS);
         if (!isTabularData) {
@@ -1451,6 +1455,14 @@ public class FileUtil implements java.io.Serializable  {
     }
 
     public static void validateDataFileChecksum(DataFile dataFile) throws IOException {
+        validateDataFileChecksum(dataFile, null);
+    }
+
+    /**
+     * As {@link #validateDataFileChecksum(DataFile)}; reading the file at the
+     * rate allowed by the limiter, if not null.
+     */
+    public static void validateDataFileChecksum(DataFile dataFile, ReadRateLimiter limiter) throws IOException {
         DataFile.ChecksumType checksumType = dataFile.getChecksumType();
         if (checksumType == null) {
             String info = BundleUtil.getStringFromBundle("dataset.publish.file.validation.error.noChecksumType", Arrays.asList(dataFile.getId().toString()));
@@ -1461,7 +1473,7 @@ public class FileUtil implements java.io.Serializable  {
         StorageIO<DataFile> storage = dataFile.getStorageIO();
         String recalculatedChecksum = null;
 
-        try (InputStream inputStream = getOriginalFileInputStream(storage, dataFile.isTabularData())) {
+        try (InputStream inputStream = limit(getOriginalFileInputStream(storage, dataFile.isTabularData()), limiter)) {
             recalculatedChecksum = FileUtil.calculateChecksum(inputStream, checksumType);
         } catch (IOException ioex) {
             String info = BundleUtil.getStringFromBundle("dataset.publish.file.validation.error.failRead", Arrays.asList(dataFile.getId().toString()));
@@ -1474,7 +1486,7 @@ public class FileUtil implements java.io.Serializable  {
 
         if (recalculatedChecksum == null) { //retry once
             storage = dataFile.getStorageIO();
-            try (InputStream inputStream = getOriginalFileInputStream(storage, dataFile.isTabularData())) {
+            try (InputStream inputStream = limit(getOriginalFileInputStream(storage, dataFile.isTabularData()), limiter)) {
                 recalculatedChecksum = FileUtil.calculateChecksum(inputStream, checksumType);
             }
         }
@@ -1494,7 +1506,7 @@ public class FileUtil implements java.io.Serializable  {
             boolean fixed = false;
             if (!dataFile.isTabularData() && dataFile.getIngestReport() != null) {
                 // try again, see if the .orig file happens to be there:
-                try (InputStream in = storage.getAuxFileAsInputStream(FileUtil.SAVED_ORIGINAL_FILENAME_EXTENSION)) {
+                try (InputStream in = limit(storage.getAuxFileAsInputStream(FileUtil.SAVED_ORIGINAL_FILENAME_EXTENSION), limiter)) {
                     recalculatedChecksum = FileUtil.calculateChecksum(in, checksumType);
                 } catch (RuntimeException rte) {
                     recalculatedChecksum = null;
@@ -0,0 +1,82 @@
+package edu.harvard.iq.dataverse.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * Limits the rate at which data is read, in bytes per second, across all the
+ * streams wrapped by {@link #limit(InputStream)}; e.g. to keep the checksum
+ * validation of the files of a dataset from using all the bandwidth of the
+ * storage. Thread-safe.
+ */
+public class ReadRateLimiter {
+
+    private final long bytesPerSecond;
+    // the time (System.nanoTime()) until which the bytes read so far use up
+    // the budget:
+    private long budgetUsedUntil;
+
+    public ReadRateLimiter(long bytesPerSecond) {
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("bytesPerSecond must be positive");
+        }
+        this.bytesPerSecond = bytesPerSecond;
+        this.budgetUsedUntil = System.nanoTime();
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Accounts for the given number of bytes having been read; and waits, if
+     * they take the reading over the budget.
+     */
+    public void acquire(long bytes) throws InterruptedIOException {
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (budgetUsedUntil < now) {
+                budgetUsedUntil = now;
+            }
+            wait = budgetUsedUntil - now;
+            budgetUsedUntil += (long) (bytes * 1_000_000_000.0 / bytesPerSecond);
+        }
+        if (wait > 0) {
+            try {
+                Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for the read budget");
+            }
+        }
+    }
+
+    /**
+     * @return a stream reading from {@code in}, at the rate allowed by this
+     * limiter.
+     */
+    public InputStream limit(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) {
+                    acquire(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    acquire(n);
+                }
+                return n;
+            }
+        };
+    }
+}
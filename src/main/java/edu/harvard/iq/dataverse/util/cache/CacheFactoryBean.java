@@ -2,12 +2,21 @@ package edu.harvard.iq.dataverse.util.cache;
 
 import edu.harvard.iq.dataverse.authorization.users.User;
 import edu.harvard.iq.dataverse.engine.command.Command;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Singleton;
 import jakarta.ejb.Startup;
+import jakarta.ejb.Timeout;
+import jakarta.ejb.TimerConfig;
+import jakarta.ejb.TimerService;
 import jakarta.inject.Inject;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.annotation.Metric;
 
 import javax.cache.Cache;
 import javax.cache.CacheManager;
@@ -18,16 +27,32 @@ import java.util.logging.Logger;
 
 @Singleton
 @Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
 public class CacheFactoryBean implements java.io.Serializable {
     private static final Logger logger = Logger.getLogger(CacheFactoryBean.class.getCanonicalName());
     // Retrieved from Hazelcast, implements ConcurrentMap and is threadsafe
     Cache<String, String> rateLimitCache;
+    // The token buckets of this server, reconciled with those in the rate limit cache
+    RateLimitBuckets rateLimitBuckets;
     @EJB
     SystemConfig systemConfig;
     @Inject
     CacheManager manager;
     @Inject
     CachingProvider provider;
+    @Resource
+    TimerService timerService;
+
+    @Inject
+    @Metric(name = "rate_limit_allowed", absolute = true,
+            description = "Counts the command calls subject to a rate limit that were allowed")
+    Counter allowedCounter;
+
+    @Inject
+    @Metric(name = "rate_limit_rejected", absolute = true,
+            description = "Counts the command calls rejected for going over a rate limit")
+    Counter rejectedCounter;
+
     public final static String RATE_LIMIT_CACHE = "rateLimitCache";
 
     @PostConstruct
@@ -39,6 +64,19 @@ public class CacheFactoryBean implements java.io.Serializable {
                             .setTypes( String.class, String.class );
             rateLimitCache = manager.createCache(RATE_LIMIT_CACHE, config);
         }
+        rateLimitBuckets = new RateLimitBuckets(rateLimitCache);
+        long interval = 1000 * Math.max(1, JvmSettings.CACHE_RATE_LIMIT_RECONCILE_INTERVAL.lookupOptional(Long.class).orElse(10L));
+        timerService.createIntervalTimer(interval, interval, new TimerConfig(null, false));
+    }
+
+    /**
+     * Takes the calls made on this server from the token buckets shared by
+     * the servers, every {@link JvmSettings#CACHE_RATE_LIMIT_RECONCILE_INTERVAL}
+     * seconds.
+     */
+    @Timeout
+    public void reconcileRateLimits() {
+        rateLimitBuckets.reconcileAll();
     }
 
     /**
@@ -54,7 +92,9 @@ public class CacheFactoryBean implements java.io.Serializable {
             return true;
         } else {
             String cacheKey = RateLimitUtil.generateCacheKey(user, action);
-            return (!RateLimitUtil.rateLimited(rateLimitCache, cacheKey, capacity));
+            boolean allowed = rateLimitBuckets.tryAcquire(cacheKey, capacity);
+            (allowed ? allowedCounter : rejectedCounter).inc();
+            return allowed;
         }
     }
 }
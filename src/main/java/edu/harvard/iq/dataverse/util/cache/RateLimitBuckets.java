@@ -0,0 +1,186 @@
+package edu.harvard.iq.dataverse.util.cache;
+
+import javax.cache.Cache;
+import javax.cache.processor.EntryProcessor;
+import javax.cache.processor.MutableEntry;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * The rate limiting token buckets of this server, one per user and action
+ * (see {@link RateLimitUtil#generateCacheKey}). Each one is packed into a
+ * single long, with {@link #pack(long, long)}, so that the tokens can be taken
+ * from it with a compare-and-set, without locking; and kept in the shared
+ * rate limit cache as a single value.
+ *
+ * The tokens taken here are added up, and taken from the bucket in the shared
+ * cache, atomically, by {@link #reconcileAll()}, and as soon as a bucket here
+ * runs out; the bucket here is then brought down to the one in the shared
+ * cache, if other servers have taken more of its tokens. So a user can make
+ * up to a bucket of calls on each server, at most, between reconciliations.
+ */
+class RateLimitBuckets {
+    private static final Logger logger = Logger.getLogger(RateLimitBuckets.class.getCanonicalName());
+
+    static class Bucket {
+        final AtomicLong state;
+        // the tokens taken here since the last reconciliation:
+        final AtomicLong taken = new AtomicLong();
+        volatile int capacityPerHour;
+
+        Bucket(long state, int capacityPerHour) {
+            this.state = new AtomicLong(state);
+            this.capacityPerHour = capacityPerHour;
+        }
+    }
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Cache<String, String> sharedCache;
+
+    RateLimitBuckets(Cache<String, String> sharedCache) {
+        this.sharedCache = sharedCache;
+    }
+
+    /**
+     * @return true if a token could be taken from the bucket, i.e. if the call
+     * is allowed.
+     */
+    boolean tryAcquire(String key, int capacityPerHour) {
+        long now = currentMinute();
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            // (read from the shared cache outside of the map, which may take a while)
+            Bucket newBucket = new Bucket(readShared(key), capacityPerHour);
+            bucket = buckets.putIfAbsent(key, newBucket);
+            if (bucket == null) {
+                bucket = newBucket;
+            }
+        }
+        bucket.capacityPerHour = capacityPerHour;
+        long state;
+        long next;
+        do {
+            state = bucket.state.get();
+            next = refill(state, capacityPerHour, now);
+            if (tokens(next) < 1) {
+                return false;
+            }
+            next = pack(minute(next), tokens(next) - 1);
+        } while (!bucket.state.compareAndSet(state, next));
+        bucket.taken.incrementAndGet();
+        if (tokens(next) == 0) {
+            // let the other servers know straight away
+            reconcile(key, bucket, now);
+        }
+        return true;
+    }
+
+    /**
+     * Takes the tokens taken here from the buckets in the shared cache; and
+     * forgets the buckets that have been refilled since they were last used.
+     * Called periodically.
+     */
+    void reconcileAll() {
+        long now = currentMinute();
+        for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+            Bucket bucket = entry.getValue();
+            if (bucket.taken.get() == 0 && tokens(refill(bucket.state.get(), bucket.capacityPerHour, now)) >= bucket.capacityPerHour) {
+                buckets.remove(entry.getKey(), bucket);
+            } else {
+                reconcile(entry.getKey(), bucket, now);
+            }
+        }
+    }
+
+    private void reconcile(String key, Bucket bucket, long now) {
+        long taken = bucket.taken.getAndSet(0);
+        long shared;
+        try {
+            shared = sharedCache.invoke(key, new TakeTokens(), taken, bucket.capacityPerHour, now);
+        } catch (RuntimeException e) {
+            bucket.taken.addAndGet(taken);
+            logger.log(Level.FINE, "Could not reconcile the rate limit bucket " + key, e);
+            return;
+        }
+        long takenSince = bucket.taken.get();
+        long state;
+        long next;
+        do {
+            state = bucket.state.get();
+            long tokens = max(0, tokens(shared) - takenSince);
+            if (tokens >= tokens(state)) {
+                return;
+            }
+            next = pack(max(minute(state), minute(shared)), tokens);
+        } while (!bucket.state.compareAndSet(state, next));
+    }
+
+    private long readShared(String key) {
+        try {
+            String value = sharedCache.get(key);
+            return value != null ? Long.parseLong(value) : 0L;
+        } catch (RuntimeException e) {
+            logger.log(Level.FINE, "Could not read the rate limit bucket " + key, e);
+            return 0L;
+        }
+    }
+
+    /**
+     * Takes the tokens taken on a server from the bucket in the shared cache,
+     * in place, and returns what is left of it. The arguments are the number
+     * of tokens taken, the capacity per hour and the current minute.
+     */
+    static class TakeTokens implements EntryProcessor<String, String, Long>, Serializable {
+        @Override
+        public Long process(MutableEntry<String, String> entry, Object... arguments) {
+            long taken = (Long) arguments[0];
+            int capacityPerHour = (Integer) arguments[1];
+            long now = (Long) arguments[2];
+            long state = refill(entry.exists() ? Long.parseLong(entry.getValue()) : 0L, capacityPerHour, now);
+            state = pack(minute(state), max(0, tokens(state) - taken));
+            entry.setValue(String.valueOf(state));
+            return state;
+        }
+    }
+
+    /**
+     * @return the bucket with the tokens added since it was last refilled; a
+     * bucket never refilled (0) is filled up. The time it was refilled is only
+     * moved on when tokens are added, so that the fractions of tokens aren't
+     * lost.
+     */
+    static long refill(long bucket, int capacityPerHour, long now) {
+        long tokensToAdd = (long) ((now - minute(bucket)) * (capacityPerHour / 60.0));
+        if (tokensToAdd <= 0) {
+            return bucket;
+        }
+        return pack(now, min(capacityPerHour, tokens(bucket) + tokensToAdd));
+    }
+
+    /**
+     * @return the bucket refilled in this minute (since the epoch) with this
+     * many tokens in it: the minute in the high 32 bits, the tokens in the low.
+     */
+    static long pack(long minute, long tokens) {
+        return (minute << 32) | (tokens & 0xFFFFFFFFL);
+    }
+
+    static long minute(long bucket) {
+        return bucket >>> 32;
+    }
+
+    static long tokens(long bucket) {
+        return bucket & 0xFFFFFFFFL;
+    }
+
+    static long currentMinute() {
+        return System.currentTimeMillis() / 60000L;
+    }
+}
@@ -8,7 +8,6 @@ import jakarta.json.bind.Jsonb;
 import jakarta.json.bind.JsonbBuilder;
 import jakarta.json.bind.JsonbException;
 
-import javax.cache.Cache;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -17,9 +16,6 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Logger;
 
-import static java.lang.Math.max;
-import static java.lang.Math.min;
-
 public class RateLimitUtil {
     private static final Logger logger = Logger.getLogger(RateLimitUtil.class.getCanonicalName());
     static final List<RateLimitSetting> rateLimits = new CopyOnWriteArrayList<>();
@@ -39,28 +35,6 @@ public class RateLimitUtil {
                 getCapacityByTierAndAction(systemConfig, authUser.getRateLimitTier(), action) :
                 getCapacityByTierAndAction(systemConfig, 0, action);
     }
-    static boolean rateLimited(final Cache<String, String> rateLimitCache, final String key, int capacityPerHour) {
-        if (capacityPerHour == NO_LIMIT) {
-            return false;
-        }
-        long currentTime = System.currentTimeMillis() / 60000L; // convert to minutes
-        double tokensPerMinute = (capacityPerHour / 60.0);
-        // Get the last time this bucket was added to
-        final String keyLastUpdate = String.format("%s:last_update",key);
-        long lastUpdate = longFromKey(rateLimitCache, keyLastUpdate);
-        long deltaTime = currentTime - lastUpdate;
-        // Get the current number of tokens in the bucket
-        long tokens = longFromKey(rateLimitCache, key);
-        long tokensToAdd = (long) (deltaTime * tokensPerMinute);
-        if (tokensToAdd > 0) { // Don't update timestamp if we aren't adding any tokens to the bucket
-            tokens = min(capacityPerHour, tokens + tokensToAdd);
-            rateLimitCache.put(keyLastUpdate, String.valueOf(currentTime));
-        }
-        // Update with any added tokens and decrement 1 token for this call if not rate limited (0 tokens)
-        rateLimitCache.put(key, String.valueOf(max(0, tokens-1)));
-        return tokens < 1;
-    }
-
     static int getCapacityByTierAndAction(SystemConfig systemConfig, Integer tier, String action) {
         if (rateLimits.isEmpty()) {
             init(systemConfig);
@@ -127,8 +101,4 @@ public class RateLimitUtil {
     static String getMapKey(int tier, String action) {
         return tier + ":" + (action != null ? action : "");
     }
-    static long longFromKey(Cache<String, String> cache, String key) {
-        Object l = cache.get(key);
-        return l != null ? Long.parseLong(String.valueOf(l)) : 0L;
-    }
 }
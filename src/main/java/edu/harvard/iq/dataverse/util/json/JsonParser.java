@@ -50,6 +50,7 @@ import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import jakarta.json.Json;
 import jakarta.json.JsonArray;
+import jakarta.json.JsonNumber;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonString;
 import jakarta.json.JsonValue;
@@ -878,7 +879,15 @@ public class JsonParser {
         JsonArray stepArray = json.getJsonArray("steps");
         List<WorkflowStepData> steps = new ArrayList<>(stepArray.size());
         for ( JsonValue jv : stepArray ) {
-            steps.add(parseStepData((JsonObject) jv));
+            WorkflowStepData wsd = parseStepData((JsonObject) jv);
+            if ( wsd.getDependsOn() != null ) {
+                for ( int dependency : wsd.getDependsOn() ) {
+                    if ( dependency < 0 || dependency >= steps.size() ) {
+                        throw new JsonParseException("Step " + steps.size() + " can only depend on the steps before it, not on step " + dependency);
+                    }
+                }
+            }
+            steps.add(wsd);
         }
         retVal.setSteps(steps);
         return retVal;
@@ -903,6 +912,21 @@ public class JsonParser {
             settings.keySet().forEach(k -> settingsMap.put(k,jsonValueToString(settings.get(k))));
             wsd.setStepSettings(settingsMap);
         }
+        if ( json.containsKey("dependsOn") ) {
+            validate("step", json, "dependsOn", ValueType.ARRAY);
+            List<Integer> dependsOn = new ArrayList<>();
+            for ( JsonValue jv : json.getJsonArray("dependsOn") ) {
+                if ( jv.getValueType() != ValueType.NUMBER ) {
+                    throw new JsonParseException("step dependsOn should be an array of step indexes");
+                }
+                dependsOn.add(((JsonNumber) jv).intValue());
+            }
+            wsd.setDependsOn(dependsOn);
+        }
+        if ( json.containsKey("timeout") ) {
+            validate("step", json, "timeout", ValueType.NUMBER);
+            wsd.setTimeout(json.getInt("timeout"));
+        }
         return wsd;
     }
     
@@ -26,7 +26,6 @@ import edu.harvard.iq.dataverse.datavariable.VariableCategory;
 import edu.harvard.iq.dataverse.datavariable.VariableMetadata;
 import edu.harvard.iq.dataverse.datavariable.VariableRange;
 import edu.harvard.iq.dataverse.license.License;
-import edu.harvard.iq.dataverse.globus.FileDetailsHolder;
 import edu.harvard.iq.dataverse.harvest.client.HarvestingClient;
 import edu.harvard.iq.dataverse.privateurl.PrivateUrl;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
@@ -55,6 +54,8 @@ import jakarta.ejb.EJB;
 import jakarta.ejb.Singleton;
 import jakarta.json.JsonArray;
 import jakarta.json.JsonObject;
+import jakarta.json.JsonValue;
+import jakarta.json.stream.JsonGenerator;
 import java.math.BigDecimal;
 
 /**
@@ -246,10 +247,21 @@ public class JsonPrinter {
         if ( wf.getSteps()!=null && !wf.getSteps().isEmpty()) {
             JsonArrayBuilder arr = Json.createArrayBuilder();
             for ( WorkflowStepData stp : wf.getSteps() ) {
-                arr.add( jsonObjectBuilder().add("stepType", stp.getStepType())
+                NullSafeJsonBuilder stepBld = jsonObjectBuilder().add("stepType", stp.getStepType())
                                    .add("provider", stp.getProviderId())
                                    .add("parameters", mapToObject(stp.getStepParameters()))
-                                   .add("requiredSettings", mapToObject(stp.getStepSettings())) );
+                                   .add("requiredSettings", mapToObject(stp.getStepSettings()));
+                if ( stp.getDependsOn() != null ) {
+                    JsonArrayBuilder dependsOn = Json.createArrayBuilder();
+                    for ( int dependency : stp.getDependsOn() ) {
+                        dependsOn.add(dependency);
+                    }
+                    stepBld.add("dependsOn", dependsOn);
+                }
+                if ( stp.getTimeout() != null ) {
+                    stepBld.add("timeout", stp.getTimeout().intValue());
+                }
+                arr.add( stepBld );
             }
             bld.add("steps", arr );
         }
@@ -409,20 +421,66 @@ public class JsonPrinter {
         return bld;
     }
 
-    public static JsonObjectBuilder json(FileDetailsHolder ds) {
-        return Json.createObjectBuilder().add(ds.getStorageID() ,
-                Json.createObjectBuilder()
-                .add("id", ds.getStorageID() )
-                .add("hash", ds.getHash())
-                .add("mime",ds.getMime()));
-    }
-
     public static JsonObjectBuilder json(DatasetVersion dsv, boolean includeFiles) {
         return json(dsv, null, includeFiles, false);
     }
 
     public static JsonObjectBuilder json(DatasetVersion dsv, List<String> anonymizedFieldTypeNamesList, 
         boolean includeFiles, boolean returnOwners) {
+        Dataset dataset = dsv.getDataset();
+        JsonObjectBuilder bld = jsonVersionProperties(dsv);
+
+        bld.add("metadataBlocks", (anonymizedFieldTypeNamesList != null) ?
+                jsonByBlocks(dsv.getDatasetFields(), anonymizedFieldTypeNamesList)
+                : jsonByBlocks(dsv.getDatasetFields())
+        );       
+        if(returnOwners){
+            bld.add("isPartOf", getOwnersFromDvObject(dataset));
+        }
+        if (includeFiles) {
+            bld.add("files", jsonFileMetadatas(dsv.getFileMetadatas()));
+        }
+
+        return bld;
+    }
+
+    /**
+     * Writes the same JSON as {@link #json(DatasetVersion, List, boolean, boolean)}
+     * straight to the generator: the metadata blocks, and the files, are
+     * printed and written one at a time, rather than all built in memory
+     * first. For versions with many files.
+     */
+    public static void writeJson(JsonGenerator generator, DatasetVersion dsv, List<String> anonymizedFieldTypeNamesList,
+            boolean includeFiles, boolean returnOwners) {
+        writeJson(generator, dsv, anonymizedFieldTypeNamesList, includeFiles, returnOwners, false);
+    }
+
+    private static void writeJson(JsonGenerator generator, DatasetVersion dsv, List<String> anonymizedFieldTypeNamesList,
+            boolean includeFiles, boolean returnOwners, boolean withCitation) {
+        generator.writeStartObject();
+        writeEntries(generator, jsonVersionProperties(dsv).build());
+
+        generator.writeKey("metadataBlocks");
+        writeJsonByBlocks(generator, dsv.getDatasetFields(), anonymizedFieldTypeNamesList);
+        if (returnOwners) {
+            generator.write("isPartOf", getOwnersFromDvObject(dsv.getDataset()).build());
+        }
+        if (includeFiles) {
+            generator.writeKey("files");
+            writeJsonFileMetadatas(generator, dsv.getFileMetadatas());
+        }
+        if (withCitation) {
+            String citation = dsv.getCitation();
+            if (citation != null) {
+                generator.write("citation", citation);
+            }
+        }
+        generator.writeEnd();
+    }
+
+    // The properties of the version itself; everything but the metadata
+    // blocks, the owners and the files:
+    private static JsonObjectBuilder jsonVersionProperties(DatasetVersion dsv) {
         Dataset dataset = dsv.getDataset();
         JsonObjectBuilder bld = jsonObjectBuilder()
                 .add("id", dsv.getId()).add("datasetId", dataset.getId())
@@ -467,18 +525,6 @@ public class JsonPrinter {
                 .add("sizeOfCollection", dsv.getTermsOfUseAndAccess().getSizeOfCollection())
                 .add("studyCompletion", dsv.getTermsOfUseAndAccess().getStudyCompletion())
                 .add("fileAccessRequest", dsv.getTermsOfUseAndAccess().isFileAccessRequest());
-
-        bld.add("metadataBlocks", (anonymizedFieldTypeNamesList != null) ?
-                jsonByBlocks(dsv.getDatasetFields(), anonymizedFieldTypeNamesList)
-                : jsonByBlocks(dsv.getDatasetFields())
-        );       
-        if(returnOwners){
-            bld.add("isPartOf", getOwnersFromDvObject(dataset));
-        }
-        if (includeFiles) {
-            bld.add("files", jsonFileMetadatas(dsv.getFileMetadatas()));
-        }
-
         return bld;
     }
 
@@ -533,6 +579,18 @@ public class JsonPrinter {
         return datasetDtoAsJson;
     }
 
+    /**
+     * Writes the same JSON as {@link #jsonAsDatasetDto(DatasetVersion)}
+     * straight to the generator, the files one at a time.
+     */
+    public static void writeJsonAsDatasetDto(JsonGenerator generator, DatasetVersion dsv) {
+        generator.writeStartObject();
+        writeEntries(generator, JsonPrinter.json(dsv.getDataset()).build());
+        generator.writeKey("datasetVersion");
+        writeJson(generator, dsv, null, true, false, true);
+        generator.writeEnd();
+    }
+
     public static JsonArrayBuilder jsonFileMetadatas(Collection<FileMetadata> fmds) {
         JsonArrayBuilder filesArr = Json.createArrayBuilder();
         for (FileMetadata fmd : fmds) {
@@ -542,6 +600,20 @@ public class JsonPrinter {
         return filesArr;
     }
 
+    public static void writeJsonFileMetadatas(JsonGenerator generator, Collection<FileMetadata> fmds) {
+        generator.writeStartArray();
+        for (FileMetadata fmd : fmds) {
+            generator.write(JsonPrinter.json(fmd).build());
+        }
+        generator.writeEnd();
+    }
+
+    private static void writeEntries(JsonGenerator generator, JsonObject object) {
+        for (Map.Entry<String, JsonValue> entry : object.entrySet()) {
+            generator.write(entry.getKey(), entry.getValue());
+        }
+    }
+
     public static JsonObjectBuilder json(DatasetDistributor dist) {
         return jsonObjectBuilder()
                 .add("displayOrder", dist.getDisplayOrder())
@@ -567,6 +639,15 @@ public class JsonPrinter {
         return blocksBld;
     }
 
+    public static void writeJsonByBlocks(JsonGenerator generator, List<DatasetField> fields, List<String> anonymizedFieldTypeNamesList) {
+        generator.writeStartObject();
+        for (Map.Entry<MetadataBlock, List<DatasetField>> blockAndFields : DatasetField.groupByBlock(fields).entrySet()) {
+            MetadataBlock block = blockAndFields.getKey();
+            generator.write(block.getName(), JsonPrinter.json(block, blockAndFields.getValue(), anonymizedFieldTypeNamesList).build());
+        }
+        generator.writeEnd();
+    }
+
     /**
      * Create a JSON object for the block and its fields. The fields are assumed
      * to belong to the block - there's no checking of that in the method.
@@ -7,6 +7,7 @@ import edu.harvard.iq.dataverse.authorization.users.User;
 import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import edu.harvard.iq.dataverse.workflow.step.Pending;
 import java.io.Serializable;
+import java.sql.Timestamp;
 import java.util.HashMap;
 import java.util.Map;
 import jakarta.persistence.ElementCollection;
@@ -22,6 +23,10 @@ import jakarta.persistence.OneToOne;
  * A workflow whose current step waits for an external system to complete a
  * (probably lengthy) process. Meanwhile, it sits in the database, pending away.
  * 
+ * A workflow being run is kept here too, with the server running it, so that
+ * the server can continue it if it is restarted meanwhile; or another server,
+ * if it stops sending heartbeats.
+ * 
  * @author michael
  */
 @NamedQueries({
@@ -53,6 +58,12 @@ public class PendingWorkflowInvocation implements Serializable {
     boolean datasetExternallyReleased;
     
     long lockid;
+    
+    /** The id of the server running the workflow; {@code null} while it is pending. */
+    String runningOn;
+    
+    /** When the server running the workflow last told it was still running it. */
+    Timestamp heartbeatTime;
 
     public static final String AUTHORIZED= "authorized";
                 
@@ -62,6 +73,11 @@ public class PendingWorkflowInvocation implements Serializable {
     }
     
     public PendingWorkflowInvocation(Workflow wf, WorkflowContext ctxt, Pending result) {
+        this(wf, ctxt);
+        localData = new HashMap<>(result.getData());
+    }
+    
+    public PendingWorkflowInvocation(Workflow wf, WorkflowContext ctxt) {
         invocationId = ctxt.getInvocationId();
         workflow = wf;
         dataset = ctxt.getDataset();
@@ -69,7 +85,7 @@ public class PendingWorkflowInvocation implements Serializable {
         nextMinorVersionNumber = ctxt.getNextMinorVersionNumber();
         userId = ctxt.getRequest().getUser().getIdentifier();
         ipAddress = ctxt.getRequest().getSourceAddress().toString();
-        localData = new HashMap<>(result.getData());
+        localData = new HashMap<>();
         typeOrdinal = ctxt.getType().ordinal();
         datasetExternallyReleased=ctxt.getDatasetExternallyReleased();
         lockid=ctxt.getLockId();
@@ -168,4 +184,21 @@ public class PendingWorkflowInvocation implements Serializable {
     public void setLockId(long lockId) {
         this.lockid = lockId;
     }
+
+    public String getRunningOn() {
+        return runningOn;
+    }
+
+    public void setRunningOn(String runningOn) {
+        this.runningOn = runningOn;
+        this.heartbeatTime = (runningOn != null) ? new Timestamp(System.currentTimeMillis()) : null;
+    }
+
+    public Timestamp getHeartbeatTime() {
+        return heartbeatTime;
+    }
+
+    public boolean isRunning() {
+        return runningOn != null;
+    }
 }
@@ -3,9 +3,11 @@ package edu.harvard.iq.dataverse.workflow;
 import edu.harvard.iq.dataverse.workflow.step.WorkflowStepData;
 import java.io.Serializable;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Entity;
 import jakarta.persistence.FetchType;
@@ -65,6 +67,23 @@ public class Workflow implements Serializable {
         }
     }
 
+    /**
+     * Returns the steps that have to be completed before the passed one is
+     * started: the ones it depends on, if it says so, or else the step before
+     * it. The steps can only depend on the steps before them, so the workflow
+     * can always be completed.
+     *
+     * @param stepIdx 0-based index of the step.
+     * @return the 0-based indexes of the steps it depends on.
+     */
+    public Set<Integer> getPrerequisites(int stepIdx) {
+        List<Integer> dependsOn = steps.get(stepIdx).getDependsOn();
+        if (dependsOn != null) {
+            return new HashSet<>(dependsOn);
+        }
+        return (stepIdx == 0) ? Set.of() : Set.of(stepIdx - 1);
+    }
+
     Map<String, String> getRequiredSettings() {
         Map<String, String> settings = new HashMap<String, String>();
         for(WorkflowStepData step: steps) {
@@ -0,0 +1,96 @@
+package edu.harvard.iq.dataverse.workflow;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.DependsOn;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.Timeout;
+import jakarta.ejb.TimerConfig;
+import jakarta.ejb.TimerService;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+
+/**
+ * Runs the steps of the workflows, for {@link WorkflowServiceBean}, on a pool
+ * of threads of its own, shared by all the workflows; so that the steps that
+ * don't depend on each other can run at the same time, and be timed out. The
+ * number of threads is configured with the
+ * {@link JvmSettings#WORKFLOWS_MAX_PARALLEL_STEPS} setting.
+ *
+ * Once the server is up, continues the workflows it was running when it was
+ * stopped. Then, tells regularly that it is still running its workflows, and
+ * continues those of the other servers that have not done so for
+ * {@link JvmSettings#WORKFLOWS_HEARTBEAT_TIMEOUT} seconds.
+ */
+@Singleton
+@Startup
+@DependsOn("StartupFlywayMigrator")
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class WorkflowExecutorServiceBean {
+
+    private static final Logger logger = Logger.getLogger(WorkflowExecutorServiceBean.class.getCanonicalName());
+
+    // how long to wait after the start, before continuing the interrupted workflows
+    private static final long RESUME_DELAY = 60 * 1000L;
+
+    @Resource
+    ManagedThreadFactory threadFactory;
+    @Resource
+    TimerService timerService;
+    @EJB
+    WorkflowServiceBean workflowService;
+
+    private ExecutorService executor;
+    private volatile boolean resumed = false;
+
+    @PostConstruct
+    public void init() {
+        int threads = Math.max(1, JvmSettings.WORKFLOWS_MAX_PARALLEL_STEPS.lookupOptional(Integer.class).orElse(4));
+        executor = Executors.newFixedThreadPool(threads, threadFactory);
+        logger.fine("Running the workflow steps on " + threads + " threads");
+        long heartbeatTimeout = Math.max(1, JvmSettings.WORKFLOWS_HEARTBEAT_TIMEOUT.lookupOptional(Long.class).orElse(300L));
+        // (several heartbeats within the timeout)
+        long interval = Math.max(10 * 1000L, 1000 * heartbeatTimeout / 3);
+        timerService.createIntervalTimer(RESUME_DELAY, interval, new TimerConfig(null, false));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    @Timeout
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void resumeInterruptedWorkflows() {
+        if (!resumed) {
+            try {
+                workflowService.resumeInterrupted();
+                resumed = true;
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Could not continue the interrupted workflows: " + e.getMessage(), e);
+            }
+        }
+        try {
+            workflowService.heartbeat();
+            workflowService.resumeAbandoned();
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Could not check on the workflows of the other servers: " + e.getMessage(), e);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package edu.harvard.iq.dataverse.workflow;
 
 import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.DatasetEventServiceBean;
 import edu.harvard.iq.dataverse.DatasetLock;
 import edu.harvard.iq.dataverse.DatasetServiceBean;
 import edu.harvard.iq.dataverse.DataverseRequestServiceBean;
@@ -14,6 +15,7 @@ import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.engine.command.CommandContext;
 import edu.harvard.iq.dataverse.engine.command.exception.CommandException;
 import edu.harvard.iq.dataverse.engine.command.impl.FinalizeDatasetPublicationCommand;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import edu.harvard.iq.dataverse.workflow.WorkflowContext.TriggerType;
@@ -26,26 +28,55 @@ import edu.harvard.iq.dataverse.workflow.step.WorkflowStepData;
 import edu.harvard.iq.dataverse.workflow.step.WorkflowStepResult;
 import edu.harvard.iq.dataverse.workflows.WorkflowComment;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import jakarta.annotation.Resource;
 import jakarta.ejb.Asynchronous;
 import jakarta.ejb.EJB;
+import jakarta.ejb.SessionContext;
 import jakarta.ejb.Stateless;
 import jakarta.ejb.TransactionAttribute;
 import jakarta.ejb.TransactionAttributeType;
 import jakarta.inject.Inject;
+import jakarta.json.Json;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.TypedQuery;
 
 /**
  * Service bean for managing and executing {@link Workflow}s
+ * 
+ * The steps of a workflow run on the threads of the
+ * {@link WorkflowExecutorServiceBean}, each one as soon as the steps it
+ * depends on are completed (see {@link Workflow#getPrerequisites(int)}), for
+ * {@link JvmSettings#WORKFLOWS_STEP_TIMEOUT} seconds at most. The steps
+ * completed are recorded in the workflowstepcompletion table as they
+ * complete, and the workflow kept as a {@link PendingWorkflowInvocation}
+ * while it runs; so that a workflow is continued from the steps not completed
+ * yet when it is resumed, or when the server running it is restarted.
  *
  * @author michael
  */
@@ -54,6 +85,10 @@ public class WorkflowServiceBean {
 
     private static final Logger logger = Logger.getLogger(WorkflowServiceBean.class.getName());
     private static final String WORKFLOW_ID_KEY = "WorkflowServiceBean.WorkflowId:";
+    // how long a step that was cancelled is waited for, once interrupted, before it is given up on
+    private static final long STEP_INTERRUPT_GRACE = 30 * 1000L;
+    // how often the steps still queued are looked at, to time them out once they run
+    private static final long STEP_START_POLL = 1000L;
 
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     EntityManager em;
@@ -79,6 +114,15 @@ public class WorkflowServiceBean {
     @EJB
     EjbDataverseEngine engine;
     
+    @EJB
+    WorkflowExecutorServiceBean stepExecutor;
+    
+    @EJB
+    DatasetEventServiceBean datasetEvents;
+    
+    @Resource
+    SessionContext sessionContext;
+    
     @Inject
     DataverseRequestServiceBean dvRequestService;
     
@@ -154,6 +198,7 @@ public class WorkflowServiceBean {
         //Refresh will only em.find the dataset if findDataset is true. (otherwise the dataset is em.merged)
         ctxt = refresh(ctxt, retrieveRequestedSettings( wf.getRequiredSettings()), getCurrentApiToken(ctxt.getRequest().getAuthenticatedUser()), findDataset);
         lockDataset(ctxt, new DatasetLock(DatasetLock.Reason.Workflow, ctxt.getRequest().getAuthenticatedUser()));
+        saveRunning(wf, ctxt);
         forward(wf, ctxt);
     }
     
@@ -195,45 +240,145 @@ public class WorkflowServiceBean {
     }
 
     /**
-     * Starting the resume process for a pending workflow. We first delete the
-     * pending workflow to minimize double invocation, and then asynchronously
-     * resume the work.
+     * Starting the resume process for a pending workflow. We first mark the
+     * pending workflow as running, to prevent double invocation, and then
+     * asynchronously resume the work.
      *
      * @param pending The workflow to resume.
      * @param body the response from the remote system.
      * @see
      * #doResume(edu.harvard.iq.dataverse.workflow.PendingWorkflowInvocation,
-     * java.lang.String)
+     * java.util.Map, java.lang.String)
      */
     @Asynchronous
     public void resume(PendingWorkflowInvocation pending, String body) {
-        em.remove(em.merge(pending));
-        doResume(pending, body);
+        Map<String, String> localData = new HashMap<>(pending.getLocalData());
+        if (!self().claim(pending.getInvocationId())) {
+            logger.log(Level.WARNING, "Workflow {0} is not pending (anymore), not resuming it", pending.getInvocationId());
+            return;
+        }
+        doResume(pending, localData, body);
+    }
+    
+    /**
+     * Marks the pending workflow as running on this server, if it is still
+     * pending. The data of its pending step is removed, so that its invocation
+     * id can't be used as a credential anymore.
+     * 
+     * @param invocationId id of the pending workflow.
+     * @return {@code true} iff the workflow was pending.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public boolean claim(String invocationId) {
+        PendingWorkflowInvocation pending = em.find(PendingWorkflowInvocation.class, invocationId, LockModeType.PESSIMISTIC_WRITE);
+        if (pending == null || pending.isRunning()) {
+            return false;
+        }
+        pending.setRunningOn(thisServer());
+        pending.setLocalData(new HashMap<>());
+        return true;
+    }
+    
+    /**
+     * Continues the workflows this server was running when it was stopped,
+     * from the steps that were not completed. The steps that were running then
+     * are run again.
+     */
+    public void resumeInterrupted() {
+        for (String invocationId : self().claimRunning(false)) {
+            logger.log(Level.INFO, "Continuing workflow {0}, interrupted by the restart", invocationId);
+            continueClaimed(invocationId);
+        }
+    }
+    
+    /**
+     * Continues the workflows of the other servers that have not told they
+     * were still running them for {@link JvmSettings#WORKFLOWS_HEARTBEAT_TIMEOUT}
+     * seconds: those servers are presumed gone.
+     */
+    public void resumeAbandoned() {
+        for (String invocationId : self().claimRunning(true)) {
+            logger.log(Level.INFO, "Continuing workflow {0}, abandoned by the server that was running it", invocationId);
+            continueClaimed(invocationId);
+        }
+    }
+    
+    private void continueClaimed(String invocationId) {
+        PendingWorkflowInvocation pending = em.find(PendingWorkflowInvocation.class, invocationId);
+        if (pending != null) {
+            self().continueInterrupted(pending);
+        }
+    }
+    
+    /**
+     * Marks the workflows being run by this server as still running, so that
+     * no other server takes them over.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void heartbeat() {
+        em.createNativeQuery("UPDATE pendingworkflowinvocation SET heartbeattime = now() WHERE runningon = ?1")
+                .setParameter(1, thisServer())
+                .executeUpdate();
+    }
+    
+    /**
+     * Marks as running on this server the workflows it was running before it
+     * was restarted; or, with {@code abandoned}, the workflows of the other
+     * servers that have not sent a heartbeat for too long.
+     * 
+     * @return the invocation ids of the workflows.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public List<String> claimRunning(boolean abandoned) {
+        long timeout = Math.max(1, JvmSettings.WORKFLOWS_HEARTBEAT_TIMEOUT.lookupOptional(Long.class).orElse(300L));
+        List<?> found = em.createNativeQuery("SELECT invocationid FROM pendingworkflowinvocation WHERE "
+                + (abandoned
+                        ? "runningon <> ?1 AND (heartbeattime IS NULL OR heartbeattime < now() - INTERVAL '" + timeout + " seconds')"
+                        : "runningon = ?1")
+                + " FOR UPDATE SKIP LOCKED")
+                .setParameter(1, thisServer())
+                .getResultList();
+        List<String> invocationIds = found.stream().map(String::valueOf).collect(Collectors.toList());
+        for (String invocationId : invocationIds) {
+            em.createNativeQuery("UPDATE pendingworkflowinvocation SET runningon = ?1, heartbeattime = now() WHERE invocationid = ?2")
+                    .setParameter(1, thisServer())
+                    .setParameter(2, invocationId)
+                    .executeUpdate();
+        }
+        return invocationIds;
+    }
+    
+    @Asynchronous
+    public void continueInterrupted(PendingWorkflowInvocation interrupted) {
+        Workflow wf = interrupted.getWorkflow();
+        WorkflowContext newCtxt = interrupted.reCreateContext(roleAssignees);
+        final WorkflowContext ctxt = refresh(newCtxt, retrieveRequestedSettings(wf.getRequiredSettings()), getCurrentApiToken(newCtxt.getRequest().getAuthenticatedUser()));
+        executeSteps(wf, ctxt, findCompletedSteps(ctxt.getInvocationId()));
     }
     
     
     @Asynchronous
     private void forward(Workflow wf, WorkflowContext ctxt) {
-        executeSteps(wf, ctxt, 0);
+        executeSteps(wf, ctxt, Collections.emptySet());
     }
     
-    private void doResume(PendingWorkflowInvocation pending, String body) {
+    private void doResume(PendingWorkflowInvocation pending, Map<String, String> localData, String body) {
         Workflow wf = pending.getWorkflow();
-        List<WorkflowStepData> stepsLeft = wf.getSteps().subList(pending.getPendingStepIdx(), wf.getSteps().size());
+        int pendingStepIdx = pending.getPendingStepIdx();
         
-        WorkflowStep pendingStep = createStep(stepsLeft.get(0));
+        WorkflowStep pendingStep = createStep(wf.getSteps().get(pendingStepIdx));
         WorkflowContext newCtxt = pending.reCreateContext(roleAssignees);
         final WorkflowContext ctxt = refresh(newCtxt,retrieveRequestedSettings( wf.getRequiredSettings()), getCurrentApiToken(newCtxt.getRequest().getAuthenticatedUser()));
-        WorkflowStepResult res = pendingStep.resume(ctxt, pending.getLocalData(), body);
+        WorkflowStepResult res = pendingStep.resume(ctxt, localData, body);
         if (res instanceof Failure) {
             logger.warning(((Failure) res).getReason());
             userNotificationService.sendNotification(ctxt.getRequest().getAuthenticatedUser(), Timestamp.from(Instant.now()), UserNotification.Type.WORKFLOW_FAILURE, ctxt.getDataset().getLatestVersion().getId(), ((Failure) res).getMessage());
             //UserNotification isn't meant to be a long-term record and doesn't store the comment, so we'll also keep it as a workflow comment
             WorkflowComment wfc = new WorkflowComment(ctxt.getDataset().getLatestVersion(), WorkflowComment.Type.WORKFLOW_FAILURE, ((Failure) res).getMessage(), ctxt.getRequest().getAuthenticatedUser());
             datasets.addWorkflowComment(wfc);
-            rollback(wf, ctxt, (Failure) res, pending.getPendingStepIdx() - 1);
+            rollback(wf, ctxt, (Failure) res, findCompletedSteps(ctxt.getInvocationId()));
         } else if (res instanceof Pending) {
-            pauseAndAwait(wf, ctxt, (Pending) res, pending.getPendingStepIdx());
+            pauseAndAwait(wf, ctxt, (Pending) res, pendingStepIdx);
         } else {
             if (res instanceof Success) {
                 logger.info(((Success) res).getReason());
@@ -242,22 +387,32 @@ public class WorkflowServiceBean {
                 WorkflowComment wfc = new WorkflowComment(ctxt.getDataset().getLatestVersion(), WorkflowComment.Type.WORKFLOW_SUCCESS, ((Success) res).getMessage(), ctxt.getRequest().getAuthenticatedUser());
                 datasets.addWorkflowComment(wfc);
         }
-            executeSteps(wf, ctxt, pending.getPendingStepIdx() + 1);
+            saveStepCompleted(ctxt, pendingStepIdx);
+            Set<Integer> completed = new HashSet<>(findCompletedSteps(ctxt.getInvocationId()));
+            completed.add(pendingStepIdx);
+            executeSteps(wf, ctxt, completed);
         }
     }
 
+    /**
+     * Rolls back the passed steps, in the reverse order of their indexes (so a
+     * step is rolled back before the steps it depends on), and removes the
+     * workflow lock.
+     */
     @Asynchronous
-    private void rollback(Workflow wf, WorkflowContext ctxt, Failure failure, int lastCompletedStepIdx) {
+    private void rollback(Workflow wf, WorkflowContext ctxt, Failure failure, Collection<Integer> stepIdxs) {
         ctxt = refresh(ctxt);
         final List<WorkflowStepData> steps = wf.getSteps();
+        List<Integer> toRollBack = new ArrayList<>(stepIdxs);
+        toRollBack.sort(Comparator.reverseOrder());
         
-        for ( int stepIdx = lastCompletedStepIdx; stepIdx >= 0; --stepIdx ) {
+        for ( int stepIdx : toRollBack ) {
             WorkflowStepData wsd = steps.get(stepIdx);
-            WorkflowStep step = createStep(wsd);
             
             try {
+                WorkflowStep step = createStep(wsd);
                 logger.log(Level.INFO, "Workflow {0} step {1}: Rollback", new Object[]{ctxt.getInvocationId(), stepIdx});
-                rollbackStep(step, ctxt, failure);
+                self().rollbackStep(step, ctxt, failure);
                 
             } catch (Exception e) {
                 logger.log(Level.WARNING, "Workflow " + ctxt.getInvocationId() 
@@ -272,56 +427,324 @@ public class WorkflowServiceBean {
         } catch (CommandException ex) {
             logger.log(Level.SEVERE, "Error restoring dataset locks state after rollback: " + ex.getMessage(), ex);
         }
+        clearProgress(ctxt);
+        datasetEvents.publish(ctxt.getDataset().getId(), DatasetEventServiceBean.Type.WORKFLOW_FAILED,
+                // (the reason of the failure is only logged: it may tell
+                // about the internals of the step)
+                Json.createObjectBuilder()
+                        .add("trigger", ctxt.getType().name()));
     }
     
+    /** The outcome of a step run by {@link #executeSteps}. */
+    private record StepRun(int stepIdx, WorkflowStepResult result) {}
+    
     /**
-     * Execute the passed workflow, starting from {@code initialStepIdx}.
+     * Execute the steps of the passed workflow that are not completed yet: each
+     * one as soon as the steps it depends on are completed, so that the steps
+     * that don't depend on each other run at the same time. Once a step waits
+     * for an external system, no more steps are started; the steps already
+     * started are waited for, and the workflow then paused. Only one step can
+     * wait for an external system at a time.
+     * 
+     * Once a step fails, or runs for longer than its timeout (counted from when
+     * it starts running, not from when it is queued), the other steps are
+     * cancelled: those still queued never run, and those running are
+     * interrupted, and waited for a while longer, so that they are not rolled
+     * back while they still run. The workflow is then rolled back.
+     * 
      * @param wf    The workflow to run.
      * @param ctxt  Execution context to run the workflow in.  
-     * @param initialStepIdx 0-based index of the first step to run.
+     * @param completed 0-based indexes of the steps already completed.
      */
-    private void executeSteps(Workflow wf, WorkflowContext ctxt, int initialStepIdx ) {
+    private void executeSteps(Workflow wf, WorkflowContext ctxt, Set<Integer> completed) {
         final List<WorkflowStepData> steps = wf.getSteps();
+        final Set<Integer> done = new HashSet<>(completed);
+        final Set<Integer> started = new HashSet<>(completed);
+        final Map<Integer, StepRunner> running = new HashMap<>();
+        final CompletionService<StepRun> runs = new ExecutorCompletionService<>(stepExecutor.getExecutor());
+        final long defaultTimeout = JvmSettings.WORKFLOWS_STEP_TIMEOUT.lookupOptional(Long.class).orElse(0L);
         
-        for ( int stepIdx = initialStepIdx; stepIdx < steps.size(); stepIdx++ ) {
-            WorkflowStepData wsd = steps.get(stepIdx);
-            WorkflowStep step = createStep(wsd);
-            WorkflowStepResult res = runStep(step, ctxt);
+        Failure failure = null;
+        Pending pendingRes = null;
+        int pendingStepIdx = -1;
+        // the steps that waited for an external system, to be rolled back if the workflow fails
+        final Set<Integer> waiting = new HashSet<>();
+        // (the steps are run through the business proxy, for each one to run
+        // in a transaction of its own)
+        final WorkflowServiceBean self = self();
+        
+        while (failure == null) {
+            if (pendingRes == null) {
+                for (int stepIdx = 0; stepIdx < steps.size(); stepIdx++) {
+                    if (started.contains(stepIdx) || !done.containsAll(wf.getPrerequisites(stepIdx))) {
+                        continue;
+                    }
+                    final int idx = stepIdx;
+                    final WorkflowContext stepCtxt = ctxt;
+                    final WorkflowStep step;
+                    try {
+                        step = createStep(steps.get(idx));
+                    } catch (IllegalArgumentException e) {
+                        failure = new Failure("Workflow step " + idx + " could not be created: " + e.getMessage());
+                        break;
+                    }
+                    Integer timeout = steps.get(idx).getTimeout();
+                    final StepRunner runner = new StepRunner(1000 * ((timeout != null) ? timeout : defaultTimeout));
+                    runner.future = runs.submit(() -> {
+                        if (!runner.start()) {
+                            // (cancelled while it was queued)
+                            return new StepRun(idx, new Failure("Workflow step " + idx + " cancelled"));
+                        }
+                        WorkflowStepResult res = null;
+                        try {
+                            res = self.runStep(step, stepCtxt);
+                        } catch (RuntimeException e) {
+                            logger.log(Level.WARNING, "Workflow " + stepCtxt.getInvocationId() + " step " + idx + ": Uncaught exception", e);
+                            res = new Failure("Workflow step " + idx + " failed: " + e.getMessage());
+                        } finally {
+                            runner.end(res);
+                        }
+                        return new StepRun(idx, res);
+                    });
+                    running.put(idx, runner);
+                    started.add(idx);
+                }
+            }
+            if (failure != null || running.isEmpty()) {
+                break;
+            }
             
+            StepRun run;
             try {
-                if (res == WorkflowStepResult.OK) {
-                    logger.log(Level.INFO, "Workflow {0} step {1}: OK", new Object[]{ctxt.getInvocationId(), stepIdx});
-                    em.merge(ctxt.getDataset());
-                    ctxt = refresh(ctxt);
-                } else if (res instanceof Failure) {
-                    logger.log(Level.WARNING, "Workflow {0} failed: {1}", new Object[]{ctxt.getInvocationId(), ((Failure) res).getReason()});
-                    rollback(wf, ctxt, (Failure) res, stepIdx-1 );
-                    return;
-
-                } else if (res instanceof Pending) {
-                    pauseAndAwait(wf, ctxt, (Pending) res, stepIdx);
-                    return;
+                run = nextRun(runs, running);
+            } catch (InterruptedException e) {
+                // (the server is shutting down: the steps queued or running are
+                // cancelled, and the workflow continued once it is up again)
+                Thread.currentThread().interrupt();
+                running.values().forEach(StepRunner::cancel);
+                logger.log(Level.WARNING, "Workflow {0} interrupted, with steps {1} still running", new Object[]{ctxt.getInvocationId(), running.keySet()});
+                return;
+            }
+            if (run == null) {
+                long now = System.currentTimeMillis();
+                for (Map.Entry<Integer, StepRunner> runner : running.entrySet()) {
+                    if (runner.getValue().getDeadline() <= now) {
+                        logger.log(Level.WARNING, "Workflow {0} step {1}: timed out", new Object[]{ctxt.getInvocationId(), runner.getKey()});
+                        if (failure == null) {
+                            failure = new Failure("Workflow step " + runner.getKey() + " timed out");
+                        }
+                    }
+                }
+                continue;
+            }
+            
+            final int stepIdx = run.stepIdx();
+            final WorkflowStepResult res = run.result();
+            running.remove(stepIdx);
+            
+            if (res instanceof Failure) {
+                logger.log(Level.WARNING, "Workflow {0} failed: {1}", new Object[]{ctxt.getInvocationId(), ((Failure) res).getReason()});
+                failure = (Failure) res;
+                
+            } else if (res instanceof Pending) {
+                waiting.add(stepIdx);
+                if (pendingRes == null) {
+                    pendingRes = (Pending) res;
+                    pendingStepIdx = stepIdx;
+                } else {
+                    failure = new Failure("Workflow steps " + pendingStepIdx + " and " + stepIdx + " both wait for an external system");
                 }
                 
-            } catch ( Exception e ) {
-                logger.log(Level.WARNING, "Workflow {0} step {1}: Uncought exception:", new Object[]{ctxt.getInvocationId(), e.getMessage()});
-                logger.log(Level.WARNING, "Trace:", e);
-                rollback(wf, ctxt, (Failure) res, stepIdx-1 );
+            } else {
+                logger.log(Level.INFO, "Workflow {0} step {1}: OK", new Object[]{ctxt.getInvocationId(), stepIdx});
+                done.add(stepIdx);
+                try {
+                    // (the step changed the dataset in its own transaction;
+                    // which also wrote the changes of the context it was
+                    // given, see runStep)
+                    Dataset dataset = em.find(Dataset.class, ctxt.getDataset().getId());
+                    em.refresh(dataset);
+                    ctxt = withDataset(ctxt, dataset);
+                } catch ( Exception e ) {
+                    logger.log(Level.WARNING, "Workflow {0} step {1}: Uncought exception:", new Object[]{ctxt.getInvocationId(), e.getMessage()});
+                    logger.log(Level.WARNING, "Trace:", e);
+                    failure = new Failure("Workflow step " + stepIdx + ": " + e.getMessage());
+                    continue;
+                }
+                saveStepCompleted(ctxt, stepIdx);
+            }
+        }
+        
+        if (failure != null) {
+            try {
+                waiting.addAll(cancelSteps(ctxt, running));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.log(Level.WARNING, "Workflow {0} interrupted while its steps were cancelled", ctxt.getInvocationId());
                 return;
             }
+            Set<Integer> toRollBack = new HashSet<>(done);
+            toRollBack.addAll(waiting);
+            rollback(wf, ctxt, failure, toRollBack);
+        } else if (pendingRes != null) {
+            pauseAndAwait(wf, ctxt, pendingRes, pendingStepIdx);
+        } else {
+            workflowCompleted(wf, ctxt);
         }
         
-        workflowCompleted(wf, ctxt);
+    }
+    
+    /**
+     * Cancels the steps queued or running, and waits for those running to end,
+     * for up to {@link #STEP_INTERRUPT_GRACE} milliseconds.
+     * 
+     * @return the steps that ended without failing, once cancelled: they are
+     * rolled back with the others.
+     */
+    private Set<Integer> cancelSteps(WorkflowContext ctxt, Map<Integer, StepRunner> running) throws InterruptedException {
+        Set<Integer> toRollBack = new HashSet<>();
+        Map<Integer, StepRunner> cancelled = new HashMap<>();
+        running.forEach((idx, runner) -> {
+            if (runner.cancel()) {
+                cancelled.put(idx, runner);
+            }
+        });
+        long graceEnd = System.currentTimeMillis() + STEP_INTERRUPT_GRACE;
+        for (Map.Entry<Integer, StepRunner> runner : cancelled.entrySet()) {
+            if (!runner.getValue().awaitEnd(graceEnd - System.currentTimeMillis())) {
+                logger.log(Level.SEVERE, "Workflow {0} step {1}: still running after it was interrupted; it won''t be rolled back",
+                        new Object[]{ctxt.getInvocationId(), runner.getKey()});
+            } else if (!(runner.getValue().getResult() instanceof Failure)) {
+                toRollBack.add(runner.getKey());
+            }
+        }
+        return toRollBack;
+    }
+    
+    /**
+     * Waits for the next step to complete, until the earliest deadline of the
+     * running steps. The deadlines of the steps still queued are not known
+     * yet: they are looked at again every {@link #STEP_START_POLL} milliseconds.
+     * 
+     * @return the outcome of the step, or {@code null} if a deadline came first.
+     */
+    private StepRun nextRun(CompletionService<StepRun> runs, Map<Integer, StepRunner> running) throws InterruptedException {
+        while (true) {
+            long deadline = Long.MAX_VALUE;
+            boolean queued = false;
+            for (StepRunner runner : running.values()) {
+                deadline = Math.min(deadline, runner.getDeadline());
+                queued |= !runner.isStarted();
+            }
+            long now = System.currentTimeMillis();
+            if (deadline <= now) {
+                return null;
+            }
+            Future<StepRun> next;
+            if (deadline == Long.MAX_VALUE && !queued) {
+                next = runs.take();
+            } else {
+                next = runs.poll(queued ? Math.min(deadline - now, STEP_START_POLL) : deadline - now, TimeUnit.MILLISECONDS);
+                if (next == null) {
+                    continue;
+                }
+            }
+            try {
+                return next.get();
+            } catch (ExecutionException e) {
+                // the steps are run so that they don't throw
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+    
+    /**
+     * A step submitted by {@link #executeSteps}: when it started running, and
+     * how it ended; for it to time out, and to be cancelled.
+     */
+    private static class StepRunner {
+        
+        // in milliseconds; 0 for none
+        private final long timeout;
+        private final CountDownLatch ended = new CountDownLatch(1);
+        private Future<StepRun> future;
+        private long startTime;
+        private boolean cancelled;
+        private WorkflowStepResult result;
+        
+        StepRunner(long timeout) {
+            this.timeout = timeout;
+        }
+        
+        /**
+         * @return false if the step was cancelled before it could start.
+         */
+        synchronized boolean start() {
+            if (cancelled) {
+                return false;
+            }
+            startTime = System.currentTimeMillis();
+            return true;
+        }
+        
+        void end(WorkflowStepResult result) {
+            synchronized (this) {
+                this.result = result;
+            }
+            ended.countDown();
+        }
+        
+        synchronized boolean isStarted() {
+            return startTime > 0;
+        }
         
+        /**
+         * @return when the step times out; never, while it is queued.
+         */
+        synchronized long getDeadline() {
+            return (startTime > 0 && timeout > 0) ? startTime + timeout : Long.MAX_VALUE;
+        }
+        
+        synchronized WorkflowStepResult getResult() {
+            return result;
+        }
+        
+        /**
+         * Cancels the step: it never starts if it is queued, and is
+         * interrupted if it is running.
+         * 
+         * @return true if the step had started, and is to be waited for.
+         */
+        boolean cancel() {
+            boolean wasStarted;
+            synchronized (this) {
+                cancelled = true;
+                wasStarted = startTime > 0;
+            }
+            future.cancel(true);
+            return wasStarted;
+        }
+        
+        boolean awaitEnd(long wait) throws InterruptedException {
+            return ended.await(Math.max(0, wait), TimeUnit.MILLISECONDS);
+        }
     }
     
     //////////////////////////////////////////////////////////////
     // Internal methods to run each step in its own transaction.
     //
     
+    /**
+     * Runs the step, in a transaction of its own, on a copy of the dataset of
+     * its own: the steps that don't depend on each other run at the same time.
+     * The copy is merged from the dataset of the workflow, rather than found,
+     * so that a PostPublication step sees the changes of the publication (see
+     * {@link #refresh(WorkflowContext, Map, ApiToken, boolean)}). (To be called
+     * through the business proxy.)
+     */
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
-    WorkflowStepResult runStep( WorkflowStep step, WorkflowContext ctxt ) {
-        return step.run(ctxt);
+    public WorkflowStepResult runStep( WorkflowStep step, WorkflowContext ctxt ) {
+        return step.run(refresh(ctxt));
     }
     
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
@@ -330,7 +753,7 @@ public class WorkflowServiceBean {
     }
     
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
-    void rollbackStep( WorkflowStep step, WorkflowContext ctxt, Failure reason ) {
+    public void rollbackStep( WorkflowStep step, WorkflowContext ctxt, Failure reason ) {
         step.rollback(ctxt, reason);
     }
     
@@ -380,8 +803,103 @@ public class WorkflowServiceBean {
     private void pauseAndAwait(Workflow wf, WorkflowContext ctxt, Pending pendingRes, int idx) {
         PendingWorkflowInvocation pending = new PendingWorkflowInvocation(wf, ctxt, pendingRes);
         pending.setPendingStepIdx(idx);
-        em.persist(pending);
+        self().savePending(pending);
     }
+    
+    //////////////////////////////////////////////////////////////
+    // The progress of the workflows, saved in their own transactions
+    // so that it is kept whatever happens to the workflow.
+    //
+    
+    /**
+     * Saves the workflow as pending, or as running if it is marked so; in
+     * place of the one saved earlier, if any.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void savePending(PendingWorkflowInvocation pending) {
+        pending.setWorkflow(em.find(Workflow.class, pending.getWorkflow().getId()));
+        pending.setDataset(em.find(Dataset.class, pending.getDataset().getId()));
+        em.merge(pending);
+    }
+    
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void saveStepCompleted(String invocationId, int stepIdx) {
+        em.createNativeQuery("INSERT INTO workflowstepcompletion (invocationid, stepindex, completiontime) VALUES (?1, ?2, now())"
+                + " ON CONFLICT DO NOTHING")
+                .setParameter(1, invocationId)
+                .setParameter(2, stepIdx)
+                .executeUpdate();
+    }
+    
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void clearProgress(String invocationId) {
+        em.createNativeQuery("DELETE FROM workflowstepcompletion WHERE invocationid = ?1")
+                .setParameter(1, invocationId)
+                .executeUpdate();
+        PendingWorkflowInvocation pending = em.find(PendingWorkflowInvocation.class, invocationId);
+        if (pending != null) {
+            em.remove(pending);
+        }
+    }
+    
+    /**
+     * @return the 0-based indexes of the steps of the workflow completed so far.
+     */
+    public Set<Integer> findCompletedSteps(String invocationId) {
+        List<?> stepIdxs = em.createNativeQuery("SELECT stepindex FROM workflowstepcompletion WHERE invocationid = ?1")
+                .setParameter(1, invocationId)
+                .getResultList();
+        return stepIdxs.stream().map(idx -> ((Number) idx).intValue()).collect(Collectors.toSet());
+    }
+    
+    private void saveRunning(Workflow wf, WorkflowContext ctxt) {
+        try {
+            PendingWorkflowInvocation running = new PendingWorkflowInvocation(wf, ctxt);
+            running.setRunningOn(thisServer());
+            self().savePending(running);
+        } catch (RuntimeException e) {
+            // the workflow can still run, it just won't be continued after a restart
+            logger.log(Level.WARNING, "Could not save workflow " + ctxt.getInvocationId() + " as running: " + e.getMessage(), e);
+        }
+    }
+    
+    private void saveStepCompleted(WorkflowContext ctxt, int stepIdx) {
+        try {
+            self().saveStepCompleted(ctxt.getInvocationId(), stepIdx);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Could not save the completion of workflow " + ctxt.getInvocationId() + " step " + stepIdx + ": " + e.getMessage(), e);
+        }
+    }
+    
+    private void clearProgress(WorkflowContext ctxt) {
+        try {
+            self().clearProgress(ctxt.getInvocationId());
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Could not clear the progress of workflow " + ctxt.getInvocationId() + ": " + e.getMessage(), e);
+        }
+    }
+    
+    private WorkflowServiceBean self() {
+        return sessionContext.getBusinessObject(WorkflowServiceBean.class);
+    }
+    
+    /**
+     * @return the id of this server, as recorded with the workflows it runs:
+     * {@link JvmSettings#WORKFLOWS_NODE_ID}, or else its host name.
+     */
+    static String thisServer() {
+        return JvmSettings.WORKFLOWS_NODE_ID.lookupOptional().orElseGet(() -> {
+            try {
+                return InetAddress.getLocalHost().getCanonicalHostName();
+            } catch (UnknownHostException e) {
+                return "localhost";
+            }
+        });
+    }
+    
+    //
+    //
+    //////////////////////////////////////////////////////////////
 
     private void workflowCompleted(Workflow wf, WorkflowContext ctxt) {
         logger.log(Level.INFO, "Workflow {0} completed.", ctxt.getInvocationId());
@@ -416,9 +934,14 @@ public class WorkflowServiceBean {
                 logger.fine("Removing workflow lock");
                 unlockDataset(ctxt);
             }
+            clearProgress(ctxt);
+            datasetEvents.publish(ctxt.getDataset().getId(), DatasetEventServiceBean.Type.WORKFLOW_DONE,
+                    Json.createObjectBuilder()
+                            .add("trigger", ctxt.getType().name()));
             } catch (CommandException ex) {
                 logger.log(Level.SEVERE, "Exception finalizing workflow " + ctxt.getInvocationId() +": " + ex.getMessage(), ex);
-                rollback(wf, ctxt, new Failure("Exception while finalizing the publication: " + ex.getMessage()), wf.steps.size()-1);
+                rollback(wf, ctxt, new Failure("Exception while finalizing the publication: " + ex.getMessage()),
+                        IntStream.range(0, wf.steps.size()).boxed().collect(Collectors.toList()));
             }
         
     }
@@ -512,6 +1035,12 @@ public class WorkflowServiceBean {
         return provider.getStep(wsd.getStepType(), wsd.getStepParameters());
     }
     
+    private static WorkflowContext withDataset(WorkflowContext ctxt, Dataset dataset) {
+        return new WorkflowContext(ctxt.getRequest(), dataset, ctxt.getNextVersionNumber(), ctxt.getNextMinorVersionNumber(),
+                ctxt.getType(), ctxt.getSettings(), ctxt.getApiToken(), ctxt.getDatasetExternallyReleased(),
+                ctxt.getInvocationId(), ctxt.getLockId());
+    }
+
     private WorkflowContext refresh( WorkflowContext ctxt ) {
     	return refresh(ctxt, ctxt.getSettings(), ctxt.getApiToken());
     }
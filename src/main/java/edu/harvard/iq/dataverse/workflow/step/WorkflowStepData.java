@@ -2,7 +2,10 @@ package edu.harvard.iq.dataverse.workflow.step;
 
 import edu.harvard.iq.dataverse.workflow.Workflow;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 import jakarta.persistence.Column;
 import jakarta.persistence.ElementCollection;
 import jakarta.persistence.Entity;
@@ -42,6 +45,18 @@ public class WorkflowStepData implements Serializable {
     @Column(length = 2048)
     private Map<String,String> stepSettings;
 
+    /**
+     * The indexes of the steps of the workflow that have to be completed before
+     * this one is started, separated by commas; {@code null} for the step before
+     * it (or none, for the first step).
+     */
+    private String dependsOn;
+
+    /**
+     * How long the step may run, in seconds; {@code null} for the default.
+     */
+    private Integer timeout;
+
 
     public Workflow getParent() {
         return parent;
@@ -75,6 +90,33 @@ public class WorkflowStepData implements Serializable {
         this.stepParameters = stepParameters;
     }
 
+    /**
+     * @return the indexes of the steps this one depends on, or {@code null} if
+     * it depends on the step before it.
+     */
+    public List<Integer> getDependsOn() {
+        if (dependsOn == null) {
+            return null;
+        }
+        if (dependsOn.isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(dependsOn.split(",")).map(String::trim).map(Integer::valueOf).collect(Collectors.toList());
+    }
+
+    public void setDependsOn(List<Integer> dependsOn) {
+        this.dependsOn = (dependsOn == null) ? null
+                : dependsOn.stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
+
+    public Integer getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(Integer timeout) {
+        this.timeout = timeout;
+    }
+
     public long getId() {
         return id;
     }
@@ -85,7 +127,7 @@ public class WorkflowStepData implements Serializable {
 
     @Override
     public String toString() {
-        return "WorkflowStepData{" + "parent=" + parent + ", providerId=" + providerId + ", stepType=" + stepType + ", parameters=" + stepParameters + ", settings=" + stepSettings + '}';
+        return "WorkflowStepData{" + "parent=" + parent + ", providerId=" + providerId + ", stepType=" + stepType + ", parameters=" + stepParameters + ", settings=" + stepSettings + ", dependsOn=" + dependsOn + ", timeout=" + timeout + '}';
     }
 
     public void setStepSettings(Map<String, String> settingsMap) {
@@ -0,0 +1,14 @@
+-- The storage locations of the deleted datafiles, whose objects (and their
+-- auxiliary objects) are still to be deleted from the storage by the
+-- StorageReaperServiceBean. Those it has given up on are kept, with a null
+-- nextattempttime.
+CREATE TABLE IF NOT EXISTS storagetombstone (
+    id BIGSERIAL PRIMARY KEY,
+    datafile_id BIGINT,
+    storagelocation TEXT NOT NULL,
+    createtime TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    attempts INTEGER NOT NULL DEFAULT 0,
+    nextattempttime TIMESTAMP WITHOUT TIME ZONE,
+    lasterror TEXT
+);
+CREATE INDEX IF NOT EXISTS index_storagetombstone_nextattempttime ON storagetombstone (nextattempttime);
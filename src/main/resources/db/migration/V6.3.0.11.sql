@@ -0,0 +1,21 @@
+-- The multipart direct uploads in progress, tracked by the
+-- MultipartUploadServiceBean so that they can be resumed, and aborted once
+-- abandoned; and the ETags of the parts uploaded, as told by the clients.
+CREATE TABLE IF NOT EXISTS multipartupload (
+    id BIGSERIAL PRIMARY KEY,
+    uploadid TEXT NOT NULL UNIQUE,
+    globalid TEXT NOT NULL,
+    storageidentifier TEXT NOT NULL,
+    filesize BIGINT NOT NULL,
+    partsize BIGINT NOT NULL,
+    createtime TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    lastupdatetime TIMESTAMP WITHOUT TIME ZONE NOT NULL
+);
+CREATE INDEX IF NOT EXISTS index_multipartupload_lastupdatetime ON multipartupload (lastupdatetime);
+
+CREATE TABLE IF NOT EXISTS multipartuploadpart (
+    multipartupload_id BIGINT NOT NULL REFERENCES multipartupload (id) ON DELETE CASCADE,
+    partnumber INTEGER NOT NULL,
+    etag TEXT NOT NULL,
+    PRIMARY KEY (multipartupload_id, partnumber)
+);
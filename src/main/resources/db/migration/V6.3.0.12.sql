@@ -0,0 +1,3 @@
+-- When the server running a workflow last told it was still running it
+ALTER TABLE pendingworkflowinvocation ADD COLUMN IF NOT EXISTS heartbeattime TIMESTAMP;
+UPDATE pendingworkflowinvocation SET heartbeattime = now() WHERE runningon IS NOT NULL AND heartbeattime IS NULL;
@@ -0,0 +1,6 @@
+-- When the urls last given to upload the parts of a multipart upload expire:
+-- the upload isn't aborted as idle before then. Those given before this was
+-- recorded are taken to last as long as a presigned url can (7 days).
+ALTER TABLE multipartupload ADD COLUMN IF NOT EXISTS urlexpirationtime TIMESTAMP WITHOUT TIME ZONE;
+UPDATE multipartupload SET urlexpirationtime = lastupdatetime + INTERVAL '7 days' WHERE urlexpirationtime IS NULL;
+ALTER TABLE multipartupload ALTER COLUMN urlexpirationtime SET NOT NULL;
@@ -0,0 +1,2 @@
+-- When the checksum of the file was last validated (on publication); see FinalizeDatasetPublicationCommand
+ALTER TABLE datafile ADD COLUMN IF NOT EXISTS checksumvalidationtime TIMESTAMP WITHOUT TIME ZONE;
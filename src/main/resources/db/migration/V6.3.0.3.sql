@@ -0,0 +1,12 @@
+-- The files whose PIDs have been publicized by an attempt to publish their
+-- dataset; recorded outside the transaction of the publication, so that a new
+-- attempt can skip them if the publication fails. Removed once it succeeds.
+CREATE TABLE IF NOT EXISTS publicizedfilepid (
+    datafile_id BIGINT PRIMARY KEY REFERENCES dvobject (id) ON DELETE CASCADE,
+    dataset_id BIGINT NOT NULL REFERENCES dvobject (id) ON DELETE CASCADE,
+    protocol VARCHAR(255),
+    authority VARCHAR(255),
+    identifier VARCHAR(255),
+    publicizedtime TIMESTAMP WITHOUT TIME ZONE NOT NULL
+);
+CREATE INDEX IF NOT EXISTS index_publicizedfilepid_dataset_id ON publicizedfilepid (dataset_id);
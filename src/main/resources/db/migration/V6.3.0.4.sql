@@ -0,0 +1,7 @@
+-- The versions of the entities kept in the shared cache, bumped by every change
+-- to them when the cache is coordinated through the database (see
+-- dataverse.cache.shared.coordination)
+CREATE TABLE IF NOT EXISTS sharedcacheversion (
+    entityname VARCHAR(255) PRIMARY KEY,
+    version BIGINT NOT NULL
+);
@@ -0,0 +1,16 @@
+-- The sizes of the auxiliary objects (saved originals, thumbnails, cached
+-- format conversions and metadata exports...) of the datafiles and datasets,
+-- as saved and deleted by the storage drivers; so that they can be added up in
+-- the database, instead of being listed from the storage every time.
+CREATE TABLE IF NOT EXISTS auxobjectsize (
+    dvobject_id BIGINT NOT NULL REFERENCES dvobject (id) ON DELETE CASCADE,
+    auxtag TEXT NOT NULL,
+    size BIGINT NOT NULL,
+    PRIMARY KEY (dvobject_id, auxtag)
+);
+-- The datasets whose auxiliary objects have been listed from the storage into
+-- auxobjectsize (and kept up to date since).
+CREATE TABLE IF NOT EXISTS auxobjectsizereconciliation (
+    dataset_id BIGINT PRIMARY KEY REFERENCES dvobject (id) ON DELETE CASCADE,
+    reconciletime TIMESTAMP WITHOUT TIME ZONE NOT NULL
+);
@@ -0,0 +1,25 @@
+-- The numbers of downloads (guestbook responses other than access requests)
+-- of each file, and of each dataset by day; incremented as the responses are
+-- saved, so that the download counts don't have to be counted from the
+-- guestbookresponse table.
+CREATE TABLE IF NOT EXISTS filedownloadcount (
+    datafile_id BIGINT PRIMARY KEY REFERENCES dvobject (id) ON DELETE CASCADE,
+    downloadcount BIGINT NOT NULL
+);
+CREATE TABLE IF NOT EXISTS datasetdownloadcount (
+    dataset_id BIGINT NOT NULL REFERENCES dvobject (id) ON DELETE CASCADE,
+    responsedate DATE NOT NULL,
+    downloadcount BIGINT NOT NULL,
+    PRIMARY KEY (dataset_id, responsedate)
+);
+-- (counted from the responses saved so far)
+INSERT INTO filedownloadcount (datafile_id, downloadcount)
+    SELECT datafile_id, count(id) FROM guestbookresponse
+    WHERE datafile_id IS NOT NULL AND eventtype != 'AccessRequest'
+    GROUP BY datafile_id
+    ON CONFLICT (datafile_id) DO NOTHING;
+INSERT INTO datasetdownloadcount (dataset_id, responsedate, downloadcount)
+    SELECT dataset_id, CAST(responsetime AS DATE), count(id) FROM guestbookresponse
+    WHERE dataset_id IS NOT NULL AND responsetime IS NOT NULL AND eventtype != 'AccessRequest'
+    GROUP BY dataset_id, CAST(responsetime AS DATE)
+    ON CONFLICT (dataset_id, responsedate) DO NOTHING;
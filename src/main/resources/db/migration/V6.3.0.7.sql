@@ -0,0 +1,16 @@
+-- The notification emails waiting to be sent, written in the same transaction
+-- as the notifications; sent, and removed, by the EmailOutboxServiceBean.
+-- Those it has given up on are kept, with a null nextattempttime.
+CREATE TABLE IF NOT EXISTS emailoutbox (
+    id BIGSERIAL PRIMARY KEY,
+    recipient TEXT NOT NULL,
+    subject TEXT NOT NULL,
+    body TEXT NOT NULL,
+    html BOOLEAN NOT NULL,
+    digestkey VARCHAR(255),
+    createtime TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    attempts INTEGER NOT NULL DEFAULT 0,
+    nextattempttime TIMESTAMP WITHOUT TIME ZONE,
+    lasterror TEXT
+);
+CREATE INDEX IF NOT EXISTS index_emailoutbox_nextattempttime ON emailoutbox (nextattempttime);
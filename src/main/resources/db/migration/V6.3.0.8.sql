@@ -0,0 +1,2 @@
+-- When the links of each saved search were last all made; null until the first time
+ALTER TABLE savedsearch ADD COLUMN IF NOT EXISTS lastlinktime TIMESTAMP;
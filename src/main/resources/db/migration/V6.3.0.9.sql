@@ -0,0 +1,14 @@
+-- The steps of a workflow each step depends on (null: the step before it), and how long it may run
+ALTER TABLE workflowstepdata ADD COLUMN IF NOT EXISTS dependson VARCHAR(255);
+ALTER TABLE workflowstepdata ADD COLUMN IF NOT EXISTS timeout INTEGER;
+
+-- The server running a workflow; null while it waits for an external system
+ALTER TABLE pendingworkflowinvocation ADD COLUMN IF NOT EXISTS runningon VARCHAR(255);
+
+-- The steps of the running and pending workflows completed so far
+CREATE TABLE IF NOT EXISTS workflowstepcompletion (
+    invocationid VARCHAR(255) NOT NULL,
+    stepindex INTEGER NOT NULL,
+    completiontime TIMESTAMP NOT NULL,
+    PRIMARY KEY (invocationid, stepindex)
+);
@@ -0,0 +1,161 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.testing.JvmSetting;
+import edu.harvard.iq.dataverse.util.testing.LocalJvmSettings;
+import jakarta.json.Json;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import javax.cache.Cache;
+import javax.cache.processor.EntryProcessor;
+import javax.cache.processor.MutableEntry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@LocalJvmSettings
+class DatasetEventServiceBeanTest {
+
+    private DatasetEventServiceBean datasetEventService;
+    private final Map<String, String> cached = new ConcurrentHashMap<>();
+    private final Map<Object, Object> transactionResources = new HashMap<>();
+
+    /** A client that keeps the events told, until it is gone. */
+    private static class TestListener implements DatasetEventServiceBean.Listener {
+        final List<DatasetEventServiceBean.Event> events = new ArrayList<>();
+        boolean gone;
+
+        @Override
+        public boolean onEvent(DatasetEventServiceBean.Event event) {
+            if (gone) {
+                return false;
+            }
+            events.add(event);
+            return true;
+        }
+
+        @Override
+        public boolean onPing() {
+            return !gone;
+        }
+    }
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        datasetEventService = new DatasetEventServiceBean();
+        datasetEventService.transactionRegistry = Mockito.mock(TransactionSynchronizationRegistry.class);
+        when(datasetEventService.transactionRegistry.getTransactionStatus()).thenReturn(Status.STATUS_NO_TRANSACTION);
+        when(datasetEventService.transactionRegistry.getResource(any())).then(i -> transactionResources.get(i.getArgument(0)));
+        Mockito.doAnswer(i -> transactionResources.put(i.getArgument(0), i.getArgument(1)))
+                .when(datasetEventService.transactionRegistry).putResource(any(), any());
+
+        // (a cache of its own, over a map)
+        datasetEventService.eventCache = Mockito.mock(Cache.class);
+        when(datasetEventService.eventCache.get(anyString())).then(i -> cached.get(i.getArgument(0)));
+        when(datasetEventService.eventCache.invoke(anyString(), any(EntryProcessor.class), any())).then(i -> {
+            String key = i.getArgument(0);
+            MutableEntry<String, String> entry = Mockito.mock(MutableEntry.class);
+            when(entry.exists()).then(j -> cached.containsKey(key));
+            when(entry.getValue()).then(j -> cached.get(key));
+            Mockito.doAnswer(j -> cached.put(key, j.getArgument(0))).when(entry).setValue(anyString());
+            EntryProcessor<String, String, Object> processor = i.getArgument(1);
+            return processor.process(entry, (Object) i.getArgument(2));
+        });
+    }
+
+    @Test
+    void testEventsNumberedAndTrimmed() {
+        for (int i = 0; i < DatasetEventServiceBean.MAX_EVENTS + 5; i++) {
+            datasetEventService.publish(42L, DatasetEventServiceBean.Type.INDEX_DONE);
+        }
+        datasetEventService.publish(7L, DatasetEventServiceBean.Type.INGEST_DONE,
+                Json.createObjectBuilder().add("withErrors", false));
+
+        List<DatasetEventServiceBean.Event> events = datasetEventService.readEvents(42L);
+        assertEquals(DatasetEventServiceBean.MAX_EVENTS, events.size());
+        assertEquals(6L, events.get(0).sequence());
+        assertEquals(DatasetEventServiceBean.MAX_EVENTS + 5L, events.get(events.size() - 1).sequence());
+
+        DatasetEventServiceBean.Event ingest = datasetEventService.readEvents(7L).get(0);
+        assertEquals(1L, ingest.sequence());
+        assertEquals("ingest-done", ingest.type());
+        assertFalse(ingest.details().getBoolean("withErrors"));
+    }
+
+    @Test
+    void testOnlyNewEventsDelivered() {
+        datasetEventService.publish(42L, DatasetEventServiceBean.Type.LOCK_ADDED);
+        TestListener listener = new TestListener();
+        assertTrue(datasetEventService.subscribe(List.of(42L, 7L), listener));
+
+        datasetEventService.publish(42L, DatasetEventServiceBean.Type.LOCK_REMOVED);
+        datasetEventService.publish(7L, DatasetEventServiceBean.Type.PUBLICATION_DONE);
+        datasetEventService.publish(8L, DatasetEventServiceBean.Type.PUBLICATION_DONE);
+        // (read again, as on the timer; nothing told twice)
+        datasetEventService.deliver(42L);
+        datasetEventService.deliver(7L);
+
+        assertEquals(2, listener.events.size());
+        assertEquals("lock-removed", listener.events.get(0).type());
+        assertEquals(2L, listener.events.get(0).sequence());
+        assertEquals(7L, listener.events.get(1).datasetId());
+    }
+
+    @Test
+    void testGoneListenersDropped() {
+        TestListener listener = new TestListener();
+        datasetEventService.subscribe(List.of(42L), listener);
+        listener.gone = true;
+        datasetEventService.publish(42L, DatasetEventServiceBean.Type.INDEX_DONE);
+
+        listener.gone = false;
+        datasetEventService.publish(42L, DatasetEventServiceBean.Type.INDEX_DONE);
+        assertTrue(listener.events.isEmpty());
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.DATASET_EVENTS_MAX_SUBSCRIBERS, value = "1")
+    void testSubscribersLimited() {
+        TestListener listener = new TestListener();
+        assertTrue(datasetEventService.subscribe(List.of(42L), listener));
+        assertFalse(datasetEventService.subscribe(List.of(42L), new TestListener()));
+
+        // (room again once the first one is gone)
+        listener.gone = true;
+        datasetEventService.publish(42L, DatasetEventServiceBean.Type.INDEX_DONE);
+        assertTrue(datasetEventService.subscribe(List.of(42L), new TestListener()));
+    }
+
+    @Test
+    void testEventsPublishedOnceCommitted() {
+        TestListener listener = new TestListener();
+        datasetEventService.subscribe(List.of(42L), listener);
+        when(datasetEventService.transactionRegistry.getTransactionStatus()).thenReturn(Status.STATUS_ACTIVE);
+        datasetEventService.publish(42L, DatasetEventServiceBean.Type.LOCK_ADDED);
+        datasetEventService.publish(42L, DatasetEventServiceBean.Type.LOCK_REMOVED);
+        ArgumentCaptor<Synchronization> synchronization = ArgumentCaptor.forClass(Synchronization.class);
+        verify(datasetEventService.transactionRegistry).registerInterposedSynchronization(synchronization.capture());
+        assertTrue(datasetEventService.readEvents(42L).isEmpty());
+
+        synchronization.getValue().afterCompletion(Status.STATUS_COMMITTED);
+        assertEquals(2, listener.events.size());
+        assertEquals("lock-added", listener.events.get(0).type());
+    }
+}
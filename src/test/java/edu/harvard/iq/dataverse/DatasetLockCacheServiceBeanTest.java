@@ -0,0 +1,147 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import jakarta.ejb.SessionContext;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import javax.cache.Cache;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DatasetLockCacheServiceBeanTest {
+
+    private DatasetLockCacheServiceBean datasetLockCache;
+    private TypedQuery<DatasetLock.Reason> query;
+    private final Map<String, String> cached = new ConcurrentHashMap<>();
+    private final Map<Object, Object> transactionResources = new HashMap<>();
+    private Dataset dataset;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        datasetLockCache = new DatasetLockCacheServiceBean();
+        datasetLockCache.em = Mockito.mock(EntityManager.class);
+        query = Mockito.mock(TypedQuery.class);
+        when(datasetLockCache.em.createQuery(anyString(), eq(DatasetLock.Reason.class))).thenReturn(query);
+        when(query.setParameter(anyString(), any())).thenReturn(query);
+        when(query.getResultList()).thenReturn(List.of());
+        datasetLockCache.sessionContext = Mockito.mock(SessionContext.class);
+        when(datasetLockCache.sessionContext.getBusinessObject(DatasetLockCacheServiceBean.class)).thenReturn(datasetLockCache);
+        datasetLockCache.transactionRegistry = Mockito.mock(TransactionSynchronizationRegistry.class);
+        when(datasetLockCache.transactionRegistry.getResource(any())).then(i -> transactionResources.get(i.getArgument(0)));
+        Mockito.doAnswer(i -> transactionResources.put(i.getArgument(0), i.getArgument(1)))
+                .when(datasetLockCache.transactionRegistry).putResource(any(), any());
+
+        // (a cache of its own, over a map)
+        datasetLockCache.lockCache = Mockito.mock(Cache.class);
+        when(datasetLockCache.lockCache.get(anyString())).then(i -> cached.get(i.getArgument(0)));
+        Mockito.doAnswer(i -> cached.put(i.getArgument(0), i.getArgument(1)))
+                .when(datasetLockCache.lockCache).put(anyString(), anyString());
+        when(datasetLockCache.lockCache.putIfAbsent(anyString(), anyString()))
+                .then(i -> cached.putIfAbsent(i.getArgument(0), i.getArgument(1)) == null);
+        when(datasetLockCache.lockCache.replace(anyString(), anyString(), anyString()))
+                .then(i -> cached.replace(i.getArgument(0), i.getArgument(1), i.getArgument(2)));
+
+        dataset = new Dataset();
+        dataset.setId(42L);
+    }
+
+    private DatasetLock lock(DatasetLock.Reason reason) {
+        DatasetLock lock = new DatasetLock(reason, new AuthenticatedUser());
+        lock.setDataset(dataset);
+        return lock;
+    }
+
+    @Test
+    void testReasonsLoadedOnceUntilChanged() {
+        assertFalse(datasetLockCache.isLocked(42L));
+        assertFalse(datasetLockCache.isLocked(42L));
+        verify(query, times(1)).getResultList();
+
+        when(query.getResultList()).thenReturn(List.of(DatasetLock.Reason.Ingest));
+        datasetLockCache.lockChanged(lock(DatasetLock.Reason.Ingest), true);
+        assertTrue(datasetLockCache.isLockedFor(42L, DatasetLock.Reason.Ingest));
+        assertFalse(datasetLockCache.isLockedFor(42L, DatasetLock.Reason.Workflow));
+        verify(query, times(2)).getResultList();
+    }
+
+    @Test
+    void testChangesSeenByTheirTransactionUntilCommitted() {
+        assertFalse(datasetLockCache.isLocked(42L));
+        when(datasetLockCache.transactionRegistry.getTransactionKey()).thenReturn("tx");
+        datasetLockCache.lockChanged(lock(DatasetLock.Reason.Workflow), true);
+        ArgumentCaptor<Synchronization> synchronization = ArgumentCaptor.forClass(Synchronization.class);
+        verify(datasetLockCache.transactionRegistry).registerInterposedSynchronization(synchronization.capture());
+        assertEquals(EnumSet.of(DatasetLock.Reason.Workflow), datasetLockCache.getLockReasons(42L));
+
+        // (the other transactions, and those rolled back, don't see it)
+        when(datasetLockCache.transactionRegistry.getTransactionKey()).thenReturn(null);
+        synchronization.getValue().afterCompletion(Status.STATUS_ROLLEDBACK);
+        assertFalse(datasetLockCache.isLocked(42L));
+
+        when(query.getResultList()).thenReturn(List.of(DatasetLock.Reason.Workflow));
+        synchronization.getValue().afterCompletion(Status.STATUS_COMMITTED);
+        assertEquals(EnumSet.of(DatasetLock.Reason.Workflow), datasetLockCache.getLockReasons(42L));
+    }
+
+    @Test
+    void testReasonsLoadedBeforeChangeNotCached() {
+        // a change is committed while the reasons are being loaded
+        when(query.getResultList()).then(i -> {
+            datasetLockCache.lockChanged(lock(DatasetLock.Reason.Ingest), true);
+            return List.of();
+        });
+        assertFalse(datasetLockCache.isLocked(42L));
+
+        when(query.getResultList()).thenReturn(List.of(DatasetLock.Reason.Ingest));
+        assertTrue(datasetLockCache.isLocked(42L));
+    }
+
+    @Test
+    void testWaitersToldOnceUnlocked() throws Exception {
+        when(query.getResultList()).thenReturn(List.of(DatasetLock.Reason.Ingest, DatasetLock.Reason.InReview));
+        CompletableFuture<Set<DatasetLock.Reason>> anyLock = datasetLockCache.awaitUnlocked(42L, null, 60000);
+        CompletableFuture<Set<DatasetLock.Reason>> ingest = datasetLockCache.awaitUnlocked(42L, DatasetLock.Reason.Ingest, 60000);
+        datasetLockCache.checkWaiters();
+        assertFalse(anyLock.isDone());
+        assertFalse(ingest.isDone());
+
+        when(query.getResultList()).thenReturn(List.of(DatasetLock.Reason.InReview));
+        datasetLockCache.lockChanged(lock(DatasetLock.Reason.Ingest), false);
+        datasetLockCache.checkWaiters();
+        assertFalse(anyLock.isDone());
+        assertEquals(EnumSet.of(DatasetLock.Reason.InReview), ingest.get());
+    }
+
+    @Test
+    void testWaitersToldOnTimeout() throws Exception {
+        when(query.getResultList()).thenReturn(List.of(DatasetLock.Reason.Ingest));
+        CompletableFuture<Set<DatasetLock.Reason>> waiter = datasetLockCache.awaitUnlocked(42L, null, 1);
+        Thread.sleep(5);
+        datasetLockCache.checkWaiters();
+        assertEquals(EnumSet.of(DatasetLock.Reason.Ingest), waiter.get());
+    }
+}
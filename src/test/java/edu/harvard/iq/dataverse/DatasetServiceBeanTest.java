@@ -0,0 +1,133 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.harvest.server.OAIRecordServiceBean;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.testing.JvmSetting;
+import edu.harvard.iq.dataverse.util.testing.LocalJvmSettings;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@LocalJvmSettings
+public class DatasetServiceBeanTest {
+
+    // the files directory, with the checkpoint of the re-export, and the
+    // instance root, with the log of the export
+    private static Path directory;
+
+    private DatasetServiceBean datasetService;
+    private OAIRecordServiceBean recordService;
+    private Path checkpoint;
+    // the date the datasets not exported since were looked up for, if any
+    private Date notExportedSince;
+    // whether the checkpoint was there while the datasets were exported
+    private final List<Boolean> checkpointed = Collections.synchronizedList(new ArrayList<>());
+
+    static String filesDirectory() {
+        return directory.toString();
+    }
+
+    @BeforeAll
+    public static void setUpClass() throws IOException {
+        directory = Files.createTempDirectory("exportAll");
+        Files.createDirectories(directory.resolve("logs"));
+        System.setProperty("com.sun.aas.instanceRoot", directory.toString());
+    }
+
+    @AfterAll
+    public static void tearDownClass() throws IOException {
+        System.clearProperty("com.sun.aas.instanceRoot");
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        checkpoint = directory.resolve("exportAll.checkpoint");
+        Files.deleteIfExists(checkpoint);
+        datasetService = new DatasetServiceBean() {
+            @Override
+            public List<Long> findAllLocalDatasetIds() {
+                return List.of(1L, 2L, 3L);
+            }
+
+            @Override
+            public List<Long> findAllLocalDatasetIdsNotExportedSince(Date date) {
+                notExportedSince = date;
+                return List.of(3L);
+            }
+        };
+        recordService = mock(OAIRecordServiceBean.class);
+        when(recordService.exportAllFormatsInNewTransaction(anyLong(), anyBoolean())).thenAnswer(invocation -> {
+            checkpointed.add(Files.exists(checkpoint));
+            return "doi:10.5072/FK2/" + invocation.getArgument(0);
+        });
+        datasetService.recordService = recordService;
+        ManagedThreadFactory threadFactory = mock(ManagedThreadFactory.class);
+        when(threadFactory.newThread(any())).thenAnswer(invocation -> new Thread((Runnable) invocation.getArgument(0)));
+        datasetService.threadFactory = threadFactory;
+    }
+
+    /**
+     * A forced re-export keeps its checkpoint while it runs, and deletes it
+     * once all the datasets have been exported.
+     */
+    @Test
+    @JvmSetting(key = JvmSettings.FILES_DIRECTORY, method = "filesDirectory")
+    public void testReExportAllWritesCheckpoint() throws Exception {
+        datasetService.exportAllDatasets(true);
+
+        verify(recordService).exportAllFormatsInNewTransaction(1L, true);
+        verify(recordService).exportAllFormatsInNewTransaction(2L, true);
+        verify(recordService).exportAllFormatsInNewTransaction(3L, true);
+        assertEquals(List.of(true, true, true), checkpointed);
+        assertNull(notExportedSince);
+        assertFalse(Files.exists(checkpoint));
+    }
+
+    /**
+     * An interrupted re-export is resumed from its checkpoint: only the
+     * datasets not exported since it started are exported again.
+     */
+    @Test
+    @JvmSetting(key = JvmSettings.FILES_DIRECTORY, method = "filesDirectory")
+    public void testReExportAllResumesFromCheckpoint() throws Exception {
+        Files.writeString(checkpoint, "1700000000000");
+
+        datasetService.exportAllDatasets(true);
+
+        assertEquals(new Date(1700000000000L), notExportedSince);
+        verify(recordService).exportAllFormatsInNewTransaction(3L, true);
+        verifyNoMoreInteractions(recordService);
+        assertFalse(Files.exists(checkpoint));
+    }
+
+    /**
+     * The exports that aren't forced trust the "last export" time stamps, and
+     * leave the checkpoint of a re-export alone.
+     */
+    @Test
+    @JvmSetting(key = JvmSettings.FILES_DIRECTORY, method = "filesDirectory")
+    public void testExportAllIgnoresCheckpoint() throws Exception {
+        Files.writeString(checkpoint, "1700000000000");
+
+        datasetService.exportAllDatasets(false);
+
+        assertNull(notExportedSince);
+        verify(recordService, times(3)).exportAllFormatsInNewTransaction(anyLong(), eq(false));
+        assertEquals("1700000000000", Files.readString(checkpoint));
+    }
+}
@@ -0,0 +1,160 @@
+package edu.harvard.iq.dataverse;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import jakarta.ejb.SessionContext;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class DownloadCountServiceBeanTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2024, 5, 17);
+
+    @Mock
+    EntityManager em;
+    @Mock
+    SessionContext sessionContext;
+    @Mock
+    DownloadCountServiceBean self;
+    @Mock
+    Query countQuery;
+    @Mock
+    Query fileIdsQuery;
+
+    DownloadCountServiceBean downloadCountService;
+
+    @BeforeEach
+    public void setUp() {
+        downloadCountService = new DownloadCountServiceBean();
+        downloadCountService.em = em;
+        downloadCountService.sessionContext = sessionContext;
+        when(sessionContext.getBusinessObject(DownloadCountServiceBean.class)).thenReturn(self);
+        for (Query query : List.of(countQuery, fileIdsQuery)) {
+            when(query.setParameter(anyInt(), any())).thenReturn(query);
+        }
+        when(em.createNativeQuery(startsWith("SELECT downloadcount"))).thenReturn(countQuery);
+        when(em.createNativeQuery(startsWith("SELECT COALESCE"))).thenReturn(countQuery);
+        when(countQuery.getResultList()).thenReturn(List.of());
+        when(countQuery.getSingleResult()).thenReturn(0L);
+        when(em.createNativeQuery(startsWith("SELECT id FROM dvobject"))).thenReturn(fileIdsQuery);
+    }
+
+    private void download(long dataFileId, long datasetId) {
+        downloadCountService.recordDownload(dataFileId, datasetId,
+                Timestamp.from(TODAY.atStartOfDay(ZoneId.systemDefault()).toInstant()), "Download");
+    }
+
+    private void givenFiles(Long... dataFileIds) {
+        when(fileIdsQuery.getResultList()).thenReturn(List.of(dataFileIds));
+    }
+
+    @Test
+    public void testAccessRequestsNotCounted() {
+        downloadCountService.recordDownload(10L, 1L, new Timestamp(0L), GuestbookResponse.ACCESS_REQUEST);
+
+        assertEquals(0L, downloadCountService.getFileDownloadCount(10L));
+        assertEquals(0L, downloadCountService.getDatasetDownloadCount(1L, null));
+    }
+
+    /**
+     * The downloads not written out yet are counted, on top of those written.
+     */
+    @Test
+    public void testCountsIncludePendingDownloads() {
+        when(countQuery.getResultList()).thenReturn(List.of(5L));
+        when(countQuery.getSingleResult()).thenReturn(5L);
+        download(10L, 1L);
+        download(10L, 1L);
+
+        assertEquals(7L, downloadCountService.getFileDownloadCount(10L));
+        assertEquals(7L, downloadCountService.getDatasetDownloadCount(1L, null));
+        // (those of today are not before today)
+        assertEquals(5L, downloadCountService.getDatasetDownloadCount(1L, TODAY));
+        assertEquals(7L, downloadCountService.getDatasetDownloadCount(1L, TODAY.plusDays(1)));
+    }
+
+    /**
+     * The downloads are written out as a single increment per file, and per
+     * dataset and day.
+     */
+    @Test
+    public void testFlush() {
+        download(10L, 1L);
+        download(10L, 1L);
+        download(11L, 1L);
+
+        downloadCountService.flush();
+
+        verify(self).writeIncrements(Map.of(10L, 2L, 11L, 1L), Map.of(new DownloadCountServiceBean.DatasetDay(1L, TODAY), 3L));
+        assertEquals(0L, downloadCountService.getFileDownloadCount(10L));
+
+        downloadCountService.flush();
+        verifyNoMoreInteractions(self);
+    }
+
+    @Test
+    public void testFlushKeepsIncrementsOnFailure() {
+        download(10L, 1L);
+        doThrow(new RuntimeException("database down")).when(self).writeIncrements(any(), any());
+
+        downloadCountService.flush();
+
+        assertEquals(1L, downloadCountService.getFileDownloadCount(10L));
+        download(10L, 1L);
+        reset(self);
+        downloadCountService.flush();
+        verify(self).writeIncrements(Map.of(10L, 2L), Map.of(new DownloadCountServiceBean.DatasetDay(1L, TODAY), 2L));
+    }
+
+    /**
+     * The downloads of the dataset not written out yet are recounted from
+     * their responses: they are dropped, not to be counted twice; those of
+     * the other datasets are kept.
+     */
+    @Test
+    public void testReconcileDropsPendingDownloadsOfDataset() {
+        givenFiles(10L, 11L);
+        download(10L, 1L);
+        download(11L, 1L);
+        download(20L, 2L);
+
+        downloadCountService.reconcile(1L);
+
+        verify(self).recount(1L);
+        assertEquals(0L, downloadCountService.getFileDownloadCount(10L));
+        assertEquals(0L, downloadCountService.getDatasetDownloadCount(1L, null));
+        assertEquals(1L, downloadCountService.getFileDownloadCount(20L));
+        assertEquals(1L, downloadCountService.getDatasetDownloadCount(2L, null));
+
+        downloadCountService.flush();
+        verify(self).writeIncrements(Map.of(20L, 1L), Map.of(new DownloadCountServiceBean.DatasetDay(2L, TODAY), 1L));
+    }
+
+    @Test
+    public void testReconcileKeepsPendingDownloadsOnFailure() {
+        givenFiles(10L);
+        download(10L, 1L);
+        doThrow(new RuntimeException("database down")).when(self).recount(1L);
+
+        assertThrows(RuntimeException.class, () -> downloadCountService.reconcile(1L));
+
+        assertEquals(1L, downloadCountService.getFileDownloadCount(10L));
+        assertEquals(1L, downloadCountService.getDatasetDownloadCount(1L, null));
+    }
+}
@@ -0,0 +1,183 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.testing.JvmSetting;
+import edu.harvard.iq.dataverse.util.testing.LocalJvmSettings;
+import jakarta.ejb.SessionContext;
+import jakarta.ejb.TimerService;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.microprofile.metrics.Counter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Stream;
+import jakarta.ejb.EJBException;
+import jakarta.json.JsonObject;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@LocalJvmSettings
+@JvmSetting(key = JvmSettings.DOWNLOAD_EVENTS_DIRECTORY, method = "journalDirectory")
+@JvmSetting(key = JvmSettings.DOWNLOAD_EVENTS_MAX_PENDING, value = "2")
+class DownloadEventServiceBeanTest {
+
+    @TempDir
+    static Path tempDir;
+
+    private DownloadEventServiceBean downloadEventService;
+
+    static String journalDirectory() {
+        return tempDir.resolve("journal").toString();
+    }
+
+    @BeforeEach
+    void setUp() {
+        downloadEventService = newService();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        downloadEventService.shutdown();
+        FileUtils.cleanDirectory(tempDir.toFile());
+    }
+
+    private DownloadEventServiceBean newService() {
+        DownloadEventServiceBean service = new DownloadEventServiceBean();
+        service.timerService = Mockito.mock(TimerService.class);
+        service.sessionContext = Mockito.mock(SessionContext.class);
+        when(service.sessionContext.getBusinessObject(DownloadEventServiceBean.class)).thenReturn(service);
+        service.queuedCounter = Mockito.mock(Counter.class);
+        service.overflowCounter = Mockito.mock(Counter.class);
+        service.writtenCounter = Mockito.mock(Counter.class);
+        service.downloadCountService = Mockito.mock(DownloadCountServiceBean.class);
+        service.init();
+        return service;
+    }
+
+    @Test
+    void testEventsRefusedBeyondMaxPending() {
+        String logDir = tempDir.resolve("mdc").toString();
+        assertTrue(downloadEventService.enqueue(logDir, "counter.log", "first\n"));
+        assertTrue(downloadEventService.enqueue(logDir, "counter.log", "second\n"));
+        assertFalse(downloadEventService.enqueue(logDir, "counter.log", "third\n"));
+        verify(downloadEventService.overflowCounter).inc();
+
+        downloadEventService.flush();
+        assertTrue(downloadEventService.enqueue(logDir, "counter.log", "third\n"));
+    }
+
+    @Test
+    void testLogEntriesAppendedOnFlush() throws IOException {
+        Path logDir = tempDir.resolve("mdc");
+        downloadEventService.enqueue(logDir.toString(), "counter.log", "first\n");
+        downloadEventService.enqueue(logDir.toString(), "counter.log", "second\n");
+        assertFalse(Files.exists(logDir.resolve("counter.log")));
+
+        downloadEventService.flush();
+        String log = Files.readString(logDir.resolve("counter.log"), StandardCharsets.UTF_8);
+        assertTrue(log.endsWith("first\nsecond\n"));
+        verify(downloadEventService.writtenCounter).inc(2);
+        try (Stream<Path> journals = Files.list(tempDir.resolve("journal"))) {
+            assertEquals(0, journals.count());
+        }
+    }
+
+    @Test
+    void testJournalWrittenAfterRestart() throws IOException {
+        Path logDir = tempDir.resolve("mdc");
+        downloadEventService.enqueue(logDir.toString(), "counter.log", "before the restart\n");
+        downloadEventService.shutdown();
+
+        downloadEventService = newService();
+        // (still counted as waiting)
+        downloadEventService.enqueue(logDir.toString(), "counter.log", "after the restart\n");
+        assertFalse(downloadEventService.enqueue(logDir.toString(), "counter.log", "one too many\n"));
+
+        downloadEventService.flush();
+        String log = Files.readString(logDir.resolve("counter.log"), StandardCharsets.UTF_8);
+        assertTrue(log.endsWith("before the restart\nafter the restart\n"));
+    }
+
+    private static String response(long guestbook, long dataFile) {
+        return "{\"type\":\"guestbookresponse\",\"guestbook\":" + guestbook + ",\"dataFile\":" + dataFile
+                + ",\"dataset\":1,\"eventType\":\"Download\",\"answers\":[]}\n";
+    }
+
+    private static boolean hasGuestbook(List<JsonObject> responses, long guestbook) {
+        return responses.stream().anyMatch(response -> response.getJsonNumber("guestbook").longValue() == guestbook);
+    }
+
+    @Test
+    void testUnwritableEventsQuarantined() throws Exception {
+        Path journal = tempDir.resolve("journal");
+        Files.writeString(journal.resolve("events-1.jsonl"), response(1, 10) + response(2, 20));
+        Path logDir = tempDir.resolve("mdc");
+        downloadEventService.enqueue(logDir.toString(), "counter.log", "next journal\n");
+
+        // (the guestbook 2 was deleted meanwhile)
+        DownloadEventServiceBean self = Mockito.mock(DownloadEventServiceBean.class);
+        when(downloadEventService.sessionContext.getBusinessObject(DownloadEventServiceBean.class)).thenReturn(self);
+        doThrow(new EJBException(new SQLException("violates foreign key constraint", "23503")))
+                .when(self).writeResponses(argThat(responses -> hasGuestbook(responses, 2)));
+        when(self.writeResponses(argThat(responses -> responses.size() == 1 && hasGuestbook(responses, 1))))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        downloadEventService.flush();
+        verify(self).writeResponses(argThat(responses -> responses.size() == 1 && hasGuestbook(responses, 1)));
+        // (only the download written is counted)
+        verify(downloadEventService.downloadCountService).recordDownload(10L, 1L, null, "Download");
+        verify(downloadEventService.downloadCountService, never()).recordDownload(eq(20L), any(), any(), any());
+        String quarantine = Files.readString(journal.resolve("quarantine.jsonl"), StandardCharsets.UTF_8);
+        assertTrue(quarantine.contains("\"guestbook\":2"));
+        assertFalse(quarantine.contains("\"guestbook\":1"));
+        // (and the next journal was written out too)
+        assertTrue(Files.readString(logDir.resolve("counter.log"), StandardCharsets.UTF_8).endsWith("next journal\n"));
+        try (Stream<Path> journals = Files.list(journal)) {
+            assertEquals(List.of(journal.resolve("quarantine.jsonl")), journals.toList());
+        }
+    }
+
+    @Test
+    void testEventsKeptWhileDatabaseUnavailable() throws Exception {
+        Path journal = tempDir.resolve("journal");
+        Files.writeString(journal.resolve("events-1.jsonl"), response(1, 10) + response(2, 20));
+
+        DownloadEventServiceBean self = Mockito.mock(DownloadEventServiceBean.class);
+        when(downloadEventService.sessionContext.getBusinessObject(DownloadEventServiceBean.class)).thenReturn(self);
+        doThrow(new EJBException(new SQLException("connection refused", "08001"))).when(self).writeResponses(any());
+
+        downloadEventService.flush();
+        // (not tried one at a time)
+        verify(self, never()).writeResponses(argThat(responses -> responses.size() == 1));
+        assertEquals(response(1, 10) + response(2, 20), Files.readString(journal.resolve("events-1.jsonl"), StandardCharsets.UTF_8));
+        assertFalse(Files.exists(journal.resolve("quarantine.jsonl")));
+        verify(downloadEventService.downloadCountService, never()).recordDownload(any(), any(), any(), any());
+    }
+
+    @Test
+    void testIsUnwritable() {
+        assertTrue(DownloadEventServiceBean.isUnwritable(new EJBException(new SQLException("fk", "23503"))));
+        assertTrue(DownloadEventServiceBean.isUnwritable(new SQLException("too long", "22001")));
+        assertTrue(DownloadEventServiceBean.isUnwritable(new NullPointerException()));
+        assertFalse(DownloadEventServiceBean.isUnwritable(new EJBException(new SQLException("down", "08006"))));
+        assertFalse(DownloadEventServiceBean.isUnwritable(new EJBException("no transaction")));
+    }
+}
@@ -0,0 +1,103 @@
+package edu.harvard.iq.dataverse;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import jakarta.mail.Address;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Provider;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.URLName;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EmailOutboxSenderTest {
+
+    /**
+     * An in-process stand-in for the mail server: keeps the messages sent
+     * through it, and rejects those to the addresses in {@link #rejected}.
+     */
+    public static class RecordingTransport extends Transport {
+
+        static final List<MimeMessage> sent = new ArrayList<>();
+        static final Set<String> rejected = new HashSet<>();
+        static int connections;
+
+        public RecordingTransport(Session session, URLName urlname) {
+            super(session, urlname);
+        }
+
+        @Override
+        protected boolean protocolConnect(String host, int port, String user, String password) {
+            connections++;
+            return true;
+        }
+
+        @Override
+        public void sendMessage(Message msg, Address[] addresses) throws MessagingException {
+            for (Address address : addresses) {
+                if (rejected.contains(((InternetAddress) address).getAddress())) {
+                    throw new SendFailedException("Rejected: " + address);
+                }
+            }
+            sent.add((MimeMessage) msg);
+        }
+    }
+
+    private EmailOutboxSender sender;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        RecordingTransport.sent.clear();
+        RecordingTransport.rejected.clear();
+        RecordingTransport.connections = 0;
+        Session session = Session.getInstance(new Properties());
+        session.setProvider(new Provider(Provider.Type.TRANSPORT, "smtp", RecordingTransport.class.getName(), "test", "1"));
+        sender = new EmailOutboxSender(session, new InternetAddress("noreply@example.org"), "\n\nThank you", "<br>Thank you");
+    }
+
+    @Test
+    public void testSendsDigestsOverASingleConnection() throws Exception {
+        List<EmailOutboxMessage> messages = List.of(
+                new EmailOutboxMessage(1L, "alice@example.org", "Access granted", "File 1", false, "GRANTFILEACCESS", 0),
+                new EmailOutboxMessage(2L, "alice@example.org", "Dataset published", "Dataset 1", false, null, 0),
+                new EmailOutboxMessage(3L, "Alice@example.org", "Access granted", "File 2", false, "GRANTFILEACCESS", 0),
+                new EmailOutboxMessage(4L, "bob@example.org", "Access granted", "File 3", false, "GRANTFILEACCESS", 0),
+                new EmailOutboxMessage(5L, "alice@example.org", "Access granted", "File 4", false, "GRANTFILEACCESS", 0));
+
+        Map<EmailOutboxMessage, MessagingException> failed = sender.send(messages);
+
+        assertTrue(failed.isEmpty());
+        assertEquals(1, RecordingTransport.connections);
+        assertEquals(3, RecordingTransport.sent.size());
+        MimeMessage digest = RecordingTransport.sent.get(0);
+        assertEquals("Access granted (and 2 more)", digest.getSubject());
+        assertEquals("File 1\n\n----------\n\nFile 2\n\n----------\n\nFile 4\n\nThank you", digest.getContent());
+        assertEquals("Dataset published", RecordingTransport.sent.get(1).getSubject());
+        assertEquals("Dataset 1\n\nThank you", RecordingTransport.sent.get(1).getContent());
+        assertEquals("bob@example.org", ((InternetAddress) RecordingTransport.sent.get(2).getAllRecipients()[0]).getAddress());
+    }
+
+    @Test
+    public void testReportsTheMessagesNotSent() {
+        RecordingTransport.rejected.add("bob@example.org");
+        EmailOutboxMessage toAlice = new EmailOutboxMessage(1L, "alice@example.org", "Access granted", "File 1", true, null, 0);
+        EmailOutboxMessage toBob = new EmailOutboxMessage(2L, "bob@example.org", "Access granted", "File 2", true, null, 3);
+
+        Map<EmailOutboxMessage, MessagingException> failed = sender.send(List.of(toAlice, toBob));
+
+        assertEquals(Set.of(toBob), failed.keySet());
+        assertEquals(1, RecordingTransport.sent.size());
+    }
+}
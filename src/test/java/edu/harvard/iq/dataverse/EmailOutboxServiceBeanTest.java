@@ -0,0 +1,140 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.testing.JvmSetting;
+import edu.harvard.iq.dataverse.util.testing.LocalJvmSettings;
+import java.util.List;
+import java.util.Map;
+import jakarta.ejb.SessionContext;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@LocalJvmSettings
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class EmailOutboxServiceBeanTest {
+
+    @Mock
+    EntityManager em;
+    @Mock
+    Query query;
+    @Mock
+    SessionContext sessionContext;
+    @Mock
+    EmailOutboxServiceBean self;
+
+    EmailOutboxServiceBean emailOutbox;
+
+    @BeforeEach
+    public void setUp() {
+        emailOutbox = new EmailOutboxServiceBean();
+        emailOutbox.em = em;
+        emailOutbox.sessionContext = sessionContext;
+        when(sessionContext.getBusinessObject(EmailOutboxServiceBean.class)).thenReturn(self);
+        when(em.createNativeQuery(anyString())).thenReturn(query);
+        when(query.setParameter(anyInt(), any())).thenReturn(query);
+    }
+
+    private List<String> statements() {
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(em, atLeast(0)).createNativeQuery(sql.capture());
+        return sql.getAllValues();
+    }
+
+    private static EmailOutboxMessage message(long id, int attempts) {
+        return new EmailOutboxMessage(id, "user" + id + "@example.edu", "Subject", "Body", false, null, attempts);
+    }
+
+    @Test
+    public void testClaimBatch() {
+        when(query.getResultList()).thenReturn(List.<Object[]>of(new Object[]{1L, "a@example.edu", "Subject", "Body", false, null, 0},
+                new Object[]{2L, "b@example.edu", "Subject", "Body", true, "GRANTFILEACCESS", 2}));
+
+        List<EmailOutboxMessage> messages = emailOutbox.claimBatch(10);
+
+        assertEquals(2, messages.size());
+        assertEquals("GRANTFILEACCESS", messages.get(1).getDigestKey());
+        assertEquals(2, messages.get(1).getAttempts());
+        List<String> statements = statements();
+        assertTrue(statements.get(0).contains("FOR UPDATE SKIP LOCKED"));
+        assertEquals("UPDATE emailoutbox SET nextattempttime = now() + INTERVAL '900 seconds' WHERE id IN (1,2)", statements.get(1));
+    }
+
+    @Test
+    public void testClaimEmptyBatch() {
+        when(query.getResultList()).thenReturn(List.of());
+
+        assertTrue(emailOutbox.claimBatch(10).isEmpty());
+
+        assertEquals(1, statements().size());
+    }
+
+    /**
+     * Nothing is sent, nor any transaction started for it, when there is
+     * nothing due in the outbox.
+     */
+    @Test
+    public void testSendEmptyBatch() throws Exception {
+        when(self.claimBatch(10)).thenReturn(List.of());
+
+        assertEquals(0, emailOutbox.sendBatch(new InternetAddress("support@example.edu"), 10));
+
+        verify(self, never()).finishBatch(any(), any());
+        verifyNoInteractions(em);
+    }
+
+    /**
+     * The messages sent are deleted; the others are tried again later,
+     * waiting longer each time.
+     */
+    @Test
+    public void testFinishBatchRetries() {
+        EmailOutboxMessage timedOut = message(1L, 0);
+        EmailOutboxMessage rejected = message(2L, 3);
+        List<EmailOutboxMessage> messages = List.of(timedOut, rejected, message(3L, 0));
+
+        emailOutbox.finishBatch(messages, Map.of(timedOut, new MessagingException("Timed out"), rejected, new MessagingException("Rejected")));
+
+        List<String> statements = statements();
+        assertEquals(3, statements.size());
+        assertTrue(statements.get(0).contains("nextattempttime = now() + INTERVAL '60 seconds'"));
+        assertTrue(statements.get(1).contains("nextattempttime = now() + INTERVAL '480 seconds'"));
+        assertEquals("DELETE FROM emailoutbox WHERE id IN (3)", statements.get(2));
+        verify(query).setParameter(2, 1);
+        verify(query).setParameter(3, "Timed out");
+        verify(query).setParameter(2, 4);
+        verify(query).setParameter(3, "Rejected");
+    }
+
+    /**
+     * The messages given up on are kept, with the last error, but never
+     * tried again.
+     */
+    @Test
+    @JvmSetting(key = JvmSettings.MAIL_OUTBOX_MAX_ATTEMPTS, value = "3")
+    public void testFinishBatchGivesUp() {
+        EmailOutboxMessage rejected = message(1L, 2);
+
+        emailOutbox.finishBatch(List.of(rejected), Map.of(rejected, new MessagingException("Rejected")));
+
+        List<String> statements = statements();
+        assertEquals(1, statements.size());
+        assertTrue(statements.get(0).contains("nextattempttime = NULL"));
+        verify(query).setParameter(2, 3);
+        verify(query).executeUpdate();
+    }
+}
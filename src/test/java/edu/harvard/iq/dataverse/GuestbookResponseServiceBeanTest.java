@@ -0,0 +1,185 @@
+package edu.harvard.iq.dataverse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class GuestbookResponseServiceBeanTest {
+
+    private static final String HEADER = "Guestbook, Dataset, Dataset PID, Date, Type, File Name, File Id, File PID, User Name, Email, Institution, Position, Custom Questions\n";
+
+    private GuestbookResponseServiceBean guestbookResponseService;
+    // the rows of the database: the responses, as selected for the CSV; and
+    // the answers to the custom questions, as {question, answer, response id}
+    private final List<Object[]> responses = new ArrayList<>();
+    private final List<Object[]> answers = new ArrayList<>();
+    // the pages of responses read
+    private int pages = 0;
+
+    @BeforeEach
+    public void setUp() {
+        guestbookResponseService = new GuestbookResponseServiceBean();
+        EntityManager em = mock(EntityManager.class);
+        when(em.createNativeQuery(anyString())).thenAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            Query query = mock(Query.class);
+            when(query.getResultList()).thenAnswer(i -> sql.startsWith("select q.questionstring") ? selectAnswers(sql) : selectResponses(sql));
+            return query;
+        });
+        guestbookResponseService.em = em;
+        DataverseServiceBean dataverseService = mock(DataverseServiceBean.class);
+        when(dataverseService.getDatasetTitlesWithinDataverse(1L)).thenReturn(List.<Object[]>of(new Object[]{"A \"quoted\" title", 10}));
+        guestbookResponseService.dataverseService = dataverseService;
+    }
+
+    // (the responses newest first, as many as the limit, older than the
+    // response given, if any)
+    private List<Object[]> selectResponses(String sql) {
+        pages++;
+        Matcher before = Pattern.compile("r\\.id < (\\d+)").matcher(sql);
+        int beforeId = before.find() ? Integer.parseInt(before.group(1)) : Integer.MAX_VALUE;
+        Matcher limit = Pattern.compile("LIMIT (\\d+)").matcher(sql);
+        assertTrue(limit.find(), sql);
+        return responses.stream()
+                .filter(response -> (Integer) response[0] < beforeId)
+                .sorted(Comparator.comparing((Object[] response) -> (Integer) response[0]).reversed())
+                .limit(Integer.parseInt(limit.group(1)))
+                .collect(Collectors.toList());
+    }
+
+    // (the answers of the responses in the range, newest response first)
+    private List<Object[]> selectAnswers(String sql) {
+        Matcher range = Pattern.compile("g\\.id >= (\\d+) and g\\.id <= (\\d+)").matcher(sql);
+        assertTrue(range.find(), sql);
+        int from = Integer.parseInt(range.group(1));
+        int to = Integer.parseInt(range.group(2));
+        return answers.stream()
+                .filter(answer -> (Integer) answer[2] >= from && (Integer) answer[2] <= to)
+                .sorted(Comparator.comparing((Object[] answer) -> (Integer) answer[2]).reversed())
+                .collect(Collectors.toList());
+    }
+
+    private static Date date(int year, int month, int day) {
+        return new GregorianCalendar(year, month, day).getTime();
+    }
+
+    private void addResponse(Integer id, Integer datasetId, Date responseTime, String eventType, String fileName, Integer fileId,
+            String name, String email, String institution, String position, String datasetIdentifier, String fileIdentifier) {
+        responses.add(new Object[]{id, "Main, guestbook", datasetId, responseTime, eventType, fileName, fileId, name, email,
+            institution, position,
+            datasetIdentifier == null ? null : "doi", "10.5072", datasetIdentifier,
+            fileIdentifier == null ? null : "doi", "10.5072", fileIdentifier});
+    }
+
+    private void addResponse(int id) {
+        addResponse(id, 10, date(2024, Calendar.JANUARY, 15), "Download", "data.csv", 30, "user" + id, null, null, null,
+                "FK2/AAA", null);
+    }
+
+    private void addAnswer(int responseId, String question, String answer) {
+        answers.add(new Object[]{question, answer, responseId});
+    }
+
+    private String stream() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        guestbookResponseService.streamResponsesByDataverseIdAndGuestbookId(out, 1L, null);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The CSV is the same as the one written from all the responses and
+     * answers at once, before the responses were streamed a page at a time.
+     */
+    @Test
+    public void testSameCsvAsBefore() throws IOException {
+        addResponse(3, 10, date(2024, Calendar.MAY, 7), "Download", "data.csv", 30, "Jane Doe", "jane@example.edu",
+                "Uni, Inc.", null, "FK2/AAA", "FK2/AAA/1");
+        addResponse(2, 11, null, "Explore", "readme.txt", 31, null, null, null, null, null, null);
+        addResponse(1, 10, date(2024, Calendar.JANUARY, 15), "Download", "data.csv", 30, "Joe", null, null, null,
+                "FK2/AAA", "FK2/AAA/1");
+        addAnswer(3, "Purpose?", "Research, mostly");
+        addAnswer(3, "Country?", null);
+        addAnswer(1, "Purpose?", "Teaching");
+
+        assertEquals(HEADER
+                + "\"Main, guestbook\",\"A \"\"quoted\"\" title\",doi:10.5072/FK2/AAA,05/7/2024,Download,data.csv,30,doi:10.5072/FK2/AAA/1,Jane Doe,jane@example.edu,\"Uni, Inc.\",,Purpose?,\"Research, mostly\",Country?,\n"
+                + "\"Main, guestbook\",,N/A,N/A,Explore,readme.txt,31,N/A,,,,\n"
+                + "\"Main, guestbook\",\"A \"\"quoted\"\" title\",doi:10.5072/FK2/AAA,01/15/2024,Download,data.csv,30,doi:10.5072/FK2/AAA/1,Joe,,,,Purpose?,Teaching\n",
+                stream());
+    }
+
+    /**
+     * The responses without answers are written without custom questions,
+     * and don't throw the answers of the next responses off.
+     */
+    @Test
+    public void testResponsesWithoutAnswers() throws IOException {
+        for (int id = 1; id <= 5; id++) {
+            addResponse(id);
+        }
+        addAnswer(4, "Purpose?", "Research");
+        addAnswer(1, "Purpose?", "Teaching");
+
+        String[] lines = stream().split("\n");
+
+        assertEquals(6, lines.length);
+        assertTrue(lines[1].endsWith("user5,,,"), lines[1]);
+        assertTrue(lines[2].endsWith("user4,,,,Purpose?,Research"), lines[2]);
+        assertTrue(lines[3].endsWith("user3,,,"), lines[3]);
+        assertTrue(lines[4].endsWith("user2,,,"), lines[4]);
+        assertTrue(lines[5].endsWith("user1,,,,Purpose?,Teaching"), lines[5]);
+    }
+
+    @Test
+    public void testNoResponses() throws IOException {
+        assertEquals(HEADER, stream());
+        assertEquals(1, pages);
+    }
+
+    /**
+     * The answers of the responses on either side of a page boundary are
+     * written with their own responses: all of those of the last response of
+     * a page, and none of the next page's.
+     */
+    @Test
+    public void testPageBoundary() throws IOException {
+        int count = GuestbookResponseServiceBean.STREAMING_PAGE_SIZE + 1;
+        for (int id = 1; id <= count; id++) {
+            addResponse(id);
+        }
+        // (response 2 is the last of the first page, response 1 the only one
+        // of the second)
+        addAnswer(3, "Purpose?", "Research");
+        addAnswer(2, "Purpose?", "Teaching");
+        addAnswer(2, "Country?", "Norway");
+        addAnswer(2, "Field?", "Biology");
+        addAnswer(1, "Purpose?", "Curiosity");
+        addAnswer(1, "Country?", "Chile");
+
+        String[] lines = stream().split("\n");
+
+        assertEquals(2, pages);
+        assertEquals(count + 1, lines.length);
+        assertTrue(lines[count - 2].endsWith("user3,,,,Purpose?,Research"), lines[count - 2]);
+        assertTrue(lines[count - 1].endsWith("user2,,,,Purpose?,Teaching,Country?,Norway,Field?,Biology"), lines[count - 1]);
+        assertTrue(lines[count].endsWith("user1,,,,Purpose?,Curiosity,Country?,Chile"), lines[count]);
+        assertTrue(lines[1].endsWith("user" + count + ",,,"), lines[1]);
+    }
+}
@@ -0,0 +1,287 @@
+package edu.harvard.iq.dataverse;
+
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.PartETag;
+import edu.harvard.iq.dataverse.dataaccess.S3AccessIO;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import jakarta.ejb.SessionContext;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class MultipartUploadServiceBeanTest {
+
+    private static final String GLOBAL_ID = "doi:10.5072/FK2/ABCDEF";
+    private static final String STORAGE_IDENTIFIER = "s3://bucket:18b39722140-50eb7d3c5ece";
+    private static final String UPLOAD_ID = "upload";
+
+    @Mock
+    EntityManager em;
+    @Mock
+    Query sessionQuery;
+    @Mock
+    Query recordedPartsQuery;
+    @Mock
+    Query insertPartsQuery;
+    @Mock
+    Query updateQuery;
+    @Mock
+    Query deleteQuery;
+    @Mock
+    S3AccessIO<DataFile> s3io;
+
+    MultipartUploadServiceBean multipartUploadService;
+
+    @BeforeEach
+    public void setUp() {
+        multipartUploadService = new MultipartUploadServiceBean();
+        multipartUploadService.em = em;
+        for (Query query : List.of(sessionQuery, recordedPartsQuery, insertPartsQuery, updateQuery, deleteQuery)) {
+            when(query.setParameter(anyInt(), any())).thenReturn(query);
+        }
+        when(em.createNativeQuery(startsWith("SELECT id, uploadid"))).thenReturn(sessionQuery);
+        when(em.createNativeQuery(startsWith("SELECT partnumber, etag"))).thenReturn(recordedPartsQuery);
+        when(em.createNativeQuery(startsWith("INSERT INTO multipartuploadpart"))).thenReturn(insertPartsQuery);
+        when(em.createNativeQuery(startsWith("UPDATE multipartupload"))).thenReturn(updateQuery);
+        when(em.createNativeQuery(startsWith("DELETE FROM multipartupload"))).thenReturn(deleteQuery);
+        when(recordedPartsQuery.getResultList()).thenReturn(List.of());
+    }
+
+    /**
+     * A tracked upload of 25 bytes in parts of 10: 3 parts.
+     */
+    private void givenSession() {
+        when(sessionQuery.getResultList()).thenReturn(List.<Object[]>of(new Object[]{7L, UPLOAD_ID, GLOBAL_ID, STORAGE_IDENTIFIER, 25L, 10L}));
+    }
+
+    private void givenRecordedParts(Map<Integer, String> parts) {
+        when(recordedPartsQuery.getResultList()).thenReturn(parts.entrySet().stream()
+                .map(part -> new Object[]{part.getKey(), part.getValue()}).collect(Collectors.toList()));
+    }
+
+    private static Map<Integer, String> asMap(List<PartETag> partETags) {
+        Map<Integer, String> parts = new HashMap<>();
+        partETags.forEach(partETag -> parts.put(partETag.getPartNumber(), partETag.getETag()));
+        return parts;
+    }
+
+    @Test
+    public void testRecordParts() {
+        givenSession();
+
+        assertTrue(multipartUploadService.recordParts(GLOBAL_ID, STORAGE_IDENTIFIER, UPLOAD_ID, Map.of(3, "etag3")));
+
+        verify(insertPartsQuery).setParameter(1, 3);
+        verify(insertPartsQuery).setParameter(2, "etag3");
+        verify(insertPartsQuery).executeUpdate();
+        verify(updateQuery).executeUpdate();
+    }
+
+    @Test
+    public void testRecordPartsOfUntrackedUpload() {
+        when(sessionQuery.getResultList()).thenReturn(List.of());
+
+        assertFalse(multipartUploadService.recordParts(GLOBAL_ID, STORAGE_IDENTIFIER, UPLOAD_ID, Map.of(1, "etag1")));
+
+        verify(em, never()).createNativeQuery(startsWith("INSERT INTO multipartuploadpart"));
+    }
+
+    @Test
+    public void testRecordPartsValidated() {
+        givenSession();
+        Map<Integer, String> noETag = new HashMap<>();
+        noETag.put(1, null);
+
+        for (Map<Integer, String> eTags : List.of(Map.of(0, "etag0"), Map.of(4, "etag4"), Map.of(1, "etag1", 4, "etag4"), noETag)) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> multipartUploadService.recordParts(GLOBAL_ID, STORAGE_IDENTIFIER, UPLOAD_ID, eTags));
+        }
+        // (none of the parts is recorded, when any of them is wrong)
+        verify(em, never()).createNativeQuery(startsWith("INSERT INTO multipartuploadpart"));
+        verify(updateQuery, never()).executeUpdate();
+    }
+
+    /**
+     * The ETags listed by the store win over those sent by the client, which
+     * win over those recorded.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCompleteUploadMergesParts() throws IOException {
+        givenSession();
+        givenRecordedParts(Map.of(1, "recorded1", 2, "recorded2"));
+        when(s3io.listUploadedParts(UPLOAD_ID)).thenReturn(Map.of(3, "listed3"));
+
+        try (MockedStatic<S3AccessIO> s3 = mockStatic(S3AccessIO.class)) {
+            s3.when(() -> S3AccessIO.getMultipartUploadAccess(GLOBAL_ID, STORAGE_IDENTIFIER)).thenReturn(s3io);
+
+            List<Integer> missing = multipartUploadService.completeUpload(GLOBAL_ID, STORAGE_IDENTIFIER, UPLOAD_ID,
+                    Map.of(2, "client2", 3, "client3"));
+
+            assertTrue(missing.isEmpty());
+            ArgumentCaptor<List<PartETag>> partETags = ArgumentCaptor.forClass(List.class);
+            s3.verify(() -> S3AccessIO.completeMultipartUpload(eq(GLOBAL_ID), eq(STORAGE_IDENTIFIER), eq(UPLOAD_ID), partETags.capture()));
+            assertEquals(Map.of(1, "recorded1", 2, "client2", 3, "listed3"), asMap(partETags.getValue()));
+            assertEquals(List.of(1, 2, 3), partETags.getValue().stream().map(PartETag::getPartNumber).toList());
+        }
+        verify(deleteQuery).setParameter(1, UPLOAD_ID);
+        verify(deleteQuery).executeUpdate();
+    }
+
+    /**
+     * The parts the store doesn't list are still taken from the client, and
+     * from those recorded.
+     */
+    @Test
+    public void testCompleteUploadWithoutListing() throws IOException {
+        givenSession();
+        givenRecordedParts(Map.of(1, "recorded1"));
+        when(s3io.listUploadedParts(UPLOAD_ID)).thenThrow(new IOException("Not supported"));
+
+        try (MockedStatic<S3AccessIO> s3 = mockStatic(S3AccessIO.class)) {
+            s3.when(() -> S3AccessIO.getMultipartUploadAccess(GLOBAL_ID, STORAGE_IDENTIFIER)).thenReturn(s3io);
+
+            assertTrue(multipartUploadService.completeUpload(GLOBAL_ID, STORAGE_IDENTIFIER, UPLOAD_ID,
+                    Map.of(2, "client2", 3, "client3")).isEmpty());
+
+            s3.verify(() -> S3AccessIO.completeMultipartUpload(eq(GLOBAL_ID), eq(STORAGE_IDENTIFIER), eq(UPLOAD_ID), anyList()));
+        }
+    }
+
+    @Test
+    public void testCompleteUploadWithMissingParts() throws IOException {
+        givenSession();
+        givenRecordedParts(Map.of(1, "recorded1"));
+        when(s3io.listUploadedParts(UPLOAD_ID)).thenReturn(Map.of());
+
+        try (MockedStatic<S3AccessIO> s3 = mockStatic(S3AccessIO.class)) {
+            s3.when(() -> S3AccessIO.getMultipartUploadAccess(GLOBAL_ID, STORAGE_IDENTIFIER)).thenReturn(s3io);
+
+            List<Integer> missing = multipartUploadService.completeUpload(GLOBAL_ID, STORAGE_IDENTIFIER, UPLOAD_ID, Map.of(3, "client3"));
+
+            assertEquals(List.of(2), missing);
+            s3.verify(() -> S3AccessIO.completeMultipartUpload(any(), any(), any(), anyList()), never());
+        }
+        // (kept, for the upload to be resumed)
+        verify(deleteQuery, never()).executeUpdate();
+        verify(updateQuery).executeUpdate();
+    }
+
+    /**
+     * The uploads started before they were tracked are completed with the
+     * ETags sent by the client, as they were.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCompleteUntrackedUpload() throws IOException {
+        when(sessionQuery.getResultList()).thenReturn(List.of());
+
+        try (MockedStatic<S3AccessIO> s3 = mockStatic(S3AccessIO.class)) {
+            assertTrue(multipartUploadService.completeUpload(GLOBAL_ID, STORAGE_IDENTIFIER, UPLOAD_ID,
+                    Map.of(2, "client2", 1, "client1")).isEmpty());
+
+            ArgumentCaptor<List<PartETag>> partETags = ArgumentCaptor.forClass(List.class);
+            s3.verify(() -> S3AccessIO.completeMultipartUpload(eq(GLOBAL_ID), eq(STORAGE_IDENTIFIER), eq(UPLOAD_ID), partETags.capture()));
+            assertEquals(List.of(1, 2), partETags.getValue().stream().map(PartETag::getPartNumber).toList());
+            s3.verify(() -> S3AccessIO.getMultipartUploadAccess(any(), any()), never());
+        }
+    }
+
+    /**
+     * An upload is only idle once its urls have expired too; the idle ones
+     * are put off, for the other servers to leave them alone.
+     */
+    @Test
+    public void testClaimIdleUploads() {
+        when(sessionQuery.getResultList()).thenReturn(List.<Object[]>of(new Object[]{7L, UPLOAD_ID, GLOBAL_ID, STORAGE_IDENTIFIER},
+                new Object[]{8L, "other", GLOBAL_ID, STORAGE_IDENTIFIER}));
+
+        assertEquals(2, multipartUploadService.claimIdleUploads(24).size());
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(em, times(2)).createNativeQuery(sql.capture());
+        assertTrue(sql.getAllValues().get(0).contains("lastupdatetime < now() - INTERVAL '24 hours'"));
+        assertTrue(sql.getAllValues().get(0).contains("urlexpirationtime < now()"));
+        assertTrue(sql.getAllValues().get(0).contains("FOR UPDATE SKIP LOCKED"));
+        assertEquals("UPDATE multipartupload SET urlexpirationtime = now() + INTERVAL '900 seconds' WHERE id IN (7,8)", sql.getAllValues().get(1));
+    }
+
+    @Test
+    public void testClaimNoIdleUploads() {
+        when(sessionQuery.getResultList()).thenReturn(List.of());
+
+        assertTrue(multipartUploadService.claimIdleUploads(24).isEmpty());
+
+        verify(em, times(1)).createNativeQuery(anyString());
+    }
+
+    /**
+     * The idle uploads claimed are aborted in the store with no transaction
+     * open; the records of those aborted (or gone already) are then deleted.
+     * Those that could not be aborted are tried again later.
+     */
+    @Test
+    public void testAbortIdleUploads() throws IOException {
+        MultipartUploadServiceBean self = mock(MultipartUploadServiceBean.class);
+        SessionContext sessionContext = mock(SessionContext.class);
+        when(sessionContext.getBusinessObject(MultipartUploadServiceBean.class)).thenReturn(self);
+        multipartUploadService.sessionContext = sessionContext;
+        when(self.claimIdleUploads(24)).thenReturn(List.<Object[]>of(new Object[]{7L, "aborted", GLOBAL_ID, STORAGE_IDENTIFIER},
+                new Object[]{8L, "gone", GLOBAL_ID, STORAGE_IDENTIFIER},
+                new Object[]{9L, "failing", GLOBAL_ID, STORAGE_IDENTIFIER}));
+        AmazonS3Exception notFound = new AmazonS3Exception("No such upload");
+        notFound.setStatusCode(404);
+        AmazonS3Exception unavailable = new AmazonS3Exception("Slow down");
+        unavailable.setStatusCode(503);
+
+        try (MockedStatic<S3AccessIO> s3 = mockStatic(S3AccessIO.class)) {
+            s3.when(() -> S3AccessIO.abortMultipartUpload(GLOBAL_ID, STORAGE_IDENTIFIER, "gone")).thenThrow(notFound);
+            s3.when(() -> S3AccessIO.abortMultipartUpload(GLOBAL_ID, STORAGE_IDENTIFIER, "failing")).thenThrow(unavailable);
+
+            multipartUploadService.abortIdleUploads();
+
+            s3.verify(() -> S3AccessIO.abortMultipartUpload(GLOBAL_ID, STORAGE_IDENTIFIER, "aborted"));
+        }
+        verify(self).deleteSessions(List.of(7L, 8L));
+        verifyNoInteractions(em);
+    }
+
+    @Test
+    public void testAbortNoIdleUploads() {
+        MultipartUploadServiceBean self = mock(MultipartUploadServiceBean.class);
+        SessionContext sessionContext = mock(SessionContext.class);
+        when(sessionContext.getBusinessObject(MultipartUploadServiceBean.class)).thenReturn(self);
+        multipartUploadService.sessionContext = sessionContext;
+        when(self.claimIdleUploads(anyInt())).thenReturn(List.of());
+
+        multipartUploadService.abortIdleUploads();
+
+        verify(self, never()).deleteSessions(any());
+    }
+
+    @Test
+    public void testDeleteSessions() {
+        multipartUploadService.deleteSessions(List.of(7L, 8L));
+
+        verify(em).createNativeQuery("DELETE FROM multipartupload WHERE id IN (7,8)");
+        verify(deleteQuery).executeUpdate();
+    }
+}
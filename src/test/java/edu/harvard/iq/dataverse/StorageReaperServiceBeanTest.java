@@ -0,0 +1,178 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.testing.JvmSetting;
+import edu.harvard.iq.dataverse.util.testing.LocalJvmSettings;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@LocalJvmSettings
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class StorageReaperServiceBeanTest {
+
+    @Mock
+    EntityManager em;
+    @Mock
+    Query query;
+
+    StorageReaperServiceBean storageReaper;
+    CountDownLatch stuck = new CountDownLatch(1);
+
+    @BeforeEach
+    public void setUp() {
+        storageReaper = new StorageReaperServiceBean() {
+            @Override
+            List<String> deleteSlice(List<String> slice) {
+                List<String> failed = new ArrayList<>();
+                for (String location : slice) {
+                    if (location.contains("stuck")) {
+                        try {
+                            stuck.await();
+                        } catch (InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                        }
+                    } else if (location.contains("undeletable")) {
+                        failed.add(location);
+                    } else if (location.contains("broken")) {
+                        throw new IllegalStateException("Broken store");
+                    }
+                }
+                return failed;
+            }
+        };
+        storageReaper.em = em;
+        storageReaper.threads = 2;
+        storageReaper.executor = Executors.newFixedThreadPool(2);
+        when(em.createNativeQuery(anyString())).thenReturn(query);
+        when(query.setParameter(anyInt(), any())).thenReturn(query);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        stuck.countDown();
+        storageReaper.executor.shutdownNow();
+    }
+
+    private List<String> statements() {
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(em, atLeast(0)).createNativeQuery(sql.capture());
+        return sql.getAllValues();
+    }
+
+    @Test
+    public void testGetRetryDelay() {
+        assertEquals(60, StorageReaperServiceBean.getRetryDelay(1));
+        assertEquals(120, StorageReaperServiceBean.getRetryDelay(2));
+        assertEquals(1920, StorageReaperServiceBean.getRetryDelay(6));
+        // (up to an hour, however many attempts)
+        assertEquals(3600, StorageReaperServiceBean.getRetryDelay(7));
+        assertEquals(3600, StorageReaperServiceBean.getRetryDelay(100));
+    }
+
+    @Test
+    public void testClaimBatch() {
+        when(query.getResultList()).thenReturn(List.<Object[]>of(new Object[]{1L, null, "s3://a:1", 0}, new Object[]{2L, 5L, "s3://a:2", 0}));
+
+        assertEquals(2, storageReaper.claimBatch(10).size());
+
+        List<String> statements = statements();
+        assertTrue(statements.get(0).contains("FOR UPDATE SKIP LOCKED"));
+        assertEquals("UPDATE storagetombstone SET nextattempttime = now() + INTERVAL '900 seconds' WHERE id IN (1,2)", statements.get(1));
+    }
+
+    @Test
+    public void testClaimEmptyBatch() {
+        when(query.getResultList()).thenReturn(List.of());
+
+        assertTrue(storageReaper.claimBatch(10).isEmpty());
+
+        assertEquals(1, statements().size());
+    }
+
+    /**
+     * The tombstones of the locations deleted are deleted; the others are
+     * tried again later, waiting longer each time.
+     */
+    @Test
+    public void testFinishBatchRetries() {
+        List<Object[]> rows = List.of(new Object[]{1L, null, "s3://a:1", 0}, new Object[]{2L, null, "s3://a:2", 3},
+                new Object[]{3L, null, "s3://a:3", 0});
+
+        storageReaper.finishBatch(rows, Map.of("s3://a:1", "Timed out", "s3://a:2", "Access denied"));
+
+        List<String> statements = statements();
+        assertEquals(3, statements.size());
+        assertTrue(statements.get(0).contains("nextattempttime = now() + INTERVAL '60 seconds'"));
+        assertTrue(statements.get(1).contains("nextattempttime = now() + INTERVAL '480 seconds'"));
+        assertEquals("DELETE FROM storagetombstone WHERE id IN (3)", statements.get(2));
+        verify(query).setParameter(2, 1);
+        verify(query).setParameter(3, "Timed out");
+        verify(query).setParameter(2, 4);
+        verify(query).setParameter(3, "Access denied");
+    }
+
+    /**
+     * The tombstones given up on are kept, with the last error, but never
+     * tried again.
+     */
+    @Test
+    @JvmSetting(key = JvmSettings.FILES_DELETION_MAX_ATTEMPTS, value = "3")
+    public void testFinishBatchGivesUp() {
+        List<Object[]> rows = List.<Object[]>of(new Object[]{1L, null, "s3://a:1", 2});
+
+        storageReaper.finishBatch(rows, Map.of("s3://a:1", "Access denied"));
+
+        List<String> statements = statements();
+        assertEquals(1, statements.size());
+        assertTrue(statements.get(0).contains("nextattempttime = NULL"));
+        verify(query).setParameter(2, 3);
+        verify(query).executeUpdate();
+    }
+
+    @Test
+    public void testDeleteLocations() {
+        Map<String, List<String>> byDriver = new LinkedHashMap<>();
+        byDriver.put("a", List.of("s3://a:1", "s3://a:undeletable", "s3://a:3"));
+        byDriver.put("b", List.of("file://b:broken"));
+
+        Map<String, String> failed = storageReaper.deleteLocations(byDriver, 10000);
+
+        assertEquals(Map.of("s3://a:undeletable", "Could not be deleted from the storage", "file://b:broken", "Broken store"), failed);
+    }
+
+    /**
+     * The storage isn't waited on for longer than the timeout: the locations
+     * not deleted by then are tried again later.
+     */
+    @Test
+    public void testDeleteLocationsTimesOut() {
+        Map<String, List<String>> byDriver = new LinkedHashMap<>();
+        byDriver.put("a", List.of("s3://a:stuck", "s3://a:2"));
+
+        long start = System.currentTimeMillis();
+        Map<String, String> failed = storageReaper.deleteLocations(byDriver, 200);
+
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals(Map.of("s3://a:stuck", "Timed out"), failed);
+    }
+}
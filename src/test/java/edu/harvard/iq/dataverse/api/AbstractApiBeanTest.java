@@ -1,17 +1,22 @@
 package edu.harvard.iq.dataverse.api;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.io.StringWriter;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Logger;
 import jakarta.json.Json;
+import jakarta.json.JsonException;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonReader;
 import jakarta.json.JsonWriter;
 import jakarta.json.JsonWriterFactory;
 import jakarta.json.stream.JsonGenerator;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -66,6 +71,30 @@ public class AbstractApiBeanTest {
         assertEquals(message, jsonObject.getJsonObject("data").getString("message"));
     }
 
+    @Test
+    public void testStreamedJson() throws IOException {
+        Response response = sut.ok(generator -> generator.writeStartObject().write("name", "value").writeEnd());
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(outputStream);
+        JsonObject jsonObject = Json.createReader(new StringReader(outputStream.toString(StandardCharsets.UTF_8))).readObject();
+        assertEquals("OK", jsonObject.getString("status"));
+        assertEquals("value", jsonObject.getJsonObject("data").getString("name"));
+    }
+
+    @Test
+    public void testStreamedJsonAbortedOnFailure() {
+        Response response = sut.ok(generator -> {
+            generator.writeStartArray().write("first");
+            throw new IllegalStateException("Could not load the second");
+        });
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        IOException e = assertThrows(IOException.class, () -> ((StreamingOutput) response.getEntity()).write(outputStream));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        // (what may have been sent is not a complete document)
+        assertThrows(JsonException.class,
+                () -> Json.createReader(new StringReader(outputStream.toString(StandardCharsets.UTF_8))).readObject());
+    }
+
     /**
      * dummy implementation
      */
@@ -0,0 +1,34 @@
+package edu.harvard.iq.dataverse.cache;
+
+import edu.harvard.iq.dataverse.MetadataBlock;
+import edu.harvard.iq.dataverse.license.License;
+
+import java.util.Set;
+import org.eclipse.persistence.queries.ReadAllQuery;
+import org.eclipse.persistence.queries.ReadObjectQuery;
+import org.eclipse.persistence.sessions.SessionProfiler;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SharedCacheProfilerTest {
+
+    @Test
+    public void testCountsHitsAndMissesOfSharedEntities() {
+        SharedCacheProfiler profiler = new SharedCacheProfiler(Set.of(License.class));
+
+        profiler.occurred(SessionProfiler.CacheHits, new ReadObjectQuery(License.class), null);
+        profiler.occurred(SessionProfiler.CacheHits, new ReadObjectQuery(License.class), null);
+        profiler.occurred(SessionProfiler.CacheMisses, new ReadAllQuery(License.class), null);
+        // not shared; or not about the cache:
+        profiler.occurred(SessionProfiler.CacheHits, new ReadObjectQuery(MetadataBlock.class), null);
+        profiler.occurred("Transaction", new ReadObjectQuery(License.class), null);
+
+        assertEquals(2, profiler.getHits(License.class));
+        assertEquals(1, profiler.getMisses(License.class));
+        assertEquals(0, profiler.getHits(MetadataBlock.class));
+
+        profiler.reset();
+        assertEquals(0, profiler.getHits(License.class));
+    }
+}
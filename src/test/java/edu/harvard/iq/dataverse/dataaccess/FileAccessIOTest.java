@@ -8,6 +8,7 @@ package edu.harvard.iq.dataverse.dataaccess;
 import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.Dataverse;
+import edu.harvard.iq.dataverse.DvObject;
 import edu.harvard.iq.dataverse.mocks.MocksFactory;
 import edu.harvard.iq.dataverse.util.FileUtil;
 
@@ -21,7 +22,10 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
@@ -210,6 +214,48 @@ public class FileAccessIOTest {
         dataFileAccess.deleteAllAuxObjects();
     }
 
+    /**
+     * Test of the calls to the AuxObjectLedger, of class FileAccessIO.
+     *
+     * @throws java.io.IOException if test is broken
+     */
+    @Test
+    public void testAuxObjectLedger() throws IOException {
+        Map<String, Long> sizes = new HashMap<>();
+        StorageIO.setAuxObjectLedger(new AuxObjectLedger() {
+            @Override
+            public void auxObjectSaved(DvObject dvObject, String auxItemTag, long size) {
+                sizes.put(dvObject.getId() + ":" + auxItemTag, size);
+            }
+
+            @Override
+            public void auxObjectDeleted(Long dvObjectId, String auxItemTag) {
+                sizes.remove(dvObjectId + ":" + auxItemTag);
+            }
+
+            @Override
+            public void allAuxObjectsDeleted(Long dvObjectId) {
+                sizes.keySet().removeIf(key -> key.startsWith(dvObjectId + ":"));
+            }
+        });
+        try {
+            datasetAccess.saveInputStreamAsAux(new ByteArrayInputStream("Hello".getBytes()), "export_ddi.cached");
+            datasetAccess.savePathAsAux(fileSystemPath, "export_oai_dc.cached");
+            assertEquals(Map.of(dataset.getId() + ":export_ddi.cached", 5L,
+                    dataset.getId() + ":export_oai_dc.cached", 21L), sizes);
+
+            datasetAccess.deleteAuxObject("export_ddi.cached");
+            assertEquals(Set.of(dataset.getId() + ":export_oai_dc.cached"), sizes.keySet());
+
+            dataFileAccess.saveInputStreamAsAux(new ByteArrayInputStream("Hello".getBytes()), "thumb48");
+            assertEquals(5L, sizes.get(dataFile.getId() + ":thumb48"));
+            dataFileAccess.deleteAllAuxObjects();
+            assertEquals(Set.of(dataset.getId() + ":export_oai_dc.cached"), sizes.keySet());
+        } finally {
+            StorageIO.setAuxObjectLedger(null);
+        }
+    }
+
     /**
      * Test of getStorageLocation method, of class FileAccessIO.
      *
@@ -317,4 +363,25 @@ public class FileAccessIOTest {
         System.clearProperty("dataverse.files.filetest.label");
         System.clearProperty("dataverse.files.filetest.directory");
     }
+
+    @Test
+    public void testDeleteLocations() throws IOException {
+        new File("/tmp/files/tmp/dataset/DataFile.thumb48").createNewFile();
+        new File("/tmp/files/tmp/dataset/DataFile.orig").createNewFile();
+        new File("/tmp/files/tmp/dataset/DataFile2.thumb48").createNewFile();
+
+        List<String> failed = datasetAccess.deleteLocations(List.of(
+                dummyDriverId + DataAccess.SEPARATOR + "/tmp/files/tmp/dataset/DataFile",
+                // (already gone)
+                dummyDriverId + DataAccess.SEPARATOR + "/tmp/files/tmp/dataset/Gone",
+                dummyDriverId + DataAccess.SEPARATOR + "/tmp/files/tmp/gone/DataFile"));
+
+        assertTrue(failed.isEmpty());
+        assertFalse(new File("/tmp/files/tmp/dataset/DataFile").exists());
+        assertFalse(new File("/tmp/files/tmp/dataset/DataFile.thumb48").exists());
+        assertFalse(new File("/tmp/files/tmp/dataset/DataFile.orig").exists());
+        // (not an auxiliary file of the deleted one)
+        assertTrue(new File("/tmp/files/tmp/dataset/DataFile2.thumb48").exists());
+        assertTrue(new File("/tmp/files/tmp/dataset/Dataset").exists());
+    }
 }
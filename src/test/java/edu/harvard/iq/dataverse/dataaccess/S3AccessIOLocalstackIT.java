@@ -5,6 +5,7 @@ import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.client.builder.AwsClientBuilder;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.PartETag;
 import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DvObject;
@@ -13,10 +14,18 @@ import edu.harvard.iq.dataverse.util.testing.Tags;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.Scanner;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
+import jakarta.json.JsonObject;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Tag;
@@ -150,4 +159,40 @@ class S3AccessIOLocalstackIT {
             System.out.println("saveInputStream exception: " + ex);
         }
     }
+
+    // a multipart direct upload, resumed after its first part
+    @Test
+    void testMultipartUpload() throws IOException, InterruptedException {
+        String globalId = "doi:10.5072/FK2/ABC123";
+        String storageIdentifier = storageDriverId + DataAccess.SEPARATOR + bucketName + ":" + FileUtil.generateStorageIdentifier();
+        S3AccessIO<DataFile> s3io = S3AccessIO.getMultipartUploadAccess(globalId, storageIdentifier);
+        long partSize = S3AccessIO.MIN_ALLOWED_PART_SIZE;
+        long fileSize = partSize + 10;
+        String uploadId = s3io.initiateMultipartUpload();
+
+        JsonObject urls = s3io.generateTemporaryS3UploadPartUrls(globalId, storageIdentifier, uploadId, fileSize, partSize, Set.of())
+                .build().getJsonObject("urls");
+        assertEquals(Set.of("1", "2"), urls.keySet());
+        put(urls.getString("1"), new byte[(int) partSize]);
+        assertEquals(Set.of(1), s3io.listUploadedParts(uploadId).keySet());
+
+        urls = s3io.generateTemporaryS3UploadPartUrls(globalId, storageIdentifier, uploadId, fileSize, partSize, Set.of(1))
+                .build().getJsonObject("urls");
+        assertEquals(Set.of("2"), urls.keySet());
+        put(urls.getString("2"), new byte[10]);
+
+        List<PartETag> parts = s3io.listUploadedParts(uploadId).entrySet().stream()
+                .map(part -> new PartETag(part.getKey(), part.getValue()))
+                .collect(Collectors.toList());
+        assertEquals(2, parts.size());
+        S3AccessIO.completeMultipartUpload(globalId, storageIdentifier, uploadId, parts);
+        assertEquals(fileSize, s3.getObjectMetadata(bucketName, s3io.getMainFileKey()).getContentLength());
+    }
+
+    private static void put(String url, byte[] content) throws IOException, InterruptedException {
+        HttpResponse<Void> response = HttpClient.newHttpClient().send(
+                HttpRequest.newBuilder(URI.create(url)).PUT(HttpRequest.BodyPublishers.ofByteArray(content)).build(),
+                HttpResponse.BodyHandlers.discarding());
+        assertEquals(200, response.statusCode());
+    }
 }
@@ -5,6 +5,14 @@
 package edu.harvard.iq.dataverse.dataaccess;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
 import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.api.UtilIT;
@@ -16,6 +24,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import static org.junit.jupiter.api.Assertions.*;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
@@ -25,6 +34,9 @@ import static org.mockito.BDDMockito.*;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 @ExtendWith(MockitoExtension.class)
 @MockitoSettings(strictness = Strictness.STRICT_STUBS)
@@ -144,4 +156,92 @@ public class S3AccessIOTest {
         assertFalse(DataAccess.isValidDirectStorageIdentifier("s3test://bucket:" + FileUtil.generateStorageIdentifier()));
     }
     
+    @Test
+    void testDeleteLocationsListsFolderOnce() throws IOException {
+        String folder = dataSet.getAuthorityForFileStorage() + "/" + dataSet.getIdentifierForFileStorage() + "/";
+        List<String> locations = new ArrayList<>();
+        ObjectListing listing = new ObjectListing();
+        for (int i = 0; i < 25; i++) {
+            locations.add("s3test://thebucket/" + folder + "file" + i);
+            listing.getObjectSummaries().add(summary(folder + "file" + i));
+            listing.getObjectSummaries().add(summary(folder + "file" + i + ".thumb48"));
+        }
+        // (not deleted)
+        listing.getObjectSummaries().add(summary(folder + "other"));
+        listing.getObjectSummaries().add(summary(folder + "other.thumb48"));
+        given(s3client.listObjects(any(ListObjectsRequest.class))).willReturn(listing);
+        MultiObjectDeleteException.DeleteError error = new MultiObjectDeleteException.DeleteError();
+        error.setKey(folder + "file3.thumb48");
+        given(s3client.deleteObjects(any(DeleteObjectsRequest.class)))
+                .willThrow(new MultiObjectDeleteException(List.of(error), List.of()));
+
+        List<String> failed = dataFileAccess.deleteLocations(locations);
+
+        assertEquals(List.of("s3test://thebucket/" + folder + "file3"), failed);
+        verify(s3client, times(1)).listObjects(any(ListObjectsRequest.class));
+        ArgumentCaptor<DeleteObjectsRequest> request = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+        verify(s3client).deleteObjects(request.capture());
+        assertEquals(50, request.getValue().getKeys().size());
+        assertEquals("thebucket", request.getValue().getBucketName());
+    }
+
+    @Test
+    void testDeleteLocationsInChunks() throws IOException {
+        List<String> locations = new ArrayList<>();
+        for (int i = 0; i < S3AccessIO.MAX_KEYS_PER_DELETE + 1; i++) {
+            locations.add("s3test://thebucket/10.5072/FK2/ABCDEF/file" + i);
+        }
+        given(s3client.listObjects(any(ListObjectsRequest.class))).willReturn(new ObjectListing());
+
+        assertTrue(dataFileAccess.deleteLocations(locations).isEmpty());
+        verify(s3client, times(2)).deleteObjects(any(DeleteObjectsRequest.class));
+    }
+
+    @Test
+    void testGetUploadPartSize() {
+        long mb = 1024 * 1024L;
+        // (as small as allowed, for a small file)
+        assertEquals(5 * mb, S3AccessIO.getUploadPartSize(100 * mb, S3AccessIO.MIN_ALLOWED_PART_SIZE, 100));
+        // (as many parts as targeted, in whole MB, for a larger one)
+        long partSize = S3AccessIO.getUploadPartSize(2048 * mb + 1, S3AccessIO.MIN_ALLOWED_PART_SIZE, 100);
+        assertEquals(21 * mb, partSize);
+        assertEquals(98, S3AccessIO.getPartCount(2048 * mb + 1, partSize));
+        // (no larger than S3 allows)
+        long fileSize = 5 * 1024 * 1024 * mb;
+        partSize = S3AccessIO.getUploadPartSize(fileSize, S3AccessIO.MIN_ALLOWED_PART_SIZE, 100);
+        assertEquals(S3AccessIO.MAX_PART_SIZE, partSize);
+        assertTrue(S3AccessIO.getPartCount(fileSize, partSize) <= S3AccessIO.MAX_PARTS);
+        // (nor smaller than configured)
+        assertEquals(64 * mb, S3AccessIO.getUploadPartSize(2048 * mb, 64 * mb, 100));
+    }
+
+    @Test
+    void testListUploadedParts() throws IOException {
+        PartListing first = new PartListing();
+        first.setParts(List.of(part(1, "a"), part(2, "b")));
+        first.setTruncated(true);
+        first.setNextPartNumberMarker(2);
+        PartListing second = new PartListing();
+        second.setParts(List.of(part(4, "d")));
+        // (the second page from where the first one ends)
+        given(s3client.listParts(argThat(request -> request != null && request.getPartNumberMarker() == null))).willReturn(first);
+        given(s3client.listParts(argThat(request -> request != null && Integer.valueOf(2).equals(request.getPartNumberMarker())))).willReturn(second);
+
+        assertEquals(Map.of(1, "a", 2, "b", 4, "d"), dataFileAccess.listUploadedParts("upload"));
+        verify(s3client, times(2)).listParts(any(ListPartsRequest.class));
+    }
+
+    private static PartSummary part(int partNumber, String eTag) {
+        PartSummary part = new PartSummary();
+        part.setPartNumber(partNumber);
+        part.setETag(eTag);
+        return part;
+    }
+
+    private static S3ObjectSummary summary(String key) {
+        S3ObjectSummary summary = new S3ObjectSummary();
+        summary.setKey(key);
+        return summary;
+    }
+    
 }
@@ -0,0 +1,57 @@
+package edu.harvard.iq.dataverse.datasetutility;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.Dataset;
+
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class FileRegistrationServiceBeanTest {
+
+    @Test
+    public void testGetStorageLocation() {
+        Dataset dataset = new Dataset();
+        dataset.setAuthority("10.5072");
+        dataset.setIdentifier("FK2/3S6G2E");
+
+        assertEquals("s3://bucket/10.5072/FK2/3S6G2E/1781cfeb8a7-748c270a227c",
+                FileRegistrationServiceBean.getStorageLocation(dataset, "s3://bucket:1781cfeb8a7-748c270a227c"));
+        assertEquals("globus:///10.5072/FK2/3S6G2E/1781cfeb8a7-4ad9418a5873",
+                FileRegistrationServiceBean.getStorageLocation(dataset, "globus://1781cfeb8a7-4ad9418a5873"));
+    }
+
+    @Test
+    public void testAddMissingDetails() {
+        JsonObject file = Json.createObjectBuilder()
+                .add("storageIdentifier", "s3://bucket:1781cfeb8a7-748c270a227c")
+                .add("fileName", "data.csv")
+                .build();
+
+        JsonObject completed = FileRegistrationServiceBean.addMissingDetails(file, "abc123", DataFile.ChecksumType.SHA1);
+
+        assertEquals("SHA-1", completed.getJsonObject("checksum").getString("@type"));
+        assertEquals("abc123", completed.getJsonObject("checksum").getString("@value"));
+        assertEquals("text/comma-separated-values", completed.getString("mimeType"));
+        assertEquals("data.csv", completed.getString("fileName"));
+    }
+
+    @Test
+    public void testAddMissingDetailsKeepsTheGivenOnes() {
+        JsonObject file = Json.createObjectBuilder()
+                .add("storageIdentifier", "s3://bucket:1781cfeb8a7-748c270a227c")
+                .add("fileName", "data.csv")
+                .add("md5Hash", "def456")
+                .add("mimeType", "text/plain")
+                .build();
+
+        JsonObject completed = FileRegistrationServiceBean.addMissingDetails(file, null, DataFile.ChecksumType.MD5);
+
+        assertFalse(completed.containsKey("checksum"));
+        assertEquals("def456", completed.getString("md5Hash"));
+        assertEquals("text/plain", completed.getString("mimeType"));
+    }
+}
@@ -80,6 +80,11 @@ public class TestCommandContext implements CommandContext {
         return null;
     }
 
+    @Override
+    public DataFileValidationServiceBean fileValidation() {
+        return null;
+    }
+
     @Override
     public PermissionServiceBean permissions() {
         return null;
@@ -240,6 +245,11 @@ public class TestCommandContext implements CommandContext {
         return null;
     }
 
+    @Override
+    public DatasetEventServiceBean datasetEvents() {
+        return null;
+    }
+
     @Override
     public void beginCommandSequence() {
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
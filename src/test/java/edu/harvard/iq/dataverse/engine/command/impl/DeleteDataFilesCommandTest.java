@@ -0,0 +1,136 @@
+package edu.harvard.iq.dataverse.engine.command.impl;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.DatasetVersion;
+import edu.harvard.iq.dataverse.FileMetadata;
+import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import edu.harvard.iq.dataverse.engine.TestCommandContext;
+import edu.harvard.iq.dataverse.engine.TestDataverseEngine;
+import edu.harvard.iq.dataverse.engine.command.exception.CommandException;
+import edu.harvard.iq.dataverse.engine.command.exception.PermissionException;
+import edu.harvard.iq.dataverse.mocks.MocksFactory;
+import edu.harvard.iq.dataverse.search.IndexResponse;
+import edu.harvard.iq.dataverse.search.SolrIndexServiceBean;
+import edu.harvard.iq.dataverse.storageuse.StorageUseServiceBean;
+import java.sql.Timestamp;
+import java.util.List;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class DeleteDataFilesCommandTest {
+
+    private TestDataverseEngine testEngine;
+    private EntityManager em;
+    private StorageUseServiceBean storageUse;
+    private SolrIndexServiceBean solrIndex;
+    private Dataset dataset;
+
+    @BeforeEach
+    public void setUp() {
+        em = mock(EntityManager.class);
+        when(em.merge(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        storageUse = mock(StorageUseServiceBean.class);
+        solrIndex = mock(SolrIndexServiceBean.class);
+        when(solrIndex.deleteMultipleSolrIds(anyList())).thenReturn(new IndexResponse("deleted"));
+        testEngine = new TestDataverseEngine(new TestCommandContext() {
+            @Override
+            public EntityManager em() {
+                return em;
+            }
+
+            @Override
+            public StorageUseServiceBean storageUse() {
+                return storageUse;
+            }
+
+            @Override
+            public SolrIndexServiceBean solrIndex() {
+                return solrIndex;
+            }
+        });
+        dataset = MocksFactory.makeDataset();
+    }
+
+    /**
+     * @return a file of the draft version of the dataset.
+     */
+    private DataFile makeDraftFile(long size) {
+        DataFile file = MocksFactory.makeDataFile();
+        file.setOwner(dataset);
+        file.setFilesize(size);
+        file.getFileMetadata().setDatasetVersion(dataset.getLatestVersion());
+        return file;
+    }
+
+    private void release(DataFile file) {
+        file.setPublicationDate(new Timestamp(System.currentTimeMillis()));
+    }
+
+    @Test
+    public void testDeleteDraftFiles() throws CommandException {
+        List<DataFile> doomed = List.of(makeDraftFile(100), makeDraftFile(20));
+
+        testEngine.submit(new DeleteDataFilesCommand(dataset, doomed, MocksFactory.makeRequest(), false));
+
+        verify(em).remove(doomed.get(0));
+        verify(em).remove(doomed.get(1));
+        // (a single update of the storage use, and of the index)
+        verify(storageUse).incrementStorageSizeRecursively(dataset.getId(), -120L);
+        verify(solrIndex).deleteMultipleSolrIds(argThat(ids -> ids.size() == 4 && ids.contains("datafile_" + doomed.get(0).getId() + "_draft")));
+    }
+
+    /**
+     * None of the files is deleted, if any of them can't be.
+     */
+    @Test
+    public void testReleasedFileNotDeleted() {
+        DataFile released = makeDraftFile(100);
+        release(released);
+        List<DataFile> doomed = List.of(makeDraftFile(100), released);
+
+        assertThrows(CommandException.class,
+                () -> testEngine.submit(new DeleteDataFilesCommand(dataset, doomed, MocksFactory.makeRequest(), false)));
+
+        verify(em, never()).remove(any());
+        verifyNoInteractions(storageUse, solrIndex);
+    }
+
+    @Test
+    public void testFileOfSeveralVersionsNotDeleted() {
+        DataFile file = makeDraftFile(100);
+        FileMetadata released = MocksFactory.addFileMetadata(file);
+        DatasetVersion releasedVersion = new DatasetVersion();
+        releasedVersion.setVersionState(DatasetVersion.VersionState.RELEASED);
+        released.setDatasetVersion(releasedVersion);
+
+        assertThrows(CommandException.class,
+                () -> testEngine.submit(new DeleteDataFilesCommand(dataset, List.of(file), MocksFactory.makeRequest(), false)));
+
+        verify(em, never()).remove(any());
+    }
+
+    /**
+     * The files of a released dataset can only be destroyed by superusers.
+     */
+    @Test
+    public void testDestroyReleasedFiles() throws CommandException {
+        dataset.setPublicationDate(new Timestamp(System.currentTimeMillis()));
+        DataFile file = makeDraftFile(100);
+        release(file);
+        AuthenticatedUser user = MocksFactory.makeAuthenticatedUser("Jane", "Doe");
+
+        assertThrows(PermissionException.class,
+                () -> testEngine.submit(new DeleteDataFilesCommand(dataset, List.of(file), MocksFactory.makeRequest(user), true)));
+        verify(em, never()).remove(any());
+
+        user.setSuperuser(true);
+        testEngine.submit(new DeleteDataFilesCommand(dataset, List.of(file), MocksFactory.makeRequest(user), true));
+        verify(em).remove(file);
+    }
+}
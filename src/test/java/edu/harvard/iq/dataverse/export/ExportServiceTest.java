@@ -0,0 +1,213 @@
+package edu.harvard.iq.dataverse.export;
+
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.DatasetVersion;
+import io.gdcc.spi.export.ExportDataProvider;
+import io.gdcc.spi.export.ExportException;
+import io.gdcc.spi.export.Exporter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ExportServiceTest {
+
+    @TempDir
+    Path filesDirectory;
+    private ExecutorService executor;
+
+    @AfterEach
+    public void tearDown() {
+        ExportService.injectExecutor(null);
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        System.clearProperty("dataverse.files.file.type");
+        System.clearProperty("dataverse.files.file.directory");
+    }
+
+    private interface Export {
+        void write(ExportDataProvider dataProvider, OutputStream outputStream) throws IOException;
+    }
+
+    private static Exporter exporter(String formatName, String prerequisite) {
+        return exporter(formatName, prerequisite, (dataProvider, outputStream) -> {
+        });
+    }
+
+    private static Exporter exporter(String formatName, String prerequisite, Export export) {
+        return new Exporter() {
+            @Override
+            public void exportDataset(ExportDataProvider dataProvider, OutputStream outputStream) throws ExportException {
+                try {
+                    export.write(dataProvider, outputStream);
+                } catch (IOException ioe) {
+                    throw new ExportException("Could not export as " + formatName, ioe);
+                }
+            }
+
+            @Override
+            public String getFormatName() {
+                return formatName;
+            }
+
+            @Override
+            public String getDisplayName(Locale locale) {
+                return formatName;
+            }
+
+            @Override
+            public Optional<String> getPrerequisiteFormatName() {
+                return Optional.ofNullable(prerequisite);
+            }
+
+            @Override
+            public Boolean isHarvestable() {
+                return false;
+            }
+
+            @Override
+            public Boolean isAvailableToUsers() {
+                return true;
+            }
+
+            @Override
+            public String getMediaType() {
+                return "text/plain";
+            }
+        };
+    }
+
+    private static List<List<String>> formatNames(List<List<Exporter>> levels) {
+        return levels.stream()
+                .map(level -> level.stream().map(Exporter::getFormatName).collect(Collectors.toList()))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testSortByPrerequisites() {
+        List<Exporter> exporters = List.of(
+                exporter("html", "ddi"),
+                exporter("ddi", null),
+                exporter("dcterms", null),
+                exporter("summary", "html"));
+
+        assertEquals(List.of(List.of("ddi", "dcterms"), List.of("html"), List.of("summary")),
+                formatNames(ExportService.sortByPrerequisites(exporters)));
+    }
+
+    @Test
+    public void testSortByPrerequisitesLeavesOutUnavailable() {
+        List<Exporter> exporters = List.of(
+                exporter("ddi", null),
+                exporter("missing", "nonexistent"),
+                exporter("a", "b"),
+                exporter("b", "a"));
+
+        assertEquals(List.of(List.of("ddi")), formatNames(ExportService.sortByPrerequisites(exporters)));
+    }
+
+    /**
+     * The exporters of a level run on the executor; the representations of
+     * the version they ask for are all built beforehand, on the calling
+     * thread: the threads of the exporters never touch the entities.
+     */
+    @Test
+    public void testExportAllFormatsInParallel() throws ExportException {
+        System.setProperty("dataverse.files.file.type", "file");
+        System.setProperty("dataverse.files.file.directory", filesDirectory.toString());
+        executor = Executors.newFixedThreadPool(2);
+        ExportService.injectExecutor(executor);
+
+        // (the threads the version is used on, and the exporters run on)
+        Set<Thread> versionThreads = Collections.synchronizedSet(new HashSet<>());
+        Set<Thread> exportThreads = Collections.synchronizedSet(new HashSet<>());
+        DatasetVersion version = mock(DatasetVersion.class, invocation -> {
+            versionThreads.add(Thread.currentThread());
+            return RETURNS_DEFAULTS.answer(invocation);
+        });
+        doReturn(true).when(version).isReleased();
+        Dataset dataset = new Dataset();
+        dataset.setId(1L);
+        dataset.setAuthority("10.5072");
+        dataset.setIdentifier("FK2/EXPORT");
+        dataset.setStorageIdentifier("file://10.5072/FK2/EXPORT");
+        dataset.setVersions(List.of(version));
+        versionThreads.clear();
+
+        AtomicReference<String> prerequisite = new AtomicReference<>();
+        Export fileDetails = (dataProvider, outputStream) -> {
+            exportThreads.add(Thread.currentThread());
+            outputStream.write(dataProvider.getDatasetFileDetails().toString().getBytes(StandardCharsets.UTF_8));
+        };
+        ExportService exportService = new ExportService(List.of(
+                exporter("a", null, fileDetails),
+                exporter("b", null, fileDetails),
+                exporter("c", "a", (dataProvider, outputStream) -> {
+                    try (InputStream in = dataProvider.getPrerequisiteInputStream().get()) {
+                        prerequisite.set(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                    }
+                })));
+
+        exportService.exportAllFormats(dataset);
+
+        assertEquals(Set.of(Thread.currentThread()), versionThreads);
+        assertFalse(exportThreads.isEmpty());
+        assertFalse(exportThreads.contains(Thread.currentThread()));
+        assertEquals("[]", prerequisite.get());
+        assertNotNull(dataset.getLastExportTime());
+    }
+
+    /**
+     * Without an executor, the exporters run on the calling thread, and the
+     * representations are only built when they are asked for.
+     */
+    @Test
+    public void testExportAllFormatsSerially() throws ExportException {
+        System.setProperty("dataverse.files.file.type", "file");
+        System.setProperty("dataverse.files.file.directory", filesDirectory.toString());
+
+        DatasetVersion version = mock(DatasetVersion.class);
+        when(version.isReleased()).thenReturn(true);
+        Dataset dataset = new Dataset();
+        dataset.setId(1L);
+        dataset.setAuthority("10.5072");
+        dataset.setIdentifier("FK2/EXPORT");
+        dataset.setStorageIdentifier("file://10.5072/FK2/EXPORT");
+        dataset.setVersions(List.of(version));
+
+        AtomicReference<String> prerequisite = new AtomicReference<>();
+        ExportService exportService = new ExportService(List.of(
+                exporter("a", null, (dataProvider, outputStream) -> outputStream.write("a".getBytes(StandardCharsets.UTF_8))),
+                exporter("b", null),
+                exporter("c", "a", (dataProvider, outputStream) -> {
+                    try (InputStream in = dataProvider.getPrerequisiteInputStream().get()) {
+                        prerequisite.set(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                    }
+                })));
+
+        exportService.exportAllFormats(dataset);
+
+        verify(version, never()).getFileMetadatas();
+        assertEquals("a", prerequisite.get());
+        assertNotNull(dataset.getLastExportTime());
+    }
+}
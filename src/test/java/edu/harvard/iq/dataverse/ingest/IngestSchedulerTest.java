@@ -0,0 +1,131 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IngestSchedulerTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private static IngestJob job(long fileId, long datasetId, long userId, long size) {
+        IngestMessage message = new IngestMessage(userId);
+        message.setDatasetId(datasetId);
+        message.addFileId(fileId);
+        return new IngestJob(fileId, datasetId, userId, "file" + fileId, "text/csv", size, new IngestBatch(message));
+    }
+
+    private static List<Long> runAll(IngestScheduler scheduler) {
+        List<Long> order = new ArrayList<>();
+        IngestJob job;
+        while ((job = scheduler.next()) != null) {
+            order.add(job.getDataFileId());
+            scheduler.complete(job);
+        }
+        return order;
+    }
+
+    @Test
+    public void testRoundRobinAcrossDatasets() {
+        IngestScheduler scheduler = new IngestScheduler(1, Long.MAX_VALUE, 0);
+        // dataset 1 queues 3 files first; dataset 2 (same user) and 3 (another user) one each:
+        scheduler.add(job(11, 1, 100, 1 * MB));
+        scheduler.add(job(12, 1, 100, 2 * MB));
+        scheduler.add(job(13, 1, 100, 3 * MB));
+        scheduler.add(job(21, 2, 100, 5 * MB));
+        scheduler.add(job(31, 3, 200, 5 * MB));
+        assertEquals(5, scheduler.getQueueDepth());
+        assertEquals(3, scheduler.getQueuedByDataset().get(1L));
+
+        // users alternate; and so do the datasets of user 100:
+        assertEquals(List.of(11L, 31L, 21L, 12L, 13L), runAll(scheduler));
+        assertEquals(0, scheduler.getQueueDepth());
+    }
+
+    @Test
+    public void testSmallFilesFirst() {
+        IngestScheduler scheduler = new IngestScheduler(1, Long.MAX_VALUE, 10 * MB);
+        scheduler.add(job(11, 1, 100, 500 * MB));
+        scheduler.add(job(12, 1, 100, 100 * MB));
+        scheduler.add(job(21, 2, 200, 400 * MB));
+        scheduler.add(job(22, 2, 200, 1 * MB));
+
+        // within a dataset, the smallest file comes first; small files of
+        // any dataset come before the large ones:
+        assertEquals(List.of(22L, 12L, 21L, 11L), runAll(scheduler));
+    }
+
+    @Test
+    public void testWorkerLimit() {
+        IngestScheduler scheduler = new IngestScheduler(2, Long.MAX_VALUE, 0);
+        scheduler.add(job(11, 1, 100, MB));
+        scheduler.add(job(21, 2, 200, MB));
+        scheduler.add(job(31, 3, 300, MB));
+
+        IngestJob first = scheduler.next();
+        assertNotNull(first);
+        assertNotNull(scheduler.next());
+        assertNull(scheduler.next());
+        assertEquals(2, scheduler.getActiveJobs().size());
+        assertTrue(scheduler.hasJobs(first.getDatasetId()));
+
+        scheduler.complete(first);
+        assertFalse(scheduler.hasJobs(first.getDatasetId()));
+        assertEquals(31L, scheduler.next().getDataFileId());
+    }
+
+    @Test
+    public void testAdmissionControl() {
+        long budget = 2 * (IngestScheduler.BASE_JOB_MEMORY + 100 * MB);
+        IngestScheduler scheduler = new IngestScheduler(4, budget, 0);
+        scheduler.add(job(11, 1, 100, 100 * MB));
+        scheduler.add(job(21, 2, 200, 100 * MB));
+        scheduler.add(job(31, 3, 300, 100 * MB));
+
+        IngestJob first = scheduler.next();
+        assertNotNull(scheduler.next());
+        // a third job would not fit in the budget:
+        assertNull(scheduler.next());
+        assertEquals(budget, scheduler.getActiveMemory());
+
+        scheduler.complete(first);
+        assertEquals(31L, scheduler.next().getDataFileId());
+    }
+
+    @Test
+    public void testJobLargerThanBudgetRunsAlone() {
+        IngestScheduler scheduler = new IngestScheduler(4, 100 * MB, 0);
+        scheduler.add(job(11, 1, 100, 1000 * MB));
+        scheduler.add(job(21, 2, 200, 1 * MB));
+
+        IngestJob large = scheduler.next();
+        assertEquals(11L, large.getDataFileId());
+        assertNull(scheduler.next());
+        scheduler.complete(large);
+        assertEquals(21L, scheduler.next().getDataFileId());
+    }
+
+    @Test
+    public void testHasFile() {
+        IngestScheduler scheduler = new IngestScheduler(1, 100 * MB, 0);
+        scheduler.add(job(11, 1, 100, 1 * MB));
+        scheduler.add(job(12, 1, 100, 1 * MB));
+        assertTrue(scheduler.hasFile(11L));
+        assertTrue(scheduler.hasFile(12L));
+        assertFalse(scheduler.hasFile(13L));
+
+        IngestJob running = scheduler.next();
+        assertTrue(scheduler.hasFile(running.getDataFileId()));
+        scheduler.complete(running);
+        assertFalse(scheduler.hasFile(running.getDataFileId()));
+    }
+
+    @Test
+    public void testEstimateMemory() {
+        assertEquals(IngestScheduler.BASE_JOB_MEMORY + 10 * MB, IngestScheduler.estimateMemory("text/csv", 10 * MB));
+        assertEquals(IngestScheduler.BASE_JOB_MEMORY + 100 * MB,
+                IngestScheduler.estimateMemory("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", 10 * MB));
+    }
+}
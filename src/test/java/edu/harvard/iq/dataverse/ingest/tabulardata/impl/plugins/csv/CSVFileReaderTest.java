@@ -7,6 +7,7 @@ package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.csv;
 
 import edu.harvard.iq.dataverse.DataTable;
 import edu.harvard.iq.dataverse.dataaccess.TabularSubsetGenerator;
+import edu.harvard.iq.dataverse.datavariable.DataVariable;
 import edu.harvard.iq.dataverse.datavariable.DataVariable.VariableInterval;
 import edu.harvard.iq.dataverse.datavariable.DataVariable.VariableType;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataIngest;
@@ -18,6 +19,8 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.logging.Logger;
 import org.dataverse.unf.UNFUtil;
@@ -420,4 +423,132 @@ public class CSVFileReaderTest {
             assertEquals(expMessage, ex.getMessage());
         }
     }
+
+    /**
+     * The single-pass mode must produce exactly the same tab file and variable
+     * types as the default two-pass mode; the CSV File From Hell has columns
+     * that are widened after some of their values have been written (e.g.
+     * "null" in "Numbers", that turns into "0.0" once the column is known to
+     * be continuous), so the fixup of the speculatively written cases is
+     * exercised as well.
+     */
+    @Test
+    public void testSinglePassRead() throws IOException {
+        String[] testFiles = {"src/test/java/edu/harvard/iq/dataverse/ingest/tabulardata/impl/plugins/csv/IngestCSV.csv",
+            "src/test/java/edu/harvard/iq/dataverse/ingest/tabulardata/impl/plugins/csv/election_precincts.csv"};
+
+        for (String testFile : testFiles) {
+            for (boolean saveWithVariableHeader : new boolean[]{false, true}) {
+                TabularDataIngest twoPassResult;
+                TabularDataIngest singlePassResult;
+                try (BufferedInputStream stream = new BufferedInputStream(new FileInputStream(testFile))) {
+                    twoPassResult = new CSVFileReader(new CSVFileReaderSpi(), ',').read(stream, saveWithVariableHeader, null);
+                }
+                try (BufferedInputStream stream = new BufferedInputStream(new FileInputStream(testFile))) {
+                    singlePassResult = new CSVFileReader(new CSVFileReaderSpi(), ',', true).read(stream, saveWithVariableHeader, null);
+                }
+
+                assertSameIngest(twoPassResult, singlePassResult, testFile);
+            }
+        }
+    }
+
+    /**
+     * Tests that reading a file in (small) chunks, in parallel, produces the
+     * same results as reading it sequentially.
+     */
+    @Test
+    public void testParallelChunkedRead() throws IOException {
+        String[] testFiles = {"src/test/java/edu/harvard/iq/dataverse/ingest/tabulardata/impl/plugins/csv/IngestCSV.csv",
+            "src/test/java/edu/harvard/iq/dataverse/ingest/tabulardata/impl/plugins/csv/election_precincts.csv"};
+
+        for (String testFile : testFiles) {
+            for (boolean saveWithVariableHeader : new boolean[]{false, true}) {
+                TabularDataIngest sequentialResult;
+                TabularDataIngest chunkedResult;
+                try (BufferedInputStream stream = new BufferedInputStream(new FileInputStream(testFile))) {
+                    sequentialResult = new CSVFileReader(new CSVFileReaderSpi(), ',').read(stream, saveWithVariableHeader, null);
+                }
+                try (BufferedInputStream stream = new BufferedInputStream(new FileInputStream(testFile))) {
+                    CSVFileReader reader = new CSVFileReader(new CSVFileReaderSpi(), ',');
+                    reader.setSourceFile(new File(testFile));
+                    reader.setParallelThreads(4);
+                    reader.setMinChunkSize(256);
+                    chunkedResult = reader.read(stream, saveWithVariableHeader, null);
+                }
+
+                assertSameIngest(sequentialResult, chunkedResult, testFile);
+            }
+        }
+    }
+
+    /**
+     * Asserts that the two ingests of the test file produced the same tab
+     * file, and the same variables.
+     */
+    private static void assertSameIngest(TabularDataIngest expectedIngest, TabularDataIngest ingest, String testFile) throws IOException {
+        assertEquals(Files.readAllLines(expectedIngest.getTabDelimitedFile().toPath()),
+                Files.readAllLines(ingest.getTabDelimitedFile().toPath()), testFile);
+
+        DataTable expected = expectedIngest.getDataTable();
+        DataTable result = ingest.getDataTable();
+        assertEquals(expected.getCaseQuantity(), result.getCaseQuantity(), testFile);
+        assertEquals(expected.getVarQuantity(), result.getVarQuantity(), testFile);
+        for (int i = 0; i < expected.getVarQuantity(); i++) {
+            DataVariable expectedVariable = expected.getDataVariables().get(i);
+            DataVariable variable = result.getDataVariables().get(i);
+            assertEquals(expectedVariable.getName(), variable.getName(), testFile + ", variable " + i + ":");
+            assertEquals(expectedVariable.getType(), variable.getType(), testFile + ", variable " + i + ":");
+            assertEquals(expectedVariable.getInterval(), variable.getInterval(), testFile + ", variable " + i + ":");
+            assertEquals(expectedVariable.getFormatCategory(), variable.getFormatCategory(), testFile + ", variable " + i + ":");
+            assertEquals(expectedVariable.getFormat(), variable.getFormat(), testFile + ", variable " + i + ":");
+        }
+    }
+
+    /**
+     * Tests the fixup of cases written before a column was widened, when
+     * those cases contain values that can't be recovered from the tab file.
+     */
+    @Test
+    public void testSinglePassWidenedColumns() throws IOException {
+        String csv = "a,b,c\n"
+                + "NA,null,2017-06-20\n"
+                + "1,\"2\",\"2017-06-20\"\"\"\n"
+                + "-inf,3.5,2017-06-20\n"
+                + "x,4,\"2017-06-20\n06\"\n"
+                + "y,5,zzz\n";
+        String[] expResult = {"\"NA\"\t0.0\t\"2017-06-20\"",
+            "\"1\"\t2\t\"2017-06-20\\\"\"",
+            "\"-inf\"\t3.5\t\"2017-06-20\"",
+            "\"x\"\t4\t\"2017-06-20\\n06\"",
+            "\"y\"\t5\t\"zzz\""};
+
+        BufferedReader reader = new BufferedReader(new StringReader(csv));
+        DataTable dataTable = new DataTable();
+        File tabFile = File.createTempFile("data-", ".tab");
+        int caseCount = new CSVFileReader(new CSVFileReaderSpi(), ',', true).readFileSinglePass(reader, dataTable, false, tabFile);
+
+        assertEquals(5, caseCount);
+        assertArrayEquals(expResult, Files.readAllLines(tabFile.toPath()).toArray());
+        assertEquals(VariableType.CHARACTER, dataTable.getDataVariables().get(0).getType());
+        assertEquals(VariableType.NUMERIC, dataTable.getDataVariables().get(1).getType());
+        assertEquals(VariableInterval.CONTINUOUS, dataTable.getDataVariables().get(1).getInterval());
+        assertEquals(VariableType.CHARACTER, dataTable.getDataVariables().get(2).getType());
+        assertNull(dataTable.getDataVariables().get(2).getFormatCategory());
+        tabFile.delete();
+    }
+
+    @Test
+    public void testSinglePassBrokenCSV() {
+        String brokenFile = "src/test/java/edu/harvard/iq/dataverse/ingest/tabulardata/impl/plugins/csv/BrokenCSV.csv";
+        try (BufferedInputStream stream = new BufferedInputStream(
+                new FileInputStream(brokenFile))) {
+            new CSVFileReader(new CSVFileReaderSpi(), ',', true).read(stream, false, null);
+            fail("IOException was not thrown when collumns do not align.");
+        } catch (IOException ex) {
+            String expMessage = BundleUtil.getStringFromBundle("ingest.csv.recordMismatch",
+                                                               Arrays.asList(new String[]{"3", "6", "4"}));
+            assertEquals(expMessage, ex.getMessage());
+        }
+    }
 }
@@ -54,7 +54,25 @@ public class NewDTAFileReaderTest {
                           "\"Buick Regal\"	5189	20.0	3	16	2.93	\"ccc\"\n";
         assertEquals(expected, FileUtils.readFileToString(result.getTabDelimitedFile()));
     }
-    
+
+    @Test
+    public void testStrlIndexed() throws IOException {
+        // With the source file available, the STRLs are looked up in an index
+        // as the data section is read; the result must be the same as above.
+        File strlFile = new File(base + "strl.dta");
+        instance = new NewDTAFileReader(null, 118);
+        instance.setSourceFile(strlFile);
+        TabularDataIngest result = instance.read(new BufferedInputStream(new FileInputStream(strlFile)), false, nullDataFile);
+        DataTable table = result.getDataTable();
+        assertEquals(7, table.getDataVariables().size());
+        assertEquals(3, (long)table.getCaseQuantity());
+
+        String expected = "\"Buick LeSabre\"	5788	1.1111111111111111E21	100	32767	2.73	\"a\"\n" +
+                          "\"Buick Opel\"	4453	26.0		10	2.87	\"bb\"\n" +
+                          "\"Buick Regal\"	5189	20.0	3	16	2.93	\"ccc\"\n";
+        assertEquals(expected, FileUtils.readFileToString(result.getTabDelimitedFile()));
+    }
+
     @Test
     public void testDates() throws IOException {
         instance = new NewDTAFileReader(null, 118);
@@ -0,0 +1,80 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.sav;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SAVDataInputTest {
+
+    @TempDir
+    File tempDir;
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (i % 251 + 1);
+        }
+        return bytes;
+    }
+
+    /**
+     * With windows smaller than a case (and not a multiple of its size), each
+     * case is copied from several windows; the cases must come out whole.
+     */
+    @Test
+    public void testCaseAcrossWindows() throws IOException {
+        byte[] header = bytes(13);
+        byte[] data = bytes(24 * 10);
+        File file = new File(tempDir, "data.sav");
+        byte[] content = new byte[header.length + data.length];
+        System.arraycopy(header, 0, content, 0, header.length);
+        System.arraycopy(data, 0, content, header.length, data.length);
+        Files.write(file.toPath(), content);
+
+        try (SAVDataInput input = SAVDataInput.map(file, header.length, 7)) {
+            byte[] buffer = new byte[24];
+            for (int i = 0; i < 10; i++) {
+                assertTrue(input.hasRemaining());
+                assertEquals(24, input.read(buffer));
+                assertArrayEquals(Arrays.copyOfRange(data, 24 * i, 24 * (i + 1)), buffer);
+            }
+            assertFalse(input.hasRemaining());
+            assertEquals(-1, input.read(buffer));
+        }
+    }
+
+    /**
+     * The last block may be short: the rest of the buffer is zeroed.
+     */
+    @Test
+    public void testShortLastBlock() throws IOException {
+        byte[] data = bytes(20);
+        File file = new File(tempDir, "short.sav");
+        Files.write(file.toPath(), data);
+
+        try (SAVDataInput input = SAVDataInput.map(file, 0, 8)) {
+            byte[] buffer = new byte[16];
+            assertEquals(16, input.read(buffer));
+            Arrays.fill(buffer, (byte) -1);
+            assertEquals(4, input.read(buffer));
+            assertArrayEquals(Arrays.copyOfRange(data, 16, 20), Arrays.copyOfRange(buffer, 0, 4));
+            assertArrayEquals(new byte[12], Arrays.copyOfRange(buffer, 4, 16));
+            assertEquals(-1, input.read(buffer));
+        }
+
+        try (SAVDataInput input = SAVDataInput.of(new BufferedInputStream(new ByteArrayInputStream(data)))) {
+            byte[] buffer = new byte[16];
+            assertEquals(16, input.read(buffer));
+            assertEquals(4, input.read(buffer));
+            assertArrayEquals(new byte[12], Arrays.copyOfRange(buffer, 4, 16));
+            assertEquals(-1, input.read(buffer));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.sav;
+
+import edu.harvard.iq.dataverse.DataTable;
+import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataIngest;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SAVFileReaderTest {
+
+    /**
+     * The data section is memory-mapped when the source file is known; the
+     * results must be the same as when it is read from the stream.
+     */
+    @Test
+    public void testMappedDataSection() throws IOException {
+        File savFile = new File("src/test/resources/sav/dct.sav");
+
+        TabularDataIngest streamResult;
+        TabularDataIngest mappedResult;
+        try (BufferedInputStream stream = new BufferedInputStream(new FileInputStream(savFile))) {
+            streamResult = new SAVFileReader(new SAVFileReaderSpi()).read(stream, false, null);
+        }
+        try (BufferedInputStream stream = new BufferedInputStream(new FileInputStream(savFile))) {
+            SAVFileReader reader = new SAVFileReader(new SAVFileReaderSpi());
+            reader.setSourceFile(savFile);
+            mappedResult = reader.read(stream, false, null);
+        }
+
+        DataTable expected = streamResult.getDataTable();
+        DataTable result = mappedResult.getDataTable();
+        assertEquals(3045, result.getCaseQuantity());
+        assertEquals(expected.getVarQuantity(), result.getVarQuantity());
+        for (int i = 0; i < expected.getVarQuantity(); i++) {
+            assertEquals(expected.getDataVariables().get(i).getName(), result.getDataVariables().get(i).getName());
+            assertEquals(expected.getDataVariables().get(i).getType(), result.getDataVariables().get(i).getType());
+            assertEquals(expected.getDataVariables().get(i).getInterval(), result.getDataVariables().get(i).getInterval());
+        }
+        assertEquals(Files.readAllLines(streamResult.getTabDelimitedFile().toPath()),
+                Files.readAllLines(mappedResult.getTabDelimitedFile().toPath()));
+    }
+}
@@ -0,0 +1,100 @@
+package edu.harvard.iq.dataverse.pidproviders;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.DvObject;
+import edu.harvard.iq.dataverse.pidproviders.doi.fake.FakeDOIProvider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AbstractPidProviderTest {
+
+    private ExecutorService executor;
+
+    /**
+     * A provider whose requests fail the given number of times for each
+     * object, before they succeed; and always fail for the objects in
+     * {@code alwaysFailing}.
+     */
+    private static class FlakyProvider extends FakeDOIProvider {
+
+        final Map<Long, AtomicInteger> attempts = new ConcurrentHashMap<>();
+        final int failuresBeforeSuccess;
+        final List<Long> alwaysFailing;
+
+        FlakyProvider(int failuresBeforeSuccess, List<Long> alwaysFailing) {
+            super("flaky", "Flaky", "10.5072", "FK2/", "randomString", "DEPENDENT", "", "");
+            this.failuresBeforeSuccess = failuresBeforeSuccess;
+            this.alwaysFailing = alwaysFailing;
+        }
+
+        @Override
+        protected Callable<Boolean> preparePublicizeIdentifier(DvObject dvObject) {
+            Long id = dvObject.getId();
+            return () -> {
+                int attempt = attempts.computeIfAbsent(id, key -> new AtomicInteger()).incrementAndGet();
+                return !alwaysFailing.contains(id) && attempt > failuresBeforeSuccess;
+            };
+        }
+    }
+
+    private static List<DataFile> dataFiles(int count) {
+        List<DataFile> dataFiles = new ArrayList<>();
+        for (long id = 1; id <= count; id++) {
+            DataFile dataFile = new DataFile();
+            dataFile.setId(id);
+            dataFiles.add(dataFile);
+        }
+        return dataFiles;
+    }
+
+    @BeforeEach
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testPublicizeIdentifiersRetries() {
+        FlakyProvider provider = new FlakyProvider(1, List.of());
+        List<DataFile> dataFiles = dataFiles(20);
+        List<DvObject> publicized = Collections.synchronizedList(new ArrayList<>());
+
+        List<DvObject> notPublicized = provider.publicizeIdentifiers(dataFiles, publicized::add, executor, 4, 1);
+
+        assertTrue(notPublicized.isEmpty());
+        assertEquals(20, publicized.size());
+        assertTrue(publicized.containsAll(dataFiles));
+        provider.attempts.values().forEach(attempts -> assertEquals(2, attempts.get()));
+    }
+
+    @Test
+    public void testPublicizeIdentifiersStopsAtFailure() {
+        FlakyProvider provider = new FlakyProvider(0, List.of(3L));
+        List<DataFile> dataFiles = dataFiles(20);
+        List<DvObject> publicized = new ArrayList<>();
+
+        List<DvObject> notPublicized = provider.publicizeIdentifiers(dataFiles, publicized::add, executor, 2, 0);
+
+        assertTrue(notPublicized.contains(dataFiles.get(2)));
+        assertEquals(20, publicized.size() + notPublicized.size());
+        assertFalse(publicized.stream().anyMatch(notPublicized::contains));
+        assertEquals(1, provider.attempts.get(3L).get());
+    }
+}
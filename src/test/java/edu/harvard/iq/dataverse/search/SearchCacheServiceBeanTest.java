@@ -0,0 +1,71 @@
+package edu.harvard.iq.dataverse.search;
+
+import edu.harvard.iq.dataverse.DatasetFieldServiceBean;
+import edu.harvard.iq.dataverse.DatasetFieldType;
+import edu.harvard.iq.dataverse.authorization.groups.GroupServiceBean;
+import edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress.ip.IpAddress;
+import edu.harvard.iq.dataverse.authorization.users.GuestUser;
+import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.testing.JvmSetting;
+import edu.harvard.iq.dataverse.util.testing.LocalJvmSettings;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@LocalJvmSettings
+class SearchCacheServiceBeanTest {
+
+    private SearchCacheServiceBean searchCacheService;
+
+    @BeforeEach
+    void setUp() {
+        searchCacheService = new SearchCacheServiceBean();
+        searchCacheService.datasetFieldService = Mockito.mock(DatasetFieldServiceBean.class);
+        searchCacheService.groupService = Mockito.mock(GroupServiceBean.class);
+        when(searchCacheService.datasetFieldService.findAllOrderedById()).thenReturn(List.of(new DatasetFieldType()));
+        when(searchCacheService.groupService.groupsFor(any(DataverseRequest.class))).thenReturn(Set.of());
+        when(searchCacheService.groupService.collectAncestors(any())).thenReturn(Set.of());
+    }
+
+    @Test
+    void testDatasetFieldTypesLoadedOnceUntilCleared() {
+        assertEquals(1, searchCacheService.findAllDatasetFieldTypes().size());
+        searchCacheService.findAllDatasetFieldTypes();
+        verify(searchCacheService.datasetFieldService, times(1)).findAllOrderedById();
+
+        searchCacheService.clearDatasetFieldTypes();
+        searchCacheService.findAllDatasetFieldTypes();
+        verify(searchCacheService.datasetFieldService, times(2)).findAllOrderedById();
+    }
+
+    @Test
+    void testGroupsKeptByUserAndAddress() {
+        DataverseRequest fromHere = new DataverseRequest(GuestUser.get(), IpAddress.valueOf("10.0.0.1"));
+        DataverseRequest fromThere = new DataverseRequest(GuestUser.get(), IpAddress.valueOf("10.0.0.2"));
+        searchCacheService.findGroups(fromHere);
+        searchCacheService.findGroups(fromHere);
+        verify(searchCacheService.groupService, times(1)).groupsFor(fromHere);
+
+        searchCacheService.findGroups(fromThere);
+        verify(searchCacheService.groupService, times(1)).groupsFor(fromThere);
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.SEARCH_GROUPS_TTL, value = "0")
+    void testGroupsNotKeptWhenDisabled() {
+        DataverseRequest request = new DataverseRequest(GuestUser.get(), IpAddress.valueOf("10.0.0.1"));
+        searchCacheService.findGroups(request);
+        searchCacheService.findGroups(request);
+        verify(searchCacheService.groupService, times(2)).groupsFor(request);
+    }
+}
@@ -0,0 +1,203 @@
+package edu.harvard.iq.dataverse.search.savedsearch;
+
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.Dataverse;
+import edu.harvard.iq.dataverse.DvObject;
+import edu.harvard.iq.dataverse.DvObjectServiceBean;
+import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
+import edu.harvard.iq.dataverse.engine.command.exception.CommandException;
+import edu.harvard.iq.dataverse.search.SearchFields;
+import edu.harvard.iq.dataverse.search.SearchServiceBean;
+import edu.harvard.iq.dataverse.search.SolrSearchResult;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Consumer;
+import jakarta.ejb.SessionContext;
+import jakarta.json.Json;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class SavedSearchServiceBeanTest {
+
+    @Mock
+    EntityManager em;
+    @Mock
+    SearchServiceBean searchService;
+    @Mock
+    DvObjectServiceBean dvObjectService;
+    @Mock
+    SessionContext sessionContext;
+    @Mock
+    SavedSearchServiceBean self;
+    @Mock
+    TypedQuery<Long> linkedIdsQuery;
+    @Mock
+    Query indexedSinceQuery;
+    @Mock
+    Query updateQuery;
+
+    SavedSearchServiceBean savedSearchService;
+    Dataverse definitionPoint;
+    DataverseRequest request;
+
+    @BeforeEach
+    public void setUp() {
+        savedSearchService = new SavedSearchServiceBean();
+        savedSearchService.em = em;
+        savedSearchService.searchService = searchService;
+        savedSearchService.dvObjectService = dvObjectService;
+        savedSearchService.sessionContext = sessionContext;
+        when(sessionContext.getBusinessObject(SavedSearchServiceBean.class)).thenReturn(self);
+
+        when(em.createNamedQuery(anyString(), eq(Long.class))).thenReturn(linkedIdsQuery);
+        when(linkedIdsQuery.setParameter(anyString(), any())).thenReturn(linkedIdsQuery);
+        when(linkedIdsQuery.getResultList()).thenReturn(List.of());
+        when(em.createNativeQuery(startsWith("SELECT id FROM dvobject"))).thenReturn(indexedSinceQuery);
+        when(indexedSinceQuery.setParameter(anyInt(), any())).thenReturn(indexedSinceQuery);
+        when(em.createNativeQuery(startsWith("UPDATE savedsearch"))).thenReturn(updateQuery);
+        when(updateQuery.setParameter(anyInt(), any())).thenReturn(updateQuery);
+
+        definitionPoint = new Dataverse();
+        definitionPoint.setId(1L);
+        definitionPoint.setAlias("definitionPoint");
+        request = new DataverseRequest(new AuthenticatedUser(), SavedSearchServiceBean.getHttpServletRequest());
+    }
+
+    private SavedSearch savedSearch(long id, Timestamp lastLinkTime) {
+        SavedSearch savedSearch = new SavedSearch("*", definitionPoint, new AuthenticatedUser());
+        savedSearch.setId(id);
+        savedSearch.setSavedSearchFilterQueries(new ArrayList<>());
+        savedSearch.setLastLinkTime(lastLinkTime);
+        return savedSearch;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> searchedFilterQueries() throws Exception {
+        ArgumentCaptor<List<String>> filterQueries = ArgumentCaptor.forClass(List.class);
+        verify(searchService).searchPages(any(), eq("*"), filterQueries.capture(), anyInt(), any());
+        return filterQueries.getValue();
+    }
+
+    @Test
+    public void testFirstRunSearchesEverything() throws Exception {
+        SavedSearch savedSearch = savedSearch(10L, null);
+        Timestamp runTime = new Timestamp(1000000L);
+
+        savedSearchService.makeLinksForSingleSavedSearch(request, savedSearch, false, false, new HashMap<>(), runTime);
+
+        verify(em, never()).createNativeQuery(startsWith("SELECT id FROM dvobject"));
+        assertTrue(searchedFilterQueries().stream().noneMatch(filterQuery -> filterQuery.contains("{!terms")));
+        assertEquals(runTime, savedSearch.getLastLinkTime());
+        verify(updateQuery).setParameter(1, runTime);
+        verify(updateQuery).setParameter(2, 10L);
+        verify(updateQuery).executeUpdate();
+    }
+
+    @Test
+    public void testOnlyObjectsIndexedSinceAreSearched() throws Exception {
+        Timestamp lastLinkTime = new Timestamp(1000000L);
+        SavedSearch savedSearch = savedSearch(10L, lastLinkTime);
+        when(indexedSinceQuery.getResultList()).thenReturn(List.of(3L, 4L));
+
+        savedSearchService.makeLinksForSingleSavedSearch(request, savedSearch, false, false, new HashMap<>(), new Timestamp(2000000L));
+
+        // (with a margin, in case they weren't searchable yet)
+        ArgumentCaptor<Timestamp> since = ArgumentCaptor.forClass(Timestamp.class);
+        verify(indexedSinceQuery).setParameter(eq(1), since.capture());
+        assertTrue(since.getValue().before(lastLinkTime));
+        assertTrue(searchedFilterQueries().contains("{!terms f=" + SearchFields.ENTITY_ID + "}3,4"));
+        assertEquals(new Timestamp(2000000L), savedSearch.getLastLinkTime());
+    }
+
+    @Test
+    public void testNothingIndexedSince() throws Exception {
+        SavedSearch savedSearch = savedSearch(10L, new Timestamp(1000000L));
+        when(indexedSinceQuery.getResultList()).thenReturn(List.of());
+
+        savedSearchService.makeLinksForSingleSavedSearch(request, savedSearch, false, false, new HashMap<>(), new Timestamp(2000000L));
+
+        verify(searchService, never()).searchPages(any(), any(), any(), anyInt(), any());
+        assertEquals(new Timestamp(2000000L), savedSearch.getLastLinkTime());
+    }
+
+    @Test
+    public void testFullRunSearchesEverything() throws Exception {
+        SavedSearch savedSearch = savedSearch(10L, new Timestamp(1000000L));
+
+        savedSearchService.makeLinksForSingleSavedSearch(request, savedSearch, false, true, new HashMap<>(), new Timestamp(2000000L));
+
+        verify(em, never()).createNativeQuery(startsWith("SELECT id FROM dvobject"));
+        assertTrue(searchedFilterQueries().stream().noneMatch(filterQuery -> filterQuery.contains("{!terms")));
+        assertEquals(new Timestamp(2000000L), savedSearch.getLastLinkTime());
+    }
+
+    /**
+     * The hits that couldn't be linked are searched again the next time.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testLastLinkTimeKeptWhenLinkFails() throws Exception {
+        Timestamp lastLinkTime = new Timestamp(1000000L);
+        SavedSearch savedSearch = savedSearch(10L, lastLinkTime);
+        when(indexedSinceQuery.getResultList()).thenReturn(List.of(5L));
+
+        Dataverse owner = new Dataverse();
+        owner.setId(2L);
+        Dataset dataset = new Dataset();
+        dataset.setId(5L);
+        dataset.setOwner(owner);
+        when(dvObjectService.findByIds(any())).thenReturn(List.<DvObject>of(dataset));
+        SolrSearchResult hit = new SolrSearchResult();
+        hit.setEntityId(5L);
+        hit.setNameSort("dataset");
+        doAnswer(invocation -> {
+            invocation.getArgument(4, Consumer.class).accept(List.of(hit));
+            return null;
+        }).when(searchService).searchPages(any(), any(), any(), anyInt(), any());
+        when(self.link(any(), any(), anyList())).thenThrow(new CommandException("Could not link", null));
+
+        savedSearchService.makeLinksForSingleSavedSearch(request, savedSearch, false, false, new HashMap<>(), new Timestamp(2000000L));
+
+        // (once for the page, once for the hit)
+        verify(self, times(2)).link(any(), eq(definitionPoint), eq(List.of(dataset)));
+        assertEquals(lastLinkTime, savedSearch.getLastLinkTime());
+        verify(updateQuery, never()).executeUpdate();
+    }
+
+    /**
+     * The saved searches of a run are all recorded as run at the same time,
+     * so that they share the lookup of what was indexed since, the next time.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testOneRunTimeForAllSavedSearches() throws Exception {
+        TypedQuery<SavedSearch> findAllQuery = mock(TypedQuery.class);
+        when(em.createQuery(anyString(), eq(SavedSearch.class))).thenReturn(findAllQuery);
+        when(findAllQuery.getResultList()).thenReturn(List.of(savedSearch(10L, null), savedSearch(11L, null)));
+        when(self.makeLinksForSingleSavedSearch(any(), any(), anyBoolean(), anyBoolean(), any(), any())).thenReturn(Json.createObjectBuilder());
+
+        savedSearchService.makeLinksForAllSavedSearches(false, false);
+
+        ArgumentCaptor<Timestamp> runTimes = ArgumentCaptor.forClass(Timestamp.class);
+        verify(self, times(2)).makeLinksForSingleSavedSearch(any(), any(), eq(false), eq(false), any(), runTimes.capture());
+        assertSame(runTimes.getAllValues().get(0), runTimes.getAllValues().get(1));
+    }
+}
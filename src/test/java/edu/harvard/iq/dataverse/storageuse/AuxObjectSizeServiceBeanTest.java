@@ -0,0 +1,128 @@
+package edu.harvard.iq.dataverse.storageuse;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.Dataset;
+import jakarta.ejb.SessionContext;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class AuxObjectSizeServiceBeanTest {
+
+    @Mock
+    SessionContext sessionContext;
+    @Mock
+    TransactionSynchronizationRegistry transactionRegistry;
+    @Mock
+    AuxObjectSizeServiceBean self;
+
+    AuxObjectSizeServiceBean auxObjectSizeService;
+    Dataset dataset;
+    DataFile dataFile;
+
+    @BeforeEach
+    public void setUp() {
+        auxObjectSizeService = new AuxObjectSizeServiceBean();
+        auxObjectSizeService.sessionContext = sessionContext;
+        auxObjectSizeService.transactionRegistry = transactionRegistry;
+        when(sessionContext.getBusinessObject(AuxObjectSizeServiceBean.class)).thenReturn(self);
+        auxObjectSizeService.init();
+        when(self.recordSize(anyLong(), anyString(), anyLong())).thenReturn(1);
+
+        dataset = new Dataset();
+        dataset.setId(5L);
+        dataFile = new DataFile();
+        dataFile.setOwner(dataset);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        auxObjectSizeService.shutdown();
+    }
+
+    /**
+     * The size of an object saved within a transaction is recorded once the
+     * transaction is over.
+     */
+    private Synchronization givenTransaction() {
+        when(transactionRegistry.getTransactionKey()).thenReturn("transaction");
+        auxObjectSizeService.auxObjectSaved(dataFile, "thumb64", 100L);
+        ArgumentCaptor<Synchronization> synchronization = ArgumentCaptor.forClass(Synchronization.class);
+        verify(transactionRegistry).registerInterposedSynchronization(synchronization.capture());
+        verifyNoInteractions(self);
+        return synchronization.getValue();
+    }
+
+    @Test
+    public void testSavedOutsideTransaction() {
+        dataFile.setId(7L);
+
+        auxObjectSizeService.auxObjectSaved(dataFile, "thumb64", 100L);
+
+        verify(self).recordSize(7L, "thumb64", 100L);
+        verify(self, never()).clearReconciliation(any());
+    }
+
+    /**
+     * The thumbnails of a file being uploaded are saved before the file is
+     * committed, or has an id: they are recorded once it is.
+     */
+    @Test
+    public void testSavedBeforeCommit() {
+        Synchronization synchronization = givenTransaction();
+
+        dataFile.setId(7L);
+        synchronization.afterCompletion(Status.STATUS_COMMITTED);
+
+        verify(self).recordSize(7L, "thumb64", 100L);
+        verify(self, never()).clearReconciliation(any());
+    }
+
+    /**
+     * The dataset of a file still not committed by the end of the transaction
+     * is listed from the storage again, the next time its size is needed.
+     */
+    @Test
+    public void testSavedBeforeCommitWithoutId() {
+        Synchronization synchronization = givenTransaction();
+
+        synchronization.afterCompletion(Status.STATUS_COMMITTED);
+
+        verify(self, never()).recordSize(anyLong(), anyString(), anyLong());
+        verify(self).clearReconciliation(5L);
+    }
+
+    @Test
+    public void testSavedForObjectNotCommitted() {
+        Synchronization synchronization = givenTransaction();
+        dataFile.setId(7L);
+        when(self.recordSize(7L, "thumb64", 100L)).thenReturn(0);
+
+        synchronization.afterCompletion(Status.STATUS_ROLLEDBACK);
+
+        verify(self).clearReconciliation(5L);
+    }
+
+    @Test
+    public void testDatasetExportSaved() {
+        when(self.recordSize(5L, "export_ddi.cached", 10L)).thenReturn(0);
+
+        auxObjectSizeService.auxObjectSaved(dataset, "export_ddi.cached", 10L);
+
+        verify(self).clearReconciliation(5L);
+    }
+}
@@ -0,0 +1,42 @@
+package edu.harvard.iq.dataverse.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReadRateLimiterTest {
+
+    @Test
+    public void testLimitsTheRate() throws IOException {
+        byte[] data = new byte[400 * 1024];
+        new Random(1).nextBytes(data);
+        // 1 MB/s, shared by two streams:
+        ReadRateLimiter limiter = new ReadRateLimiter(1024 * 1024);
+
+        long start = System.nanoTime();
+        byte[] first;
+        byte[] second;
+        try (InputStream in1 = limiter.limit(new ByteArrayInputStream(data));
+                InputStream in2 = limiter.limit(new ByteArrayInputStream(data))) {
+            first = in1.readAllBytes();
+            second = in2.readAllBytes();
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertArrayEquals(data, first);
+        assertArrayEquals(data, second);
+        // 800 KB at 1 MB/s; less the first read, that doesn't have to wait:
+        assertTrue(elapsedMillis >= 600, "read too fast: " + elapsedMillis + " ms");
+    }
+
+    @Test
+    public void testRejectsNoRate() {
+        assertThrows(IllegalArgumentException.class, () -> new ReadRateLimiter(0));
+    }
+}
@@ -13,6 +13,7 @@ import edu.harvard.iq.dataverse.engine.command.impl.ListExplicitGroupsCommand;
 import edu.harvard.iq.dataverse.engine.command.impl.ListFacetsCommand;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import edu.harvard.iq.dataverse.util.testing.Tags;
+import org.eclipse.microprofile.metrics.Counter;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Tag;
@@ -31,14 +32,17 @@ import javax.cache.integration.CompletionListener;
 import javax.cache.processor.EntryProcessor;
 import javax.cache.processor.EntryProcessorException;
 import javax.cache.processor.EntryProcessorResult;
+import javax.cache.processor.MutableEntry;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 @ExtendWith(MockitoExtension.class)
 @MockitoSettings(strictness = Strictness.LENIENT)
@@ -104,6 +108,9 @@ public class CacheFactoryBeanTest {
             if (cache.rateLimitCache == null) {
                 cache.rateLimitCache = new TestCache(getConfig());
             }
+            cache.rateLimitBuckets = new RateLimitBuckets(cache.rateLimitCache);
+            cache.allowedCounter = mock(Counter.class);
+            cache.rejectedCounter = mock(Counter.class);
 
             // Clear the static data, so it can be reloaded with the new mocked data
             RateLimitUtil.rateLimitMap.clear();
@@ -134,6 +141,41 @@ public class CacheFactoryBeanTest {
         String key = RateLimitUtil.generateCacheKey(guestUser, action.getClass().getSimpleName());
         assertTrue(cache.rateLimitCache.containsKey(key));
         assertTrue(rateLimited && cnt > 1 && cnt <= 30, "rateLimited:"+rateLimited + " cnt:"+cnt);
+        verify(cache.rejectedCounter, atLeastOnce()).inc();
+    }
+
+    @Test
+    public void testBucketsReconciledAcrossServers() {
+        RateLimitBuckets server1 = new RateLimitBuckets(cache.rateLimitCache);
+        RateLimitBuckets server2 = new RateLimitBuckets(cache.rateLimitCache);
+        String key = "reconciled:ListFacetsCommand";
+        for (int cnt = 0; cnt < 5; cnt++) {
+            assertTrue(server2.tryAcquire(key, 10));
+        }
+        // server1 doesn't know about the calls made on server2 yet
+        for (int cnt = 0; cnt < 5; cnt++) {
+            assertTrue(server1.tryAcquire(key, 10));
+        }
+
+        server2.reconcileAll();
+        assertTrue(server2.tryAcquire(key, 10));
+        server1.reconcileAll();
+        assertFalse(server1.tryAcquire(key, 10));
+        server2.reconcileAll();
+        assertFalse(server2.tryAcquire(key, 10));
+    }
+
+    @Test
+    public void testTokenBucketEncoding() {
+        long bucket = RateLimitBuckets.pack(29_000_000L, 120);
+        assertEquals(29_000_000L, RateLimitBuckets.minute(bucket));
+        assertEquals(120, RateLimitBuckets.tokens(bucket));
+        // 120 per hour: 2 tokens a minute, up to the capacity
+        assertEquals(RateLimitBuckets.pack(29_000_010L, 120), RateLimitBuckets.refill(RateLimitBuckets.pack(29_000_000L, 110), 120, 29_000_010L));
+        assertEquals(RateLimitBuckets.pack(29_000_001L, 2), RateLimitBuckets.refill(RateLimitBuckets.pack(29_000_000L, 0), 120, 29_000_001L));
+        // 30 per hour: no token until 2 minutes have gone by
+        assertEquals(RateLimitBuckets.pack(29_000_000L, 0), RateLimitBuckets.refill(RateLimitBuckets.pack(29_000_000L, 0), 30, 29_000_001L));
+        assertEquals(30, RateLimitBuckets.tokens(RateLimitBuckets.refill(0L, 30, 29_000_000L)));
     }
 
     @Test
@@ -292,7 +334,37 @@ public class CacheFactoryBeanTest {
         }
         @Override
         public <T> T invoke(String s, EntryProcessor<String, String, T> entryProcessor, Object... objects) throws EntryProcessorException {
-            return null;
+            cache.lock(s);
+            try {
+                return entryProcessor.process(new MutableEntry<String, String>() {
+                    @Override
+                    public boolean exists() {
+                        return cache.containsKey(s);
+                    }
+                    @Override
+                    public void remove() {
+                        cache.delete(s);
+                    }
+                    @Override
+                    public void setValue(String value) {
+                        cache.put(s, value);
+                    }
+                    @Override
+                    public String getKey() {
+                        return s;
+                    }
+                    @Override
+                    public String getValue() {
+                        return cache.get(s);
+                    }
+                    @Override
+                    public <U> U unwrap(Class<U> aClass) {
+                        return null;
+                    }
+                }, objects);
+            } finally {
+                cache.unlock(s);
+            }
         }
         @Override
         public <T> Map<String, EntryProcessorResult<T>> invokeAll(Set<? extends String> set, EntryProcessor<String, String, T> entryProcessor, Object... objects) {
@@ -27,6 +27,7 @@ import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import edu.harvard.iq.dataverse.license.LicenseServiceBean;
 import edu.harvard.iq.dataverse.mocks.MockDatasetFieldSvc;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
+import edu.harvard.iq.dataverse.workflow.Workflow;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.BeforeEach;
@@ -715,4 +716,42 @@ public class JsonParserTest {
         assertTrue(typesSet.contains(Type.REVOKEROLE), "Set contains REVOKEROLE");
         assertTrue(typesSet.contains(Type.ASSIGNROLE), "Set contains ASSIGNROLE");
     }
+
+    @Test
+    public void testParseWorkflowWithParallelSteps() throws JsonParseException {
+        JsonObject json = Json.createObjectBuilder()
+                .add("name", "parallel")
+                .add("steps", Json.createArrayBuilder()
+                        .add(Json.createObjectBuilder().add("provider", ":internal").add("stepType", "log"))
+                        .add(Json.createObjectBuilder().add("provider", ":internal").add("stepType", "archiver")
+                                .add("dependsOn", Json.createArrayBuilder().add(0)).add("timeout", 600))
+                        .add(Json.createObjectBuilder().add("provider", ":internal").add("stepType", "ldnannounce")
+                                .add("dependsOn", Json.createArrayBuilder().add(0)))
+                        .add(Json.createObjectBuilder().add("provider", ":internal").add("stepType", "log")))
+                .build();
+        Workflow wf = new JsonParser().parseWorkflow(json);
+
+        assertEquals(Set.of(), wf.getPrerequisites(0));
+        assertEquals(Set.of(0), wf.getPrerequisites(1));
+        assertEquals(Set.of(0), wf.getPrerequisites(2));
+        assertEquals(Set.of(2), wf.getPrerequisites(3));
+        assertEquals(600, wf.getSteps().get(1).getTimeout());
+        assertNull(wf.getSteps().get(2).getTimeout());
+
+        JsonObject printed = JsonPrinter.json(wf).build();
+        assertEquals(wf.getPrerequisites(1), new JsonParser().parseWorkflow(printed).getPrerequisites(1));
+        assertFalse(printed.getJsonArray("steps").getJsonObject(3).containsKey("dependsOn"));
+    }
+
+    @Test
+    public void testParseWorkflowWithDependencyOnLaterStep() {
+        JsonObject json = Json.createObjectBuilder()
+                .add("name", "cyclic")
+                .add("steps", Json.createArrayBuilder()
+                        .add(Json.createObjectBuilder().add("provider", ":internal").add("stepType", "log")
+                                .add("dependsOn", Json.createArrayBuilder().add(1)))
+                        .add(Json.createObjectBuilder().add("provider", ":internal").add("stepType", "log")))
+                .build();
+        assertThrows(JsonParseException.class, () -> new JsonParser().parseWorkflow(json));
+    }
 }
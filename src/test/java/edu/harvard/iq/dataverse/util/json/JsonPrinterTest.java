@@ -10,6 +10,7 @@ import edu.harvard.iq.dataverse.privateurl.PrivateUrl;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.UserNotification.Type;
 
+import java.io.StringWriter;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -19,10 +20,12 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
+import jakarta.json.Json;
 import jakarta.json.JsonArrayBuilder;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonObjectBuilder;
 import jakarta.json.JsonString;
+import jakarta.json.stream.JsonGenerator;
 
 import edu.harvard.iq.dataverse.util.BundleUtil;
 import org.junit.jupiter.api.Test;
@@ -353,4 +356,37 @@ public class JsonPrinterTest {
         assertEquals("primitive", actualAuthorJsonObject.getString("typeClass"));
         assertFalse(actualAuthorJsonObject.getBoolean("multiple"));
     }
+
+    @Test
+    public void testWriteJsonByBlocks() {
+        MetadataBlock block = new MetadataBlock();
+        block.setName("citation");
+        List<DatasetField> fields = new ArrayList<>();
+        DatasetField datasetContactField = new DatasetField();
+        DatasetFieldType datasetContactDatasetFieldType = datasetFieldTypeSvc.findByName("datasetContact");
+        datasetContactDatasetFieldType.setMetadataBlock(block);
+        datasetContactField.setDatasetFieldType(datasetContactDatasetFieldType);
+        List<DatasetFieldCompoundValue> vals = new LinkedList<>();
+        DatasetFieldCompoundValue val = new DatasetFieldCompoundValue();
+        val.setParentDatasetField(datasetContactField);
+        val.setChildDatasetFields(Arrays.asList(
+                constructPrimitive("datasetContactEmail", "foo@bar.com"),
+                constructPrimitive("datasetContactName", "Foo \"Bar\" Bär")
+        ));
+        vals.add(val);
+        datasetContactField.setDatasetFieldCompoundValues(vals);
+        fields.add(datasetContactField);
+
+        SettingsServiceBean nullServiceBean = null;
+        DatasetFieldServiceBean nullDFServiceBean = null;
+        JsonPrinter.injectSettingsService(nullServiceBean, nullDFServiceBean);
+
+        StringWriter written = new StringWriter();
+        JsonGenerator generator = Json.createGenerator(written);
+        JsonPrinter.writeJsonByBlocks(generator, fields, null);
+        generator.close();
+
+        // the streamed JSON is the same as the one built in memory:
+        assertEquals(JsonPrinter.jsonByBlocks(fields).build().toString(), written.toString());
+    }
 }
@@ -0,0 +1,253 @@
+package edu.harvard.iq.dataverse.workflow;
+
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.DatasetEventServiceBean;
+import edu.harvard.iq.dataverse.DatasetLock;
+import edu.harvard.iq.dataverse.RoleAssigneeServiceBean;
+import edu.harvard.iq.dataverse.mocks.MocksFactory;
+import edu.harvard.iq.dataverse.workflow.step.Failure;
+import edu.harvard.iq.dataverse.workflow.step.WorkflowStep;
+import edu.harvard.iq.dataverse.workflow.step.WorkflowStepData;
+import edu.harvard.iq.dataverse.workflow.step.WorkflowStepResult;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import jakarta.ejb.SessionContext;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class WorkflowServiceBeanTest {
+
+    private WorkflowServiceBean workflowService;
+    private EntityManager em;
+    private Query query;
+    private DatasetEventServiceBean datasetEvents;
+    private ExecutorService executor;
+    private Dataset dataset;
+    private DatasetLock workflowLock;
+    // what the steps did, in order
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * The steps of the tests: "log" steps sleep for their "sleep" parameter
+     * (in milliseconds), "fail" steps fail once they have slept, and "hang"
+     * steps run until they are interrupted.
+     */
+    private class TestStep implements WorkflowStep {
+
+        private final String type;
+        private final String name;
+        private final long sleep;
+
+        TestStep(String type, Map<String, String> parameters) {
+            this.type = type;
+            this.name = parameters.get("name");
+            this.sleep = Long.parseLong(parameters.getOrDefault("sleep", "0"));
+        }
+
+        @Override
+        public WorkflowStepResult run(WorkflowContext context) {
+            events.add("start:" + name);
+            try {
+                Thread.sleep(type.equals("hang") ? 60 * 1000L : sleep);
+            } catch (InterruptedException ie) {
+                events.add("interrupted:" + name);
+                return WorkflowStepResult.OK;
+            }
+            events.add("end:" + name);
+            return type.equals("fail") ? new Failure("Step " + name + " failed") : WorkflowStepResult.OK;
+        }
+
+        @Override
+        public WorkflowStepResult resume(WorkflowContext context, Map<String, String> internalData, String externalData) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void rollback(WorkflowContext context, Failure reason) {
+            events.add("rollback:" + name);
+        }
+    }
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        workflowService = new WorkflowServiceBean();
+        workflowService.providers.put("test", TestStep::new);
+
+        em = mock(EntityManager.class);
+        query = mock(Query.class);
+        when(em.merge(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(em.createNativeQuery(anyString())).thenReturn(query);
+        when(query.setParameter(anyInt(), any())).thenReturn(query);
+        when(query.getResultList()).thenReturn(List.of());
+        TypedQuery<DatasetLock> locksQuery = mock(TypedQuery.class);
+        when(em.createNamedQuery("DatasetLock.getLocksByDatasetId", DatasetLock.class)).thenReturn(locksQuery);
+        workflowLock = new DatasetLock(DatasetLock.Reason.Workflow, null);
+        when(locksQuery.getResultList()).thenReturn(List.of(workflowLock));
+        workflowService.em = em;
+
+        SessionContext sessionContext = mock(SessionContext.class);
+        when(sessionContext.getBusinessObject(WorkflowServiceBean.class)).thenReturn(workflowService);
+        workflowService.sessionContext = sessionContext;
+        datasetEvents = mock(DatasetEventServiceBean.class);
+        workflowService.datasetEvents = datasetEvents;
+        workflowService.roleAssignees = mock(RoleAssigneeServiceBean.class);
+
+        dataset = new Dataset();
+        dataset.setId(1L);
+        when(em.find(Dataset.class, 1L)).thenReturn(dataset);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private void givenThreads(int threads) {
+        executor = Executors.newFixedThreadPool(threads);
+        WorkflowExecutorServiceBean stepExecutor = mock(WorkflowExecutorServiceBean.class);
+        when(stepExecutor.getExecutor()).thenReturn(executor);
+        workflowService.stepExecutor = stepExecutor;
+    }
+
+    private static WorkflowStepData step(String type, String name, long sleep, Integer timeout, Integer... dependsOn) {
+        WorkflowStepData step = new WorkflowStepData();
+        step.setProviderId("test");
+        step.setStepType(type);
+        step.setStepParameters(new HashMap<>(Map.of("name", name, "sleep", Long.toString(sleep))));
+        step.setStepSettings(new HashMap<>());
+        step.setTimeout(timeout);
+        step.setDependsOn(List.of(dependsOn));
+        return step;
+    }
+
+    /**
+     * Runs the workflow, as when it is continued: from the steps not
+     * completed yet.
+     */
+    private void run(WorkflowStepData... steps) {
+        Workflow workflow = new Workflow();
+        workflow.setSteps(new ArrayList<>(List.of(steps)));
+        PendingWorkflowInvocation pending = mock(PendingWorkflowInvocation.class);
+        when(pending.getWorkflow()).thenReturn(workflow);
+        when(pending.reCreateContext(any())).thenReturn(new WorkflowContext(MocksFactory.makeRequest(), dataset, 1, 0,
+                WorkflowContext.TriggerType.PostPublishDataset, new HashMap<>(), null, false, "invocation", null));
+        workflowService.continueInterrupted(pending);
+    }
+
+    private void assertBefore(String first, String then) {
+        assertTrue(events.contains(first), first);
+        assertTrue(events.contains(then), then);
+        assertTrue(events.indexOf(first) < events.indexOf(then), first + " before " + then + ": " + events);
+    }
+
+    private void verifyPublished(DatasetEventServiceBean.Type type) {
+        verify(datasetEvents).publish(eq(1L), eq(type), any());
+    }
+
+    /**
+     * The steps start once the steps they depend on are completed; those that
+     * don't depend on each other at the same time.
+     */
+    @Test
+    public void testStepsRunInDependencyOrder() {
+        givenThreads(4);
+
+        run(step("log", "a", 100, null),
+                step("log", "b", 300, null, 0),
+                step("log", "c", 300, null, 0),
+                step("log", "d", 0, null, 1, 2));
+
+        assertBefore("end:a", "start:b");
+        assertBefore("end:a", "start:c");
+        assertBefore("start:b", "end:c");
+        assertBefore("start:c", "end:b");
+        assertBefore("end:b", "start:d");
+        assertBefore("end:c", "start:d");
+        assertTrue(events.contains("end:d"));
+        assertFalse(events.stream().anyMatch(event -> event.startsWith("rollback")));
+        verifyPublished(DatasetEventServiceBean.Type.WORKFLOW_DONE);
+    }
+
+    /**
+     * The time a step waits for a thread doesn't count towards its timeout.
+     */
+    @Test
+    public void testQueuedStepDoesNotTimeOut() {
+        givenThreads(1);
+
+        run(step("log", "a", 1500, null),
+                step("log", "b", 0, 1));
+
+        assertTrue(events.contains("end:a"));
+        assertTrue(events.contains("end:b"));
+        verifyPublished(DatasetEventServiceBean.Type.WORKFLOW_DONE);
+    }
+
+    /**
+     * A step that times out is interrupted, and rolled back with the steps
+     * completed before it; the steps still queued never run.
+     */
+    @Test
+    public void testTimeoutCancelsAndRollsBack() {
+        givenThreads(1);
+
+        run(step("log", "a", 0, null),
+                step("hang", "b", 0, 1, 0),
+                step("log", "c", 0, null, 0));
+
+        assertTrue(events.contains("interrupted:b"), events.toString());
+        assertFalse(events.contains("start:c"), events.toString());
+        assertBefore("rollback:b", "rollback:a");
+        assertFalse(events.contains("rollback:c"));
+        verify(em).remove(workflowLock);
+        verifyPublished(DatasetEventServiceBean.Type.WORKFLOW_FAILED);
+    }
+
+    /**
+     * Once a step fails, the steps running at the same time are interrupted,
+     * and rolled back; not the step that failed.
+     */
+    @Test
+    public void testFailureCancelsRunningSteps() {
+        givenThreads(2);
+
+        run(step("fail", "a", 200, null),
+                step("hang", "b", 0, null));
+
+        assertTrue(events.contains("interrupted:b"), events.toString());
+        assertTrue(events.contains("rollback:b"));
+        assertFalse(events.contains("rollback:a"));
+        verifyPublished(DatasetEventServiceBean.Type.WORKFLOW_FAILED);
+    }
+
+    /**
+     * A workflow that is continued only runs the steps not completed yet.
+     */
+    @Test
+    public void testResumeRunsTheStepsLeft() {
+        givenThreads(2);
+        when(query.getResultList()).thenReturn(List.of(0, 1));
+
+        run(step("log", "a", 0, null),
+                step("log", "b", 0, null, 0),
+                step("log", "c", 0, null, 1));
+
+        assertEquals(List.of("start:c", "end:c"), events);
+        verify(query).setParameter(2, 2);
+        verifyPublished(DatasetEventServiceBean.Type.WORKFLOW_DONE);
+    }
+}